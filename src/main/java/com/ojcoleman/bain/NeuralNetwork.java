@@ -1,10 +1,20 @@
 package com.ojcoleman.bain;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.amd.aparapi.Kernel;
 import com.ojcoleman.bain.base.*;
+import com.ojcoleman.bain.misc.SpikeRecorder;
 import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
 import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
 import com.ojcoleman.bain.synapse.spiking.Pfister2006SynapseCollection;
@@ -22,6 +32,18 @@ import com.ojcoleman.bain.synapse.spiking.Pfister2006SynapseCollection;
  * executable on SIMD hardware (eg a GPU) via OpenCL via Aparapi (See
  * {@link com.ojcoleman.bain.base.ComponentCollection} for more details).
  * </p>
+ * <p>
+ * Heterogeneous networks may consist of several named populations of neurons (see
+ * {@link #addPopulation(String, NeuronCollection)}) connected by named projections (see
+ * {@link #addProjection(String, SynapseCollection, String, String)}), each with its own neuron or synapse model. The
+ * NeuronCollection and SynapseCollection given to the constructor are registered as the population
+ * {@link #DEFAULT_POPULATION} and the projection {@link #DEFAULT_PROJECTION} (from and to the default population). In
+ * each simulation step all projections are stepped, and then all populations. Projections write only to the inputs
+ * of their post-synaptic population, so if a pool is set (see {@link #setStepPool(ForkJoinPool)}) then the projections
+ * onto different populations are stepped concurrently, while projections onto the same population are stepped in
+ * order of registration; the populations are then stepped concurrently. The results are identical to those of
+ * stepping all collections in sequence.
+ * </p>
  * 
  * <p>
  * To improve performance, ComponentCollection and extensions thereof use the explicit memory management feature of
@@ -38,6 +60,12 @@ import com.ojcoleman.bain.synapse.spiking.Pfister2006SynapseCollection;
  * then if the size is greater than or equal to {@link #minimumSizeForJTP} the JTP execution mode is used, otherwise the
  * SEQ execution mode is used.
  * </p>
+ * <p>
+ * The kernels of the collections are executed by an {@link com.ojcoleman.bain.base.ExecutionBackend}, by default
+ * Aparapi in the selected execution mode. For CPU-only systems a
+ * {@link com.ojcoleman.bain.base.ForkJoinExecutionBackend} may be used instead (see
+ * {@link #setExecutionBackend(ExecutionBackend)}).
+ * </p>
  * 
  * @author Oliver J. Coleman
  */
@@ -116,13 +144,80 @@ public class NeuralNetwork {
 		}
 	}
 
+	/**
+	 * The backend used to execute the kernels of the collections in this network, or null to use the default
+	 * (Aparapi) backend.
+	 */
+	protected ExecutionBackend executionBackend;
+
+	/**
+	 * Get the backend used to execute the kernels of the collections in this network, or null if the default (Aparapi)
+	 * backend is used.
+	 */
+	public ExecutionBackend getExecutionBackend() {
+		return executionBackend;
+	}
+
+	/**
+	 * Set the backend used to execute the kernels of the collections in this network. Set to null to use the default
+	 * (Aparapi) backend, which executes the kernels in the selected execution mode (see
+	 * {@link #setPreferredExecutionMode(Kernel.EXECUTION_MODE)}). The backend is not disposed when this network is
+	 * disposed, so it may be shared between networks.
+	 */
+	public synchronized void setExecutionBackend(ExecutionBackend executionBackend) {
+		if (this.executionBackend != executionBackend) {
+			this.executionBackend = executionBackend;
+			selectExecutionModes();
+		}
+	}
+
 	protected long step;
 	protected int timeResolution = 1000;
 	protected double stepPeriod = 1.0 / timeResolution;
 
+	/**
+	 * The name of the population containing the neurons given to the constructor, see {@link #getNeurons()}.
+	 */
+	public static final String DEFAULT_POPULATION = "neurons";
+
+	/**
+	 * The name of the projection containing the synapses given to the constructor, see {@link #getSynapses()}.
+	 */
+	public static final String DEFAULT_PROJECTION = "synapses";
+
 	protected NeuronCollection<? extends ComponentConfiguration> neurons;
 	protected SynapseCollection<? extends ComponentConfiguration> synapses;
 
+	/**
+	 * The populations of neurons in this network, by name, in order of registration.
+	 */
+	protected Map<String, NeuronCollection<? extends ComponentConfiguration>> populations = new LinkedHashMap<String, NeuronCollection<? extends ComponentConfiguration>>();
+
+	/**
+	 * The projections of synapses in this network, by name, in order of registration.
+	 */
+	protected Map<String, SynapseCollection<? extends ComponentConfiguration>> projections = new LinkedHashMap<String, SynapseCollection<? extends ComponentConfiguration>>();
+
+	/**
+	 * The projections grouped by post-synaptic population, see {@link #getProjectionGroups()}.
+	 */
+	private List<List<SynapseCollection<? extends ComponentConfiguration>>> projectionGroups;
+
+	/**
+	 * The pool used to step independent collections concurrently, or null to step all collections in sequence.
+	 */
+	protected ForkJoinPool stepPool;
+
+	/**
+	 * The recorders of the spikes of the populations of this network, see {@link #addSpikeRecorder(SpikeRecorder)}.
+	 */
+	protected List<SpikeRecorder> spikeRecorders = new ArrayList<SpikeRecorder>();
+
+	/**
+	 * The probes of the state variables of the collections in this network, see {@link #addProbe(StateProbe)}.
+	 */
+	protected List<StateProbe> probes = new ArrayList<StateProbe>();
+
 	/**
 	 * Create a new simulation.
 	 */
@@ -146,6 +241,8 @@ public class NeuralNetwork {
 		stepPeriod = 1.0 / timeResolution;
 		this.neurons = neurons;
 		this.synapses = synapses;
+		populations.put(DEFAULT_POPULATION, neurons);
+		projections.put(DEFAULT_PROJECTION, synapses);
 		neurons.setNetwork(this);
 		synapses.setNetwork(this);
 		selectExecutionModes();
@@ -170,6 +267,8 @@ public class NeuralNetwork {
 		this.neurons = neurons;
 		this.synapses = synapses;
 		this.preferredExecutionMode = preferredExecutionMode;
+		populations.put(DEFAULT_POPULATION, neurons);
+		projections.put(DEFAULT_PROJECTION, synapses);
 		neurons.setNetwork(this);
 		synapses.setNetwork(this);
 		selectExecutionModes();
@@ -180,21 +279,29 @@ public class NeuralNetwork {
 	 * Reinitialises the simulation. This is generally only for internal use.
 	 */
 	public void init() {
-		neurons.init();
-		synapses.init();
+		for (NeuronCollection<? extends ComponentConfiguration> population : populations.values()) {
+			population.init();
+		}
+		for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+			projection.init();
+		}
 		reset();
 	}
 
 	protected void selectExecutionModes() {
 		Kernel.EXECUTION_MODE mode = preferredExecutionMode;
-		ComponentCollection[] collections = new ComponentCollection[] { neurons, synapses };
+		List<ComponentCollection> collections = new ArrayList<ComponentCollection>(populations.values());
+		collections.addAll(projections.values());
 		// TODO below code doesn't work when minimumSizeForJTP > minimumSizeForGPU
 		for (ComponentCollection c : collections) {
+			c.setExecutionBackend(executionBackend);
+			// Collections that do not store their synapses in the per-component arrays report a size of 0.
+			long size = c instanceof SynapseCollection ? ((SynapseCollection<?>) c).getSynapseCount() : c.getSize();
 			if (preferredExecutionMode != null) {
 				c.setExecutionMode(preferredExecutionMode);
-			} else if (c.getSize() < minimumSizeForJTP) {
+			} else if (size < minimumSizeForJTP) {
 				c.setExecutionMode(Kernel.EXECUTION_MODE.SEQ);
-			} else if (c.getSize() < minimumSizeForGPU) {
+			} else if (size < minimumSizeForGPU) {
 				c.setExecutionMode(Kernel.EXECUTION_MODE.JTP);
 			} else {
 				c.setExecutionMode(Kernel.EXECUTION_MODE.GPU);
@@ -240,8 +347,12 @@ public class NeuralNetwork {
 	 * Reset the simulation.
 	 */
 	public synchronized void reset() {
-		neurons.reset();
-		synapses.reset();
+		for (NeuronCollection<? extends ComponentConfiguration> population : populations.values()) {
+			population.reset();
+		}
+		for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+			projection.reset();
+		}
 		step = 0;
 	}
 
@@ -268,14 +379,77 @@ public class NeuralNetwork {
 		return stepPeriod;
 	}
 
+	/**
+	 * Enable or disable event-driven updating of the synapses. In event-driven mode a synapse is only updated in time
+	 * steps in which its pre- or post-synaptic neuron spikes (or while it has ongoing dynamics), with its state
+	 * brought up to date lazily for the intervening steps. This can greatly reduce the amount of computation required
+	 * for networks of spiking neurons with low firing rates. If the synapse model does not support event-driven
+	 * updating then every synapse continues to be updated in every time step (dense updating, the default). See
+	 * {@link SynapseCollection#setEventDriven(boolean)}.
+	 */
+	public synchronized void setEventDriven(boolean eventDriven) {
+		for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+			projection.setEventDriven(eventDriven);
+		}
+	}
+
+	/**
+	 * Returns true iff event-driven updating of the synapses is in use by any projection. See
+	 * {@link #setEventDriven(boolean)}.
+	 */
+	public boolean isEventDriven() {
+		for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+			if (projection.isEventDriven()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Enable or disable single precision storage of the state variables of the neurons and synapses. This halves the
+	 * memory required for the state variables that support it, and the memory bandwidth consumed in each simulation
+	 * step, at the cost of slightly less accurate results (the PrecisionComparison utility in the test sources reports
+	 * the differences for each bundled synapse model). Collections that do not support single precision storage continue to use double precision. See
+	 * {@link ComponentCollection#setSinglePrecision(boolean)}.
+	 */
+	public synchronized void setSinglePrecision(boolean singlePrecision) {
+		for (NeuronCollection<? extends ComponentConfiguration> population : populations.values()) {
+			population.setSinglePrecision(singlePrecision);
+		}
+		for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+			projection.setSinglePrecision(singlePrecision);
+		}
+	}
+
+	/**
+	 * Returns true iff single precision storage of state variables is in use by any of the neurons or synapses. See
+	 * {@link #setSinglePrecision(boolean)}.
+	 */
+	public boolean isSinglePrecision() {
+		for (NeuronCollection<? extends ComponentConfiguration> population : populations.values()) {
+			if (population.isSinglePrecision()) {
+				return true;
+			}
+		}
+		for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+			if (projection.isSinglePrecision()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Simulate one time step.
 	 */
 	public synchronized void step() {
 		// We step synapses first in case the neuron outputs have been modified, for example to provide external input
 		// to the network.
-		synapses.step();
-		neurons.step();
+		stepProjections();
+		stepPopulations();
+		recordSpikes();
+		sampleProbes();
 		step++;
 	}
 
@@ -289,13 +463,255 @@ public class NeuralNetwork {
 			// We step synapses first in case the neuron outputs have been modified, for example to provide external
 			// input to the network.
 			if (debug) System.out.println("Synapses:");
-			synapses.step();
+			stepProjections();
 			if (debug) System.out.println("Neurons:");
-			neurons.step();
+			stepPopulations();
+			recordSpikes();
+			sampleProbes();
 			step++;
 		}
 	}
 
+	/**
+	 * Records the spikes of the current step with each attached recorder.
+	 */
+	protected void recordSpikes() {
+		for (int i = 0; i < spikeRecorders.size(); i++) {
+			spikeRecorders.get(i).record(step);
+		}
+	}
+
+	/**
+	 * Attach a recorder of the spikes of one of the populations of this network: after each step the spikes of the
+	 * population in that step are appended to the recording, with the index of the step (see {@link #getStep()}).
+	 */
+	public synchronized void addSpikeRecorder(SpikeRecorder recorder) {
+		if (!populations.containsValue(recorder.getNeurons())) {
+			throw new IllegalArgumentException("The neurons of the SpikeRecorder are not a population of this network.");
+		}
+		spikeRecorders.add(recorder);
+	}
+
+	/**
+	 * Detach a recorder added with {@link #addSpikeRecorder(SpikeRecorder)}. The recorder is not closed.
+	 */
+	public synchronized void removeSpikeRecorder(SpikeRecorder recorder) {
+		spikeRecorders.remove(recorder);
+	}
+
+	/**
+	 * Samples the state variables for the current step with each attached probe.
+	 */
+	protected void sampleProbes() {
+		for (int i = 0; i < probes.size(); i++) {
+			probes.get(i).sample(step);
+		}
+	}
+
+	/**
+	 * Attach a probe of the state variables of one of the populations or projections of this network: at the end of
+	 * each step whose index (see {@link #getStep()}) is a multiple of the interval of the probe the state variables are
+	 * sampled.
+	 */
+	public synchronized void addProbe(StateProbe probe) {
+		if (!populations.containsValue(probe.getCollection()) && !projections.containsValue(probe.getCollection())) {
+			throw new IllegalArgumentException("The collection of the StateProbe is not a population or projection of this network.");
+		}
+		probes.add(probe);
+	}
+
+	/**
+	 * Detach a probe added with {@link #addProbe(StateProbe)}.
+	 */
+	public synchronized void removeProbe(StateProbe probe) {
+		probes.remove(probe);
+	}
+
+	/**
+	 * Steps all projections. If a pool is set then groups of projections with different post-synaptic populations are
+	 * stepped concurrently, see {@link #getProjectionGroups()}.
+	 */
+	protected void stepProjections() {
+		List<List<SynapseCollection<? extends ComponentConfiguration>>> groups = getProjectionGroups();
+		if (stepPool == null || groups.size() < 2) {
+			for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+				projection.step();
+			}
+			return;
+		}
+		// Fetch the neuron arrays now so that the concurrently stepped projections only read shared state.
+		for (NeuronCollection<? extends ComponentConfiguration> population : populations.values()) {
+			population.ensureInputsAreFresh();
+			population.ensureOutputsAreFresh();
+		}
+		List<StepTask> tasks = new ArrayList<StepTask>(groups.size());
+		for (List<SynapseCollection<? extends ComponentConfiguration>> group : groups) {
+			tasks.add(new StepTask(group));
+		}
+		invokeTasks(tasks);
+	}
+
+	/**
+	 * Steps all populations, concurrently if a pool is set.
+	 */
+	protected void stepPopulations() {
+		if (stepPool == null || populations.size() < 2) {
+			for (NeuronCollection<? extends ComponentConfiguration> population : populations.values()) {
+				population.step();
+			}
+			return;
+		}
+		List<StepTask> tasks = new ArrayList<StepTask>(populations.size());
+		for (NeuronCollection<? extends ComponentConfiguration> population : populations.values()) {
+			tasks.add(new StepTask(Collections.singletonList(population)));
+		}
+		invokeTasks(tasks);
+	}
+
+	private void invokeTasks(final List<StepTask> tasks) {
+		stepPool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	/**
+	 * Returns the projections grouped by post-synaptic population, in order of registration within each group. Only
+	 * projections in the same group write to the same neuron inputs, so groups may be stepped concurrently.
+	 */
+	protected List<List<SynapseCollection<? extends ComponentConfiguration>>> getProjectionGroups() {
+		if (projectionGroups == null) {
+			Map<NeuronCollection<?>, List<SynapseCollection<? extends ComponentConfiguration>>> groups = new LinkedHashMap<NeuronCollection<?>, List<SynapseCollection<? extends ComponentConfiguration>>>();
+			for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+				List<SynapseCollection<? extends ComponentConfiguration>> group = groups.get(projection.getPostNeurons());
+				if (group == null) {
+					group = new ArrayList<SynapseCollection<? extends ComponentConfiguration>>();
+					groups.put(projection.getPostNeurons(), group);
+				}
+				group.add(projection);
+			}
+			projectionGroups = new ArrayList<List<SynapseCollection<? extends ComponentConfiguration>>>(groups.values());
+		}
+		return projectionGroups;
+	}
+
+	/**
+	 * Steps a list of collections in order.
+	 */
+	private static class StepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<? extends ComponentCollection> collections;
+
+		public StepTask(List<? extends ComponentCollection> collections) {
+			this.collections = collections;
+		}
+
+		@Override
+		protected void compute() {
+			for (ComponentCollection collection : collections) {
+				collection.step();
+			}
+		}
+	}
+
+	/**
+	 * Set the pool used to step independent collections concurrently: projections onto different populations, and
+	 * the populations. Set to null (the default) to step all collections in sequence in the calling thread. The pool
+	 * is not shut down when this network is disposed, so it may be shared between networks.
+	 */
+	public synchronized void setStepPool(ForkJoinPool stepPool) {
+		this.stepPool = stepPool;
+	}
+
+	/**
+	 * Get the pool used to step independent collections concurrently, or null if they are stepped in sequence.
+	 */
+	public ForkJoinPool getStepPool() {
+		return stepPool;
+	}
+
+	/**
+	 * Add a population of neurons to this network. This will reinitialise and reset the population.
+	 * 
+	 * @param name The name of the population, which must be unique within this network.
+	 * @param population The NeuronCollection containing the neurons of the population.
+	 */
+	public synchronized void addPopulation(String name, NeuronCollection<? extends ComponentConfiguration> population) {
+		if (populations.containsKey(name)) {
+			throw new IllegalArgumentException("A population named " + name + " already exists.");
+		}
+		populations.put(name, population);
+		if (neurons == null) {
+			neurons = population;
+		}
+		population.setNetwork(this);
+		selectExecutionModes();
+	}
+
+	/**
+	 * Add a projection of synapses between two populations to this network. The pre- and post-synaptic neuron indexes
+	 * of the synapses reference the neurons in the pre- and post-synaptic populations respectively, which may be the
+	 * same population. This will reinitialise and reset the projection.
+	 * 
+	 * @param name The name of the projection, which must be unique within this network.
+	 * @param projection The SynapseCollection containing the synapses of the projection.
+	 * @param prePopulation The name of the population containing the pre-synaptic neurons.
+	 * @param postPopulation The name of the population containing the post-synaptic neurons.
+	 */
+	public synchronized void addProjection(String name, SynapseCollection<? extends ComponentConfiguration> projection, String prePopulation, String postPopulation) {
+		if (projections.containsKey(name)) {
+			throw new IllegalArgumentException("A projection named " + name + " already exists.");
+		}
+		projection.setPopulations(getExistingPopulation(prePopulation), getExistingPopulation(postPopulation));
+		projections.put(name, projection);
+		projectionGroups = null;
+		if (synapses == null) {
+			synapses = projection;
+		}
+		projection.setNetwork(this);
+		selectExecutionModes();
+	}
+
+	private NeuronCollection<? extends ComponentConfiguration> getExistingPopulation(String name) {
+		NeuronCollection<? extends ComponentConfiguration> population = populations.get(name);
+		if (population == null) {
+			throw new IllegalArgumentException("No population named " + name + " exists.");
+		}
+		return population;
+	}
+
+	/**
+	 * Returns the population with the given name, or null if there is no such population.
+	 */
+	public NeuronCollection<? extends ComponentConfiguration> getPopulation(String name) {
+		return populations.get(name);
+	}
+
+	/**
+	 * Returns the projection with the given name, or null if there is no such projection.
+	 */
+	public SynapseCollection<? extends ComponentConfiguration> getProjection(String name) {
+		return projections.get(name);
+	}
+
+	/**
+	 * Returns an unmodifiable view of the populations in this network, by name, in order of registration.
+	 */
+	public Map<String, NeuronCollection<? extends ComponentConfiguration>> getPopulations() {
+		return Collections.unmodifiableMap(populations);
+	}
+
+	/**
+	 * Returns an unmodifiable view of the projections in this network, by name, in order of registration.
+	 */
+	public Map<String, SynapseCollection<? extends ComponentConfiguration>> getProjections() {
+		return Collections.unmodifiableMap(projections);
+	}
+
 	/**
 	 * Returns the current simulation step number.
 	 */
@@ -303,6 +719,29 @@ public class NeuralNetwork {
 		return step;
 	}
 
+	/**
+	 * Save the complete state of this network, including the current step, to the given file, replacing the contents
+	 * of the file if it exists. See {@link Checkpoint}.
+	 *
+	 * @throws UnsupportedOperationException If a population or projection does not support checkpoints.
+	 * @throws IOException If the file can not be written.
+	 */
+	public synchronized void saveCheckpoint(File file) throws IOException {
+		Checkpoint.save(this, file);
+	}
+
+	/**
+	 * Restore the state of this network, including the current step, from a file written by
+	 * {@link #saveCheckpoint(File)}. This network must be constructed in the same way as the network that was saved:
+	 * with populations and projections of the same classes and names, connected in the same way, and the same time
+	 * resolution. Attached spike recorders and probes are not affected. See {@link Checkpoint}.
+	 *
+	 * @throws IOException If the file can not be read or was saved from a network that was constructed differently.
+	 */
+	public synchronized void restoreCheckpoint(File file) throws IOException {
+		step = Checkpoint.restore(this, file);
+	}
+
 	/**
 	 * Returns the current simulation time in seconds.
 	 */
@@ -311,7 +750,8 @@ public class NeuralNetwork {
 	}
 
 	/**
-	 * Returns the neurons in this network.
+	 * Returns the neurons in this network. If the network contains several populations this is the first population
+	 * added (see {@link #DEFAULT_POPULATION}).
 	 * 
 	 * @return The NeuronCollection belonging to this network.
 	 */
@@ -326,6 +766,15 @@ public class NeuralNetwork {
 		if (this.neurons != null) {
 			this.neurons.setNetwork(null);
 		}
+		replace(populations, DEFAULT_POPULATION, this.neurons, neurons);
+		for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+			NeuronCollection<? extends ComponentConfiguration> pre = projection.getPreNeurons();
+			NeuronCollection<? extends ComponentConfiguration> post = projection.getPostNeurons();
+			if (pre == this.neurons || post == this.neurons) {
+				projection.setPopulations(pre == this.neurons ? neurons : pre, post == this.neurons ? neurons : post);
+			}
+		}
+		projectionGroups = null;
 		this.neurons = neurons;
 		neurons.setNetwork(this);
 		selectExecutionModes();
@@ -334,7 +783,8 @@ public class NeuralNetwork {
 	}
 
 	/**
-	 * Returns the synapses in this network.
+	 * Returns the synapses in this network. If the network contains several projections this is the first projection
+	 * added (see {@link #DEFAULT_PROJECTION}).
 	 * 
 	 * @return The SynapseCollection belonging to this network.
 	 */
@@ -349,6 +799,8 @@ public class NeuralNetwork {
 		if (this.synapses != null) {
 			this.synapses.setNetwork(null);
 		}
+		replace(projections, DEFAULT_PROJECTION, this.synapses, synapses);
+		projectionGroups = null;
 		this.synapses = synapses;
 		synapses.setNetwork(this);
 		selectExecutionModes();
@@ -356,14 +808,82 @@ public class NeuralNetwork {
 		reset();
 	}
 
+	/**
+	 * Replaces the given collection in the given map with another, keeping the order of registration, or adds it
+	 * with the given name if the collection to replace is not in the map.
+	 */
+	private static <T> void replace(Map<String, T> map, String defaultName, T current, T replacement) {
+		Map<String, T> copy = new LinkedHashMap<String, T>(map);
+		map.clear();
+		boolean replaced = false;
+		for (Map.Entry<String, T> entry : copy.entrySet()) {
+			if (entry.getValue() == current && !replaced) {
+				map.put(entry.getKey(), replacement);
+				replaced = true;
+			} else {
+				map.put(entry.getKey(), entry.getValue());
+			}
+		}
+		if (!replaced) {
+			map.put(defaultName, replacement);
+		}
+	}
+
+	/**
+	 * Reorders the neurons and synapses of this network to improve memory locality in the synapse step, which may
+	 * substantially reduce cache misses for large networks with irregular connectivity. The neurons of each population
+	 * are reordered with {@link LocalityOrdering#reverseCuthillMcKee(NeuronCollection, List)}, according to the
+	 * projections from the population onto itself (populations without such projections are not reordered), the
+	 * neuron indexes of all projections are updated accordingly, and the synapses of each projection are sorted by
+	 * post- and pre-synaptic neuron (see {@link SynapseCollection#sortByPostAndPreNeuron()}). The simulation results
+	 * are unchanged, up to the order of summation of the inputs to each neuron.
+	 * <p>
+	 * <strong>This changes the index of neurons and synapses.</strong> Each neuron retains its ID, which is its index
+	 * before the neurons were first reordered (see {@link NeuronCollection#getNeuronIndex(int)}), and the methods that
+	 * get or set the values of a single neuron, or the pre- and post-synaptic neurons of a synapse, take and return
+	 * neuron IDs, so the reordering of neurons is transparent to them. Only the arrays of values for all neurons (for
+	 * example {@link NeuronCollection#getOutputs()}) are in the new order. Each synapse likewise retains its ID, which
+	 * is its index before the synapses were first sorted; synapses are still specified by index, which can be obtained
+	 * with {@link SynapseCollection#getSynapseIndex(int)}. This is typically invoked once, after the network has been
+	 * constructed.
+	 * </p>
+	 */
+	public synchronized void reorderForLocality() {
+		for (NeuronCollection<? extends ComponentConfiguration> population : populations.values()) {
+			List<SynapseCollection<? extends ComponentConfiguration>> recurrent = new ArrayList<SynapseCollection<? extends ComponentConfiguration>>();
+			for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+				if (projection.getPreNeurons() == population && projection.getPostNeurons() == population) {
+					recurrent.add(projection);
+				}
+			}
+			if (recurrent.isEmpty()) {
+				continue;
+			}
+			int[] order = LocalityOrdering.reverseCuthillMcKee(population, recurrent);
+			int[] newIndexes = new int[order.length];
+			for (int n = 0; n < order.length; n++) {
+				newIndexes[order[n]] = n;
+			}
+			population.reorderNeurons(order);
+			for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+				projection.remapNeurons(projection.getPreNeurons() == population ? newIndexes : null, projection.getPostNeurons() == population ? newIndexes : null);
+			}
+		}
+		for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+			projection.sortByPostAndPreNeuron();
+		}
+	}
+
 	/**
 	 * Release any resources associated with this NeuralNetwork. It's important to call this.
 	 */
 	public void dispose() {
-		if (neurons != null)
-			neurons.dispose();
-		if (synapses != null)
-			synapses.dispose();
+		for (NeuronCollection<? extends ComponentConfiguration> population : populations.values()) {
+			population.dispose();
+		}
+		for (SynapseCollection<? extends ComponentConfiguration> projection : projections.values()) {
+			projection.dispose();
+		}
 	}
 
 	private boolean debug;
@@ -0,0 +1,206 @@
+package com.ojcoleman.bain;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.base.*;
+
+/**
+ * <p>
+ * A NeuralNetworkEnsemble simulates a number of independent instances of a network that use the same neuron and
+ * synapse models, for example the individuals of a population being evaluated in a neuroevolution algorithm. Rather
+ * than creating a NeuralNetwork for each instance, with the per-step overhead of executing separate kernels and the
+ * associated bookkeeping for each of them, the instances are laid out in a single neuron collection and a single
+ * synapse collection and stepped together by one execution of each kernel.
+ * </p>
+ * <p>
+ * Each instance has the same number of neurons and synapses. The neurons of instance <em>i</em> are the neurons with
+ * indexes [<em>i</em> * {@link #getNeuronsPerInstance()}, (<em>i</em> + 1) * {@link #getNeuronsPerInstance()}) in
+ * the neuron collection, and similarly for the synapses. The per-instance methods of this class take an instance
+ * index and a neuron or synapse index relative to that instance, and apply the offsets. Connectivity should be set
+ * with {@link #setPreAndPostNeurons(int, int, int, int)}, which ensures that synapses only connect neurons in the
+ * same instance. Instances may be reset individually with {@link #reset(int)}; the simulation step count is shared
+ * by all instances.
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public class NeuralNetworkEnsemble extends NeuralNetwork {
+	protected int instanceCount;
+	protected int neuronsPerInstance;
+	protected int synapsesPerInstance;
+
+	/**
+	 * Create a new ensemble of neural networks. The sizes of the given neuron and synapse collections must be
+	 * multiples of the number of instances.
+	 *
+	 * @param timeResolution The number of discrete simulation steps performed for each second of simulation time. A
+	 *            typical resolution is 1000, or 1ms duration for each step.
+	 * @param instanceCount The number of network instances in the ensemble.
+	 * @param neurons The NeuronCollection containing the neurons for all instances.
+	 * @param synapses The SynapseCollection containing the synapses for all instances.
+	 */
+	public NeuralNetworkEnsemble(int timeResolution, int instanceCount, NeuronCollection<? extends ComponentConfiguration> neurons, SynapseCollection<? extends ComponentConfiguration> synapses) {
+		this(timeResolution, instanceCount, neurons, synapses, null);
+	}
+
+	/**
+	 * Create a new ensemble of neural networks. The sizes of the given neuron and synapse collections must be
+	 * multiples of the number of instances.
+	 *
+	 * @param timeResolution The number of discrete simulation steps performed for each second of simulation time. A
+	 *            typical resolution is 1000, or 1ms duration for each step.
+	 * @param instanceCount The number of network instances in the ensemble.
+	 * @param neurons The NeuronCollection containing the neurons for all instances.
+	 * @param synapses The SynapseCollection containing the synapses for all instances.
+	 * @param preferredExecutionMode The preferred execution mode, which will override the automatic selection of a mode
+	 *            based on network size.
+	 */
+	public NeuralNetworkEnsemble(int timeResolution, int instanceCount, NeuronCollection<? extends ComponentConfiguration> neurons, SynapseCollection<? extends ComponentConfiguration> synapses, Kernel.EXECUTION_MODE preferredExecutionMode) {
+		super(timeResolution, neurons, synapses, preferredExecutionMode);
+		if (instanceCount < 1) {
+			throw new IllegalArgumentException("The number of instances must be at least 1.");
+		}
+		if (neurons.getSize() % instanceCount != 0 || synapses.getSize() % instanceCount != 0) {
+			throw new IllegalArgumentException("The sizes of the neuron and synapse collections must be multiples of the number of instances.");
+		}
+		this.instanceCount = instanceCount;
+		neuronsPerInstance = neurons.getSize() / instanceCount;
+		synapsesPerInstance = synapses.getSize() / instanceCount;
+	}
+
+	/**
+	 * Returns the number of network instances in this ensemble.
+	 */
+	public int getInstanceCount() {
+		return instanceCount;
+	}
+
+	/**
+	 * Returns the number of neurons in each instance.
+	 */
+	public int getNeuronsPerInstance() {
+		return neuronsPerInstance;
+	}
+
+	/**
+	 * Returns the number of synapses in each instance.
+	 */
+	public int getSynapsesPerInstance() {
+		return synapsesPerInstance;
+	}
+
+	/**
+	 * Returns the index in the neuron collection of the given neuron in the given instance.
+	 */
+	public int getNeuronIndex(int instance, int neuron) {
+		checkIndexes(instance, neuron, neuronsPerInstance);
+		return instance * neuronsPerInstance + neuron;
+	}
+
+	/**
+	 * Returns the index in the synapse collection of the given synapse in the given instance.
+	 */
+	public int getSynapseIndex(int instance, int synapse) {
+		checkIndexes(instance, synapse, synapsesPerInstance);
+		return instance * synapsesPerInstance + synapse;
+	}
+
+	/**
+	 * Set the pre- and post-synaptic neurons of the given synapse in the given instance. The neuron indexes are
+	 * relative to the instance.
+	 */
+	public void setPreAndPostNeurons(int instance, int synapse, int preNeuron, int postNeuron) {
+		synapses.setPreAndPostNeurons(getSynapseIndex(instance, synapse), getNeuronIndex(instance, preNeuron), getNeuronIndex(instance, postNeuron));
+	}
+
+	/**
+	 * Returns the pre-synaptic neuron of the given synapse in the given instance, relative to the instance.
+	 */
+	public int getPreNeuron(int instance, int synapse) {
+		return synapses.getPreNeuron(getSynapseIndex(instance, synapse)) - instance * neuronsPerInstance;
+	}
+
+	/**
+	 * Returns the post-synaptic neuron of the given synapse in the given instance, relative to the instance.
+	 */
+	public int getPostNeuron(int instance, int synapse) {
+		return synapses.getPostNeuron(getSynapseIndex(instance, synapse)) - instance * neuronsPerInstance;
+	}
+
+	/**
+	 * Set the current and initial efficacy of the given synapse in the given instance. See
+	 * {@link SynapseCollection#setEfficacy(int, double)}.
+	 */
+	public void setEfficacy(int instance, int synapse, double efficacy) {
+		synapses.setEfficacy(getSynapseIndex(instance, synapse), efficacy);
+	}
+
+	/**
+	 * Returns the current efficacy of the given synapse in the given instance.
+	 */
+	public double getEfficacy(int instance, int synapse) {
+		return synapses.getEfficacy(getSynapseIndex(instance, synapse));
+	}
+
+	/**
+	 * Set the output of the given neuron in the given instance, for example to provide input to the instance. See
+	 * {@link NeuronCollection} for details on how input is provided to a network.
+	 */
+	public void setOutput(int instance, int neuron, double output) {
+		neurons.setOutput(getNeuronIndex(instance, neuron), output);
+	}
+
+	/**
+	 * Set the outputs of a contiguous range of neurons in the given instance, for example to provide input to the
+	 * instance. The output of neuron <code>firstNeuron + i</code> is set to <code>outputs[i]</code>.
+	 */
+	public void setOutputs(int instance, int firstNeuron, double[] outputs) {
+		int start = getNeuronIndex(instance, firstNeuron);
+		if (firstNeuron + outputs.length > neuronsPerInstance) {
+			throw new IndexOutOfBoundsException("Neuron range extends beyond the neurons of the instance.");
+		}
+		System.arraycopy(outputs, 0, neurons.getOutputs(), start, outputs.length);
+		neurons.setOutputsModified(start, outputs.length);
+	}
+
+	/**
+	 * Returns the output of the given neuron in the given instance for the last time step.
+	 */
+	public double getOutput(int instance, int neuron) {
+		return neurons.getOutput(getNeuronIndex(instance, neuron));
+	}
+
+	/**
+	 * Copies the outputs of all the neurons in the given instance for the last time step into the given array.
+	 *
+	 * @param instance The index of the instance.
+	 * @param outputs An array to copy the outputs into, or null to create a new array.
+	 * @return The array containing the outputs.
+	 */
+	public double[] getOutputs(int instance, double[] outputs) {
+		if (outputs == null) {
+			outputs = new double[neuronsPerInstance];
+		}
+		System.arraycopy(neurons.getOutputs(), getNeuronIndex(instance, 0), outputs, 0, neuronsPerInstance);
+		return outputs;
+	}
+
+	/**
+	 * Reset the neurons and synapses of the given instance to their initial state. The other instances, and the
+	 * simulation step count, are not affected.
+	 */
+	public synchronized void reset(int instance) {
+		int neuronStart = getNeuronIndex(instance, 0);
+		int synapseStart = getSynapseIndex(instance, 0);
+		neurons.reset(neuronStart, neuronStart + neuronsPerInstance);
+		synapses.reset(synapseStart, synapseStart + synapsesPerInstance);
+	}
+
+	private void checkIndexes(int instance, int index, int perInstance) {
+		if (instance < 0 || instance >= instanceCount) {
+			throw new IndexOutOfBoundsException("Instance index " + instance + " out of range [0, " + instanceCount + ").");
+		}
+		if (index < 0 || index >= perInstance) {
+			throw new IndexOutOfBoundsException("Component index " + index + " out of range [0, " + perInstance + ").");
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.ojcoleman.bain.base;
+
+import com.amd.aparapi.Kernel;
+import com.amd.aparapi.Range;
+
+/**
+ * An {@link ExecutionBackend} that executes kernels with Aparapi, in the execution mode set on the kernel (see
+ * {@link Kernel#setExecutionMode(Kernel.EXECUTION_MODE)}). This is the default backend. In SEQ mode kernels that
+ * support {@link RangeKernel#runRange(int, int)} are executed by invoking runRange() over the whole range directly,
+ * rather than by Aparapi invoking run() for each work item.
+ * 
+ * @author Oliver J. Coleman
+ */
+public class AparapiExecutionBackend implements ExecutionBackend {
+	@Override
+	public void execute(Kernel kernel, Range range) {
+		if (kernel.getExecutionMode() == Kernel.EXECUTION_MODE.SEQ && kernel instanceof RangeKernel && ((RangeKernel) kernel).isRunRangeSupported()) {
+			((RangeKernel) kernel).runRange(0, range.getGlobalSize(0));
+		} else {
+			kernel.execute(range);
+		}
+	}
+
+	/**
+	 * {@inheritDoc} This is the case if the execution mode is SEQ or JTP, including when Aparapi has fallen back to one
+	 * of these modes from an OpenCL mode.
+	 */
+	@Override
+	public boolean isHostResident(Kernel kernel) {
+		return !kernel.getExecutionMode().isOpenCL();
+	}
+
+	@Override
+	public boolean isSequential(Kernel kernel) {
+		return kernel.getExecutionMode() == Kernel.EXECUTION_MODE.SEQ;
+	}
+
+	@Override
+	public void invalidate(Kernel kernel) {
+	}
+
+	@Override
+	public void dispose() {
+	}
+}
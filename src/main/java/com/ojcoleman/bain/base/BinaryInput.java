@@ -0,0 +1,246 @@
+package com.ojcoleman.bain.base;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the values written by a {@link BinaryOutput}. The file is read through memory-mapped regions of at most
+ * {@link #REGION_SIZE} bytes, so no data is buffered on the Java heap other than the values read; arrays are copied
+ * from the mapped region in bulk via typed views.
+ *
+ * @author Oliver J. Coleman
+ */
+class BinaryInput implements Closeable {
+	/**
+	 * The maximum size in bytes of the regions of the file that are mapped into memory at a time.
+	 */
+	static final int REGION_SIZE = 1 << 28;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long length;
+	private MappedByteBuffer region;
+	private long regionPosition;
+
+	/**
+	 * Create an input that reads the given file from the start.
+	 *
+	 * @throws IOException If the file can not be opened.
+	 */
+	BinaryInput(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		channel = this.file.getChannel();
+		length = channel.size();
+		map(0);
+	}
+
+	/**
+	 * Returns the position in the file of the next value.
+	 */
+	long getPosition() {
+		return regionPosition + region.position();
+	}
+
+	byte getByte() throws IOException {
+		ensure(1);
+		return region.get();
+	}
+
+	boolean getBoolean() throws IOException {
+		return getByte() != 0;
+	}
+
+	int getInt() throws IOException {
+		ensure(4);
+		return region.getInt();
+	}
+
+	long getLong() throws IOException {
+		ensure(8);
+		return region.getLong();
+	}
+
+	double getDouble() throws IOException {
+		ensure(8);
+		return region.getDouble();
+	}
+
+	/**
+	 * Reads a string written by {@link BinaryOutput#putString(String)}.
+	 */
+	String getString() throws IOException {
+		int byteCount = getInt();
+		if (byteCount < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[byteCount];
+		getArrayData(bytes);
+		return new String(bytes, BinaryOutput.UTF8);
+	}
+
+	/**
+	 * Reads a value written by {@link BinaryOutput#putValue(Object)}: null, a boxed primitive value or a new primitive
+	 * array.
+	 */
+	Object getValue() throws IOException {
+		int type = getByte();
+		if (type == BinaryOutput.TYPE_NULL) {
+			return null;
+		}
+		if ((type & BinaryOutput.TYPE_ARRAY) != 0) {
+			int count = getInt();
+			Object array;
+			switch (type & ~BinaryOutput.TYPE_ARRAY) {
+			case BinaryOutput.TYPE_BOOLEAN:
+				array = new boolean[count];
+				break;
+			case BinaryOutput.TYPE_BYTE:
+				array = new byte[count];
+				break;
+			case BinaryOutput.TYPE_CHAR:
+				array = new char[count];
+				break;
+			case BinaryOutput.TYPE_INT:
+				array = new int[count];
+				break;
+			case BinaryOutput.TYPE_LONG:
+				array = new long[count];
+				break;
+			case BinaryOutput.TYPE_FLOAT:
+				array = new float[count];
+				break;
+			case BinaryOutput.TYPE_DOUBLE:
+				array = new double[count];
+				break;
+			default:
+				throw new IOException("Unknown array type code " + type + " at position " + getPosition());
+			}
+			getArrayData(array);
+			return array;
+		}
+		switch (type) {
+		case BinaryOutput.TYPE_BOOLEAN:
+			return getBoolean();
+		case BinaryOutput.TYPE_BYTE:
+			return getByte();
+		case BinaryOutput.TYPE_CHAR:
+			ensure(2);
+			return region.getChar();
+		case BinaryOutput.TYPE_INT:
+			return getInt();
+		case BinaryOutput.TYPE_LONG:
+			return getLong();
+		case BinaryOutput.TYPE_FLOAT:
+			ensure(4);
+			return region.getFloat();
+		case BinaryOutput.TYPE_DOUBLE:
+			return getDouble();
+		}
+		throw new IOException("Unknown type code " + type + " at position " + getPosition());
+	}
+
+	/**
+	 * Fills the given primitive array with elements written by {@link BinaryOutput#putArrayData(Object)}.
+	 */
+	void getArrayData(Object array) throws IOException {
+		if (array instanceof double[]) {
+			double[] a = (double[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 8);
+				region.asDoubleBuffer().get(a, i, n);
+				advance(n, 8);
+				i += n;
+			}
+		} else if (array instanceof float[]) {
+			float[] a = (float[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 4);
+				region.asFloatBuffer().get(a, i, n);
+				advance(n, 4);
+				i += n;
+			}
+		} else if (array instanceof int[]) {
+			int[] a = (int[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 4);
+				region.asIntBuffer().get(a, i, n);
+				advance(n, 4);
+				i += n;
+			}
+		} else if (array instanceof long[]) {
+			long[] a = (long[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 8);
+				region.asLongBuffer().get(a, i, n);
+				advance(n, 8);
+				i += n;
+			}
+		} else if (array instanceof char[]) {
+			char[] a = (char[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 2);
+				region.asCharBuffer().get(a, i, n);
+				advance(n, 2);
+				i += n;
+			}
+		} else if (array instanceof byte[]) {
+			byte[] a = (byte[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 1);
+				region.get(a, i, n);
+				i += n;
+			}
+		} else if (array instanceof boolean[]) {
+			boolean[] a = (boolean[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 1);
+				for (int j = i; j < i + n; j++) {
+					a[j] = region.get() != 0;
+				}
+				i += n;
+			}
+		} else {
+			throw new IllegalArgumentException("Unsupported array type " + array.getClass().getName());
+		}
+	}
+
+	/**
+	 * Returns the number of the remaining elements, of the given size in bytes, that can be read from the mapped
+	 * region, mapping the next region first if not even one can.
+	 */
+	private int chunk(int remaining, int elementSize) throws IOException {
+		ensure(elementSize);
+		return Math.min(remaining, region.remaining() / elementSize);
+	}
+
+	private void advance(int count, int elementSize) {
+		region.position(region.position() + count * elementSize);
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (region.remaining() < bytes) {
+			long position = getPosition();
+			if (length - position < bytes) {
+				throw new EOFException("Unexpected end of file at position " + position);
+			}
+			map(position);
+		}
+	}
+
+	private void map(long position) throws IOException {
+		region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE, length - position));
+		region.order(ByteOrder.LITTLE_ENDIAN);
+		regionPosition = position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
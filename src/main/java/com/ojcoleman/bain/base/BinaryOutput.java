@@ -0,0 +1,262 @@
+package com.ojcoleman.bain.base;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Writes primitive values, strings and primitive arrays to a file in little-endian byte order, for the binary file
+ * formats of this package (see {@link Checkpoint}). Values are written to a direct buffer of {@link #BUFFER_SIZE}
+ * bytes, which is written to the file channel when full; arrays are copied into the buffer in bulk via typed views, so
+ * on little-endian hardware an array is transferred without conversion of the individual values. The values can be
+ * read with a {@link BinaryInput}.
+ *
+ * @author Oliver J. Coleman
+ */
+class BinaryOutput implements Closeable {
+	/**
+	 * The size in bytes of the buffer that values are written to before being written to the file.
+	 */
+	static final int BUFFER_SIZE = 1 << 20;
+
+	static final byte TYPE_NULL = 0;
+	static final byte TYPE_BOOLEAN = 1;
+	static final byte TYPE_BYTE = 2;
+	static final byte TYPE_CHAR = 3;
+	static final byte TYPE_INT = 4;
+	static final byte TYPE_LONG = 5;
+	static final byte TYPE_FLOAT = 6;
+	static final byte TYPE_DOUBLE = 7;
+	/**
+	 * Combined with one of the other type codes to indicate an array of that type.
+	 */
+	static final byte TYPE_ARRAY = 0x10;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final FileOutputStream stream;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	/**
+	 * Create an output that writes to the given file, replacing the contents of the file if it exists.
+	 *
+	 * @throws IOException If the file can not be created.
+	 */
+	BinaryOutput(File file) throws IOException {
+		stream = new FileOutputStream(file);
+		channel = stream.getChannel();
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	void putByte(int value) throws IOException {
+		ensure(1);
+		buffer.put((byte) value);
+	}
+
+	void putBoolean(boolean value) throws IOException {
+		putByte(value ? 1 : 0);
+	}
+
+	void putInt(int value) throws IOException {
+		ensure(4);
+		buffer.putInt(value);
+	}
+
+	void putLong(long value) throws IOException {
+		ensure(8);
+		buffer.putLong(value);
+	}
+
+	void putDouble(double value) throws IOException {
+		ensure(8);
+		buffer.putDouble(value);
+	}
+
+	/**
+	 * Writes the length of the given string in bytes (or -1 if it is null) followed by its UTF-8 encoding.
+	 */
+	void putString(String value) throws IOException {
+		if (value == null) {
+			putInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF8);
+		putInt(bytes.length);
+		putArrayData(bytes);
+	}
+
+	/**
+	 * Writes a type code followed by the given value, which may be null, a boxed primitive value or a primitive array.
+	 * Arrays are written as their length followed by their elements.
+	 *
+	 * @throws IllegalArgumentException If the value is not of a supported type.
+	 */
+	void putValue(Object value) throws IOException {
+		if (value == null) {
+			putByte(TYPE_NULL);
+		} else if (value.getClass().isArray()) {
+			putByte(TYPE_ARRAY | typeCode(value.getClass().getComponentType()));
+			putInt(java.lang.reflect.Array.getLength(value));
+			putArrayData(value);
+		} else {
+			byte type = typeCode(value.getClass());
+			putByte(type);
+			switch (type) {
+			case TYPE_BOOLEAN:
+				putBoolean((Boolean) value);
+				break;
+			case TYPE_BYTE:
+				putByte((Byte) value);
+				break;
+			case TYPE_CHAR:
+				ensure(2);
+				buffer.putChar((Character) value);
+				break;
+			case TYPE_INT:
+				putInt((Integer) value);
+				break;
+			case TYPE_LONG:
+				putLong((Long) value);
+				break;
+			case TYPE_FLOAT:
+				ensure(4);
+				buffer.putFloat((Float) value);
+				break;
+			default:
+				putDouble((Double) value);
+			}
+		}
+	}
+
+	/**
+	 * Writes the elements of the given primitive array, without its length.
+	 */
+	void putArrayData(Object array) throws IOException {
+		if (array instanceof double[]) {
+			double[] a = (double[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 8);
+				buffer.asDoubleBuffer().put(a, i, n);
+				advance(n, 8);
+				i += n;
+			}
+		} else if (array instanceof float[]) {
+			float[] a = (float[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 4);
+				buffer.asFloatBuffer().put(a, i, n);
+				advance(n, 4);
+				i += n;
+			}
+		} else if (array instanceof int[]) {
+			int[] a = (int[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 4);
+				buffer.asIntBuffer().put(a, i, n);
+				advance(n, 4);
+				i += n;
+			}
+		} else if (array instanceof long[]) {
+			long[] a = (long[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 8);
+				buffer.asLongBuffer().put(a, i, n);
+				advance(n, 8);
+				i += n;
+			}
+		} else if (array instanceof char[]) {
+			char[] a = (char[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 2);
+				buffer.asCharBuffer().put(a, i, n);
+				advance(n, 2);
+				i += n;
+			}
+		} else if (array instanceof byte[]) {
+			byte[] a = (byte[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 1);
+				buffer.put(a, i, n);
+				i += n;
+			}
+		} else if (array instanceof boolean[]) {
+			boolean[] a = (boolean[]) array;
+			for (int i = 0; i < a.length;) {
+				int n = chunk(a.length - i, 1);
+				for (int j = i; j < i + n; j++) {
+					buffer.put(a[j] ? (byte) 1 : (byte) 0);
+				}
+				i += n;
+			}
+		} else {
+			throw new IllegalArgumentException("Unsupported array type " + array.getClass().getName());
+		}
+	}
+
+	static byte typeCode(Class<?> type) {
+		if (type == boolean.class || type == Boolean.class) {
+			return TYPE_BOOLEAN;
+		} else if (type == byte.class || type == Byte.class) {
+			return TYPE_BYTE;
+		} else if (type == char.class || type == Character.class) {
+			return TYPE_CHAR;
+		} else if (type == int.class || type == Integer.class) {
+			return TYPE_INT;
+		} else if (type == long.class || type == Long.class) {
+			return TYPE_LONG;
+		} else if (type == float.class || type == Float.class) {
+			return TYPE_FLOAT;
+		} else if (type == double.class || type == Double.class) {
+			return TYPE_DOUBLE;
+		}
+		throw new IllegalArgumentException("Unsupported type " + type.getName());
+	}
+
+	/**
+	 * Returns the number of the remaining elements, of the given size in bytes, that fit in the buffer, writing the
+	 * buffer to the file first if not even one fits.
+	 */
+	private int chunk(int remaining, int elementSize) throws IOException {
+		ensure(elementSize);
+		return Math.min(remaining, buffer.remaining() / elementSize);
+	}
+
+	private void advance(int count, int elementSize) {
+		buffer.position(buffer.position() + count * elementSize);
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the buffered values to the file.
+	 */
+	void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes the buffered values to the file and closes it.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			stream.close();
+		}
+	}
+}
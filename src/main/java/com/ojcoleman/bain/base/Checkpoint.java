@@ -0,0 +1,261 @@
+package com.ojcoleman.bain.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.ojcoleman.bain.NeuralNetwork;
+
+/**
+ * <p>
+ * Saves the complete state of a {@link NeuralNetwork} to a binary file, and restores it, so that a long simulation can
+ * be resumed from the point at which it was saved (see {@link NeuralNetwork#saveCheckpoint(File)} and
+ * {@link NeuralNetwork#restoreCheckpoint(File)}). A checkpoint is restored into a network constructed in the same way
+ * as the network that was saved: with populations and projections of the same classes and names, connected in the
+ * same way, and the same time resolution. The size, connectivity, configuration parameters and state of each
+ * collection are then replaced by those saved, so the restored network produces the same results as the saved network
+ * would have.
+ * </p>
+ * <p>
+ * The state of each collection is read from the per-component arrays given by
+ * {@link ComponentCollection#getComponentArrayNames()} and the additional fields given by
+ * {@link ComponentCollection#getCheckpointFieldNames()}; the arrays and buffers derived from these or from the
+ * configurations are regenerated by {@link ComponentCollection#init()} when the checkpoint is restored. Only the
+ * parameters of the configurations given by {@link ComponentConfiguration#getParameterNames()} are saved. Collections
+ * for which getCheckpointFieldNames() returns null, for example those that store their state off-heap, are not
+ * supported.
+ * </p>
+ * <p>
+ * The file is written with bulk channel writes and read through memory-mapped regions, with arrays transferred in bulk
+ * (see {@link BinaryOutput} and {@link BinaryInput}). All values are little-endian. The file consists of the magic
+ * number {@link #MAGIC} and the format version {@link #VERSION} (ints), the time resolution (int), the step (long),
+ * and then the populations followed by the projections, each preceded by the number of them (int). For each
+ * collection the following are written: the name and class name (strings, consisting of the length in bytes as an int
+ * followed by the UTF-8 encoding), the size and populated size (ints), whether single precision and event-driven
+ * updating are enabled (bytes), the number of configurations (int) followed by the class name, name and parameter
+ * values of each, and the number of fields (int) followed by the name and value of each. A value consists of a type
+ * code (byte) followed by the primitive value, or for arrays the length (int) followed by the elements.
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public class Checkpoint {
+	/**
+	 * The magic number at the start of checkpoint files ("BCKP").
+	 */
+	public static final int MAGIC = 0x42434B50;
+
+	/**
+	 * The version of the file format written by this class.
+	 */
+	public static final int VERSION = 1;
+
+	private Checkpoint() {
+	}
+
+	/**
+	 * Saves the state of the given network to the given file, replacing the contents of the file if it exists.
+	 *
+	 * @throws UnsupportedOperationException If a collection in the network does not support checkpoints.
+	 * @throws IOException If the file can not be written.
+	 */
+	public static void save(NeuralNetwork network, File file) throws IOException {
+		checkSupported(network.getPopulations());
+		checkSupported(network.getProjections());
+		BinaryOutput out = new BinaryOutput(file);
+		try {
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(network.getTimeResolution());
+			out.putLong(network.getStep());
+			writeCollections(out, network.getPopulations());
+			writeCollections(out, network.getProjections());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Restores the state saved in the given file into the given network, which must be constructed in the same way as
+	 * the network that was saved. The populations are restored before the projections, which refer to the arrays of
+	 * the populations. The step of the network is not set.
+	 *
+	 * @return The step of the saved network.
+	 * @throws IOException If the file can not be read, is not a checkpoint file, or was saved from a network with
+	 *             different populations or projections or a different time resolution.
+	 */
+	public static long restore(NeuralNetwork network, File file) throws IOException {
+		BinaryInput in = new BinaryInput(file);
+		try {
+			if (in.getInt() != MAGIC) {
+				throw new IOException(file + " is not a checkpoint file.");
+			}
+			int version = in.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported checkpoint file version " + version + ".");
+			}
+			int timeResolution = in.getInt();
+			if (timeResolution != network.getTimeResolution()) {
+				throw new IOException("The checkpoint was saved with a time resolution of " + timeResolution + ", the network has a time resolution of " + network.getTimeResolution() + ".");
+			}
+			long step = in.getLong();
+			readCollections(in, network.getPopulations(), "population");
+			readCollections(in, network.getProjections(), "projection");
+			return step;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void checkSupported(Map<String, ? extends ComponentCollection> collections) {
+		for (Map.Entry<String, ? extends ComponentCollection> entry : collections.entrySet()) {
+			if (entry.getValue().getCheckpointFieldNames() == null) {
+				throw new UnsupportedOperationException(entry.getValue().getClass().getName() + " (" + entry.getKey() + ") does not support checkpoints.");
+			}
+		}
+	}
+
+	private static void writeCollections(BinaryOutput out, Map<String, ? extends ComponentCollection> collections) throws IOException {
+		out.putInt(collections.size());
+		for (Map.Entry<String, ? extends ComponentCollection> entry : collections.entrySet()) {
+			out.putString(entry.getKey());
+			out.putString(entry.getValue().getClass().getName());
+			writeCollection(out, entry.getValue());
+		}
+	}
+
+	private static void writeCollection(BinaryOutput out, ComponentCollection collection) throws IOException {
+		collection.ensureOutputsAreFresh();
+		collection.ensureInputsAreFresh();
+		collection.ensureStateVariablesAreFresh();
+
+		out.putInt(collection.size);
+		out.putInt(collection.getSizePopulated());
+		out.putBoolean(collection.isSinglePrecision());
+		out.putBoolean(collection instanceof SynapseCollection && ((SynapseCollection<?>) collection).isEventDriven());
+
+		writeConfigurations(out, collection);
+
+		String[] arrayNames = collection.getComponentArrayNames();
+		String[] fieldNames = collection.getCheckpointFieldNames();
+		out.putInt(arrayNames.length + fieldNames.length);
+		for (String name : arrayNames) {
+			out.putString(name);
+			out.putValue(collection.getFieldValue(name));
+		}
+		for (String name : fieldNames) {
+			out.putString(name);
+			out.putValue(collection.getFieldValue(name));
+		}
+	}
+
+	private static void readCollections(BinaryInput in, Map<String, ? extends ComponentCollection> collections, String kind) throws IOException {
+		int count = in.getInt();
+		if (count != collections.size()) {
+			throw new IOException("The checkpoint contains " + count + " " + kind + "s, the network contains " + collections.size() + ".");
+		}
+		for (int i = 0; i < count; i++) {
+			String name = in.getString();
+			String className = in.getString();
+			ComponentCollection collection = collections.get(name);
+			if (collection == null) {
+				throw new IOException("The network does not contain a " + kind + " named " + name + ".");
+			}
+			if (!collection.getClass().getName().equals(className)) {
+				throw new IOException("The " + kind + " " + name + " in the checkpoint is a " + className + ", in the network it is a " + collection.getClass().getName() + ".");
+			}
+			readCollection(in, collection);
+		}
+	}
+
+	private static void readCollection(BinaryInput in, ComponentCollection collection) throws IOException {
+		int size = in.getInt();
+		int sizePopulated = in.getInt();
+		collection.setSinglePrecision(in.getBoolean());
+		boolean eventDriven = in.getBoolean();
+		if (collection instanceof SynapseCollection) {
+			((SynapseCollection<?>) collection).setEventDriven(eventDriven);
+		}
+
+		readConfigurations(in, collection);
+
+		if (size != collection.size) {
+			// Resize through the collection so that sub-classes can update any data that depends on the size.
+			collection.setCapacity(size);
+		}
+		int fieldCount = in.getInt();
+		List<Object> arrays = new ArrayList<Object>(fieldCount);
+		for (int f = 0; f < fieldCount; f++) {
+			String name = in.getString();
+			Object value = in.getValue();
+			collection.setFieldValue(name, value);
+			if (value != null && value.getClass().isArray()) {
+				arrays.add(value);
+			}
+		}
+
+		// Regenerate the derived arrays, then make sure the restored arrays are on the execution hardware.
+		collection.init();
+		collection.setSizePopulated(sizePopulated);
+		for (Object array : arrays) {
+			collection.putArray(array);
+		}
+	}
+
+	/**
+	 * Writes the number of configurations of the given collection (0 if it is not a ConfigurableComponentCollection)
+	 * followed by the class name, name and parameter values of each.
+	 */
+	static void writeConfigurations(BinaryOutput out, ComponentCollection collection) throws IOException {
+		if (!(collection instanceof ConfigurableComponentCollection)) {
+			out.putInt(0);
+			return;
+		}
+		List<? extends ComponentConfiguration> configs = ((ConfigurableComponentCollection<?>) collection).configs;
+		out.putInt(configs.size());
+		for (ComponentConfiguration config : configs) {
+			out.putString(config.getClass().getName());
+			out.putString(config.name);
+			out.putValue(config.getParameterValues());
+		}
+	}
+
+	/**
+	 * Reads configurations written by {@link #writeConfigurations(BinaryOutput, ComponentCollection)} into the given
+	 * collection. Existing configurations of the same class are updated in place, others are replaced by new
+	 * configurations created by the configuration singleton of the collection, and configurations beyond the number
+	 * read are removed.
+	 */
+	static void readConfigurations(BinaryInput in, ComponentCollection component) throws IOException {
+		int count = in.getInt();
+		if (count == 0) {
+			return;
+		}
+		ConfigurableComponentCollection<?> collection = (ConfigurableComponentCollection<?>) component;
+		for (int c = 0; c < count; c++) {
+			String className = in.getString();
+			String name = in.getString();
+			double[] values = (double[]) in.getValue();
+			ComponentConfiguration config = c < collection.configs.size() ? collection.configs.get(c) : null;
+			if (config == null || !config.getClass().getName().equals(className)) {
+				ComponentConfiguration singleton = collection.getConfigSingleton();
+				if (!singleton.getClass().getName().equals(className)) {
+					throw new IOException("Can not create a configuration of class " + className + " for " + collection.getClass().getName() + ".");
+				}
+				config = singleton.createConfiguration();
+				if (c < collection.configs.size()) {
+					collection.setConfiguration(c, config);
+				} else {
+					collection.addConfiguration(config);
+				}
+			}
+			config.name = name;
+			config.setParameterValues(values, true);
+		}
+		while (collection.configs.size() > count) {
+			collection.configs.remove(collection.configs.size() - 1).removeListener(collection);
+		}
+	}
+}
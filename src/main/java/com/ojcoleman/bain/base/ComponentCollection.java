@@ -1,6 +1,8 @@
 package com.ojcoleman.bain.base;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 
@@ -50,15 +52,30 @@ import com.ojcoleman.bain.misc.*;
  * {@link #ensureStateVariablesAreFresh()}.
  * </p>
  * 
+ * <p>
+ * The kernel is executed by an {@link ExecutionBackend}, by default an {@link AparapiExecutionBackend} (which executes
+ * the kernel with Aparapi in the execution mode set on this collection), see
+ * {@link #setExecutionBackend(ExecutionBackend)}.
+ * </p>
+ * 
+ * <p>
+ * When the kernel is executed on the host the backend may instead invoke {@link #runRange(int, int)}, which processes
+ * a contiguous range of components in a single loop. Sub-classes should override runRange() to perform the same
+ * computations as run() for each component in the range; if the class that most recently overrides run() does not
+ * also override runRange() then run() is invoked for each component instead (see {@link #isRunRangeSupported()}).
+ * </p>
+ * 
  * @see <a href="http://aparapi.googlecode.com/">Aparapi home page</a>
  * 
  * @author Oliver J. Coleman
  */
-public abstract class ComponentCollection extends Kernel {
+public abstract class ComponentCollection extends Kernel implements RangeKernel {
 	private static HashMap<String, ComponentCollection> typeSingletons = new HashMap<String, ComponentCollection>();
 
 	/**
-	 * The number of components in this collection.
+	 * The number of components in this collection, which is the length of the per-component arrays. This is the
+	 * capacity of the collection: only the first {@link #getSizePopulated()} components are in use, see
+	 * {@link #ensureCapacity(int)}.
 	 */
 	protected int size;
 
@@ -75,10 +92,26 @@ public abstract class ComponentCollection extends Kernel {
 	protected int sizePower2;
 
 	/**
-	 * The current output values of the components.
+	 * The current output values of the components. A single element placeholder if the outputs are stored in
+	 * {@link #outputsSingle}.
 	 */
 	protected double[] outputs;
 
+	/**
+	 * The current output values of the components in single precision mode if "outputs" is one of the names given by
+	 * {@link #getSinglePrecisionArrayNames()} (see {@link #setSinglePrecision(boolean)}), otherwise a single element
+	 * placeholder.
+	 */
+	protected float[] outputsSingle = new float[1];
+
+	/**
+	 * True iff the outputs are currently stored in {@link #outputsSingle} rather than {@link #outputs}.
+	 */
+	protected boolean singlePrecisionOutputs;
+
+	// The double precision copy of the outputs returned by getOutputs() when the outputs are stored in single precision.
+	private double[] outputsCopy;
+
 	/**
 	 * The Aparapi execution range.
 	 */
@@ -89,6 +122,30 @@ public abstract class ComponentCollection extends Kernel {
 	 */
 	protected NeuralNetwork network;
 
+	/**
+	 * True iff the kernel for this collection is executed on the host (in SEQ or JTP mode, including when Aparapi has
+	 * fallen back to one of these modes), in which case the kernel operates directly on the Java arrays. Explicit
+	 * buffer transfers ({@link #put(double[])}, {@link #get(double[])} etc.) are then skipped and values calculated
+	 * by the kernel are never stale.
+	 * 
+	 * @see #isHostResident()
+	 */
+	protected boolean hostResident;
+
+	private static final ExecutionBackend defaultExecutionBackend = new AparapiExecutionBackend();
+
+	/**
+	 * The backend used to execute the kernel for this collection.
+	 */
+	protected ExecutionBackend executionBackend = defaultExecutionBackend;
+
+	/**
+	 * Element 0 is true iff the state variables listed by {@link #getSinglePrecisionArrayNames()} are stored in single
+	 * precision, see {@link #setSinglePrecision(boolean)}. (Single element arrays are used to pass scalar values to the
+	 * kernel.)
+	 */
+	protected boolean[] singlePrecision = new boolean[1];
+
 	/**
 	 * Flag to indicate if the state variables used in an Aparapi kernel have been modified on the GPU (and so would
 	 * need to be transferred back if we're interested in looking at their values). This is only relevant when explicit
@@ -178,17 +235,38 @@ public abstract class ComponentCollection extends Kernel {
 	 */
 	public void init() {
 		setExplicit(true);
+		executionBackend.invalidate(this);
+		hostResident = executionBackend.isHostResident(this);
 		outputsModified = false;
 		sizePower2 = Math.max(1, (2 << Utility.log2int(size - 1)));
 	}
 
 	/**
-	 * Reset the components to their initial state. Sub-classes should override this method if they have state variables
-	 * that may be reset to an initial state. Arrays/buffers reset here and used in the run() method/kernel should be
-	 * transferred to the execution hardware using put().
+	 * Reset the components to their initial state. This default implementation invokes {@link #reset(int, int)} for
+	 * all components; sub-classes should generally override that method instead.
 	 */
 	public void reset() {
-		Arrays.fill(outputs, 0);
+		reset(0, size);
+	}
+
+	/**
+	 * Reset the components with indexes in the range [start, end) to their initial state, leaving the other components
+	 * unchanged. Sub-classes should override this method if they have state variables that may be reset to an initial
+	 * state, and invoke the super-method (before doing anything else). Arrays/buffers reset here and used in the run()
+	 * method/kernel should be transferred to the execution hardware using put(). If only some of the components are
+	 * being reset then this method first ensures that the outputs, inputs and state variables are fresh.
+	 */
+	public void reset(int start, int end) {
+		if (start > 0 || end < size) {
+			ensureOutputsAreFresh();
+			ensureInputsAreFresh();
+			ensureStateVariablesAreFresh();
+		}
+		if (singlePrecisionOutputs) {
+			Arrays.fill(outputsSingle, start, end, 0);
+		} else {
+			Arrays.fill(outputs, start, end, 0);
+		}
 		outputsModified = true;
 		outputsStale = false;
 	}
@@ -196,24 +274,69 @@ public abstract class ComponentCollection extends Kernel {
 	/**
 	 * Update the model over one time step. Sub-classes should call this super method. The step() method will invoke the
 	 * overridden run() method which defines the Aparapi kernel. This method sets {@link #stateVariablesStale} and
-	 * {@link #outputsStale} to true.
+	 * {@link #outputsStale} to true, unless the kernel is executed on the host (see {@link #isHostResident()}).
 	 */
 	public void step() {
 		if (outputsModified) {
-			put(outputs);
+			if (singlePrecisionOutputs) {
+				put(outputsSingle);
+			} else {
+				put(outputs);
+			}
+		}
+		executionBackend.execute(this, executeRange);
+		// Aparapi may have fallen back to a host execution mode.
+		hostResident = executionBackend.isHostResident(this);
+		stateVariablesStale = !hostResident;
+		outputsStale = !hostResident;
+		inputsStale = !hostResident;
+		synchronized (fetchedArrays) {
+			fetchedArrays.clear();
+		}
+	}
+
+	/**
+	 * Process the components with indexes in the range [start, end), performing the same computations as
+	 * {@link #run()} for each of them. Sub-classes should override this method with a loop over the state arrays
+	 * performing the computations in run(), and invoke the super-method if run() invokes it; see
+	 * {@link RangeKernel#runRange(int, int)} for the contract. This default implementation invokes run() for each
+	 * component, using the kernel state of this instance to provide the global ID.
+	 */
+	@Override
+	public void runRange(int start, int end) {
+		Kernel.KernelState state = getKernelState();
+		for (int id = start; id < end; id++) {
+			state.setGlobalId(0, id);
+			run();
+		}
+	}
+
+	/**
+	 * {@inheritDoc} This is the case if the class that most recently overrides {@link #run()} (or a sub-class of it)
+	 * also overrides {@link #runRange(int, int)}.
+	 */
+	@Override
+	public boolean isRunRangeSupported() {
+		if (runRangeSupported == null) {
+			try {
+				Class<?> runClass = getClass().getMethod("run").getDeclaringClass();
+				Class<?> runRangeClass = getClass().getMethod("runRange", int.class, int.class).getDeclaringClass();
+				runRangeSupported = runRangeClass != ComponentCollection.class && runClass.isAssignableFrom(runRangeClass);
+			} catch (NoSuchMethodException e) {
+				runRangeSupported = false;
+			}
 		}
-		execute(executeRange);
-		stateVariablesStale = true;
-		outputsStale = true;
-		inputsStale = true;
+		return runRangeSupported;
 	}
 
+	private Boolean runRangeSupported;
+
 	/**
 	 * Returns the output of the specified component for the last time step.
 	 */
 	public double getOutput(int index) {
 		ensureOutputsAreFresh();
-		return outputs[index];
+		return singlePrecisionOutputs ? outputsSingle[index] : outputs[index];
 
 	}
 
@@ -224,9 +347,21 @@ public abstract class ComponentCollection extends Kernel {
 	 * This will ensure that the current values are retrieved from the SIMD hardware (eg GPU) if necessary. <strong>If
 	 * setting values in the returned array the method {@link #setOutputsModified()} must be called.</strong>. This will
 	 * ensure that the modified values are pushed to the SIMD hardware if necessary during the next simulation step.
+	 * If the outputs are stored in single precision (see {@link #setSinglePrecision(boolean)}) then a double precision
+	 * copy of the outputs is returned instead, which is updated each time this method is called; values set in the
+	 * copy are stored when {@link #setOutputsModified()} is called.
 	 */
 	public double[] getOutputs() {
 		ensureOutputsAreFresh();
+		if (singlePrecisionOutputs) {
+			if (outputsCopy == null || outputsCopy.length != size) {
+				outputsCopy = new double[size];
+			}
+			for (int i = 0; i < size; i++) {
+				outputsCopy[i] = outputsSingle[i];
+			}
+			return outputsCopy;
+		}
 		return outputs;
 	}
 
@@ -238,7 +373,11 @@ public abstract class ComponentCollection extends Kernel {
 	 */
 	public void setOutput(int index, double newOutput) {
 		ensureOutputsAreFresh();
-		outputs[index] = newOutput;
+		if (singlePrecisionOutputs) {
+			outputsSingle[index] = (float) newOutput;
+		} else {
+			outputs[index] = newOutput;
+		}
 		outputsModified = true;
 	}
 
@@ -267,7 +406,11 @@ public abstract class ComponentCollection extends Kernel {
 	 */
 	public void ensureOutputsAreFresh() {
 		if (outputsStale) {
-			get(outputs);
+			if (singlePrecisionOutputs) {
+				get(outputsSingle);
+			} else {
+				get(outputs);
+			}
 			outputsStale = false;
 		}
 	}
@@ -292,6 +435,12 @@ public abstract class ComponentCollection extends Kernel {
 	 * This must be called if the outputs have been manually modified since the last simulation step.
 	 */
 	public void setOutputsModified() {
+		if (singlePrecisionOutputs && outputsCopy != null) {
+			// Store the values set in the copy returned by getOutputs().
+			for (int i = 0; i < size; i++) {
+				outputsSingle[i] = (float) outputsCopy[i];
+			}
+		}
 		outputsModified = true;
 	}
 	
@@ -303,6 +452,11 @@ public abstract class ComponentCollection extends Kernel {
 	 * @param length The length of the range.
 	 */
 	public void setOutputsModified(int start, int length) {
+		if (singlePrecisionOutputs && outputsCopy != null) {
+			for (int i = start; i < start + length; i++) {
+				outputsSingle[i] = (float) outputsCopy[i];
+			}
+		}
 		outputsModified = true;
 	}
 
@@ -339,21 +493,507 @@ public abstract class ComponentCollection extends Kernel {
 	public abstract void ensureStateVariablesAreFresh();
 
 	/**
-	 * Get an array containing the names of all the internal state variables. Sub-classes may override this to allow the
-	 * component to be used for testing or educational purposes.
+	 * Get an array containing the names of all the internal state variables, or null if there are none. A new array is
+	 * created on each invocation, see {@link #getStateVariableCount()} and {@link #getStateVariableName(int)}. This
+	 * default implementation copies the array given by {@link #getSharedStateVariableNames()}.
 	 */
 	public String[] getStateVariableNames() {
+		String[] names = getSharedStateVariableNames();
+		return names == null ? null : names.clone();
+	}
+
+	/**
+	 * Returns an array containing the names of all the internal state variables, or null if there are none.
+	 * Sub-classes may override this to allow the component to be used for testing or educational purposes. The array
+	 * is not copied by the accessors that use it, so it may be shared by all instances of the class (and must then not
+	 * be altered). Sub-classes written for earlier versions may instead override {@link #getStateVariableNames()}.
+	 * This default implementation returns null.
+	 */
+	protected String[] getSharedStateVariableNames() {
 		return null;
 	}
 
+	/**
+	 * Returns the number of internal state variables, see {@link #getStateVariableNames()}.
+	 */
+	public int getStateVariableCount() {
+		String[] names = getSharedStateVariableNames();
+		if (names == null) {
+			names = getStateVariableNames();
+		}
+		return names == null ? 0 : names.length;
+	}
+
+	/**
+	 * Returns the name of the specified internal state variable, see {@link #getStateVariableNames()}.
+	 * 
+	 * @param variable The index of the state variable.
+	 */
+	public String getStateVariableName(int variable) {
+		String[] names = getSharedStateVariableNames();
+		if (names == null) {
+			names = getStateVariableNames();
+		}
+		if (names == null || variable < 0 || variable >= names.length) {
+			throw new IllegalArgumentException("Invalid state variable index: " + variable);
+		}
+		return names[variable];
+	}
+
 	/**
 	 * Get an array containing the values of all the internal state variables, in the same order as that given by
-	 * getStateVariableNames(). Sub-classes may override this to allow the component to be used for testing or
-	 * educational purposes. The overriding method should ensure the state variables are up to date by invoking
-	 * {@link #ensureStateVariablesAreFresh()}.
+	 * getStateVariableNames(). A new array is created on each invocation, consider using
+	 * {@link #getStateVariableValues(int, double[])}. Returns null if there are no state variables.
 	 */
 	public double[] getStateVariableValues(int componentIndex) {
-		return null;
+		int count = getStateVariableCount();
+		if (count == 0) {
+			return null;
+		}
+		double[] values = new double[count];
+		getStateVariableValues(componentIndex, values);
+		return values;
+	}
+
+	/**
+	 * Copies the values of all the internal state variables of the specified component into the given array, in the
+	 * same order as that given by getStateVariableNames(), after ensuring the state variables are up to date (see
+	 * {@link #ensureStateVariablesAreFresh()}). The values are provided by
+	 * {@link #copyStateVariableValues(int, double[])}.
+	 * 
+	 * @param componentIndex The index of the component.
+	 * @param values An array of length at least {@link #getStateVariableCount()} to copy the values into.
+	 */
+	public void getStateVariableValues(int componentIndex, double[] values) {
+		ensureStateVariablesAreFresh();
+		copyStateVariableValues(componentIndex, values);
+	}
+
+	/**
+	 * Copies the values of all the internal state variables of the specified component into the given array, in the
+	 * same order as that given by getStateVariableNames(), without checking that they are up to date. Sub-classes
+	 * that provide state variable names should override this to allow the component to be used for testing or
+	 * educational purposes. The overriding method should not allocate memory. If a sub-class instead overrides
+	 * {@link #getStateVariableValues(int)}, as was required in earlier versions, this default implementation copies the
+	 * values it returns, otherwise it does nothing.
+	 * 
+	 * @param componentIndex The index of the component.
+	 * @param values An array of length at least {@link #getStateVariableCount()} to copy the values into.
+	 */
+	protected void copyStateVariableValues(int componentIndex, double[] values) {
+		if (overridesGetStateVariableValues == null) {
+			try {
+				overridesGetStateVariableValues = getClass().getMethod("getStateVariableValues", int.class).getDeclaringClass() != ComponentCollection.class;
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		if (overridesGetStateVariableValues) {
+			double[] legacyValues = getStateVariableValues(componentIndex);
+			if (legacyValues != null) {
+				System.arraycopy(legacyValues, 0, values, 0, legacyValues.length);
+			}
+		}
+	}
+
+	// Whether getStateVariableValues(int) is overridden by a sub-class, determined on first use.
+	private Boolean overridesGetStateVariableValues;
+
+	/**
+	 * Copies the values of the specified internal state variable of the components with indexes in the range [start,
+	 * end) into the given array. After the first invocation no memory is allocated, so this is suitable for reading
+	 * the state of a whole network in every step. To read a per-component array directly see
+	 * {@link #getComponentValues(String, int, int, double[], int)}.
+	 * 
+	 * @param variable The index of the state variable in the array given by {@link #getStateVariableNames()}.
+	 * @param start The index of the first component.
+	 * @param end The index after the last component.
+	 * @param values The array to copy the values into.
+	 * @param offset The index in values to copy the value for the first component to.
+	 */
+	public void getStateVariableValues(int variable, int start, int end, double[] values, int offset) {
+		int count = getStateVariableCount();
+		if (variable < 0 || variable >= count) {
+			throw new IllegalArgumentException("Invalid state variable index: " + variable);
+		}
+		if (stateVariableValues == null || stateVariableValues.length < count) {
+			stateVariableValues = new double[count];
+		}
+		ensureStateVariablesAreFresh();
+		for (int i = start; i < end; i++) {
+			copyStateVariableValues(i, stateVariableValues);
+			values[offset + i - start] = stateVariableValues[variable];
+		}
+	}
+
+	// Used by getStateVariableValues(int, int, int, double[], int) to avoid allocating an array for each component.
+	private double[] stateVariableValues;
+
+	// Cached by getComponentValues(String, int, int, double[], int), see getSinglePrecisionArrayNames().
+	private String[] singlePrecisionArrayNames;
+
+	/**
+	 * Copies the values of the components with indexes in the range [start, end) from the per-component array with the
+	 * given name (see {@link #getComponentArrayNames()}) into the given array, converting them to double. Only the
+	 * named array is fetched from the execution hardware if necessary (see
+	 * {@link #getFreshComponentArray(String, int, int)}), and no memory is allocated. If the name is one of those
+	 * given by {@link #getSinglePrecisionArrayNames()} then the values are read from the array for the current
+	 * precision mode (see {@link #setSinglePrecision(boolean)}).
+	 * 
+	 * @param name The name of the field containing the array.
+	 * @param start The index of the first component.
+	 * @param end The index after the last component.
+	 * @param values The array to copy the values into.
+	 * @param offset The index in values to copy the value for the first component to.
+	 */
+	public void getComponentValues(String name, int start, int end, double[] values, int offset) {
+		if (singlePrecision[0]) {
+			if (singlePrecisionArrayNames == null) {
+				singlePrecisionArrayNames = getSinglePrecisionArrayNames();
+			}
+			for (String singleName : singlePrecisionArrayNames) {
+				if (singleName.equals(name)) {
+					name = name + "Single";
+					break;
+				}
+			}
+		}
+		Object array = getFreshComponentArray(name, start, end);
+		int count = end - start;
+		if (array instanceof double[]) {
+			System.arraycopy((double[]) array, start, values, offset, count);
+		} else if (array instanceof float[]) {
+			float[] source = (float[]) array;
+			for (int i = 0; i < count; i++) {
+				values[offset + i] = source[start + i];
+			}
+		} else if (array instanceof int[]) {
+			int[] source = (int[]) array;
+			for (int i = 0; i < count; i++) {
+				values[offset + i] = source[start + i];
+			}
+		} else if (array instanceof long[]) {
+			long[] source = (long[]) array;
+			for (int i = 0; i < count; i++) {
+				values[offset + i] = source[start + i];
+			}
+		} else {
+			throw new IllegalArgumentException("The per-component array " + name + " is not of a numeric type.");
+		}
+	}
+
+	/**
+	 * Returns the names of the fields that hold an array containing one value for each component in this collection,
+	 * for example state variables, inputs and outputs. This allows the framework to operate on all per-component data
+	 * generically, for example when reordering the components (see {@link #permuteComponents(int[])}). Java's
+	 * reflection abilities are used to access the fields, so the names must match the declared field names (as for
+	 * {@link ComponentConfiguration#getParameterNames()}). Sub-classes that declare additional per-component arrays
+	 * should override this method and append the names of their fields to those given by the super-method (see
+	 * {@link #appendNames(String[], String...)}). Arrays containing values that are derived from other per-component
+	 * data or from the configurations, and so are regenerated by {@link #init()}, need not be included. The
+	 * implementation in ComponentCollection returns { "outputs", "outputsSingle" }.
+	 */
+	public String[] getComponentArrayNames() {
+		return new String[] { "outputs", "outputsSingle" };
+	}
+
+	/**
+	 * Utility method for implementations of {@link #getComponentArrayNames()}: returns a new array containing the given
+	 * names followed by the additional names.
+	 */
+	protected static String[] appendNames(String[] names, String... additionalNames) {
+		String[] all = Arrays.copyOf(names, names.length + additionalNames.length);
+		System.arraycopy(additionalNames, 0, all, names.length, additionalNames.length);
+		return all;
+	}
+
+	/**
+	 * Get the per-component array with the given name, as listed by {@link #getComponentArrayNames()}. The values in
+	 * the array are not guaranteed to be fresh, see {@link #ensureStateVariablesAreFresh()},
+	 * {@link #ensureOutputsAreFresh()} and {@link #ensureInputsAreFresh()}.
+	 * 
+	 * @param name The name of the field containing the array.
+	 * @return The array, which will be a primitive array, or null if the field has not been initialised.
+	 */
+	public Object getComponentArray(String name) {
+		try {
+			return getComponentArrayField(name).get(this);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Replace the per-component array with the given name, as listed by {@link #getComponentArrayNames()}, with the
+	 * given array. The given array must be of the same type as the field. Sub-classes are responsible for transferring
+	 * the new array to the execution hardware if necessary (typically by invoking {@link #init()}).
+	 * 
+	 * @param name The name of the field containing the array.
+	 * @param array The new array.
+	 */
+	protected void setComponentArray(String name, Object array) {
+		try {
+			getComponentArrayField(name).set(this, array);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Get the per-component array with the given name, as listed by {@link #getComponentArrayNames()}, with the values
+	 * for the components with indexes in the range [start, end) up to date. Unlike
+	 * {@link #ensureStateVariablesAreFresh()}, only the named array is fetched from the execution hardware (if
+	 * necessary), and no memory is allocated, so this is suitable for sampling the state of some of the components in
+	 * every step (see {@link StateProbe}). The values in the array should not be altered.
+	 *
+	 * @param name The name of the field containing the array. In single precision mode (see
+	 *            {@link #setSinglePrecision(boolean)}) this should be the name of the single precision array.
+	 * @param start The index of the first component whose values are required.
+	 * @param end The index after the last component whose values are required.
+	 * @return The array, which will be a primitive array.
+	 */
+	public Object getFreshComponentArray(String name, int start, int end) {
+		Object array = getComponentArray(name);
+		if (array == outputs || array == outputsSingle) {
+			ensureOutputsAreFresh();
+		} else if (stateVariablesStale || inputsStale) {
+			// The staleness flags apply to all of the arrays, so record which arrays have been fetched since the last
+			// step, so that each is fetched at most once.
+			synchronized (fetchedArrays) {
+				for (Object fetched : fetchedArrays) {
+					if (fetched == array) {
+						return array;
+					}
+				}
+				fetchArray(array);
+				fetchedArrays.add(array);
+			}
+		}
+		return array;
+	}
+
+	// The arrays fetched by getFreshComponentArray(String, int, int) since the last step.
+	private final ArrayList<Object> fetchedArrays = new ArrayList<Object>();
+
+	/**
+	 * Fetches the given primitive array from the execution hardware, using the get() method for its type.
+	 */
+	protected void fetchArray(Object array) {
+		if (array instanceof double[]) {
+			get((double[]) array);
+		} else if (array instanceof float[]) {
+			get((float[]) array);
+		} else if (array instanceof int[]) {
+			get((int[]) array);
+		} else if (array instanceof long[]) {
+			get((long[]) array);
+		} else if (array instanceof boolean[]) {
+			get((boolean[]) array);
+		} else if (array instanceof byte[]) {
+			get((byte[]) array);
+		} else if (array instanceof char[]) {
+			get((char[]) array);
+		}
+	}
+
+	/**
+	 * Transfers the given primitive array to the execution hardware, using the put() method for its type.
+	 */
+	protected void putArray(Object array) {
+		if (array instanceof double[]) {
+			put((double[]) array);
+		} else if (array instanceof float[]) {
+			put((float[]) array);
+		} else if (array instanceof int[]) {
+			put((int[]) array);
+		} else if (array instanceof long[]) {
+			put((long[]) array);
+		} else if (array instanceof boolean[]) {
+			put((boolean[]) array);
+		} else if (array instanceof byte[]) {
+			put((byte[]) array);
+		} else if (array instanceof char[]) {
+			put((char[]) array);
+		}
+	}
+
+	/**
+	 * Returns the names of the fields, other than the per-component arrays given by {@link #getComponentArrayNames()},
+	 * that hold state that must be saved in a {@link Checkpoint} to resume the simulation, for example the number of
+	 * steps performed or a history of previous values. The fields may be primitive arrays or primitive values. Fields
+	 * derived from the configurations (see {@link #init()}) or that are rebuilt as required need not be included.
+	 * Sub-classes with such fields should override this method and append their names to those given by the
+	 * super-method (see {@link #appendNames(String[], String...)}). Sub-classes whose state can not be restored in
+	 * this way should return null. This default implementation returns an empty array.
+	 */
+	protected String[] getCheckpointFieldNames() {
+		return new String[0];
+	}
+
+	/**
+	 * Returns the names of the per-component arrays, other than those saved for all collections of this type, that
+	 * define the initial state of the components and must be saved in a {@link NetworkDefinition}, for example a bias
+	 * that is set for each neuron individually rather than via its configuration. Sub-classes with such arrays should
+	 * override this method and append their names to those given by the super-method (see
+	 * {@link #appendNames(String[], String...)}). This default implementation returns an empty array.
+	 */
+	protected String[] getDefinitionFieldNames() {
+		return new String[0];
+	}
+
+	/**
+	 * Returns the value of the field with the given name, as listed by {@link #getComponentArrayNames()},
+	 * {@link #getCheckpointFieldNames()} or {@link #getDefinitionFieldNames()}. Primitive values are boxed.
+	 */
+	Object getFieldValue(String name) {
+		try {
+			return getField(name, false).get(this);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Sets the value of the field with the given name, as listed by {@link #getComponentArrayNames()},
+	 * {@link #getCheckpointFieldNames()} or {@link #getDefinitionFieldNames()}. Primitive values should be boxed.
+	 */
+	void setFieldValue(String name, Object value) {
+		try {
+			getField(name, false).set(this, value);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the type of the field with the given name.
+	 */
+	Class<?> getFieldType(String name) {
+		return getField(name, false).getType();
+	}
+
+	private Field getComponentArrayField(String name) {
+		return getField(name, true);
+	}
+
+	private Field getField(String name, boolean array) {
+		if (componentArrayFields == null) {
+			componentArrayFields = new HashMap<String, Field>();
+		}
+		Field field = componentArrayFields.get(name);
+		if (field == null) {
+			for (Class<?> c = getClass(); c != null && field == null; c = c.getSuperclass()) {
+				try {
+					field = c.getDeclaredField(name);
+				} catch (NoSuchFieldException e) {
+					// Try the super-class.
+				}
+			}
+			if (field == null) {
+				throw new IllegalArgumentException("No " + (array ? "per-component array " : "") + "field named " + name + " in " + getClass().getName());
+			}
+			field.setAccessible(true);
+			componentArrayFields.put(name, field);
+		}
+		if (array && !field.getType().isArray()) {
+			throw new IllegalArgumentException("No per-component array field named " + name + " in " + getClass().getName());
+		}
+		return field;
+	}
+
+	private HashMap<String, Field> componentArrayFields;
+
+	/**
+	 * Reorders the components in this collection, such that the component at index <em>i</em> after reordering is
+	 * the component that was at index <em>order[i]</em> before reordering. All of the arrays given by
+	 * {@link #getComponentArrayNames()} are reordered (arrays with fewer elements than the size of this collection are
+	 * ignored). The arrays should be fresh when this method is invoked (see {@link #ensureStateVariablesAreFresh()} and
+	 * {@link #ensureOutputsAreFresh()}), and sub-classes are responsible for regenerating any derived data and
+	 * transferring the reordered arrays to the execution hardware if necessary (typically by invoking {@link #init()}).
+	 * 
+	 * @param order An array of length {@link #getSize()} containing a permutation of the component indexes.
+	 */
+	protected void permuteComponents(int[] order) {
+		if (order.length != size) {
+			throw new IllegalArgumentException("The length of the order array must equal the size of the collection.");
+		}
+		for (String name : getComponentArrayNames()) {
+			Object array = getComponentArray(name);
+			if (array != null && java.lang.reflect.Array.getLength(array) >= size) {
+				setComponentArray(name, Utility.permute(array, order));
+			}
+		}
+	}
+
+	/**
+	 * Ensure that the size of this collection is at least the given size, increasing it if necessary. The size is
+	 * increased geometrically (by at least half the current size), so that adding components one at a time takes
+	 * amortised constant time. The values for the existing components are retained in all of the arrays given by
+	 * {@link #getComponentArrayNames()}, which are extended, and {@link #init()} is then invoked to regenerate any other
+	 * per-component data. The populated size (see {@link #getSizePopulated()}) is not changed, so the new components
+	 * are not executed until it is increased to include them.
+	 * 
+	 * @param minimumSize The minimum size required.
+	 * @see #setCapacity(int)
+	 */
+	public void ensureCapacity(int minimumSize) {
+		if (minimumSize <= size) {
+			return;
+		}
+		setCapacity(growCapacity(size, minimumSize));
+	}
+
+	/**
+	 * Sets the size of this collection to the given size. The values for the components with indexes below both the
+	 * current and the new size are retained in all of the arrays given by {@link #getComponentArrayNames()}, which are
+	 * resized, and {@link #init()} is then invoked to regenerate any other per-component data. The populated size is
+	 * reduced to the new size if it is larger. Invoked by {@link #ensureCapacity(int)}, and when a checkpoint is
+	 * restored into a collection of a different size; sub-classes that must do additional work when the size changes
+	 * should override this method.
+	 * 
+	 * @param newSize The new size.
+	 */
+	protected void setCapacity(int newSize) {
+		ensureOutputsAreFresh();
+		ensureInputsAreFresh();
+		ensureStateVariablesAreFresh();
+		int populated = Math.min(getSizePopulated(), newSize);
+		for (String name : getComponentArrayNames()) {
+			Object array = getComponentArray(name);
+			if (array != null && java.lang.reflect.Array.getLength(array) >= size) {
+				setComponentArray(name, Utility.resize(array, newSize));
+			}
+		}
+		size = newSize;
+		init();
+		setSizePopulated(populated);
+	}
+
+	/**
+	 * Returns the capacity to allocate when the given capacity must be increased to at least the given required
+	 * capacity: the larger of the required capacity and one and a half times the current capacity.
+	 */
+	protected static int growCapacity(int capacity, int required) {
+		if (capacity >= required) {
+			return capacity;
+		}
+		long grown = capacity + (capacity >> 1) + 1L;
+		return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, grown));
+	}
+
+	/**
+	 * Copies the data of the component at index <em>from</em> over that of the component at index <em>to</em>, in all
+	 * of the arrays given by {@link #getComponentArrayNames()} (arrays with fewer elements than the size of this
+	 * collection are ignored). As for {@link #permuteComponents(int[])}, the arrays should be fresh when this method is
+	 * invoked and sub-classes are responsible for transferring the modified arrays to the execution hardware.
+	 */
+	protected void copyComponent(int from, int to) {
+		for (String name : getComponentArrayNames()) {
+			Object array = getComponentArray(name);
+			if (array != null && java.lang.reflect.Array.getLength(array) >= size) {
+				System.arraycopy(array, from, array, to, 1);
+			}
+		}
 	}
 
 	/**
@@ -383,6 +1023,265 @@ public abstract class ComponentCollection extends Kernel {
 	public void setExecutionMode(Kernel.EXECUTION_MODE mode) {
 		super.setExecutionMode(mode);
 		createExecuteRange();
+		updateHostResident();
+	}
+
+	/**
+	 * Set the backend used to execute the kernel for this collection. By default an {@link AparapiExecutionBackend} is
+	 * used. The backend is not disposed when this collection is disposed.
+	 * 
+	 * @see com.ojcoleman.bain.NeuralNetwork#setExecutionBackend(ExecutionBackend)
+	 */
+	public void setExecutionBackend(ExecutionBackend executionBackend) {
+		if (executionBackend == null) {
+			executionBackend = defaultExecutionBackend;
+		}
+		this.executionBackend.invalidate(this);
+		this.executionBackend = executionBackend;
+		updateHostResident();
+	}
+
+	/**
+	 * Returns the backend used to execute the kernel for this collection.
+	 */
+	public ExecutionBackend getExecutionBackend() {
+		return executionBackend;
+	}
+
+	private void updateHostResident() {
+		boolean wasHostResident = hostResident;
+		hostResident = executionBackend.isHostResident(this);
+		if (wasHostResident && !hostResident && outputs != null) {
+			// Buffer transfers were skipped while executing on the host, so transfer everything now.
+			init();
+		}
+	}
+
+	/**
+	 * {@inheritDoc} The execution backend is notified that this kernel is no longer in use.
+	 */
+	@Override
+	public synchronized void dispose() {
+		executionBackend.invalidate(this);
+		super.dispose();
+	}
+
+	/**
+	 * Returns true iff the kernel for this collection is executed on the host (in SEQ or JTP mode, including when
+	 * Aparapi has fallen back to one of these modes from an OpenCL mode). In this case the kernel operates directly on
+	 * the Java arrays, so explicit buffer transfers are skipped and values calculated by the kernel are never stale.
+	 */
+	public boolean isHostResident() {
+		return hostResident;
+	}
+
+	/**
+	 * Enable or disable single precision storage of the state variables of the components in this collection. In
+	 * single precision mode the per-component state variables listed by {@link #getSinglePrecisionArrayNames()} are
+	 * stored in float rather than double arrays, which halves the memory required for them and the memory bandwidth
+	 * consumed reading and writing them in each simulation step; calculations are still performed in double precision.
+	 * The current values are converted when the mode is changed. The results will generally differ slightly from those
+	 * obtained in double precision mode (the PrecisionComparison utility in the test sources reports the differences
+	 * for each bundled synapse model). If the collection does
+	 * not support single precision storage (see {@link #supportsSinglePrecision()}) then this method has no effect. By
+	 * default this is disabled.
+	 *
+	 * @see com.ojcoleman.bain.NeuralNetwork#setSinglePrecision(boolean)
+	 */
+	public void setSinglePrecision(boolean singlePrecision) {
+		singlePrecision &= supportsSinglePrecision();
+		if (singlePrecision == this.singlePrecision[0]) {
+			return;
+		}
+		// Make sure we have the current state from the execution hardware.
+		ensureStateVariablesAreFresh();
+		for (String name : getSinglePrecisionArrayNames()) {
+			if (singlePrecision) {
+				double[] values = (double[]) getComponentArray(name);
+				float[] converted = new float[size];
+				for (int i = 0; i < size; i++) {
+					converted[i] = (float) values[i];
+				}
+				setComponentArray(name + "Single", converted);
+			} else {
+				float[] values = (float[]) getComponentArray(name + "Single");
+				double[] converted = new double[size];
+				for (int i = 0; i < size; i++) {
+					converted[i] = values[i];
+				}
+				setComponentArray(name, converted);
+			}
+		}
+		this.singlePrecision[0] = singlePrecision;
+		singlePrecisionOutputs = singlePrecision && Arrays.asList(getSinglePrecisionArrayNames()).contains("outputs");
+		outputsCopy = null;
+		init(); // Replace the unused arrays with placeholders and transfer the state to the execution hardware.
+	}
+
+	/**
+	 * Returns true iff single precision storage of state variables is in use. See {@link #setSinglePrecision(boolean)}.
+	 */
+	public boolean isSinglePrecision() {
+		return singlePrecision[0];
+	}
+
+	/**
+	 * Returns true iff this collection supports single precision storage of state variables, see
+	 * {@link #setSinglePrecision(boolean)}. This is the case if {@link #getSinglePrecisionArrayNames()} returns at least
+	 * one name.
+	 */
+	public boolean supportsSinglePrecision() {
+		return getSinglePrecisionArrayNames().length > 0;
+	}
+
+	/**
+	 * Returns the names of the per-component state variable arrays that are stored in single precision when
+	 * {@link #setSinglePrecision(boolean)} is enabled. For each name there must be a double[] field with that name and
+	 * a float[] field with the name followed by "Single" (for example "c" and "cSingle"). Only the array for the current
+	 * mode holds the state values, the other should be a placeholder with a single element, as Aparapi requires all
+	 * arrays referenced by the kernel to be non-null (see {@link #doubleStateArray(double[])} and
+	 * {@link #singleStateArray(float[])}). The kernel should read the values for a component into local variables,
+	 * perform its calculations on those in double precision and write them back to the array for the current mode. Both
+	 * arrays should be included in {@link #getComponentArrayNames()}. If "outputs" is included then the outputs are
+	 * stored in {@link #outputsSingle}, which is handled by ComponentCollection. The implementation in
+	 * ComponentCollection returns an empty array.
+	 */
+	protected String[] getSinglePrecisionArrayNames() {
+		return new String[0];
+	}
+
+	/**
+	 * Utility method for implementations of {@link #init()} in sub-classes that support single precision storage:
+	 * returns the given double precision state variable array if it has the required length, otherwise a new array of
+	 * the required length. The required length is the size of this collection in double precision mode and 1 in single
+	 * precision mode. See {@link #getSinglePrecisionArrayNames()}.
+	 */
+	protected double[] doubleStateArray(double[] array) {
+		int length = singlePrecision[0] ? 1 : size;
+		return array != null && array.length == length ? array : new double[length];
+	}
+
+	/**
+	 * Utility method for implementations of {@link #init()} in sub-classes that support single precision storage:
+	 * returns the given single precision state variable array if it has the required length, otherwise a new array of
+	 * the required length. The required length is the size of this collection in single precision mode and 1 in double
+	 * precision mode. See {@link #getSinglePrecisionArrayNames()}.
+	 */
+	protected float[] singleStateArray(float[] array) {
+		int length = singlePrecision[0] ? size : 1;
+		return array != null && array.length == length ? array : new float[length];
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel put(double[] array) {
+		return hostResident ? this : super.put(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel put(float[] array) {
+		return hostResident ? this : super.put(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel put(long[] array) {
+		return hostResident ? this : super.put(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel put(int[] array) {
+		return hostResident ? this : super.put(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel put(byte[] array) {
+		return hostResident ? this : super.put(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel put(char[] array) {
+		return hostResident ? this : super.put(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel put(boolean[] array) {
+		return hostResident ? this : super.put(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel get(double[] array) {
+		return hostResident ? this : super.get(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel get(float[] array) {
+		return hostResident ? this : super.get(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel get(long[] array) {
+		return hostResident ? this : super.get(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel get(int[] array) {
+		return hostResident ? this : super.get(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel get(byte[] array) {
+		return hostResident ? this : super.get(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel get(char[] array) {
+		return hostResident ? this : super.get(array);
+	}
+
+	/**
+	 * {@inheritDoc} This is a no-op if the kernel is executed on the host (see {@link #isHostResident()}).
+	 */
+	@Override
+	public Kernel get(boolean[] array) {
+		return hostResident ? this : super.get(array);
 	}
 
 	private void createExecuteRange() {
@@ -1,7 +1,10 @@
 package com.ojcoleman.bain.base;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 
+import com.ojcoleman.bain.misc.Utility;
+
 /**
  * <p>
  * Base class for all collections of configurable neural network components. A ConfigurableComponentCollection may reference zero, one or more
@@ -26,23 +29,146 @@ public abstract class ConfigurableComponentCollection<C extends ComponentConfigu
 	 */
 	protected int[] componentConfigIndexes;
 
+	/**
+	 * Element 0 is true iff this collection has at most one configuration, in which case all components use the
+	 * configuration at index 0 (see {@link #configIndex(int)}). (Single element arrays are used to pass scalar values
+	 * to the kernel.)
+	 */
+	protected boolean[] singleConfiguration = new boolean[1];
+
+	private int configurationCapacity;
+
+	// True while the size is being changed, see setCapacity().
+	private boolean increasingCapacity;
+
+	/**
+	 * {@inheritDoc} ConfigurableComponentCollection allocates the arrays given by
+	 * {@link #getConfigurationArrayNames()} and computes the values derived from each configuration (see
+	 * {@link #initConfiguration(int)}), except when invoked by {@link #setCapacity(int)}, as the configurations are
+	 * unchanged.
+	 */
 	@Override
 	public void init() {
 		super.init();
 		if (componentConfigIndexes == null || componentConfigIndexes.length != size) {
 			componentConfigIndexes = new int[size];
 		}
+		singleConfiguration[0] = configs.size() <= 1;
 		// In case explicit mode is being used for the Aparapi kernel.
 		put(componentConfigIndexes);
+		put(singleConfiguration);
+		if (!increasingCapacity && getConfigurationArrayNames() != null) {
+			ensureConfigurationArrays();
+			for (int c = 0; c < configs.size(); c++) {
+				initConfiguration(c);
+			}
+			putConfigurationArrays();
+		}
+	}
+
+	/**
+	 * {@inheritDoc} The values derived from the configurations are not recomputed.
+	 */
+	@Override
+	protected void setCapacity(int newSize) {
+		increasingCapacity = true;
+		try {
+			super.setCapacity(newSize);
+		} finally {
+			increasingCapacity = false;
+		}
+	}
+
+	/**
+	 * Returns the names of the fields containing an array of values derived from the configurations, with an element
+	 * for each configuration, for example parameters scaled by the time resolution. These arrays are allocated (see
+	 * {@link #getConfigurationCapacity()}) and transferred to the execution hardware by this class, and the values
+	 * are computed by {@link #initConfiguration(int)}, so that adding a configuration only computes the values for
+	 * that configuration. Sub-classes with such arrays should override this method to return their names, appended to
+	 * those given by the super-method if it is overridden by a super-class (see
+	 * {@link #appendNames(String[], String...)}). This default implementation returns null, which indicates that the
+	 * sub-class computes the values in {@link #init()}, in which case {@link #addConfiguration(ComponentConfiguration)}
+	 * invokes init().
+	 */
+	protected String[] getConfigurationArrayNames() {
+		return null;
+	}
+
+	/**
+	 * Computes the values derived from the configuration at the given index and stores them in the arrays given by
+	 * {@link #getConfigurationArrayNames()}, which have already been allocated. Invoked by {@link #init()} for each
+	 * configuration and by {@link #addConfiguration(ComponentConfiguration)} for the added configuration. Sub-classes
+	 * that override getConfigurationArrayNames() must override this method. This default implementation does nothing.
+	 */
+	protected void initConfiguration(int configurationIndex) {
 	}
 
 	/**
-	 * Add the specified configuration to the list of known configurations.
+	 * Ensures the arrays given by {@link #getConfigurationArrayNames()} have an element for each configuration,
+	 * extending them to {@link #getConfigurationCapacity()} elements if necessary and retaining the existing values.
+	 */
+	private void ensureConfigurationArrays() {
+		for (String name : getConfigurationArrayNames()) {
+			Object array = getFieldValue(name);
+			if (array == null) {
+				setFieldValue(name, Array.newInstance(getFieldType(name).getComponentType(), getConfigurationCapacity()));
+			} else if (Array.getLength(array) < configs.size()) {
+				setFieldValue(name, Utility.resize(array, getConfigurationCapacity()));
+			}
+		}
+	}
+
+	/**
+	 * Transfers the arrays given by {@link #getConfigurationArrayNames()} to the execution hardware.
+	 */
+	private void putConfigurationArrays() {
+		for (String name : getConfigurationArrayNames()) {
+			putArray(getFieldValue(name));
+		}
+	}
+
+	/**
+	 * Returns the index of the configuration for the specified component, for use in the kernel (see {@link #run()})
+	 * in place of reading {@link #componentConfigIndexes} directly. If the collection has a single configuration this
+	 * returns 0 without reading componentConfigIndexes. The {@link #singleConfiguration} flag is read on each
+	 * invocation, so implementations of {@link RangeKernel#runRange(int, int)} with simple per-component computations
+	 * should instead read the flag, and the parameters of the single configuration, into local variables before the
+	 * loop over the components and use a separate loop for each case (see for example
+	 * {@link com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection#runRange(int, int)}).
+	 */
+	protected int configIndex(int componentIndex) {
+		return singleConfiguration[0] ? 0 : componentConfigIndexes[componentIndex];
+	}
+
+	/**
+	 * Returns the length with which sub-classes should allocate arrays containing a value for each configuration, for
+	 * example parameters derived from the configurations. This is at least the number of configurations, and grows
+	 * geometrically as configurations are added so that arrays allocated with this length need only be reallocated
+	 * when their length is less than the number of configurations. Thus {@link #init()} should only reallocate such
+	 * arrays if their length is less than {@link #getConfigurationCount()}, and otherwise just recompute the values.
+	 */
+	protected int getConfigurationCapacity() {
+		configurationCapacity = growCapacity(configurationCapacity, configs.size());
+		return configurationCapacity;
+	}
+
+	/**
+	 * Add the specified configuration to the list of known configurations. Only the values derived from the added
+	 * configuration are computed (see {@link #initConfiguration(int)}), unless the sub-class computes them in
+	 * {@link #init()} (see {@link #getConfigurationArrayNames()}).
 	 */
 	public void addConfiguration(ComponentConfiguration componentConfiguration) {
 		configs.add((C) componentConfiguration);
 		componentConfiguration.addListener(this);
-		init();
+		if (getConfigurationArrayNames() == null) {
+			init();
+			return;
+		}
+		singleConfiguration[0] = configs.size() <= 1;
+		put(singleConfiguration);
+		ensureConfigurationArrays();
+		initConfiguration(configs.size() - 1);
+		putConfigurationArrays();
 	}
 
 	/**
@@ -114,4 +240,9 @@ public abstract class ConfigurableComponentCollection<C extends ComponentConfigu
 		init();
 		reset();
 	}
+
+	@Override
+	public String[] getComponentArrayNames() {
+		return appendNames(super.getComponentArrayNames(), "componentConfigIndexes");
+	}
 }
@@ -0,0 +1,385 @@
+package com.ojcoleman.bain.base;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Generates the connectivity of a {@link SynapseCollection} in bulk according to common connection rules: fixed
+ * connection probability, fixed in-degree, fixed out-degree and distance-dependent probability. The synapses are
+ * written with {@link SynapseCollection#setPreAndPostNeurons(int, int[], int[], int, int)} and
+ * {@link SynapseCollection#setEfficacies(int, double[], int, int)} in blocks of neurons, in parallel if a pool has
+ * been set with {@link #setPool(ForkJoinPool)}, which is much faster than setting each synapse individually.
+ * </p>
+ * <p>
+ * Each rule writes its synapses to consecutive indexes starting at the next synapse index (see
+ * {@link #setNextSynapse(int)}), which is then advanced past them, so several rules may be applied to the same
+ * collection one after another. The synapses of a rule are grouped by pre-synaptic neuron, except for
+ * {@link #fixedInDegree(int, int, int)} which groups them by post-synaptic neuron. The efficacy of each synapse is
+ * drawn uniformly from the range given by {@link #setEfficacyRange(double, double)}. The random numbers for each
+ * neuron are drawn from a generator seeded from the seed (see {@link #setSeed(long)}), the next synapse index and the
+ * neuron index, so the generated connectivity does not depend on whether or how it is generated in parallel.
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public class Connectivity {
+	/**
+	 * The maximum number of neurons processed by each task when generating the connectivity in parallel.
+	 */
+	private static final int ROWS_PER_TASK = 64;
+
+	private final SynapseCollection<?> synapses;
+	private int nextSynapse;
+	private long seed;
+	private double minEfficacy = 1;
+	private double maxEfficacy = 1;
+	private boolean autapses = true;
+	private ForkJoinPool pool;
+
+	/**
+	 * Create a Connectivity that writes synapses to the given SynapseCollection, starting at synapse index 0.
+	 */
+	public Connectivity(SynapseCollection<?> synapses) {
+		this.synapses = synapses;
+	}
+
+	/**
+	 * Connect each pair of pre- and post-synaptic neurons independently with the given probability.
+	 *
+	 * @param preCount The number of pre-synaptic neurons.
+	 * @param postCount The number of post-synaptic neurons.
+	 * @param probability The probability of a synapse from each pre-synaptic neuron to each post-synaptic neuron.
+	 * @return The number of synapses created.
+	 * @throws IllegalArgumentException If the SynapseCollection is too small for the generated synapses.
+	 */
+	public int fixedProbability(int preCount, final int postCount, final double probability) {
+		checkCounts(preCount, postCount);
+		if (probability < 0 || probability > 1) {
+			throw new IllegalArgumentException("The connection probability must be in the range [0, 1].");
+		}
+		final double logQ = Math.log(1 - probability);
+		return generate(preCount, postCount, true, -1, new RowGenerator() {
+			@Override
+			int generate(int row, Random random, int[] targets) {
+				int count = 0;
+				if (probability == 1) {
+					for (int t = 0; t < postCount; t++) {
+						if (autapses || t != row) {
+							targets[count++] = t;
+						}
+					}
+				} else if (probability > 0) {
+					// Skip over the neurons that are not connected to; the number skipped is geometrically distributed.
+					long t = -1;
+					while (true) {
+						double skip = Math.log(1 - random.nextDouble()) / logQ;
+						if (skip >= postCount) {
+							break;
+						}
+						t += 1 + (long) skip;
+						if (t >= postCount) {
+							break;
+						}
+						if (autapses || t != row) {
+							targets[count++] = (int) t;
+						}
+					}
+				}
+				return count;
+			}
+		});
+	}
+
+	/**
+	 * Connect each post-synaptic neuron to the given number of pre-synaptic neurons chosen at random. A pair of
+	 * neurons may be connected by more than one synapse.
+	 *
+	 * @param preCount The number of pre-synaptic neurons.
+	 * @param postCount The number of post-synaptic neurons.
+	 * @param inDegree The number of incoming synapses for each post-synaptic neuron.
+	 * @return The number of synapses created.
+	 * @throws IllegalArgumentException If the SynapseCollection is too small for the generated synapses.
+	 */
+	public int fixedInDegree(final int preCount, int postCount, final int inDegree) {
+		checkCounts(preCount, postCount);
+		checkDegree(inDegree, preCount);
+		return generate(postCount, inDegree, false, inDegree, new RowGenerator() {
+			@Override
+			int generate(int row, Random random, int[] targets) {
+				return chooseRandomly(row, random, targets, inDegree, preCount);
+			}
+		});
+	}
+
+	/**
+	 * Connect each pre-synaptic neuron to the given number of post-synaptic neurons chosen at random. A pair of
+	 * neurons may be connected by more than one synapse.
+	 *
+	 * @param preCount The number of pre-synaptic neurons.
+	 * @param postCount The number of post-synaptic neurons.
+	 * @param outDegree The number of outgoing synapses for each pre-synaptic neuron.
+	 * @return The number of synapses created.
+	 * @throws IllegalArgumentException If the SynapseCollection is too small for the generated synapses.
+	 */
+	public int fixedOutDegree(int preCount, final int postCount, final int outDegree) {
+		checkCounts(preCount, postCount);
+		checkDegree(outDegree, postCount);
+		return generate(preCount, outDegree, true, outDegree, new RowGenerator() {
+			@Override
+			int generate(int row, Random random, int[] targets) {
+				return chooseRandomly(row, random, targets, outDegree, postCount);
+			}
+		});
+	}
+
+	/**
+	 * Connect each pair of pre- and post-synaptic neurons independently with a probability that decreases with the
+	 * distance between them according to a Gaussian profile: <em>p = maxProbability * exp(-d<sup>2</sup> / (2
+	 * sigma<sup>2</sup>))</em>, where <em>d</em> is the Euclidean distance between the neurons.
+	 *
+	 * @param prePositions The positions of the pre-synaptic neurons: the coordinates of neuron <em>i</em> are the
+	 *            elements [i * dimensions, (i + 1) * dimensions).
+	 * @param postPositions The positions of the post-synaptic neurons, in the same format as prePositions.
+	 * @param dimensions The number of coordinates of each position.
+	 * @param maxProbability The probability of a synapse between neurons at the same position.
+	 * @param sigma The width of the Gaussian profile.
+	 * @return The number of synapses created.
+	 * @throws IllegalArgumentException If the SynapseCollection is too small for the generated synapses.
+	 */
+	public int distanceDependent(final double[] prePositions, final double[] postPositions, final int dimensions, final double maxProbability, double sigma) {
+		if (dimensions < 1 || prePositions.length % dimensions != 0 || postPositions.length % dimensions != 0) {
+			throw new IllegalArgumentException("The length of the position arrays must be a multiple of the (positive) number of dimensions.");
+		}
+		if (maxProbability < 0 || maxProbability > 1) {
+			throw new IllegalArgumentException("The connection probability must be in the range [0, 1].");
+		}
+		if (sigma <= 0) {
+			throw new IllegalArgumentException("The width of the connection profile must be positive.");
+		}
+		final int postCount = postPositions.length / dimensions;
+		final double decayMult = -1 / (2 * sigma * sigma);
+		return generate(prePositions.length / dimensions, postCount, true, -1, new RowGenerator() {
+			@Override
+			int generate(int row, Random random, int[] targets) {
+				int count = 0;
+				for (int t = 0; t < postCount; t++) {
+					if (!autapses && t == row) {
+						continue;
+					}
+					double distanceSquared = 0;
+					for (int d = 0; d < dimensions; d++) {
+						double difference = prePositions[row * dimensions + d] - postPositions[t * dimensions + d];
+						distanceSquared += difference * difference;
+					}
+					if (random.nextDouble() < maxProbability * Math.exp(distanceSquared * decayMult)) {
+						targets[count++] = t;
+					}
+				}
+				return count;
+			}
+		});
+	}
+
+	/**
+	 * Returns the index of the synapse that the next synapse generated will be written to.
+	 */
+	public int getNextSynapse() {
+		return nextSynapse;
+	}
+
+	/**
+	 * Set the index of the synapse that the next synapse generated will be written to. Defaults to 0.
+	 */
+	public void setNextSynapse(int nextSynapse) {
+		this.nextSynapse = nextSynapse;
+	}
+
+	/**
+	 * Set the seed for the random number generators used to generate connectivity. Defaults to 0.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Set the range from which the efficacies of generated synapses are drawn uniformly. If min and max are equal all
+	 * synapses are given the same efficacy. Defaults to [1, 1].
+	 */
+	public void setEfficacyRange(double min, double max) {
+		if (max < min) {
+			throw new IllegalArgumentException("The maximum efficacy must not be less than the minimum efficacy.");
+		}
+		minEfficacy = min;
+		maxEfficacy = max;
+	}
+
+	/**
+	 * Set whether a synapse may connect a neuron to the neuron with the same index, which is only meaningful if the pre-
+	 * and post-synaptic neurons are in the same NeuronCollection. Defaults to true.
+	 */
+	public void setAutapses(boolean autapses) {
+		this.autapses = autapses;
+	}
+
+	/**
+	 * Set the pool used to generate connectivity in parallel, or null to generate it in the calling thread (the
+	 * default).
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Generates the synapses for each row (neuron), in two passes if the number of synapses for each row is not fixed:
+	 * the first counts the synapses of each row to determine where they are written, the second regenerates and writes
+	 * them.
+	 *
+	 * @param rowCount The number of rows.
+	 * @param maxRowLength The maximum number of synapses for a row.
+	 * @param rowIsPre true iff the rows are the pre-synaptic neurons and the targets the post-synaptic neurons.
+	 * @param fixedRowLength The number of synapses for every row, or -1 if it varies.
+	 * @param generator Generates the targets for a row.
+	 * @return The number of synapses created.
+	 */
+	private int generate(int rowCount, final int maxRowLength, final boolean rowIsPre, int fixedRowLength, final RowGenerator generator) {
+		final long[] rowOffsets = new long[rowCount + 1];
+		final long baseSeed = mix(seed + nextSynapse);
+		if (fixedRowLength >= 0) {
+			for (int row = 0; row <= rowCount; row++) {
+				rowOffsets[row] = (long) row * fixedRowLength;
+			}
+		} else {
+			forEachRowBlock(rowCount, new RowAction() {
+				@Override
+				void processRows(int start, int end) {
+					int[] targets = new int[maxRowLength];
+					for (int row = start; row < end; row++) {
+						rowOffsets[row + 1] = generator.generate(row, new Random(mix(baseSeed + row)), targets);
+					}
+				}
+			});
+			for (int row = 0; row < rowCount; row++) {
+				rowOffsets[row + 1] += rowOffsets[row];
+			}
+		}
+		long total = rowOffsets[rowCount];
+		if (nextSynapse + total > Math.min(synapses.getSynapseCount(), Integer.MAX_VALUE)) {
+			throw new IllegalArgumentException("The SynapseCollection has room for " + synapses.getSynapseCount() + " synapses but " + (nextSynapse + total) + " are required.");
+		}
+
+		final int first = nextSynapse;
+		final double efficacyRange = maxEfficacy - minEfficacy;
+		forEachRowBlock(rowCount, new RowAction() {
+			@Override
+			void processRows(int start, int end) {
+				int[] targets = new int[maxRowLength];
+				int[] rows = new int[maxRowLength];
+				double[] efficacies = new double[maxRowLength];
+				for (int row = start; row < end; row++) {
+					Random random = new Random(mix(baseSeed + row));
+					int count = generator.generate(row, random, targets);
+					for (int i = 0; i < count; i++) {
+						rows[i] = row;
+						efficacies[i] = efficacyRange == 0 ? minEfficacy : minEfficacy + random.nextDouble() * efficacyRange;
+					}
+					int synapseIndex = first + (int) rowOffsets[row];
+					if (rowIsPre) {
+						synapses.setPreAndPostNeurons(synapseIndex, rows, targets, 0, count);
+					} else {
+						synapses.setPreAndPostNeurons(synapseIndex, targets, rows, 0, count);
+					}
+					synapses.setEfficacies(synapseIndex, efficacies, 0, count);
+				}
+			}
+		});
+		nextSynapse += total;
+		return (int) total;
+	}
+
+	/**
+	 * Chooses the given number of target neurons uniformly at random, with replacement.
+	 */
+	private int chooseRandomly(int row, Random random, int[] targets, int count, int targetCount) {
+		for (int i = 0; i < count; i++) {
+			int target;
+			do {
+				target = random.nextInt(targetCount);
+			} while (!autapses && target == row);
+			targets[i] = target;
+		}
+		return count;
+	}
+
+	private void checkCounts(int preCount, int postCount) {
+		if (preCount < 0 || postCount < 0) {
+			throw new IllegalArgumentException("The number of neurons must be non-negative.");
+		}
+	}
+
+	private void checkDegree(int degree, int targetCount) {
+		if (degree < 0) {
+			throw new IllegalArgumentException("The number of synapses per neuron must be non-negative.");
+		}
+		if (degree > 0 && (targetCount == 0 || (!autapses && targetCount == 1))) {
+			throw new IllegalArgumentException("There are no neurons to connect to.");
+		}
+	}
+
+	/**
+	 * Invokes the given action for blocks of at most {@link #ROWS_PER_TASK} rows, in parallel if a pool has been set.
+	 */
+	private void forEachRowBlock(int rowCount, RowAction action) {
+		if (pool == null) {
+			action.processRows(0, rowCount);
+		} else {
+			pool.invoke(new RowTask(action, 0, rowCount));
+		}
+	}
+
+	/**
+	 * Scrambles the bits of the given value (the finaliser of the SplitMix64 generator), so that the generators for
+	 * consecutive neurons are seeded with unrelated values. Also used as a counter-based random number generator by
+	 * {@link com.ojcoleman.bain.synapse.rate.ProceduralFixedSynapseCollection}, including from its kernel.
+	 */
+	public static long mix(long z) {
+		z *= 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static abstract class RowGenerator {
+		/**
+		 * Writes the target neurons of the synapses for the given row to targets and returns the number written.
+		 */
+		abstract int generate(int row, Random random, int[] targets);
+	}
+
+	private static abstract class RowAction {
+		abstract void processRows(int start, int end);
+	}
+
+	private static class RowTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final RowAction action;
+		private final int start, end;
+
+		RowTask(RowAction action, int start, int end) {
+			this.action = action;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= ROWS_PER_TASK) {
+				action.processRows(start, end);
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new RowTask(action, start, middle), new RowTask(action, middle, end));
+			}
+		}
+	}
+}
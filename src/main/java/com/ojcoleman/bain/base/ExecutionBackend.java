@@ -0,0 +1,50 @@
+package com.ojcoleman.bain.base;
+
+import com.amd.aparapi.Kernel;
+import com.amd.aparapi.Range;
+
+/**
+ * <p>
+ * An ExecutionBackend executes the kernels of {@link ComponentCollection}s (and the other kernels used internally by
+ * the framework) over a range of components. The backend is selected per network with
+ * {@link com.ojcoleman.bain.NeuralNetwork#setExecutionBackend(ExecutionBackend)}, or per collection with
+ * {@link ComponentCollection#setExecutionBackend(ExecutionBackend)}.
+ * </p>
+ * <p>
+ * The default backend, {@link AparapiExecutionBackend}, executes kernels with Aparapi in the execution mode set on
+ * the kernel (see {@link Kernel#setExecutionMode(Kernel.EXECUTION_MODE)}). {@link ForkJoinExecutionBackend}
+ * executes kernels on the host with a {@link java.util.concurrent.ForkJoinPool}, independently of Aparapi's own
+ * thread pool.
+ * </p>
+ * 
+ * @author Oliver J. Coleman
+ */
+public interface ExecutionBackend {
+	/**
+	 * Execute the given kernel over the given range. On return all work items must have been processed.
+	 */
+	public void execute(Kernel kernel, Range range);
+
+	/**
+	 * Returns true iff the given kernel is executed on the host by this backend, such that it operates directly on
+	 * the Java arrays and explicit buffer transfers (put() and get()) are unnecessary.
+	 */
+	public boolean isHostResident(Kernel kernel);
+
+	/**
+	 * Returns true iff the given kernel is executed sequentially, in a single thread, by this backend.
+	 */
+	public boolean isSequential(Kernel kernel);
+
+	/**
+	 * Notify this backend that the fields of the given kernel have been modified, for example because arrays have been
+	 * reallocated, or that the kernel has been disposed. Backends that cache data derived from the kernel should
+	 * discard it.
+	 */
+	public void invalidate(Kernel kernel);
+
+	/**
+	 * Release any resources held by this backend.
+	 */
+	public void dispose();
+}
@@ -0,0 +1,173 @@
+package com.ojcoleman.bain.base;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.amd.aparapi.Kernel;
+import com.amd.aparapi.Range;
+
+/**
+ * <p>
+ * An {@link ExecutionBackend} that executes kernels on the host using a {@link ForkJoinPool}, without using Aparapi's
+ * code paths. The range of work items is split into chunks of (at most) a configurable size, which are processed by
+ * the workers of the pool; the chunk size should be chosen so that the data accessed for a chunk fits in the L2
+ * cache of a core (see {@link #DEFAULT_CHUNK_SIZE}). If the range is no larger than the chunk size then the kernel is
+ * executed in the calling thread. The pool, and so the worker threads, are reused across simulation steps, and a
+ * single ForkJoinExecutionBackend may be shared by any number of networks.
+ * </p>
+ * <p>
+ * Kernels that implement {@link RangeKernel} and support {@link RangeKernel#runRange(int, int)} process each chunk
+ * in a single invocation of runRange(). Other kernels identify the work item to process with
+ * {@link Kernel#getGlobalId()}, which reads the state of the kernel instance, so each chunk is processed by its own
+ * (shallow) clone of the kernel, in the same way as Aparapi's JTP mode. Clones share the arrays of the original
+ * kernel and are created for each execution, so the fields of a kernel may be modified freely between executions.
+ * </p>
+ * 
+ * @author Oliver J. Coleman
+ */
+public class ForkJoinExecutionBackend implements ExecutionBackend {
+	/**
+	 * The default maximum number of work items processed in one chunk. For a typical synapse model a chunk of this size
+	 * accesses a few hundred kilobytes of state, which fits in the L2 cache of most current CPUs.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	private final ForkJoinPool pool;
+	private final boolean ownsPool;
+	private final int chunkSize;
+
+	/**
+	 * Create a ForkJoinExecutionBackend with a new pool with parallelism equal to the number of available processors
+	 * and the default chunk size.
+	 */
+	public ForkJoinExecutionBackend() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a ForkJoinExecutionBackend with a new pool with the given parallelism and the default chunk size.
+	 * 
+	 * @param parallelism The number of worker threads.
+	 */
+	public ForkJoinExecutionBackend(int parallelism) {
+		this(parallelism, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Create a ForkJoinExecutionBackend with a new pool with the given parallelism and chunk size.
+	 * 
+	 * @param parallelism The number of worker threads.
+	 * @param chunkSize The maximum number of work items processed in one chunk.
+	 */
+	public ForkJoinExecutionBackend(int parallelism, int chunkSize) {
+		this(new ForkJoinPool(parallelism), chunkSize, true);
+	}
+
+	/**
+	 * Create a ForkJoinExecutionBackend using the given pool and chunk size. The pool is not shut down by
+	 * {@link #dispose()}.
+	 * 
+	 * @param pool The pool to execute kernels with.
+	 * @param chunkSize The maximum number of work items processed in one chunk.
+	 */
+	public ForkJoinExecutionBackend(ForkJoinPool pool, int chunkSize) {
+		this(pool, chunkSize, false);
+	}
+
+	private ForkJoinExecutionBackend(ForkJoinPool pool, int chunkSize, boolean ownsPool) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("The chunk size must be at least 1.");
+		}
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+		this.ownsPool = ownsPool;
+	}
+
+	/**
+	 * Returns the pool used to execute kernels.
+	 */
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Returns the maximum number of work items processed in one chunk.
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	@Override
+	public void execute(Kernel kernel, Range range) {
+		int count = range.getGlobalSize(0);
+		if (count <= chunkSize || pool.getParallelism() == 1) {
+			run(kernel, 0, count, false);
+		} else {
+			pool.invoke(new RangeTask(kernel, 0, count));
+		}
+	}
+
+	/**
+	 * Process the work items in the range [start, end) of the given kernel in the calling thread. If the kernel does
+	 * not support {@link RangeKernel#runRange(int, int)} and may be executing concurrently in other threads then
+	 * a clone of the kernel is used.
+	 */
+	private static void run(Kernel kernel, int start, int end, boolean concurrent) {
+		if (kernel instanceof RangeKernel && ((RangeKernel) kernel).isRunRangeSupported()) {
+			((RangeKernel) kernel).runRange(start, end);
+		} else {
+			Kernel instance = concurrent ? kernel.clone() : kernel;
+			Kernel.KernelState state = instance.getKernelState();
+			for (int id = start; id < end; id++) {
+				state.setGlobalId(0, id);
+				instance.run();
+			}
+		}
+	}
+
+	@Override
+	public boolean isHostResident(Kernel kernel) {
+		return true;
+	}
+
+	@Override
+	public boolean isSequential(Kernel kernel) {
+		return pool.getParallelism() == 1;
+	}
+
+	@Override
+	public void invalidate(Kernel kernel) {
+	}
+
+	/**
+	 * {@inheritDoc} If the pool was created by this backend then it is shut down.
+	 */
+	@Override
+	public void dispose() {
+		if (ownsPool) {
+			pool.shutdown();
+		}
+	}
+
+	private class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Kernel kernel;
+		private final int start, end;
+
+		RangeTask(Kernel kernel, int start, int end) {
+			this.kernel = kernel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= chunkSize) {
+				run(kernel, start, end, true);
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new RangeTask(kernel, start, middle), new RangeTask(kernel, middle, end));
+			}
+		}
+	}
+}
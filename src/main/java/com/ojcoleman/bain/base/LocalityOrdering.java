@@ -0,0 +1,135 @@
+package com.ojcoleman.bain.base;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Generates orderings of the neurons in a NeuronCollection that improve memory locality when simulating the synapses
+ * connecting them. In a network with random topology the synapses read the outputs of neurons scattered across the
+ * whole neuron array, which for large networks causes a cache miss for almost every synapse. If neurons that are
+ * connected to each other have nearby indexes, and the synapses are sorted by post- and pre-synaptic neuron (see
+ * {@link SynapseCollection#sortByPostAndPreNeuron()}), then the synapses onto each neuron read the outputs of a small
+ * number of nearby neurons.
+ * </p>
+ * <p>
+ * The orderings are applied with {@link NeuronCollection#reorderNeurons(int[])}, see
+ * {@link com.ojcoleman.bain.NeuralNetwork#reorderForLocality()}.
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public class LocalityOrdering {
+	/**
+	 * Generates a reverse Cuthill-McKee ordering of the neurons, which reduces the bandwidth of the connectivity
+	 * matrix: the neurons are ordered by a breadth-first traversal of the (undirected) graph formed by the synapses,
+	 * starting each connected component from a neuron of lowest degree and visiting the neighbours of each neuron in
+	 * order of increasing degree, and the resulting order is reversed. Neurons that are not connected to any other
+	 * neuron retain their relative order at the end of the populated range.
+	 *
+	 * @param neurons The neurons to order. Only the populated range (see {@link ComponentCollection#getSizePopulated()})
+	 *            is reordered.
+	 * @param synapses The synapses connecting the neurons: the pre- and post-synaptic neurons of each synapse must
+	 *            both be in the given collection of neurons. The total number of synapses must be less than 2^30.
+	 * @return An array of length {@link ComponentCollection#getSize()} suitable for
+	 *         {@link NeuronCollection#reorderNeurons(int[])}: the neuron at index <em>i</em> in the new order is the
+	 *         neuron at index <em>order[i]</em> in the current order.
+	 */
+	public static int[] reverseCuthillMcKee(NeuronCollection<?> neurons, List<? extends SynapseCollection<?>> synapses) {
+		int neuronCount = neurons.getSizePopulated();
+
+		// Build the adjacency lists of the undirected graph.
+		int[] offsets = new int[neuronCount + 1];
+		long synapseCount = 0;
+		for (SynapseCollection<?> collection : synapses) {
+			synapseCount += collection.getPopulatedSynapseCount();
+		}
+		if (synapseCount >= 1 << 30) {
+			throw new IllegalArgumentException("Too many synapses to generate an ordering: " + synapseCount);
+		}
+		for (SynapseCollection<?> collection : synapses) {
+			for (int s = 0; s < collection.getPopulatedSynapseCount(); s++) {
+				int pre = neurons.getNeuronIndex(collection.getPreNeuron(s)), post = neurons.getNeuronIndex(collection.getPostNeuron(s));
+				if (pre != post && pre < neuronCount && post < neuronCount) {
+					offsets[pre + 1]++;
+					offsets[post + 1]++;
+				}
+			}
+		}
+		for (int n = 0; n < neuronCount; n++) {
+			offsets[n + 1] += offsets[n];
+		}
+		int[] adjacent = new int[offsets[neuronCount]];
+		int[] next = Arrays.copyOf(offsets, neuronCount);
+		for (SynapseCollection<?> collection : synapses) {
+			for (int s = 0; s < collection.getPopulatedSynapseCount(); s++) {
+				int pre = neurons.getNeuronIndex(collection.getPreNeuron(s)), post = neurons.getNeuronIndex(collection.getPostNeuron(s));
+				if (pre != post && pre < neuronCount && post < neuronCount) {
+					adjacent[next[pre]++] = post;
+					adjacent[next[post]++] = pre;
+				}
+			}
+		}
+
+		// Neurons sorted by degree (a stable counting sort), from which the starting neuron of each connected
+		// component is selected.
+		int maxDegree = 0;
+		for (int n = 0; n < neuronCount; n++) {
+			maxDegree = Math.max(maxDegree, offsets[n + 1] - offsets[n]);
+		}
+		int[] degreeOffsets = new int[maxDegree + 2];
+		for (int n = 0; n < neuronCount; n++) {
+			degreeOffsets[offsets[n + 1] - offsets[n] + 1]++;
+		}
+		for (int d = 0; d <= maxDegree; d++) {
+			degreeOffsets[d + 1] += degreeOffsets[d];
+		}
+		int[] byDegree = new int[neuronCount];
+		for (int n = 0; n < neuronCount; n++) {
+			byDegree[degreeOffsets[offsets[n + 1] - offsets[n]]++] = n;
+		}
+
+		// Breadth-first traversal, using the order array as the queue. The neighbours of each neuron are sorted by
+		// degree by sorting keys combining the degree and neuron index.
+		int[] order = new int[neurons.getSize()];
+		boolean[] visited = new boolean[neuronCount];
+		long[] keys = new long[maxDegree];
+		int head = 0, tail = 0;
+		int isolatedCount = degreeOffsets[0];
+		for (int start = isolatedCount; start < neuronCount; start++) {
+			int root = byDegree[start];
+			if (visited[root]) {
+				continue;
+			}
+			visited[root] = true;
+			order[tail++] = root;
+			while (head < tail) {
+				int n = order[head++];
+				int keyCount = 0;
+				for (int i = offsets[n]; i < offsets[n + 1]; i++) {
+					int m = adjacent[i];
+					if (!visited[m]) {
+						visited[m] = true;
+						keys[keyCount++] = ((long) (offsets[m + 1] - offsets[m]) << 32) | m;
+					}
+				}
+				Arrays.sort(keys, 0, keyCount);
+				for (int k = 0; k < keyCount; k++) {
+					order[tail++] = (int) keys[k];
+				}
+			}
+		}
+		for (int i = 0, j = tail - 1; i < j; i++, j--) {
+			int t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+		for (int i = 0; i < isolatedCount; i++) {
+			order[tail++] = byDegree[i];
+		}
+		for (int n = neuronCount; n < order.length; n++) {
+			order[n] = n;
+		}
+		return order;
+	}
+}
@@ -0,0 +1,274 @@
+package com.ojcoleman.bain.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import com.ojcoleman.bain.NeuralNetwork;
+
+/**
+ * <p>
+ * Saves the definition of a {@link NeuralNetwork} (its populations, projections, configurations and connectivity) to
+ * a compact binary file, and creates a network from such a file, so that a large network need only be wired up once.
+ * Unlike a {@link Checkpoint}, a definition contains only what is needed to construct the network in its initial
+ * state: for each population its class, size, configurations, the configuration of each neuron and the neuron IDs
+ * (see {@link NeuronCollection#getNeuronIndex(int)}), and for each projection its class, pre- and post-synaptic
+ * populations, configurations, the pre- and post-synaptic neuron indexes, initial efficacy, configuration and delay
+ * of each synapse, and the synapse IDs (see {@link SynapseCollection#getSynapseIndex(int)}). Any further per-component
+ * arrays a collection needs to define its initial state, for example the bias of each neuron, are saved too (see
+ * {@link ComponentCollection#getDefinitionFieldNames()}). The created network is reset.
+ * </p>
+ * <p>
+ * The per-component arrays are stored as contiguous blocks of little-endian values, which are read from memory-mapped
+ * regions of the file (see {@link BinaryInput}) directly into the arrays of the newly created collections in bulk,
+ * without intermediate copies or per-element parsing. Collections are created with their public constructor taking
+ * the size as the only argument. Only the parameters of the configurations given by
+ * {@link ComponentConfiguration#getParameterNames()} are saved. Collections that do not support checkpoints (see
+ * {@link ComponentCollection#getCheckpointFieldNames()}), for example those that store their connectivity off-heap,
+ * are not supported.
+ * </p>
+ * <p>
+ * All values are little-endian. The file consists of the magic number {@link #MAGIC} and the format version
+ * {@link #VERSION} (ints), the time resolution (int), and then the populations followed by the projections, each
+ * preceded by the number of them (int). Strings are written as the length in bytes (int) followed by the UTF-8
+ * encoding. For each population the following are written: the name and class name (strings), the size and populated
+ * size (ints), the configurations, the configuration index of each neuron (size ints), the IDs, and the definition
+ * fields. For each projection the following are written: the name, class name and the names of the pre- and
+ * post-synaptic populations (strings), the size and populated size (ints), the configurations, the pre-synaptic neuron
+ * indexes (size ints), the post-synaptic neuron indexes (size ints), the initial efficacies (size doubles), the
+ * configuration indexes (size ints), the maximum delay (int), which is -1 if delays are not used, otherwise followed by
+ * the delays (size ints), the IDs, and the definition fields. The configurations are written as the number of them
+ * (int) followed by, for each, the class name and name (strings) and the parameter values (a byte type code, the number
+ * of values as an int, and the values as doubles). The IDs are written as a byte, which is 0 if the components have not
+ * been reordered (so the ID of each component is its index), otherwise 1 followed by the ID of the component at each
+ * index (size ints). The definition fields are written as the number of them (int) followed by, for each, the field
+ * name (string) and the array (as written for a {@link Checkpoint}).
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public class NetworkDefinition {
+	/**
+	 * The magic number at the start of network definition files ("BNET").
+	 */
+	public static final int MAGIC = 0x424E4554;
+
+	/**
+	 * The version of the file format written by this class.
+	 */
+	public static final int VERSION = 1;
+
+	private NetworkDefinition() {
+	}
+
+	/**
+	 * Saves the definition of the given network to the given file, replacing the contents of the file if it exists.
+	 * The initial efficacies of the synapses are saved (see {@link SynapseCollection#getInitialEfficacy(int)}).
+	 *
+	 * @throws UnsupportedOperationException If a collection in the network is not supported.
+	 * @throws IOException If the file can not be written.
+	 */
+	public static void save(NeuralNetwork network, File file) throws IOException {
+		checkSupported(network.getPopulations());
+		checkSupported(network.getProjections());
+		BinaryOutput out = new BinaryOutput(file);
+		try {
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(network.getTimeResolution());
+
+			out.putInt(network.getPopulations().size());
+			for (Map.Entry<String, NeuronCollection<? extends ComponentConfiguration>> entry : network.getPopulations().entrySet()) {
+				NeuronCollection<? extends ComponentConfiguration> population = entry.getValue();
+				out.putString(entry.getKey());
+				out.putString(population.getClass().getName());
+				out.putInt(population.size);
+				out.putInt(population.getSizePopulated());
+				Checkpoint.writeConfigurations(out, population);
+				out.putArrayData(population.componentConfigIndexes);
+				writeIDs(out, population.neuronIDs);
+				writeDefinitionFields(out, population);
+			}
+
+			out.putInt(network.getProjections().size());
+			for (Map.Entry<String, SynapseCollection<? extends ComponentConfiguration>> entry : network.getProjections().entrySet()) {
+				SynapseCollection<? extends ComponentConfiguration> projection = entry.getValue();
+				out.putString(entry.getKey());
+				out.putString(projection.getClass().getName());
+				out.putString(getPopulationName(network, projection.getPreNeurons()));
+				out.putString(getPopulationName(network, projection.getPostNeurons()));
+				out.putInt(projection.size);
+				out.putInt(projection.getSizePopulated());
+				Checkpoint.writeConfigurations(out, projection);
+				out.putArrayData(projection.preIndexes);
+				out.putArrayData(projection.postIndexes);
+				out.putArrayData(getInitialEfficacies(projection));
+				out.putArrayData(projection.componentConfigIndexes);
+				if (projection.useDelays[0]) {
+					out.putInt(projection.maxDelay);
+					out.putArrayData(projection.delays);
+				} else {
+					out.putInt(-1);
+				}
+				writeIDs(out, projection.synapseIDs);
+				writeDefinitionFields(out, projection);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Creates a network from the definition in the given file. The network is reset.
+	 *
+	 * @throws IOException If the file can not be read, is not a network definition file, or a collection can not be
+	 *             created.
+	 */
+	public static NeuralNetwork load(File file) throws IOException {
+		BinaryInput in = new BinaryInput(file);
+		try {
+			if (in.getInt() != MAGIC) {
+				throw new IOException(file + " is not a network definition file.");
+			}
+			int version = in.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported network definition file version " + version + ".");
+			}
+			NeuralNetwork network = new NeuralNetwork(in.getInt());
+
+			int populationCount = in.getInt();
+			for (int p = 0; p < populationCount; p++) {
+				String name = in.getString();
+				String className = in.getString();
+				int size = in.getInt();
+				int sizePopulated = in.getInt();
+				NeuronCollection<?> population = (NeuronCollection<?>) createCollection(className, size);
+				Checkpoint.readConfigurations(in, population);
+				in.getArrayData(population.componentConfigIndexes);
+				population.neuronIDs = readIDs(in, size);
+				population.neuronIndexes = population.neuronIDs != null ? invert(population.neuronIDs) : null;
+				readDefinitionFields(in, population);
+				population.setSizePopulated(sizePopulated);
+				network.addPopulation(name, population);
+			}
+
+			int projectionCount = in.getInt();
+			for (int p = 0; p < projectionCount; p++) {
+				String name = in.getString();
+				String className = in.getString();
+				String prePopulation = in.getString();
+				String postPopulation = in.getString();
+				int size = in.getInt();
+				int sizePopulated = in.getInt();
+				SynapseCollection<?> projection = (SynapseCollection<?>) createCollection(className, size);
+				Checkpoint.readConfigurations(in, projection);
+				in.getArrayData(projection.preIndexes);
+				in.getArrayData(projection.postIndexes);
+				in.getArrayData(projection.initialEfficacy);
+				in.getArrayData(projection.componentConfigIndexes);
+				int maxDelay = in.getInt();
+				if (maxDelay >= 0) {
+					projection.delays = new int[size];
+					in.getArrayData(projection.delays);
+					projection.useDelays[0] = true;
+					projection.maxDelay = maxDelay;
+				}
+				projection.synapseIDs = readIDs(in, size);
+				projection.synapseIndexes = projection.synapseIDs != null ? invert(projection.synapseIDs) : null;
+				readDefinitionFields(in, projection);
+				projection.setSizePopulated(sizePopulated);
+				// Initialises the projection, transferring the arrays to the execution hardware, and resets it,
+				// which sets the efficacies to the initial efficacies.
+				network.addProjection(name, projection, prePopulation, postPopulation);
+			}
+			network.reset();
+			return network;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeIDs(BinaryOutput out, int[] ids) throws IOException {
+		out.putBoolean(ids != null);
+		if (ids != null) {
+			out.putArrayData(ids);
+		}
+	}
+
+	private static int[] readIDs(BinaryInput in, int size) throws IOException {
+		if (!in.getBoolean()) {
+			return null;
+		}
+		int[] ids = new int[size];
+		in.getArrayData(ids);
+		return ids;
+	}
+
+	private static void writeDefinitionFields(BinaryOutput out, ComponentCollection collection) throws IOException {
+		String[] names = collection.getDefinitionFieldNames();
+		out.putInt(names.length);
+		for (String name : names) {
+			out.putString(name);
+			out.putValue(collection.getFieldValue(name));
+		}
+	}
+
+	/**
+	 * Reads the definition fields into the given collection. The arrays are transferred to the execution hardware when
+	 * the collection is initialised as it is added to the network.
+	 */
+	private static void readDefinitionFields(BinaryInput in, ComponentCollection collection) throws IOException {
+		int count = in.getInt();
+		for (int f = 0; f < count; f++) {
+			collection.setFieldValue(in.getString(), in.getValue());
+		}
+	}
+
+	private static int[] invert(int[] ids) {
+		int[] indexes = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			indexes[ids[i]] = i;
+		}
+		return indexes;
+	}
+
+	private static void checkSupported(Map<String, ? extends ComponentCollection> collections) {
+		for (Map.Entry<String, ? extends ComponentCollection> entry : collections.entrySet()) {
+			if (entry.getValue().getCheckpointFieldNames() == null) {
+				throw new UnsupportedOperationException(entry.getValue().getClass().getName() + " (" + entry.getKey() + ") can not be saved in a network definition.");
+			}
+		}
+	}
+
+	/**
+	 * Returns the initial efficacies of the given projection in double precision, converting them if the projection is
+	 * in single precision mode (see {@link SynapseCollection#initialEfficacySingle}).
+	 */
+	private static double[] getInitialEfficacies(SynapseCollection<?> projection) {
+		if (!projection.isSinglePrecision()) {
+			return projection.initialEfficacy;
+		}
+		double[] initialEfficacy = new double[projection.size];
+		for (int s = 0; s < initialEfficacy.length; s++) {
+			initialEfficacy[s] = projection.initialEfficacySingle[s];
+		}
+		return initialEfficacy;
+	}
+
+	private static String getPopulationName(NeuralNetwork network, NeuronCollection<?> population) {
+		for (Map.Entry<String, NeuronCollection<? extends ComponentConfiguration>> entry : network.getPopulations().entrySet()) {
+			if (entry.getValue() == population) {
+				return entry.getKey();
+			}
+		}
+		throw new IllegalStateException("A projection references neurons that are not a population of the network.");
+	}
+
+	private static ComponentCollection createCollection(String className, int size) throws IOException {
+		try {
+			return (ComponentCollection) Class.forName(className).getConstructor(int.class).newInstance(size);
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("Can not create a collection of class " + className + ".", e);
+		}
+	}
+}
@@ -1,19 +1,32 @@
 package com.ojcoleman.bain.base;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * <p>
  * Base class for all collections of neurons. Sub-classes must override the methods {@link #run()}, {@link #createCollection(int size)}
- * {@link #getConfigSingleton()}. Sub-classes will need to override the methods {@link #init()},{@link #reset()} and {@link #ensureStateVariablesAreFresh()} if
- * they use custom state variables. Sub-classes may wish/need to override the methods: {@link #step()}, {@link #getStateVariableNames()} and
- * {@link #getStateVariableValues(int)}.
+ * {@link #getConfigSingleton()}, and should override {@link #runRange(int, int)}. Sub-classes will need to override the methods {@link #init()},{@link #reset()} and {@link #ensureStateVariablesAreFresh()} if
+ * they use custom state variables. Sub-classes may wish/need to override the methods: {@link #step()}, {@link #getSharedStateVariableNames()} and
+ * {@link #copyStateVariableValues(int, double[])}.
  * </p>
  * <p>
  * There is no explicit demarcation of input and output neurons. To provide input to the network the output values of neurons should be set to the
  * input values required (and the remaining output values not modified), either via {@link #getOutputs()} and {@link #setOutputsModified()} or
  * {@link #setOutput(int, double)}. To retrieve output values the methods {@link #getOutputs()} or {@link #getOutput(int)} should be used.
  * </p>
+ * <p>
+ * A NeuronCollection may retain a history of the outputs and spikings of its neurons for a number of simulation steps (see
+ * {@link #setMinimumHistoryLength(int)}), in circular buffers, which is used to implement transmission delays for synapses
+ * (see {@link SynapseCollection#setDelay(int, int)}). Recording the history costs work proportional to the number of neurons
+ * rather than the number of synapses.
+ * </p>
+ * <p>
+ * The indexes of the neurons that spiked in the last step are also available as a compact list (see
+ * {@link #getSpikedNeurons()}), so that synapses and other consumers of spikes can process them in time proportional to
+ * the number of spikes rather than the number of neurons.
+ * </p>
  * 
  * @author Oliver J. Coleman
  */
@@ -33,6 +46,23 @@ public abstract class NeuronCollection<C extends NeuronConfiguration> extends Co
 	 */
 	protected boolean[] spikings;
 
+	/**
+	 * The spikings of the neurons packed into bits: bit <em>n</em> % 64 of element <em>n</em> / 64 is set iff neuron
+	 * <em>n</em> spiked in the last step. Generated from {@link #spikings} when first requested after each step, or
+	 * at the end of each step if the spike onsets are required (see {@link #packSpikes()}), as the kernel can not
+	 * write individual bits concurrently.
+	 */
+	protected long[] spikeBits = new long[1];
+
+	/**
+	 * The spike onsets of the neurons packed into bits, with the same layout as {@link #spikeBits}: a bit is set iff
+	 * the neuron spiked in the last step but not in the step before, so that a spike lasting several steps is only
+	 * counted once. Synapse models that respond to spike onsets should use these rather than tracking the previous
+	 * spiking of each synapse (see {@link SynapseCollection#isPostSpikeOnset(int)}). The onsets are only determined
+	 * in every step once they have been requested (see {@link #getSpikeOnsetBits()}).
+	 */
+	protected long[] spikeOnsetBits = new long[1];
+
 	/**
 	 * The current input values of the neurons. Input comprises external input and input via synapses.
 	 */
@@ -44,6 +74,82 @@ public abstract class NeuronCollection<C extends NeuronConfiguration> extends Co
 	 */
 	protected boolean inputsModified;
 
+	/**
+	 * The number of simulation steps for which the outputs and spikings are retained in {@link #outputHistory} and
+	 * {@link #spikingHistory}, or 0 if no history is retained.
+	 */
+	protected int historyLength;
+
+	/**
+	 * Circular buffer containing the output of each neuron for the last {@link #historyLength} steps: the outputs for
+	 * a step occupy the slot of {@link #getSize()} elements starting at slot index * size. The slot for the outputs
+	 * used by synapses in the previous step is given by element 0 of {@link #historyHead}. A single element array if no
+	 * history is retained.
+	 */
+	protected double[] outputHistory = new double[1];
+
+	/**
+	 * Circular buffer containing the spiking of each neuron for the last {@link #historyLength} steps, with the same
+	 * layout as {@link #outputHistory}.
+	 */
+	protected boolean[] spikingHistory = new boolean[1];
+
+	/**
+	 * Element 0 holds the slot in {@link #outputHistory} and {@link #spikingHistory} most recently written to.
+	 */
+	protected int[] historyHead = new int[1];
+
+	/**
+	 * The number of neurons for which the spikings are scanned by each task when generating {@link #spikedNeurons} in
+	 * parallel. Populations of fewer than twice this number of neurons are scanned in a single pass.
+	 */
+	protected static final int SPIKE_COMPACTION_BLOCK_SIZE = 16384;
+
+	/**
+	 * The indexes of the neurons that spiked in the last step, in ascending order, in the first
+	 * {@link #spikedNeuronCount} elements. Generated from {@link #spikings} when first requested after each step, see
+	 * {@link #getSpikedNeurons()}.
+	 */
+	protected int[] spikedNeurons;
+
+	/**
+	 * The number of neurons that spiked in the last step.
+	 */
+	protected int spikedNeuronCount;
+
+	private boolean spikedNeuronsStale = true;
+	private final Object spikedNeuronsLock = new Object();
+
+	/**
+	 * True iff {@link #spikeBits} and {@link #spikeOnsetBits} have not been generated since the last step.
+	 */
+	private boolean spikeBitsStale;
+
+	/**
+	 * True iff the spike onsets have been requested, in which case the spikings are packed at the end of every step.
+	 */
+	private boolean spikeOnsetsRequired;
+
+	/**
+	 * Incremented whenever the values in {@link #spikeOnsetBits} change, see {@link #getSpikeOnsetChangeCount()}.
+	 */
+	private long spikeOnsetChangeCount;
+
+	/**
+	 * The ID of the neuron at each index, or null if the neurons have not been reordered (see
+	 * {@link #reorderNeurons(int[])}), in which case the ID of each neuron is its index. The methods that get or set
+	 * the values for a single neuron, and the methods of {@link SynapseCollection} that get or set the pre- and
+	 * post-synaptic neurons of synapses, take and return neuron IDs, while the arrays of values for all neurons (for
+	 * example {@link #getOutputs()}) and the kernels are indexed by neuron index.
+	 */
+	protected int[] neuronIDs;
+
+	/**
+	 * The index of the neuron with each ID, the inverse of {@link #neuronIDs}, or null if the neurons have not been
+	 * reordered.
+	 */
+	protected int[] neuronIndexes;
+
 	@Override
 	public void init() {
 		super.init();
@@ -52,6 +158,28 @@ public abstract class NeuronCollection<C extends NeuronConfiguration> extends Co
 			spikings = new boolean[size];
 			inputs = new double[size];
 		}
+		if (historyLength > 0 && outputHistory.length != historyLength * size) {
+			outputHistory = new double[historyLength * size];
+			spikingHistory = new boolean[historyLength * size];
+			historyHead[0] = 0;
+		}
+		int wordCount = (size + 63) >>> 6;
+		if (spikeBits.length != wordCount) {
+			spikeBits = Arrays.copyOf(spikeBits, wordCount);
+			spikeOnsetBits = Arrays.copyOf(spikeOnsetBits, wordCount);
+			spikeOnsetChangeCount++;
+		}
+		if (neuronIDs != null && neuronIDs.length < size) {
+			// Neurons added since the neurons were reordered have the same ID as their index.
+			int previousSize = neuronIDs.length;
+			neuronIDs = Arrays.copyOf(neuronIDs, size);
+			neuronIndexes = Arrays.copyOf(neuronIndexes, size);
+			for (int n = previousSize; n < size; n++) {
+				neuronIDs[n] = n;
+				neuronIndexes[n] = n;
+			}
+		}
+		spikedNeuronsStale = true;
 		put(outputs); // In case explicit mode is being used for the Aparapi kernel.
 		put(spikings);
 		put(inputs);
@@ -61,11 +189,11 @@ public abstract class NeuronCollection<C extends NeuronConfiguration> extends Co
 	}
 
 	/**
-	 * Returns true iff the specified spiked in the last time step.
+	 * Returns true iff the neuron with the given ID (see {@link #getNeuronIndex(int)}) spiked in the last time step.
 	 */
-	public boolean spiked(int index) {
+	public boolean spiked(int neuronID) {
 		ensureOutputsAreFresh();
-		return spikings[index];
+		return spikings[getNeuronIndex(neuronID)];
 	}
 
 	/**
@@ -77,10 +205,225 @@ public abstract class NeuronCollection<C extends NeuronConfiguration> extends Co
 		return spikings;
 	}
 
+	/**
+	 * Returns the spikings of the neurons packed into bits, see {@link #spikeBits}. The values of the array should not
+	 * be altered, and may become stale if the step() method is invoked subsequently.
+	 */
+	public long[] getSpikeBits() {
+		ensureSpikeBitsAreFresh();
+		return spikeBits;
+	}
+
+	/**
+	 * Returns the spike onsets of the neurons packed into bits, see {@link #spikeOnsetBits}. The values of the array
+	 * should not be altered, and may become stale if the step() method is invoked subsequently. After the first
+	 * invocation of this method or {@link #isSpikeOnset(int)} the spikings are packed at the end of every step so that
+	 * the onsets can be determined; before that the onsets are determined relative to the spikings of the step in
+	 * which they were last packed.
+	 */
+	public long[] getSpikeOnsetBits() {
+		spikeOnsetsRequired = true;
+		ensureSpikeBitsAreFresh();
+		return spikeOnsetBits;
+	}
+
+	/**
+	 * Returns true iff the neuron with the given ID (see {@link #getNeuronIndex(int)}) spiked in the last step but not
+	 * in the step before, see {@link #getSpikeOnsetBits()}.
+	 */
+	public boolean isSpikeOnset(int neuronID) {
+		long[] onsets = getSpikeOnsetBits();
+		int index = getNeuronIndex(neuronID);
+		return (onsets[index >>> 6] & (1L << (index & 63))) != 0;
+	}
+
+	/**
+	 * Returns a count that is incremented whenever the spike onsets (see {@link #getSpikeOnsetBits()}) change, so that
+	 * consumers need only transfer them to the execution hardware when they have changed.
+	 */
+	public long getSpikeOnsetChangeCount() {
+		return spikeOnsetChangeCount;
+	}
+
+	/**
+	 * Ensures that the spikings of the last step have been packed, see {@link #packSpikes()}. This method may be
+	 * invoked concurrently from multiple threads.
+	 */
+	protected void ensureSpikeBitsAreFresh() {
+		synchronized (spikedNeuronsLock) {
+			if (spikeBitsStale) {
+				packSpikes();
+				spikeBitsStale = false;
+			}
+		}
+	}
+
+	/**
+	 * Packs the spikings of the neurons into {@link #spikeBits} and determines the spike onsets, a word of 64 neurons
+	 * at a time. Invoked when the packed spikings are first requested after a step, or at the end of
+	 * {@link #step()} if the spike onsets are required (see {@link #getSpikeOnsetBits()}).
+	 */
+	protected void packSpikes() {
+		ensureOutputsAreFresh();
+		int neuronCount = getSizePopulated();
+		int wordCount = (neuronCount + 63) >>> 6;
+		boolean onsetsChanged = false;
+		for (int w = 0; w < wordCount; w++) {
+			long word = 0;
+			int start = w << 6;
+			int end = Math.min(start + 64, neuronCount);
+			for (int n = start; n < end; n++) {
+				if (spikings[n]) {
+					word |= 1L << (n - start);
+				}
+			}
+			long onsets = word & ~spikeBits[w];
+			if (onsets != spikeOnsetBits[w]) {
+				spikeOnsetBits[w] = onsets;
+				onsetsChanged = true;
+			}
+			spikeBits[w] = word;
+		}
+		if (onsetsChanged) {
+			spikeOnsetChangeCount++;
+		}
+	}
+
+	/**
+	 * Returns an array containing the indexes of the neurons that spiked in the last step, in ascending order, in the
+	 * first {@link #getSpikedNeuronCount()} elements. The list is generated from the spikings (see
+	 * {@link #getSpikings()}) with a prefix sum over blocks of neurons, in parallel if the network has a step pool (see
+	 * {@link com.ojcoleman.bain.NeuralNetwork#setStepPool(ForkJoinPool)}), the first time it is requested after each
+	 * step, so the cost is shared by all synapse collections and other consumers of the spikes of this collection. The
+	 * values of the array should not be altered, and may become stale if the step() method is invoked subsequently.
+	 * This method may be invoked concurrently from multiple threads.
+	 */
+	public int[] getSpikedNeurons() {
+		ensureSpikedNeuronsAreFresh();
+		return spikedNeurons;
+	}
+
+	/**
+	 * Returns the number of neurons that spiked in the last step, see {@link #getSpikedNeurons()}.
+	 */
+	public int getSpikedNeuronCount() {
+		ensureSpikedNeuronsAreFresh();
+		return spikedNeuronCount;
+	}
+
+	private void ensureSpikedNeuronsAreFresh() {
+		synchronized (spikedNeuronsLock) {
+			if (!spikedNeuronsStale) {
+				return;
+			}
+			ensureSpikeBitsAreFresh();
+			if (spikedNeurons == null || spikedNeurons.length != size) {
+				spikedNeurons = new int[size];
+			}
+			int neuronCount = getSizePopulated();
+			ForkJoinPool pool = network != null ? network.getStepPool() : null;
+			if (pool == null || neuronCount < SPIKE_COMPACTION_BLOCK_SIZE * 2) {
+				spikedNeuronCount = compactSpikes(0, neuronCount, 0);
+			} else {
+				// Count the spikes in each block, then compute the offset of each block in the list with an exclusive
+				// prefix sum, then write the indexes of the spiking neurons of each block at its offset.
+				int blockCount = (neuronCount + SPIKE_COMPACTION_BLOCK_SIZE - 1) / SPIKE_COMPACTION_BLOCK_SIZE;
+				int[] blockOffsets = new int[blockCount + 1];
+				pool.invoke(new SpikeCompactionTask(blockOffsets, 0, blockCount, false));
+				for (int b = 0; b < blockCount; b++) {
+					blockOffsets[b + 1] += blockOffsets[b];
+				}
+				pool.invoke(new SpikeCompactionTask(blockOffsets, 0, blockCount, true));
+				spikedNeuronCount = blockOffsets[blockCount];
+			}
+			spikedNeuronsStale = false;
+		}
+	}
+
+	/**
+	 * Writes the indexes of the neurons in the range [start, end) that spiked in the last step to
+	 * {@link #spikedNeurons}, starting at the given offset, and returns the number written. The start of the range
+	 * must be a multiple of 64.
+	 */
+	private int compactSpikes(int start, int end, int offset) {
+		// Skip words without spikes, and find the spikes in each word from the set bits.
+		int i = offset;
+		for (int w = start >>> 6; w < (end + 63) >>> 6; w++) {
+			long word = spikeBits[w];
+			while (word != 0) {
+				spikedNeurons[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+		}
+		return i - offset;
+	}
+
+	private int countSpikes(int start, int end) {
+		int count = 0;
+		for (int w = start >>> 6; w < (end + 63) >>> 6; w++) {
+			count += Long.bitCount(spikeBits[w]);
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the spikes in (or, if scatter is true, compacts the spikes of) a range of blocks of neurons. The count for
+	 * block <em>b</em> is written to element <em>b + 1</em> of the block offsets, so that the offsets may then be
+	 * generated in place with an inclusive prefix sum.
+	 */
+	private class SpikeCompactionTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] blockOffsets;
+		private final int startBlock, endBlock;
+		private final boolean scatter;
+
+		SpikeCompactionTask(int[] blockOffsets, int startBlock, int endBlock, boolean scatter) {
+			this.blockOffsets = blockOffsets;
+			this.startBlock = startBlock;
+			this.endBlock = endBlock;
+			this.scatter = scatter;
+		}
+
+		@Override
+		protected void compute() {
+			if (endBlock - startBlock > 1) {
+				int middle = (startBlock + endBlock) >>> 1;
+				invokeAll(new SpikeCompactionTask(blockOffsets, startBlock, middle, scatter), new SpikeCompactionTask(blockOffsets, middle, endBlock, scatter));
+				return;
+			}
+			int start = startBlock * SPIKE_COMPACTION_BLOCK_SIZE;
+			int end = Math.min(start + SPIKE_COMPACTION_BLOCK_SIZE, getSizePopulated());
+			if (scatter) {
+				compactSpikes(start, end, blockOffsets[startBlock]);
+			} else {
+				blockOffsets[startBlock + 1] = countSpikes(start, end);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc} The neuron is specified by its ID, see {@link #getNeuronIndex(int)}.
+	 */
 	@Override
-	public double getInput(int index) {
+	public double getOutput(int neuronID) {
+		return super.getOutput(getNeuronIndex(neuronID));
+	}
+
+	/**
+	 * {@inheritDoc} The neuron is specified by its ID, see {@link #getNeuronIndex(int)}.
+	 */
+	@Override
+	public void setOutput(int neuronID, double newOutput) {
+		super.setOutput(getNeuronIndex(neuronID), newOutput);
+	}
+
+	/**
+	 * {@inheritDoc} The neuron is specified by its ID, see {@link #getNeuronIndex(int)}.
+	 */
+	@Override
+	public double getInput(int neuronID) {
 		ensureInputsAreFresh();
-		return inputs[index];
+		return inputs[getNeuronIndex(neuronID)];
 	}
 
 	@Override
@@ -89,10 +432,13 @@ public abstract class NeuronCollection<C extends NeuronConfiguration> extends Co
 		return inputs;
 	}
 
+	/**
+	 * {@inheritDoc} The neuron is specified by its ID, see {@link #getNeuronIndex(int)}.
+	 */
 	@Override
-	public void addInput(int index, double input) {
+	public void addInput(int neuronID, double input) {
 		ensureInputsAreFresh();
-		inputs[index] += input;
+		inputs[getNeuronIndex(neuronID)] += input;
 		inputsModified = true;
 	}
 
@@ -102,16 +448,28 @@ public abstract class NeuronCollection<C extends NeuronConfiguration> extends Co
 	 * method before setting the values to the correct value and calling put([modified array]) with the relevant array.
 	 */
 	@Override
-	public void reset() {
-		super.reset();
-		Arrays.fill(spikings, false);
-		Arrays.fill(inputs, 0);
+	public void reset(int start, int end) {
+		super.reset(start, end);
+		Arrays.fill(spikings, start, end, false);
+		Arrays.fill(inputs, start, end, 0);
+		for (int slot = 0; slot < historyLength; slot++) {
+			Arrays.fill(outputHistory, slot * size + start, slot * size + end, 0);
+			Arrays.fill(spikingHistory, slot * size + start, slot * size + end, false);
+		}
+		for (int n = start; n < end; n++) {
+			spikeBits[n >>> 6] &= ~(1L << (n & 63));
+			spikeOnsetBits[n >>> 6] &= ~(1L << (n & 63));
+		}
+		spikeOnsetChangeCount++;
 		inputsStale = false;
 		inputsModified = true;
+		spikedNeuronsStale = true;
 	}
 
 	@Override
 	public void step() {
+		recordHistory();
+
 		// At the moment Aparapi doesn't allow sharing buffers between kernels
 		// or allow kernels with multiple entry points in a way that is
 		// compatible with a framework such as this. Thus we must ensure that
@@ -124,8 +482,14 @@ public abstract class NeuronCollection<C extends NeuronConfiguration> extends Co
 
 		super.step();
 
-		outputsStale = true;
-		inputsStale = true;
+		outputsStale = !hostResident;
+		inputsStale = !hostResident;
+		spikeBitsStale = true;
+		spikedNeuronsStale = true;
+		if (spikeOnsetsRequired) {
+			// The onsets are determined relative to the spikings of the previous step.
+			ensureSpikeBitsAreFresh();
+		}
 	}
 
 	/**
@@ -142,6 +506,179 @@ public abstract class NeuronCollection<C extends NeuronConfiguration> extends Co
 		spikings[neuronID] = outputs[neuronID] > 0;
 	}
 
+	/**
+	 * Performs the same computations as {@link #run()} for the neurons in the range [start, end). Sub-classes that
+	 * override {@link #run()} should override this method in the same way, calling the super-method after they have
+	 * made use of the values in {@link #inputs} for the range.
+	 */
+	@Override
+	public void runRange(int start, int end) {
+		for (int neuronID = start; neuronID < end; neuronID++) {
+			inputs[neuronID] = 0;
+			spikings[neuronID] = outputs[neuronID] > 0;
+		}
+	}
+
+	/**
+	 * Add a neuron using the first free slot after the populated range of the collection (see
+	 * {@link #getSizePopulated()}), which is then extended to include it. If there are no free slots the size of the
+	 * collection is increased (see {@link #ensureCapacity(int)}), so adding neurons one at a time takes amortised
+	 * constant time. The neuron is reset to its initial state.
+	 * 
+	 * @param configurationIndex The index of the configuration for the neuron.
+	 * @return The ID of the new neuron, which is its index unless the neurons have been reordered (see
+	 *         {@link #getNeuronIndex(int)}).
+	 */
+	public int addNeuron(int configurationIndex) {
+		int neuronIndex = getSizePopulated();
+		ensureCapacity(neuronIndex + 1);
+		setSizePopulated(neuronIndex + 1);
+		super.setComponentConfiguration(neuronIndex, configurationIndex);
+		reset(neuronIndex, neuronIndex + 1);
+		return getNeuronID(neuronIndex);
+	}
+
+	/**
+	 * Reorders the neurons in this collection, such that the neuron at index <em>i</em> after reordering is the neuron
+	 * that was at index <em>order[i]</em> before reordering. All per-neuron data (see {@link #getComponentArrayNames()})
+	 * and the history of outputs and spikings are reordered. <strong>This changes the index of neurons</strong>, so the
+	 * neuron indexes of the synapses connected to them must be updated accordingly (see
+	 * {@link SynapseCollection#remapNeurons(int[], int[])}). Each neuron retains its ID, which is its index before
+	 * the neurons were first reordered (see {@link #getNeuronIndex(int)} and {@link #getNeuronID(int)}), and the
+	 * methods that get or set the values of a single neuron take its ID, so the reordering is transparent to them; only
+	 * the arrays of values for all neurons (for example {@link #getOutputs()}) are in the new order.
+	 * 
+	 * @param order An array of length {@link #getSize()} containing a permutation of the neuron indexes.
+	 * @see com.ojcoleman.bain.NeuralNetwork#reorderForLocality()
+	 */
+	public void reorderNeurons(int[] order) {
+		ensureOutputsAreFresh();
+		ensureInputsAreFresh();
+		ensureStateVariablesAreFresh();
+		ensureSpikeBitsAreFresh();
+		permuteComponents(order);
+		if (historyLength > 0) {
+			double[] newOutputHistory = new double[outputHistory.length];
+			boolean[] newSpikingHistory = new boolean[spikingHistory.length];
+			for (int slot = 0, offset = 0; slot < historyLength; slot++, offset += size) {
+				for (int n = 0; n < size; n++) {
+					newOutputHistory[offset + n] = outputHistory[offset + order[n]];
+					newSpikingHistory[offset + n] = spikingHistory[offset + order[n]];
+				}
+			}
+			outputHistory = newOutputHistory;
+			spikingHistory = newSpikingHistory;
+		}
+		long[] newSpikeOnsetBits = new long[spikeOnsetBits.length];
+		for (int n = 0; n < size; n++) {
+			if ((spikeOnsetBits[order[n] >>> 6] & (1L << (order[n] & 63))) != 0) {
+				newSpikeOnsetBits[n >>> 6] |= 1L << (n & 63);
+			}
+		}
+		spikeOnsetBits = newSpikeOnsetBits;
+		spikeOnsetChangeCount++;
+		Arrays.fill(spikeBits, 0);
+		for (int n = 0; n < size; n++) {
+			if (spikings[n]) {
+				spikeBits[n >>> 6] |= 1L << (n & 63);
+			}
+		}
+		int[] newNeuronIDs = new int[size];
+		if (neuronIndexes == null) {
+			neuronIndexes = new int[size];
+		}
+		for (int n = 0; n < size; n++) {
+			newNeuronIDs[n] = getNeuronID(order[n]);
+			neuronIndexes[newNeuronIDs[n]] = n;
+		}
+		neuronIDs = newNeuronIDs;
+		init(); // Regenerate derived data and make sure changes are pushed to GPU if necessary.
+	}
+
+	/**
+	 * Returns the current index of the neuron with the given ID. The ID of a neuron is its index before the neurons
+	 * were first reordered (see {@link #reorderNeurons(int[])}); if the neurons have not been reordered this returns
+	 * the given ID.
+	 */
+	public int getNeuronIndex(int neuronID) {
+		return neuronIndexes == null ? neuronID : neuronIndexes[neuronID];
+	}
+
+	/**
+	 * Returns the ID of the neuron at the given index, see {@link #getNeuronIndex(int)}.
+	 */
+	public int getNeuronID(int neuronIndex) {
+		return neuronIDs == null ? neuronIndex : neuronIDs[neuronIndex];
+	}
+
+	/**
+	 * Copies the current outputs and spikings, which were used by the synapses in the current step, into the next slot
+	 * of the history, if a history is retained. Invoked by {@link #step()} before the neurons are updated.
+	 */
+	protected void recordHistory() {
+		if (historyLength == 0) {
+			return;
+		}
+		ensureOutputsAreFresh();
+		int head = (historyHead[0] + 1) % historyLength;
+		System.arraycopy(outputs, 0, outputHistory, head * size, size);
+		System.arraycopy(spikings, 0, spikingHistory, head * size, size);
+		historyHead[0] = head;
+	}
+
+	/**
+	 * Ensure that the outputs and spikings of the neurons are retained for at least the given number of simulation
+	 * steps, so that the values used by synapses up to the given number of steps ago are available (see
+	 * {@link #getHistorySlot(int)}). If the history must be enlarged then the existing history is discarded (the
+	 * neurons are treated as having had outputs of 0 and not spiking).
+	 */
+	public synchronized void setMinimumHistoryLength(int length) {
+		if (length > historyLength) {
+			historyLength = length;
+			outputHistory = new double[historyLength * size];
+			spikingHistory = new boolean[historyLength * size];
+			historyHead[0] = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of simulation steps for which the outputs and spikings of the neurons are retained.
+	 */
+	public int getHistoryLength() {
+		return historyLength;
+	}
+
+	/**
+	 * Returns the slot in {@link #getOutputHistory()} and {@link #getSpikingHistory()} holding the outputs and spikings
+	 * that were used by synapses the given number of steps ago, where 1 is the previous step. The given number of
+	 * steps must be in the range [1, {@link #getHistoryLength()}].
+	 */
+	public int getHistorySlot(int stepsAgo) {
+		return (historyHead[0] - stepsAgo + 1 + historyLength) % historyLength;
+	}
+
+	/**
+	 * Returns the circular buffer of outputs, see {@link #outputHistory}. The values should not be altered.
+	 */
+	public double[] getOutputHistory() {
+		return outputHistory;
+	}
+
+	/**
+	 * Returns the circular buffer of spikings, see {@link #spikingHistory}. The values should not be altered.
+	 */
+	public boolean[] getSpikingHistory() {
+		return spikingHistory;
+	}
+
+	/**
+	 * Returns the array whose element 0 holds the slot in the history most recently written to, see
+	 * {@link #historyHead}. The value should not be altered.
+	 */
+	public int[] getHistoryHead() {
+		return historyHead;
+	}
+
 	@Override
 	public void ensureOutputsAreFresh() {
 		if (outputsStale) {
@@ -159,8 +696,37 @@ public abstract class NeuronCollection<C extends NeuronConfiguration> extends Co
 		}
 	}
 
+	/**
+	 * {@inheritDoc} The neuron is specified by its ID, see {@link #getNeuronIndex(int)}.
+	 */
+	@Override
+	public NeuronConfiguration getComponentConfiguration(int neuronID) {
+		return configs.get(componentConfigIndexes[getNeuronIndex(neuronID)]);
+	}
+
+	/**
+	 * {@inheritDoc} The neuron is specified by its ID, see {@link #getNeuronIndex(int)}.
+	 */
+	@Override
+	public void setComponentConfiguration(int neuronID, int configurationIndex) {
+		super.setComponentConfiguration(getNeuronIndex(neuronID), configurationIndex);
+	}
+
+	/**
+	 * {@inheritDoc} The neuron is specified by its ID, see {@link #getNeuronIndex(int)}.
+	 */
+	@Override
+	public int getComponentConfigurationIndex(int neuronID) {
+		return super.getComponentConfigurationIndex(getNeuronIndex(neuronID));
+	}
+
+	@Override
+	public String[] getComponentArrayNames() {
+		return appendNames(super.getComponentArrayNames(), "spikings", "inputs");
+	}
+
 	@Override
-	public NeuronConfiguration getComponentConfiguration(int componentIndex) {
-		return configs.get(componentConfigIndexes[componentIndex]);
+	protected String[] getCheckpointFieldNames() {
+		return appendNames(super.getCheckpointFieldNames(), "historyLength", "outputHistory", "spikingHistory", "historyHead", "spikeBits", "spikeOnsetBits", "spikeBitsStale", "neuronIDs", "neuronIndexes");
 	}
-}
\ No newline at end of file
+}
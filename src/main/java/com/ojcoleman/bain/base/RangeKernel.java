@@ -0,0 +1,30 @@
+package com.ojcoleman.bain.base;
+
+/**
+ * <p>
+ * A kernel that, in addition to processing a single work item in its run() method (as required by Aparapi), can
+ * process a contiguous range of work items in one invocation, see {@link #runRange(int, int)}. When a kernel is
+ * executed on the host this allows an {@link ExecutionBackend} to avoid the per-item overhead of invoking run() and
+ * {@link com.amd.aparapi.Kernel#getGlobalId()}, and allows the JIT compiler to unroll and vectorise the loops over
+ * the state arrays.
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public interface RangeKernel {
+	/**
+	 * Process the work items with IDs in the range [start, end) in the calling thread. The result must be identical to
+	 * executing run() for each work item in the range in ascending order. Implementations must not use
+	 * {@link com.amd.aparapi.Kernel#getGlobalId()} or any other per-instance kernel state, so that ranges may be
+	 * processed concurrently on the same instance if they do not overlap (unless {@link #isRunRangeSupported()}
+	 * returns false).
+	 */
+	public void runRange(int start, int end);
+
+	/**
+	 * Returns true iff {@link #runRange(int, int)} is implemented as described for this kernel. If false then
+	 * runRange() invokes run() for each work item, using the state of this kernel instance to provide the global ID,
+	 * so it must not be invoked concurrently on the same instance.
+	 */
+	public boolean isRunRangeSupported();
+}
@@ -0,0 +1,199 @@
+package com.ojcoleman.bain.base;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Records the values of some of the per-component state variables of a range of components in a
+ * {@link ComponentCollection} at regular intervals, for example "efficacy and c for synapses 0 to 999 every 10
+ * steps". The probe is attached to a network with
+ * {@link com.ojcoleman.bain.NeuralNetwork#addProbe(StateProbe)}, after which the values are sampled at the end of each
+ * step whose index is a multiple of the interval. The samples are written into ring buffers that are allocated when
+ * the probe is created, and are retrieved in bulk with {@link #drain(double[][], long[])}. If the buffers are full the
+ * oldest sample is overwritten (see {@link #getDroppedSampleCount()}).
+ * </p>
+ * <p>
+ * The state variables are identified by the names of the per-component arrays that hold them (see
+ * {@link ComponentCollection#getComponentArrayNames()}). Each sample reads the arrays directly with
+ * {@link ComponentCollection#getComponentValues(String, int, int, double[], int)}: only the probed arrays are fetched from the
+ * execution hardware, and no memory is allocated. If the collection is executed on the host (see
+ * {@link ComponentCollection#isHostResident()}) no transfers are performed at all. Values stored in single precision
+ * (see {@link ComponentCollection#setSinglePrecision(boolean)}) are converted to double.
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public class StateProbe {
+	private final ComponentCollection collection;
+	private final String[] variables;
+	private final int start;
+	private final int width;
+	private final int interval;
+	private final int capacity;
+	private final double[][] buffers;
+	private final long[] sampleSteps;
+	private int head;
+	private int sampleCount;
+	private long droppedSampleCount;
+
+	/**
+	 * Create a probe.
+	 *
+	 * @param collection The collection to sample.
+	 * @param start The index of the first component to sample.
+	 * @param end The index after the last component to sample.
+	 * @param interval The number of steps between samples. A sample is recorded after each step whose index (see
+	 *            {@link com.ojcoleman.bain.NeuralNetwork#getStep()}) is a multiple of the interval.
+	 * @param capacity The maximum number of samples that can be buffered before the oldest is overwritten.
+	 * @param variables The names of the per-component arrays to sample, as given by
+	 *            {@link ComponentCollection#getComponentArrayNames()}. For state variables that may be stored in single
+	 *            precision the name of the double precision array should be given.
+	 */
+	public StateProbe(ComponentCollection collection, int start, int end, int interval, int capacity, String... variables) {
+		if (start < 0 || end > collection.getSize() || start >= end) {
+			throw new IllegalArgumentException("The range of components to sample must be non-empty and within the collection.");
+		}
+		if (interval < 1 || capacity < 1) {
+			throw new IllegalArgumentException("The interval and capacity must be positive.");
+		}
+		if ((long) capacity * (end - start) > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The capacity multiplied by the number of components sampled must be less than 2^31.");
+		}
+		List<String> arrayNames = Arrays.asList(collection.getComponentArrayNames());
+		this.collection = collection;
+		this.variables = variables.clone();
+		for (int v = 0; v < variables.length; v++) {
+			if (!arrayNames.contains(variables[v])) {
+				throw new IllegalArgumentException("No per-component array named " + variables[v] + " in " + collection.getClass().getName());
+			}
+		}
+		this.start = start;
+		width = end - start;
+		this.interval = interval;
+		this.capacity = capacity;
+		buffers = new double[variables.length][capacity * width];
+		sampleSteps = new long[capacity];
+	}
+
+	/**
+	 * Returns the collection sampled by this probe.
+	 */
+	public ComponentCollection getCollection() {
+		return collection;
+	}
+
+	/**
+	 * Returns the names of the state variables sampled by this probe.
+	 */
+	public String[] getVariables() {
+		return variables.clone();
+	}
+
+	/**
+	 * Returns the index of the first component sampled.
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns the number of components sampled, which is the number of values per variable in each sample.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the number of steps between samples.
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Returns the maximum number of samples that can be buffered.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of samples currently buffered.
+	 */
+	public synchronized int getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * Returns the number of samples that were overwritten because the buffers were full.
+	 */
+	public synchronized long getDroppedSampleCount() {
+		return droppedSampleCount;
+	}
+
+	/**
+	 * Records a sample of the state variables if the given step index is a multiple of the interval. This is invoked by
+	 * the network at the end of each step if this probe is attached to it.
+	 *
+	 * @param step The index of the step that has just been performed.
+	 */
+	public synchronized void sample(long step) {
+		if (step % interval != 0) {
+			return;
+		}
+		int slot = head + sampleCount;
+		if (slot >= capacity) {
+			slot -= capacity;
+		}
+		if (sampleCount == capacity) {
+			head = head + 1 == capacity ? 0 : head + 1;
+			droppedSampleCount++;
+		} else {
+			sampleCount++;
+		}
+		sampleSteps[slot] = step;
+		int end = start + width;
+		int offset = slot * width;
+		for (int v = 0; v < variables.length; v++) {
+			collection.getComponentValues(variables[v], start, end, buffers[v], offset);
+		}
+	}
+
+	/**
+	 * Removes the oldest buffered samples from the buffers and copies them into the given arrays, in order of step.
+	 * The number of samples removed is the lesser of the number buffered and the length of sampleSteps.
+	 *
+	 * @param values An array containing, for each sampled state variable in the order given to the constructor, an
+	 *            array to copy the values into. The values for sample <em>i</em> of the component at index
+	 *            <em>getStart() + j</em> are copied to element <em>i * getWidth() + j</em>. Each array must have at
+	 *            least <em>sampleSteps.length * getWidth()</em> elements.
+	 * @param sampleSteps An array to copy the step index of each sample into.
+	 * @return The number of samples copied.
+	 */
+	public synchronized int drain(double[][] values, long[] sampleSteps) {
+		if (values.length != variables.length) {
+			throw new IllegalArgumentException("An array must be given for each state variable.");
+		}
+		int count = Math.min(sampleCount, sampleSteps.length);
+		// The samples may wrap around the end of the buffers.
+		int first = Math.min(count, capacity - head);
+		for (int v = 0; v < variables.length; v++) {
+			System.arraycopy(buffers[v], head * width, values[v], 0, first * width);
+			System.arraycopy(buffers[v], 0, values[v], first * width, (count - first) * width);
+		}
+		System.arraycopy(this.sampleSteps, head, sampleSteps, 0, first);
+		System.arraycopy(this.sampleSteps, 0, sampleSteps, first, count - first);
+		head = (head + count) % capacity;
+		sampleCount -= count;
+		return count;
+	}
+
+	/**
+	 * Discards all buffered samples.
+	 */
+	public synchronized void clear() {
+		head = 0;
+		sampleCount = 0;
+	}
+}
@@ -2,49 +2,247 @@ package com.ojcoleman.bain.base;
 
 import java.util.Arrays;
 
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.misc.Utility;
+
 /**
  * <p>
  * Base class for all synapse collections. A SynapseCollection is expected to be used in conjunction with a
  * {@link NeuronCollection}; The methods to set and get the pre- and post-synaptic neurons for a synapse reference the
- * index of neurons in the associated NeuronCollection.
+ * index of neurons in the associated NeuronCollection. By default the pre- and post-synaptic neurons are both in the
+ * NeuronCollection of the network (see {@link com.ojcoleman.bain.NeuralNetwork#getNeurons()}); a SynapseCollection
+ * used as a projection between two populations (see
+ * {@link com.ojcoleman.bain.NeuralNetwork#addProjection(String, SynapseCollection, String, String)}) references the
+ * neurons of the pre- and post-synaptic populations respectively (see {@link #getPreNeurons()} and
+ * {@link #getPostNeurons()}).
  * </p>
  * <p>
  * Sub-classes must override the methods {@link #run()}, {@link #createCollection(int size)}
- * {@link #getConfigSingleton()}. Sub-classes will need to override the methods {@link #init()},{@link #reset()} and
+ * {@link #getConfigSingleton()}, and should override {@link #runRange(int, int)}. Sub-classes will need to override the methods {@link #init()},{@link #reset()} and
  * {@link #ensureStateVariablesAreFresh()} if they use custom state variables. Sub-classes may wish/need to override the
- * methods: {@link #step()}, {@link #getStateVariableNames()}, {@link #getStateVariableValues(int)} and {@link #isNotUsed(int)}.
+ * methods: {@link #step()}, {@link #getSharedStateVariableNames()}, {@link #copyStateVariableValues(int, double[])} and {@link #isNotUsed(int)}.
+ * </p>
+ * <p>
+ * The {@link #run()} method of a sub-class should only write to the state of the synapse being processed, and
+ * must set the synapse output (typically by invoking the super-method, otherwise with
+ * {@link #storeOutput(int, double)}). Sub-classes must not add
+ * the output to the input of the post-synaptic neuron themselves: after the kernel has been executed the outputs are
+ * added to the inputs of the post-synaptic neurons by {@link #accumulateInputs()}. When executing in parallel this is
+ * done with a gather over the incoming synapses of each neuron, which avoids lost updates when several synapses with
+ * the same post-synaptic neuron are processed concurrently and gives bit-identical results to sequential execution.
+ * </p>
+ * <p>
+ * Optionally the synapses may be kept sorted by post-synaptic neuron, in a compressed-sparse-row layout (see
+ * {@link #setPostNeuronOrdered(boolean)}), so that the incoming synapses of each neuron are contiguous in memory. For
+ * synapse models without dynamics (see {@link #hasSynapseDynamics()}) the synapse kernel is then not executed at all:
+ * the output of each synapse is calculated as the inputs of each post-synaptic neuron are gathered, in a single
+ * contiguous sweep over the synapses.
+ * </p>
+ * <p>
+ * Synapse models for spiking networks may support an event-driven update mode (see {@link #setEventDriven(boolean)}),
+ * in which a synapse is only updated in time steps in which its pre- or post-synaptic neuron spikes (or while it has
+ * ongoing dynamics, see {@link #isSynapseActive(int)}). The state of a synapse is brought up to date lazily, using a
+ * closed-form solution for the steps since it was last updated (see {@link #catchUpSynapse(int, long)}).
+ * </p>
+ * <p>
+ * Synapses may have a transmission delay of a whole number of simulation steps (see {@link #setDelay(int, int)}). The
+ * delayed outputs and spikings of the pre-synaptic neurons are read from a history retained by the pre-synaptic
+ * NeuronCollection (see {@link NeuronCollection#setMinimumHistoryLength(int)}), so no per-synapse countdown state is
+ * required. Sub-classes should obtain the output and spiking of the pre-synaptic neuron of a synapse with
+ * {@link #getPreOutput(int)} and {@link #isPreSpiking(int, int)} so that delays are applied. In event-driven mode
+ * delayed pre-synaptic spikes are delivered to synapses via a time wheel of pending events, so the cost of delayed
+ * transmission is proportional to the number of spikes.
+ * </p>
+ * <p>
+ * Sub-classes that support single precision storage (see {@link #setSinglePrecision(boolean)}) must also store the
+ * efficacies and outputs in single precision (see {@link #appendSinglePrecisionArrayNames(String...)}), and must read
+ * and write the efficacy and output of a synapse with {@link #loadEfficacy(int)}, {@link #storeEfficacy(int, double)}
+ * and {@link #storeOutput(int, double)}, which use the arrays for the current mode.
  * </p>
  * 
  * @author Oliver J. Coleman
  */
 public abstract class SynapseCollection<C extends SynapseConfiguration> extends ConfigurableComponentCollection<C> {
 	/**
-	 * The current efficacy of each synapse.
+	 * The current efficacy of each synapse. A single element placeholder in single precision mode, see
+	 * {@link #efficacySingle}.
 	 */
 	public double[] efficacy;
 
 	/**
 	 * The initial efficacy of each synapse. The {@link #efficacy} of each synapse is reset to this when
 	 * {@link #reset()} is called. By default the initial efficacy for each synapse is 0, but will be set (along with
-	 * {@link #efficacy}) when {@link #setEfficacy(int, double)} is called.
+	 * {@link #efficacy}) when {@link #setEfficacy(int, double)} is called. A single element placeholder in single
+	 * precision mode, see {@link #initialEfficacySingle}.
 	 */
 	public double[] initialEfficacy;
 
 	/**
-	 * A reference to the {@link com.ojcoleman.bain.base.NeuronCollection#outputs} from the associated NeuronCollection.
+	 * The current and initial efficacy of each synapse in single precision mode (see
+	 * {@link #setSinglePrecision(boolean)}), otherwise single element placeholders.
+	 */
+	public float[] efficacySingle, initialEfficacySingle;
+
+	// The double precision copy of the efficacies returned by getEfficacies() in single precision mode.
+	private double[] efficacyCopy;
+
+	/**
+	 * The NeuronCollection containing the pre-synaptic neurons, or null to use the neurons of the network.
+	 */
+	protected NeuronCollection<? extends ComponentConfiguration> preNeurons;
+
+	/**
+	 * The NeuronCollection containing the post-synaptic neurons, or null to use the neurons of the network.
+	 */
+	protected NeuronCollection<? extends ComponentConfiguration> postNeurons;
+
+	/**
+	 * A reference to the {@link com.ojcoleman.bain.base.NeuronCollection#outputs} from the pre-synaptic
+	 * NeuronCollection.
 	 */
 	protected double[] neuronOutputs;
 
 	/**
-	 * A reference to the {@link com.ojcoleman.bain.base.NeuronCollection#spikings} from the associated NeuronCollection.
+	 * A reference to the {@link com.ojcoleman.bain.base.NeuronCollection#spikings} from the pre-synaptic
+	 * NeuronCollection.
 	 */
 	protected boolean[] neuronSpikings;
 
 	/**
-	 * A reference to the {@link com.ojcoleman.bain.base.NeuronCollection#inputs} from the associated NeuronCollection.
+	 * A reference to the {@link com.ojcoleman.bain.base.NeuronCollection#outputs} from the post-synaptic
+	 * NeuronCollection. This is the same array as {@link #neuronOutputs} if the pre- and post-synaptic neurons are in
+	 * the same collection.
+	 */
+	protected double[] postNeuronOutputs;
+
+	/**
+	 * A reference to the {@link com.ojcoleman.bain.base.NeuronCollection#spikings} from the post-synaptic
+	 * NeuronCollection. This is the same array as {@link #neuronSpikings} if the pre- and post-synaptic neurons are in
+	 * the same collection.
+	 */
+	protected boolean[] postNeuronSpikings;
+
+	/**
+	 * A reference to the {@link com.ojcoleman.bain.base.NeuronCollection#spikeOnsetBits} from the post-synaptic
+	 * NeuronCollection if {@link #usesPostSpikeOnsets()} returns true, otherwise null, see
+	 * {@link #isPostSpikeOnset(int)}.
+	 */
+	protected long[] postNeuronSpikeOnsets;
+
+	/**
+	 * The value of {@link NeuronCollection#getSpikeOnsetChangeCount()} for the post-synaptic neurons when
+	 * {@link #postNeuronSpikeOnsets} was last transferred to the execution hardware.
+	 */
+	private long postNeuronSpikeOnsetsPutCount = -1;
+
+	/**
+	 * A reference to the {@link com.ojcoleman.bain.base.NeuronCollection#inputs} from the post-synaptic
+	 * NeuronCollection.
 	 */
 	protected double[] neuronInputs;
 
+	/**
+	 * A reference to the modulatory inputs of the associated NeuronCollection, for synapse models in which the output
+	 * of some synapses is added to the modulatory rather than regular input of the post-synaptic neuron (see
+	 * {@link #isModulatoryInputSynapse(int)}). Sub-classes that make use of this should set it in {@link #init()}.
+	 * Null if not used.
+	 */
+	protected double[] neuronModInputs;
+
+	/**
+	 * For each synapse, whether its output is added to the modulatory rather than regular input of the post-synaptic
+	 * neuron. Only used if {@link #neuronModInputs} is set. Generated from {@link #isModulatoryInputSynapse(int)} by
+	 * {@link #updateConnectivityIndex()}.
+	 */
+	protected boolean[] modulatoryInputSynapses;
+
+	/**
+	 * Offsets into {@link #postRowSynapses} for each neuron: the incoming synapses for neuron <em>n</em> are given by
+	 * the elements of postRowSynapses from postRowOffsets[n] (inclusive) to {@link #postRowEnds}[n] (exclusive). The
+	 * extra element at the end gives the length of the region of postRowSynapses in use. Generated by
+	 * {@link #updateConnectivityIndex()}, in which case the rows are contiguous and in order of neuron, so that
+	 * postRowOffsets[n+1] is equal to postRowEnds[n]. When synapses are added or removed the rows are updated in place
+	 * (see {@link #addSynapse(int, int, double, int)}), which may leave space between rows or move a row to the end of
+	 * the region in use.
+	 */
+	protected int[] postRowOffsets;
+
+	/**
+	 * Offsets into {@link #postRowSynapses} following the last incoming synapse of each neuron. See
+	 * {@link #postRowOffsets}.
+	 */
+	protected int[] postRowEnds;
+
+	/**
+	 * Offsets into {@link #postRowSynapses} following the space reserved for the incoming synapses of each neuron, which
+	 * may be larger than {@link #postRowEnds} when synapses have been added or removed.
+	 */
+	private int[] postRowLimits;
+
+	/**
+	 * The indexes of the (populated) synapses grouped by post-synaptic neuron, in ascending order of synapse index
+	 * within each group. See {@link #postRowOffsets}.
+	 */
+	protected int[] postRowSynapses;
+
+	/**
+	 * Flag to indicate that the connectivity index ({@link #postRowOffsets}, {@link #postRowSynapses} and
+	 * {@link #modulatoryInputSynapses}) must be regenerated before it is next used.
+	 */
+	protected boolean connectivityIndexStale = true;
+
+	/**
+	 * Whether the synapses should be kept sorted by post-synaptic neuron, see {@link #setPostNeuronOrdered(boolean)}.
+	 */
+	protected boolean postNeuronOrdered;
+
+	/**
+	 * True iff the (populated) synapses are currently stored in order of post-synaptic neuron, in which case
+	 * {@link #postRowSynapses} is the identity mapping and {@link #postRowOffsets} can be used as offsets into the
+	 * per-synapse arrays directly. Generated by {@link #updateConnectivityIndex()}.
+	 */
+	protected boolean postNeuronSorted;
+
+	/**
+	 * Offsets into {@link #preRowSynapses} for each neuron: the outgoing synapses for neuron <em>n</em> are given by the
+	 * elements of preRowSynapses from preRowOffsets[n] (inclusive) to preRowOffsets[n+1] (exclusive). Only generated
+	 * (by {@link #updateConnectivityIndex()}) if event-driven updating is enabled.
+	 */
+	protected int[] preRowOffsets;
+
+	/**
+	 * The indexes of the (populated) synapses grouped by pre-synaptic neuron. See {@link #preRowOffsets}.
+	 */
+	protected int[] preRowSynapses;
+
+	/**
+	 * Whether event-driven updating is enabled, see {@link #setEventDriven(boolean)}.
+	 */
+	protected boolean eventDriven;
+
+	/**
+	 * The number of simulation steps performed since the last reset.
+	 */
+	protected long stepCount;
+
+	/**
+	 * For each synapse, the simulation step (see {@link #stepCount}) up to and including which its state is up to date.
+	 * Only used if event-driven updating is enabled.
+	 */
+	protected long[] lastUpdateStep;
+
+	/**
+	 * The synapses that must be updated in the current step regardless of whether their pre- or post-synaptic neurons
+	 * spike, see {@link #isSynapseActive(int)}. Only used if event-driven updating is enabled.
+	 */
+	private int[] activeSynapses, nextActiveSynapses;
+	private int activeSynapseCount;
+
+	/**
+	 * The kernel used to add the synapse outputs to the neuron inputs when executing in parallel.
+	 */
+	private SynapseInputAccumulator inputAccumulator;
+
 	/**
 	 * Indexes of the pre-synaptic neurons for each synapse.
 	 */
@@ -55,6 +253,18 @@ public abstract class SynapseCollection<C extends SynapseConfiguration> extends
 	 */
 	protected int[] postIndexes;
 
+	/**
+	 * The ID of the synapse at each index, or null if the synapses have not been sorted with
+	 * {@link #sortByPostAndPreNeuron()}, in which case the ID of each synapse is its index.
+	 */
+	protected int[] synapseIDs;
+
+	/**
+	 * The index of the synapse with each ID, the inverse of {@link #synapseIDs}, or null if the synapses have not been
+	 * sorted with {@link #sortByPostAndPreNeuron()}.
+	 */
+	protected int[] synapseIndexes;
+
 	/**
 	 * Flag to indicate if the pre- or post-synaptic connections have changed for any synapse. This is used to determine
 	 * if we need to put() the {@link #preIndexes} and {@link #postIndexes} arrays/buffers when using OpenCL.
@@ -66,88 +276,1014 @@ public abstract class SynapseCollection<C extends SynapseConfiguration> extends
 	 */
 	protected boolean efficaciesModified;
 
+	/**
+	 * Set to true when synapses are added or removed (see {@link #addSynapse(int, int, double, int)} and
+	 * {@link #removeSynapse(int)}), so that the per-synapse arrays are transferred to the execution hardware before the
+	 * next simulation step.
+	 */
+	protected boolean synapsesModified;
+
+	/**
+	 * The transmission delay of each synapse in simulation steps, see {@link #setDelay(int, int)}. A single element
+	 * array if no synapse has a delay (see {@link #useDelays}).
+	 */
+	protected int[] delays = new int[1];
+
+	/**
+	 * Element 0 is true iff {@link #delays} holds the delay of each synapse.
+	 */
+	protected boolean[] useDelays = new boolean[1];
+
+	/**
+	 * The largest delay set for any synapse.
+	 */
+	protected int maxDelay;
+
+	/**
+	 * References to the output and spiking history of the pre-synaptic NeuronCollection, see
+	 * {@link NeuronCollection#getOutputHistory()}. Single element arrays if no history is required.
+	 */
+	protected double[] preOutputHistory = new double[1];
+	protected boolean[] preSpikingHistory = new boolean[1];
+
+	/**
+	 * A reference to the {@link NeuronCollection#getHistoryHead()} of the pre-synaptic NeuronCollection.
+	 */
+	protected int[] preHistoryHead = new int[1];
+
+	/**
+	 * Element 0 holds the history length of the pre-synaptic NeuronCollection and element 1 the number of pre-synaptic
+	 * neurons. (Single element arrays are used to pass scalar values to the kernel.)
+	 */
+	protected int[] preHistoryLayout = new int[2];
+
+	/**
+	 * Time wheel of synapses due to receive a delayed pre-synaptic spike, indexed by simulation step modulo the number
+	 * of slots, with the number of pending synapses in each slot. Only used if event-driven updating is enabled.
+	 */
+	private int[][] pendingEvents;
+	private int[] pendingEventCounts;
+
+	/**
+	 * True iff the pending events must be recreated from the history of the pre-synaptic neurons, because event-driven
+	 * updating has just been enabled or the synapse indexes may have changed.
+	 */
+	private boolean pendingEventsStale = true;
+
 	@Override
 	public void init() {
 		super.init();
-		if (efficacy == null || efficacy.length != size) {
-			outputs = new double[size];
-			initialEfficacy = new double[size];
-			efficacy = new double[size];
+		outputs = doubleStateArray(outputs);
+		outputsSingle = singleStateArray(outputsSingle);
+		efficacy = doubleStateArray(efficacy);
+		efficacySingle = singleStateArray(efficacySingle);
+		initialEfficacy = doubleStateArray(initialEfficacy);
+		initialEfficacySingle = singleStateArray(initialEfficacySingle);
+		if (preIndexes == null || preIndexes.length != size) {
 			preIndexes = new int[size];
 			postIndexes = new int[size];
 		}
+		if (useDelays[0] && delays.length != size) {
+			delays = Arrays.copyOf(delays, size);
+		}
+		if (synapseIDs != null && synapseIDs.length < size) {
+			// Synapses added in the new slots have the same ID as their index.
+			int previousSize = synapseIDs.length;
+			synapseIDs = Arrays.copyOf(synapseIDs, size);
+			synapseIndexes = Arrays.copyOf(synapseIndexes, size);
+			for (int s = previousSize; s < size; s++) {
+				synapseIDs[s] = s;
+				synapseIndexes[s] = s;
+			}
+		}
+		if (eventDriven && (lastUpdateStep == null || lastUpdateStep.length != size)) {
+			lastUpdateStep = new long[size];
+			Arrays.fill(lastUpdateStep, stepCount - 1);
+		}
 		if (network != null) {
-			neuronOutputs = network.getNeurons().getOutputs();
-			neuronInputs = network.getNeurons().getInputs();
-			neuronSpikings = network.getNeurons().getSpikings();
+			neuronOutputs = getPreNeurons().getOutputs();
+			neuronSpikings = getPreNeurons().getSpikings();
+			postNeuronOutputs = getPostNeurons().getOutputs();
+			postNeuronSpikings = getPostNeurons().getSpikings();
+			postNeuronSpikeOnsets = usesPostSpikeOnsets() ? getPostNeurons().getSpikeOnsetBits() : null;
+			postNeuronSpikeOnsetsPutCount = -1;
+			neuronInputs = getPostNeurons().getInputs();
+		}
+		connectivityIndexStale = true;
+		caughtUpStepCount = -1;
+
+		// In case explicit mode is being used for the Aparapi kernel.
+		put(outputs);
+		put(outputsSingle);
+		outputsStale = false;
+		put(efficacy);
+		put(efficacySingle);
+		put(singlePrecision);
+		put(preIndexes);
+		put(postIndexes);
+		put(delays);
+		put(useDelays);
+		preOrPostIndexesModified = false;
+		efficaciesModified = false;
+	}
+
+	/**
+	 * Resets all synapses to their initial state (see {@link #initialEfficacy}). Sub-classes should override this
+	 * method if state variables other than the efficacy and synapseOutputs must be reset, or if they should be set to
+	 * something other than 0. The overriding method should invoke this super-method (before doing anything else).
+	 * Arrays/buffers reset here and used in the run() method/kernel should be transferred to the execution hardware
+	 * using put().
+	 */
+	@Override
+	public void reset(int start, int end) {
+		super.reset(start, end);
+		if (singlePrecision[0]) {
+			System.arraycopy(initialEfficacySingle, start, efficacySingle, start, end - start);
+		} else {
+			System.arraycopy(initialEfficacy, start, efficacy, start, end - start);
+		}
+		efficaciesModified = true;
+		if (lastUpdateStep != null) {
+			// Treat the synapses as up to date as of the previous step.
+			Arrays.fill(lastUpdateStep, start, end, stepCount - 1);
+		}
+	}
+
+	/**
+	 * {@inheritDoc} The simulation step count used for event-driven updating is also reset.
+	 */
+	@Override
+	public void reset() {
+		stepCount = 0;
+		caughtUpStepCount = -1;
+		activeSynapseCount = 0;
+		pendingEventsStale = true;
+		super.reset();
+	}
+
+	@Override
+	public void step() {
+		if (synapsesModified) {
+			// Synapses have been added or removed. Aparapi only transfers whole arrays, so transfer each per-synapse
+			// array, unless the arrays are resident on the host.
+			if (!hostResident) {
+				for (String name : getComponentArrayNames()) {
+					Object array = getComponentArray(name);
+					if (array != null && java.lang.reflect.Array.getLength(array) >= size) {
+						putArray(array);
+					}
+				}
+			}
+			synapsesModified = false;
+		}
+		ensureNeuronArraysAreFresh();
+		ensureConnectivityIndex();
+		updatePreHistory();
+		if (eventDriven) {
+			processEvents();
+		}
+		stepCount++;
+		if (neuronModInputs == null && (eventDriven || !hasSynapseDynamics())) {
+			gatherInputs();
+			return;
+		}
+
+		// At the moment Aparapi doesn't allow sharing buffers between kernels
+		// or allow kernels with multiple entry points in a way that is
+		// compatible with a framework such as this. Thus we must ensure that
+		// fresh versions of the following buffers are available to this kernel
+		// by "putting" them there.
+		put(neuronOutputs); // neuron outputs are used by many synapse models.
+		put(neuronSpikings); // neuron spikings are used by many synapse models.
+		if (postNeuronOutputs != neuronOutputs) {
+			put(postNeuronOutputs);
+			put(postNeuronSpikings);
+		}
+		if (postNeuronSpikeOnsets != null && postNeuronSpikeOnsetsPutCount != getPostNeurons().getSpikeOnsetChangeCount()) {
+			postNeuronSpikeOnsetsPutCount = getPostNeurons().getSpikeOnsetChangeCount();
+			put(postNeuronSpikeOnsets);
+		}
+		if (preOrPostIndexesModified) {
+			put(preIndexes);
+			put(postIndexes);
+		}
+		if (efficaciesModified) {
+			putEfficacies();
+		}
+		if (preHistoryLayout[0] > 0) {
+			put(preOutputHistory);
+			put(preSpikingHistory);
+			put(preHistoryHead);
+			put(preHistoryLayout);
+		}
+		super.step();
+		outputsStale = !hostResident;
+		accumulateInputs();
+	}
+
+	/**
+	 * Ensures that the inputs of the post-synaptic neurons and the outputs of the pre- and post-synaptic neurons have
+	 * been fetched from the execution hardware. Invoked at the start of {@link #step()}.
+	 */
+	protected void ensureNeuronArraysAreFresh() {
+		if (network != null && (neuronOutputs != getPreNeurons().getOutputs() || neuronInputs != getPostNeurons().getInputs())) {
+			// The size of a NeuronCollection has been increased (see ComponentCollection.ensureCapacity()) or its
+			// neurons have been reordered (see NeuronCollection.reorderNeurons()).
+			init();
+		}
+		getPostNeurons().ensureInputsAreFresh();
+		getPreNeurons().ensureOutputsAreFresh();
+		if (getPostNeurons() != getPreNeurons()) {
+			getPostNeurons().ensureOutputsAreFresh();
+		}
+	}
+
+	/**
+	 * Ensures that the pre-synaptic NeuronCollection retains enough history for the delays of the synapses (see
+	 * {@link #getRequiredHistoryLength()}), and updates the references to it. Invoked by {@link #step()}.
+	 */
+	protected void updatePreHistory() {
+		NeuronCollection<? extends ComponentConfiguration> pre = getPreNeurons();
+		int required = getRequiredHistoryLength();
+		if (required == 0) {
+			preHistoryLayout[0] = 0;
+			return;
+		}
+		pre.setMinimumHistoryLength(required);
+		preOutputHistory = pre.getOutputHistory();
+		preSpikingHistory = pre.getSpikingHistory();
+		preHistoryHead = pre.getHistoryHead();
+		preHistoryLayout[0] = pre.getHistoryLength();
+		preHistoryLayout[1] = pre.getSize();
+	}
+
+	/**
+	 * Returns the number of simulation steps of history of the pre-synaptic neurons required, see
+	 * {@link NeuronCollection#setMinimumHistoryLength(int)}. This default implementation returns the largest delay
+	 * of any synapse. Sub-classes that read the pre-synaptic spikings with an additional delay (see
+	 * {@link #isPreSpiking(int, int)}) should override this method to add the largest additional delay.
+	 */
+	protected int getRequiredHistoryLength() {
+		return maxDelay;
+	}
+
+	/**
+	 * Returns true iff the synapse model uses the spike onsets of the post-synaptic neurons (see
+	 * {@link #isPostSpikeOnset(int)}), in which case the post-synaptic NeuronCollection determines them in every step.
+	 * This default implementation returns false.
+	 */
+	protected boolean usesPostSpikeOnsets() {
+		return false;
+	}
+
+	/**
+	 * Returns true iff the post-synaptic neuron with the given index spiked in the last step but not in the step
+	 * before (see {@link NeuronCollection#spikeOnsetBits}). The onsets are determined once per neuron, so synapse
+	 * models that must count a spike lasting several steps only once should use this rather than storing the previous
+	 * spiking of the post-synaptic neuron for each synapse. Sub-classes that use this method must override
+	 * {@link #usesPostSpikeOnsets()} to return true. May be invoked from the kernel.
+	 */
+	protected boolean isPostSpikeOnset(int postNeuronIndex) {
+		return (postNeuronSpikeOnsets[postNeuronIndex >>> 6] & (1L << (postNeuronIndex & 63))) != 0;
+	}
+
+	/**
+	 * Returns the output of the pre-synaptic neuron of the specified synapse, delayed by the delay of the synapse (see
+	 * {@link #setDelay(int, int)}).
+	 */
+	protected double getPreOutput(int synapseID) {
+		int preID = preIndexes[synapseID];
+		if (useDelays[0]) {
+			int delay = delays[synapseID];
+			if (delay > 0) {
+				int slot = (preHistoryHead[0] - delay + 1 + preHistoryLayout[0]) % preHistoryLayout[0];
+				return preOutputHistory[slot * preHistoryLayout[1] + preID];
+			}
+		}
+		return neuronOutputs[preID];
+	}
+
+	/**
+	 * Returns true iff the pre-synaptic neuron of the specified synapse was spiking, delayed by the delay of the synapse
+	 * (see {@link #setDelay(int, int)}) plus the given additional number of steps. Sub-classes that use an additional
+	 * delay must override {@link #getRequiredHistoryLength()} accordingly.
+	 */
+	protected boolean isPreSpiking(int synapseID, int additionalDelay) {
+		int preID = preIndexes[synapseID];
+		int delay = additionalDelay;
+		if (useDelays[0]) {
+			delay += delays[synapseID];
+		}
+		if (delay == 0) {
+			return neuronSpikings[preID];
+		}
+		int slot = (preHistoryHead[0] - delay + 1 + preHistoryLayout[0]) % preHistoryLayout[0];
+		return preSpikingHistory[slot * preHistoryLayout[1] + preID];
+	}
+
+	/**
+	 * Returns the number of steps after a spike of the pre-synaptic neuron of the specified synapse at which the
+	 * synapse must be updated in event-driven mode. This default implementation returns the delay of the synapse.
+	 * Sub-classes that react to pre-synaptic spikes with an additional delay (see {@link #isPreSpiking(int, int)})
+	 * should override this method to add it.
+	 */
+	protected int getPreEventDelay(int synapseID) {
+		return useDelays[0] ? delays[synapseID] : 0;
+	}
+
+	/**
+	 * Returns the efficacy of the specified synapse from {@link #efficacySingle} in single precision mode and otherwise
+	 * from {@link #efficacy}. For use in the kernel: unlike {@link #getEfficacy(int)} the value is not fetched from the
+	 * execution hardware.
+	 */
+	protected double loadEfficacy(int synapseID) {
+		return singlePrecision[0] ? efficacySingle[synapseID] : efficacy[synapseID];
+	}
+
+	/**
+	 * Sets the efficacy of the specified synapse in {@link #efficacySingle} in single precision mode and otherwise in
+	 * {@link #efficacy}. For use in the kernel.
+	 */
+	protected void storeEfficacy(int synapseID, double value) {
+		if (singlePrecision[0]) {
+			efficacySingle[synapseID] = (float) value;
+		} else {
+			efficacy[synapseID] = value;
+		}
+	}
+
+	/**
+	 * Returns the output of the specified synapse from {@link #outputsSingle} in single precision mode and otherwise
+	 * from {@link #outputs}. For use in the kernel.
+	 */
+	protected double loadOutput(int synapseID) {
+		return singlePrecision[0] ? outputsSingle[synapseID] : outputs[synapseID];
+	}
+
+	/**
+	 * Sets the output of the specified synapse in {@link #outputsSingle} in single precision mode and otherwise in
+	 * {@link #outputs}. For use in the kernel.
+	 */
+	protected void storeOutput(int synapseID, double value) {
+		if (singlePrecision[0]) {
+			outputsSingle[synapseID] = (float) value;
+		} else {
+			outputs[synapseID] = value;
+		}
+	}
+
+	/**
+	 * Implements the basic infrastructure for processing a synapse by setting its output (see
+	 * {@link #storeOutput(int, double)}). Sub-classes may override this method, and if they modify the efficacy they
+	 * must call the super-method <strong>after</strong> modifying it (or set the output themselves).
+	 */
+	@Override
+	public void run() {
+		int synapseID = this.getGlobalId();
+		storeOutput(synapseID, getPreOutput(synapseID) * loadEfficacy(synapseID));
+	}
+
+	/**
+	 * Performs the same computations as {@link #run()} for the synapses in the range [start, end). Sub-classes that
+	 * override {@link #run()} should override this method in the same way, for example by invoking
+	 * {@link #updateSynapse(int)} for each synapse in the range followed by the super-method.
+	 */
+	@Override
+	public void runRange(int start, int end) {
+		if (singlePrecision[0]) {
+			for (int synapseID = start; synapseID < end; synapseID++) {
+				outputsSingle[synapseID] = (float) (getPreOutput(synapseID) * efficacySingle[synapseID]);
+			}
+		} else if (useDelays[0]) {
+			for (int synapseID = start; synapseID < end; synapseID++) {
+				outputs[synapseID] = getPreOutput(synapseID) * efficacy[synapseID];
+			}
+		} else {
+			for (int synapseID = start; synapseID < end; synapseID++) {
+				outputs[synapseID] = neuronOutputs[preIndexes[synapseID]] * efficacy[synapseID];
+			}
+		}
+	}
+
+	/**
+	 * Returns true iff the synapse model has dynamics beyond setting the output of each synapse to the output of the
+	 * pre-synaptic neuron multiplied by the efficacy, that is if {@link #run()} updates any state variables or
+	 * calculates the output differently. If this returns false then {@link #step()} does not execute the synapse
+	 * kernel, see {@link #gatherInputs()}. This default implementation returns true.
+	 */
+	protected boolean hasSynapseDynamics() {
+		return true;
+	}
+
+	/**
+	 * Calculates the output of each (populated) synapse as the output of the pre-synaptic neuron multiplied by the
+	 * efficacy and adds it to the input of the post-synaptic neuron, in a single sweep over the incoming synapses of
+	 * each neuron (over contiguous blocks of synapses if the synapses are stored in order of post-synaptic neuron).
+	 * This is invoked by {@link #step()} instead of executing the synapse kernel and {@link #accumulateInputs()} if
+	 * the synapse model has no dynamics (see {@link #hasSynapseDynamics()}) or event-driven updating is enabled. The
+	 * results are identical to those produced by executing the synapse kernel and then accumulating the inputs.
+	 */
+	protected void gatherInputs() {
+		if (useDelays[0]) {
+			// Calculate the outputs from the delayed pre-synaptic outputs, then add them to the inputs as usual.
+			int synapseCount = getSizePopulated();
+			for (int s = 0; s < synapseCount; s++) {
+				storeOutput(s, getPreOutput(s) * loadEfficacy(s));
+			}
+			outputsStale = false;
+			accumulateInputs();
+		} else if (executionBackend.isSequential(this)) {
+			int neuronCount = postRowEnds.length;
+			boolean single = singlePrecision[0];
+			for (int n = 0; n < neuronCount; n++) {
+				double input = neuronInputs[n];
+				int end = postRowEnds[n];
+				if (single) {
+					for (int i = postRowOffsets[n]; i < end; i++) {
+						int s = postNeuronSorted ? i : postRowSynapses[i];
+						float output = (float) (neuronOutputs[preIndexes[s]] * efficacySingle[s]);
+						outputsSingle[s] = output;
+						input += output;
+					}
+				} else {
+					for (int i = postRowOffsets[n]; i < end; i++) {
+						int s = postNeuronSorted ? i : postRowSynapses[i];
+						double output = neuronOutputs[preIndexes[s]] * efficacy[s];
+						outputs[s] = output;
+						input += output;
+					}
+				}
+				neuronInputs[n] = input;
+			}
+		} else if (singlePrecision[0]) {
+			getInputAccumulator().gather(neuronOutputs, preIndexes, efficacySingle, outputsSingle, neuronInputs, postRowOffsets, postRowEnds, postNeuronSorted ? null : postRowSynapses, getExecutionMode());
+			preOrPostIndexesModified = true;
+			efficaciesModified = true;
+		} else {
+			getInputAccumulator().gather(neuronOutputs, preIndexes, efficacy, outputs, neuronInputs, postRowOffsets, postRowEnds, postNeuronSorted ? null : postRowSynapses, getExecutionMode());
+			// The pre-synaptic indexes and efficacies in the kernel for this collection have not been updated.
+			preOrPostIndexesModified = true;
+			efficaciesModified = true;
+		}
+		outputsStale = false;
+		inputsStale = !hostResident;
+	}
+
+	/**
+	 * Adds the output of each (populated) synapse to the input of its post-synaptic neuron. This is invoked by
+	 * {@link #step()} after the kernel has been executed. In SEQ execution mode this is a simple sequential loop over
+	 * the synapses; otherwise the outputs are gathered for each post-synaptic neuron using the connectivity index (see
+	 * {@link #postRowOffsets}), in the same execution mode as this collection. In both cases the outputs are added
+	 * in ascending order of synapse index for each neuron, so the results are identical. If the synapses are stored in
+	 * order of post-synaptic neuron then the gather sweeps over contiguous blocks of synapses.
+	 */
+	protected void accumulateInputs() {
+		ensureOutputsAreFresh();
+		ensureConnectivityIndex();
+		int synapseCount = getSizePopulated();
+		if (executionBackend.isSequential(this)) {
+			if (neuronModInputs != null) {
+				for (int s = 0; s < synapseCount; s++) {
+					if (modulatoryInputSynapses[s]) {
+						neuronModInputs[postIndexes[s]] += loadOutput(s);
+					} else {
+						neuronInputs[postIndexes[s]] += loadOutput(s);
+					}
+				}
+			} else if (singlePrecision[0]) {
+				for (int s = 0; s < synapseCount; s++) {
+					neuronInputs[postIndexes[s]] += outputsSingle[s];
+				}
+			} else {
+				for (int s = 0; s < synapseCount; s++) {
+					neuronInputs[postIndexes[s]] += outputs[s];
+				}
+			}
+		} else if (singlePrecision[0]) {
+			getInputAccumulator().accumulate(outputsSingle, neuronInputs, neuronModInputs, modulatoryInputSynapses, postRowOffsets, postRowEnds, postNeuronSorted ? null : postRowSynapses, getExecutionMode());
+		} else {
+			getInputAccumulator().accumulate(outputs, neuronInputs, neuronModInputs, modulatoryInputSynapses, postRowOffsets, postRowEnds, postNeuronSorted ? null : postRowSynapses, getExecutionMode());
+		}
+	}
+
+	private SynapseInputAccumulator getInputAccumulator() {
+		if (inputAccumulator == null) {
+			inputAccumulator = new SynapseInputAccumulator();
+		}
+		inputAccumulator.setExecutionBackend(executionBackend);
+		return inputAccumulator;
+	}
+
+	/**
+	 * {@inheritDoc} The connectivity index is regenerated before it is next used, as whether a synapse is a modulatory
+	 * input synapse may depend on its configuration (see {@link #isModulatoryInputSynapse(int)}).
+	 */
+	@Override
+	public void setComponentConfiguration(int componentIndex, int configurationIndex) {
+		super.setComponentConfiguration(componentIndex, configurationIndex);
+		connectivityIndexStale = true;
+	}
+
+	/**
+	 * Regenerates the connectivity index if the pre- or post-synaptic neurons have been changed since it was last
+	 * generated.
+	 */
+	public void ensureConnectivityIndex() {
+		if (connectivityIndexStale) {
+			updateConnectivityIndex();
+			connectivityIndexStale = false;
+		}
+	}
+
+	/**
+	 * Generates the connectivity index, consisting of {@link #postRowOffsets}, {@link #postRowSynapses},
+	 * {@link #postNeuronSorted} and {@link #modulatoryInputSynapses}. If {@link #setPostNeuronOrdered(boolean)} has been
+	 * enabled and the synapses are not sorted by post-synaptic neuron then they are sorted first. Sub-classes may
+	 * override this method to generate additional indexes, in which case they must invoke this super-method.
+	 */
+	protected void updateConnectivityIndex() {
+		updatePostNeuronIndex();
+		if (postNeuronOrdered && !postNeuronSorted) {
+			reorderByPostNeuron();
+		}
+
+		if (eventDriven) {
+			int neuronCount = getPreNeurons().getSize();
+			if (preRowOffsets == null || preRowOffsets.length != neuronCount + 1) {
+				preRowOffsets = new int[neuronCount + 1];
+			}
+			if (preRowSynapses == null || preRowSynapses.length != size) {
+				preRowSynapses = new int[size];
+			}
+			buildNeuronIndex(preIndexes, getSizePopulated(), preRowOffsets, preRowSynapses);
+			// Synapse indexes may have changed, so regenerate the list of active synapses and the pending events.
+			if (activeSynapses == null || activeSynapses.length != size) {
+				activeSynapses = new int[size];
+				nextActiveSynapses = new int[size];
+			}
+			activeSynapseCount = 0;
+			pendingEventsStale = true;
+			for (int s = 0; s < getSizePopulated(); s++) {
+				if (isSynapseActive(s)) {
+					activeSynapses[activeSynapseCount++] = s;
+				}
+			}
+		}
+
+		if (neuronModInputs != null) {
+			int synapseCount = getSizePopulated();
+			if (modulatoryInputSynapses == null || modulatoryInputSynapses.length != size) {
+				modulatoryInputSynapses = new boolean[size];
+			}
+			for (int s = 0; s < synapseCount; s++) {
+				modulatoryInputSynapses[s] = isModulatoryInputSynapse(s);
+			}
+		}
+	}
+
+	/**
+	 * Generates {@link #postRowOffsets}, {@link #postRowEnds}, {@link #postRowSynapses} and {@link #postNeuronSorted},
+	 * with contiguous rows.
+	 */
+	private void updatePostNeuronIndex() {
+		int neuronCount = getPostNeurons().getSize();
+		int synapseCount = getSizePopulated();
+		if (postRowOffsets == null || postRowOffsets.length != neuronCount + 1) {
+			postRowOffsets = new int[neuronCount + 1];
+			postRowEnds = new int[neuronCount];
+			postRowLimits = new int[neuronCount];
+		}
+		// Keep the space added to the array by growPostRow(), unless it is much larger than required.
+		if (postRowSynapses == null || postRowSynapses.length < size || postRowSynapses.length > size * 2) {
+			postRowSynapses = new int[size];
+		}
+		postNeuronSorted = buildNeuronIndex(postIndexes, synapseCount, postRowOffsets, postRowSynapses);
+		System.arraycopy(postRowOffsets, 1, postRowEnds, 0, neuronCount);
+		System.arraycopy(postRowOffsets, 1, postRowLimits, 0, neuronCount);
+	}
+
+	/**
+	 * Groups the synapses by neuron with a counting sort, which preserves the order of synapse indexes within each
+	 * group.
+	 * 
+	 * @param neuronIndexes The neuron index for each synapse (for example {@link #preIndexes} or {@link #postIndexes}).
+	 * @param synapseCount The number of synapses to include.
+	 * @param rowOffsets Populated with the offsets into rowSynapses for each neuron; length must be neuron count + 1.
+	 * @param rowSynapses Populated with the synapse indexes grouped by neuron.
+	 * @return true iff the synapses are already in order of neuron index, i.e. rowSynapses is the identity mapping.
+	 */
+	private static boolean buildNeuronIndex(int[] neuronIndexes, int synapseCount, int[] rowOffsets, int[] rowSynapses) {
+		int neuronCount = rowOffsets.length - 1;
+		Arrays.fill(rowOffsets, 0);
+		for (int s = 0; s < synapseCount; s++) {
+			rowOffsets[neuronIndexes[s] + 1]++;
+		}
+		for (int n = 0; n < neuronCount; n++) {
+			rowOffsets[n + 1] += rowOffsets[n];
+		}
+		int[] next = Arrays.copyOf(rowOffsets, neuronCount);
+		boolean sorted = true;
+		for (int s = 0; s < synapseCount; s++) {
+			int i = next[neuronIndexes[s]]++;
+			rowSynapses[i] = s;
+			if (i != s) {
+				sorted = false;
+			}
+		}
+		return sorted;
+	}
+
+	/**
+	 * Enable or disable event-driven updating. In event-driven mode the synapse kernel is not executed, instead a
+	 * synapse is only updated (see {@link #updateSynapse(int)}) in steps in which its pre- or post-synaptic neuron
+	 * spikes or it is active (see {@link #isSynapseActive(int)}). Before a synapse is updated its state is brought up
+	 * to date for the steps since it was last updated (see {@link #catchUpSynapse(int, long)}). For models with sparse
+	 * spiking activity this greatly reduces the amount of computation required. The updates are performed on the host
+	 * in sequence; the synapse outputs are calculated and added to the neuron inputs as described in
+	 * {@link #gatherInputs()}. If the synapse model does not support event-driven updating (see
+	 * {@link #supportsEventDriven()}) then dense updating continues to be used. By default this is disabled.
+	 * 
+	 * @see com.ojcoleman.bain.NeuralNetwork#setEventDriven(boolean)
+	 */
+	public void setEventDriven(boolean eventDriven) {
+		eventDriven &= supportsEventDriven();
+		if (eventDriven == this.eventDriven) {
+			return;
+		}
+		if (eventDriven) {
+			// Make sure we have the current state from the execution hardware.
+			ensureStateVariablesAreFresh();
+			ensureOutputsAreFresh();
+			this.eventDriven = true;
+			lastUpdateStep = null; // Force (re)initialisation in init().
+			pendingEventsStale = true;
+		} else {
+			// Bring all synapses up to date and then transfer the state back to the execution hardware.
+			catchUpAllSynapses();
+			this.eventDriven = false;
+			lastUpdateStep = null;
+			activeSynapseCount = 0;
+		}
+		init();
+	}
+
+	/**
+	 * Returns true iff event-driven updating is in use. See {@link #setEventDriven(boolean)}.
+	 */
+	public boolean isEventDriven() {
+		return eventDriven;
+	}
+
+	/**
+	 * Returns true iff the synapse model supports event-driven updating. Sub-classes that support it must override
+	 * this method to return true and implement {@link #updateSynapse(int)} and {@link #catchUpSynapse(int, long)}, and
+	 * {@link #isSynapseActive(int)} if necessary. This default implementation returns false.
+	 */
+	protected boolean supportsEventDriven() {
+		return false;
+	}
+
+	/**
+	 * Update the state of the specified synapse (excluding its output) for the current simulation step, using the
+	 * values in {@link #neuronSpikings}, {@link #neuronOutputs}, {@link #postNeuronSpikings} and
+	 * {@link #postNeuronOutputs}. Sub-classes that support event-driven updating should implement their {@link #run()}
+	 * method by invoking this method followed by the super-method. This default implementation does nothing.
+	 */
+	protected void updateSynapse(int synapseID) {
+	}
+
+	/**
+	 * Bring the state of the specified synapse forward by the given number of simulation steps, during which neither
+	 * the pre- nor post-synaptic neuron spiked and the synapse was not active (see {@link #isSynapseActive(int)}).
+	 * The state should be calculated in closed form where possible rather than by iterating over the steps. Only used
+	 * in event-driven mode. This default implementation does nothing.
+	 */
+	protected void catchUpSynapse(int synapseID, long steps) {
+	}
+
+	/**
+	 * Returns true iff the specified synapse must be updated in the next simulation step even if neither its pre- nor
+	 * post-synaptic neuron spikes, for example because its efficacy is still changing. Only used in event-driven mode.
+	 * This default implementation returns false.
+	 */
+	protected boolean isSynapseActive(int synapseID) {
+		return false;
+	}
+
+	/**
+	 * Performs the updates for the current simulation step in event-driven mode: active synapses and synapses whose
+	 * pre- or post-synaptic neuron spiked are brought up to date and updated.
+	 */
+	protected void processEvents() {
+		int[] active = activeSynapses;
+		int count = activeSynapseCount;
+		activeSynapses = nextActiveSynapses;
+		nextActiveSynapses = active;
+		activeSynapseCount = 0;
+		for (int i = 0; i < count; i++) {
+			processEvent(active[i]);
+		}
+		ensurePendingEventCapacity();
+		if (pendingEventsStale) {
+			createPendingEvents();
+		}
+		int slot = (int) (stepCount % pendingEvents.length);
+		for (int i = 0; i < pendingEventCounts[slot]; i++) {
+			processEvent(pendingEvents[slot][i]);
+		}
+		pendingEventCounts[slot] = 0;
+		// Iterate over the lists of spiking neurons, so that the cost is proportional to the number of spikes times
+		// the fan-out rather than the number of neurons.
+		NeuronCollection<? extends ComponentConfiguration> preNeurons = getPreNeurons();
+		int[] preSpiked = preNeurons.getSpikedNeurons();
+		int preSpikedCount = preNeurons.getSpikedNeuronCount();
+		for (int j = 0; j < preSpikedCount; j++) {
+			int n = preSpiked[j];
+			for (int i = preRowOffsets[n]; i < preRowOffsets[n + 1]; i++) {
+				int synapseID = preRowSynapses[i];
+				int delay = getPreEventDelay(synapseID);
+				if (delay == 0) {
+					processEvent(synapseID);
+				} else {
+					addPendingEvent(synapseID, delay);
+				}
+			}
+		}
+		NeuronCollection<? extends ComponentConfiguration> postNeurons = getPostNeurons();
+		int[] postSpiked = postNeurons.getSpikedNeurons();
+		int postSpikedCount = postNeurons.getSpikedNeuronCount();
+		for (int j = 0; j < postSpikedCount; j++) {
+			int n = postSpiked[j];
+			for (int i = postRowOffsets[n]; i < postRowEnds[n]; i++) {
+				processEvent(postRowSynapses[i]);
+			}
+		}
+	}
+
+	/**
+	 * Ensures the time wheel of pending events has a slot for each step up to the largest delay, moving any pending
+	 * events if it must be enlarged.
+	 */
+	private void ensurePendingEventCapacity() {
+		int slotCount = getRequiredHistoryLength() + 1;
+		if (pendingEvents != null && pendingEvents.length >= slotCount) {
+			return;
+		}
+		int[][] oldEvents = pendingEvents;
+		int[] oldCounts = pendingEventCounts;
+		pendingEvents = new int[slotCount][16];
+		pendingEventCounts = new int[slotCount];
+		if (oldEvents != null) {
+			for (int oldSlot = 0; oldSlot < oldEvents.length; oldSlot++) {
+				int stepsAhead = (int) ((oldSlot - stepCount % oldEvents.length + oldEvents.length) % oldEvents.length);
+				for (int i = 0; i < oldCounts[oldSlot]; i++) {
+					addPendingEvent(oldEvents[oldSlot][i], stepsAhead);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recreates the pending events from the history of the pre-synaptic neurons: a synapse is scheduled for each
+	 * pre-synaptic spike that occurred recently enough that it has not yet been delivered to it.
+	 */
+	private void createPendingEvents() {
+		Arrays.fill(pendingEventCounts, 0);
+		int synapseCount = getSizePopulated();
+		for (int s = 0; s < synapseCount; s++) {
+			int delay = getPreEventDelay(s);
+			for (int stepsAgo = 1; stepsAgo <= delay; stepsAgo++) {
+				int slot = (preHistoryHead[0] - stepsAgo + 1 + preHistoryLayout[0]) % preHistoryLayout[0];
+				if (preSpikingHistory[slot * preHistoryLayout[1] + preIndexes[s]]) {
+					addPendingEvent(s, delay - stepsAgo);
+				}
+			}
+		}
+		pendingEventsStale = false;
+	}
+
+	/**
+	 * Schedule the specified synapse to be updated the given number of steps after the current step.
+	 */
+	private void addPendingEvent(int synapseID, int stepsAhead) {
+		int slot = (int) ((stepCount + stepsAhead) % pendingEvents.length);
+		if (pendingEventCounts[slot] == pendingEvents[slot].length) {
+			pendingEvents[slot] = Arrays.copyOf(pendingEvents[slot], pendingEvents[slot].length * 2);
+		}
+		pendingEvents[slot][pendingEventCounts[slot]++] = synapseID;
+	}
+
+	private void processEvent(int synapseID) {
+		if (lastUpdateStep[synapseID] == stepCount) {
+			return; // Already updated this step.
+		}
+		long steps = stepCount - lastUpdateStep[synapseID] - 1;
+		if (steps > 0) {
+			catchUpSynapse(synapseID, steps);
+		}
+		updateSynapse(synapseID);
+		lastUpdateStep[synapseID] = stepCount;
+		if (isSynapseActive(synapseID)) {
+			activeSynapses[activeSynapseCount++] = synapseID;
+		}
+	}
+
+	/**
+	 * Brings the state of all synapses up to date in event-driven mode.
+	 */
+	protected void catchUpAllSynapses() {
+		// The synapses remain up to date until the next step.
+		if (caughtUpStepCount == stepCount) {
+			return;
+		}
+		catchUpSynapses(0, size);
+		caughtUpStepCount = stepCount;
+	}
+
+	// The value of stepCount when all synapses were last brought up to date, see catchUpAllSynapses().
+	private long caughtUpStepCount = -1;
+
+	/**
+	 * In event-driven mode, brings the synapses with indexes in the range [start, end) up to date (see
+	 * {@link #catchUpSynapse(int, long)}).
+	 */
+	protected void catchUpSynapses(int start, int end) {
+		if (!eventDriven) {
+			return;
+		}
+		long current = stepCount - 1;
+		for (int s = start; s < end; s++) {
+			long steps = current - lastUpdateStep[s];
+			if (steps > 0) {
+				catchUpSynapse(s, steps);
+				lastUpdateStep[s] = current;
+			}
+		}
+	}
+
+	/**
+	 * Set whether the synapses should be kept sorted by post-synaptic neuron (a compressed-sparse-row layout). If
+	 * enabled then whenever the pre- or post-synaptic neurons have been changed the synapses are reordered (see
+	 * {@link #sortByPostNeuron()}) before the next simulation step, so that the incoming synapses of each neuron are
+	 * contiguous in memory. This makes gathering the inputs for each neuron faster, and for synapse models without
+	 * dynamics allows the synapse kernel to be skipped entirely (see {@link #hasSynapseDynamics()}).
+	 * <strong>Reordering changes the index of synapses</strong>: synapses should be identified by their pre- and
+	 * post-synaptic neurons rather than their index after setting up connectivity. By default this is disabled.
+	 */
+	public void setPostNeuronOrdered(boolean postNeuronOrdered) {
+		this.postNeuronOrdered = postNeuronOrdered;
+		connectivityIndexStale = true;
+	}
+
+	/**
+	 * Returns true iff the synapses will be kept sorted by post-synaptic neuron. See
+	 * {@link #setPostNeuronOrdered(boolean)}.
+	 */
+	public boolean isPostNeuronOrdered() {
+		return postNeuronOrdered;
+	}
+
+	/**
+	 * Returns true iff the (populated) synapses are currently stored in order of post-synaptic neuron. This may be
+	 * the case either because {@link #setPostNeuronOrdered(boolean)} is enabled, {@link #sortByPostNeuron()} has been
+	 * called or the connectivity was specified in this order.
+	 */
+	public boolean isPostNeuronSorted() {
+		ensureConnectivityIndex();
+		return postNeuronSorted;
+	}
+
+	/**
+	 * Reorders the (populated) synapses so that they are stored in order of post-synaptic neuron, preserving the
+	 * relative order of synapses with the same post-synaptic neuron. All per-synapse data (see
+	 * {@link #getComponentArrayNames()}) is reordered. <strong>This changes the index of synapses.</strong> If the
+	 * synapses have been sorted with {@link #sortByPostAndPreNeuron()} they retain their IDs (see
+	 * {@link #getSynapseIndex(int)}).
+	 * 
+	 * @return An array giving the new order of the synapses: the synapse at index <em>i</em> after sorting is the
+	 *         synapse that was at index <em>order[i]</em> before sorting.
+	 */
+	public int[] sortByPostNeuron() {
+		updatePostNeuronIndex();
+		return reorderByPostNeuron();
+	}
+
+	/**
+	 * Reorders the synapses according to the current {@link #postRowSynapses} and regenerates the post-synaptic
+	 * neuron index.
+	 */
+	private int[] reorderByPostNeuron() {
+		return reorder(postRowSynapses, synapseIDs != null);
+	}
+
+	/**
+	 * Reorders the (populated) synapses so that they are stored in order of post-synaptic neuron and then
+	 * pre-synaptic neuron. All per-synapse data (see {@link #getComponentArrayNames()}) is reordered. In this order
+	 * the synapses write to the inputs of the post-synaptic neurons sequentially, and the synapses onto each
+	 * post-synaptic neuron read the outputs of the pre-synaptic neurons in ascending order, which reduces cache misses
+	 * if neurons that are connected to each other have nearby indexes (see
+	 * {@link NeuronCollection#reorderNeurons(int[])}). <strong>This changes the index of synapses</strong>, which are
+	 * still specified by index in the methods of this class, but each synapse retains its ID, which is its index before
+	 * the synapses were first sorted (see {@link #getSynapseIndex(int)} and {@link #getSynapseID(int)}).
+	 * 
+	 * @return An array giving the new order of the synapses: the synapse at index <em>i</em> after sorting is the
+	 *         synapse that was at index <em>order[i]</em> before sorting.
+	 */
+	public int[] sortByPostAndPreNeuron() {
+		int synapseCount = getSizePopulated();
+		int[] byPre = new int[synapseCount];
+		buildNeuronIndex(preIndexes, synapseCount, new int[getPreNeurons().getSize() + 1], byPre);
+		// Grouping the synapses ordered by pre-synaptic neuron by post-synaptic neuron preserves the pre-synaptic
+		// order within each group.
+		int[] postOfByPre = new int[synapseCount];
+		for (int i = 0; i < synapseCount; i++) {
+			postOfByPre[i] = postIndexes[byPre[i]];
+		}
+		int[] rows = new int[synapseCount];
+		buildNeuronIndex(postOfByPre, synapseCount, new int[getPostNeurons().getSize() + 1], rows);
+		for (int i = 0; i < synapseCount; i++) {
+			rows[i] = byPre[rows[i]];
+		}
+		return reorder(rows, true);
+	}
+
+	/**
+	 * Reorders the populated synapses according to the given order, leaving the unpopulated slots in place, and
+	 * regenerates the post-synaptic neuron index. If keepIDs is true the IDs of the synapses are updated so that each
+	 * synapse retains its ID.
+	 */
+	private int[] reorder(int[] populatedOrder, boolean keepIDs) {
+		ensureStateVariablesAreFresh();
+		ensureOutputsAreFresh();
+		int synapseCount = getSizePopulated();
+		int[] order = new int[size];
+		System.arraycopy(populatedOrder, 0, order, 0, synapseCount);
+		for (int s = synapseCount; s < size; s++) {
+			order[s] = s;
+		}
+		permuteComponents(order);
+		if (keepIDs) {
+			int[] newSynapseIDs = new int[size];
+			if (synapseIndexes == null) {
+				synapseIndexes = new int[size];
+			}
+			for (int s = 0; s < size; s++) {
+				newSynapseIDs[s] = getSynapseID(order[s]);
+				synapseIndexes[newSynapseIDs[s]] = s;
+			}
+			synapseIDs = newSynapseIDs;
 		}
+		init(); // Regenerate derived data and make sure changes are pushed to GPU if necessary.
+		updatePostNeuronIndex();
+		return order;
+	}
 
-		// In case explicit mode is being used for the Aparapi kernel.
-		put(outputs);
-		outputsStale = false;
-		put(efficacy);
-		put(preIndexes);
-		put(postIndexes);
-		preOrPostIndexesModified = false;
-		efficaciesModified = false;
+	/**
+	 * Returns the current index of the synapse with the given ID. The ID of a synapse is its index before the synapses
+	 * were first sorted with {@link #sortByPostAndPreNeuron()}; if they have not been sorted this returns the given
+	 * ID. When a synapse is removed the synapse with the highest ID takes its ID, as for the indexes (see
+	 * {@link #removeSynapse(int)}).
+	 */
+	public int getSynapseIndex(int synapseID) {
+		return synapseIndexes == null ? synapseID : synapseIndexes[synapseID];
 	}
 
 	/**
-	 * Resets all synapses to their initial state (see {@link #initialEfficacy}). Sub-classes should override this
-	 * method if state variables other than the efficacy and synapseOutputs must be reset, or if they should be set to
-	 * something other than 0. The overriding method should invoke this super-method (before doing anything else).
-	 * Arrays/buffers reset here and used in the run() method/kernel should be transferred to the execution hardware
-	 * using put().
+	 * Returns the ID of the synapse at the given index, see {@link #getSynapseIndex(int)}.
 	 */
-	@Override
-	public void reset() {
-		super.reset();
-		System.arraycopy(initialEfficacy, 0, efficacy, 0, efficacy.length);
-		efficaciesModified = true;
+	public int getSynapseID(int synapseIndex) {
+		return synapseIDs == null ? synapseIndex : synapseIDs[synapseIndex];
+	}
 
+	/**
+	 * Returns true iff the output of the specified synapse should be added to the modulatory input (see
+	 * {@link #neuronModInputs}) rather than the regular input of the post-synaptic neuron. This default implementation
+	 * returns false. Sub-classes which provide modulatory input should override this method. The result is cached
+	 * by {@link #updateConnectivityIndex()}.
+	 */
+	protected boolean isModulatoryInputSynapse(int synapseIndex) {
+		return false;
 	}
 
 	@Override
-	public void step() {
-		// At the moment Aparapi doesn't allow sharing buffers between kernels
-		// or allow kernels with multiple entry points in a way that is
-		// compatible with a framework such as this. Thus we must ensure that
-		// fresh versions of the following buffers are available to this kernel
-		// by "putting" them there.
-		network.getNeurons().ensureInputsAreFresh();
-		network.getNeurons().ensureOutputsAreFresh();
-		put(neuronOutputs); // neuron outputs are used by many synapse models.
-		put(neuronSpikings); // neuron spikings are used by many synapse models.
-		put(neuronInputs); // neuron inputs are calculated in run(), and are typically reset to 0 by the neuron model in
-							// the previous simulation step.
-		if (preOrPostIndexesModified) {
-			put(preIndexes);
-			put(postIndexes);
-		}
-		if (efficaciesModified) {
-			put(efficacy);
-		}
-		super.step();
-		outputsStale = true;
-		get(neuronInputs); // See note above.
+	public void setSizePopulated(int sizePopulated) {
+		super.setSizePopulated(sizePopulated);
+		connectivityIndexStale = true;
 	}
 
-	/**
-	 * Implements the basic infrastructure for processing a synapse by updating the values of {@link #outputs} and
-	 * {@link #neuronInputs}. Sub-classes may override this method, and if they modify the {@link #efficacy} they must
-	 * call the super-method <strong>after</strong> modifying it.
-	 */
 	@Override
-	public void run() {
-		int synapseID = this.getGlobalId();
-		outputs[synapseID] = neuronOutputs[preIndexes[synapseID]] * efficacy[synapseID];
-		neuronInputs[postIndexes[synapseID]] += outputs[synapseID];
+	public synchronized void dispose() {
+		if (inputAccumulator != null) {
+			inputAccumulator.dispose();
+			inputAccumulator = null;
+		}
+		super.dispose();
 	}
 
 	@Override
 	public double getInput(int index) {
 		ensureInputsAreFresh();
-		return neuronOutputs[preIndexes[index]];
+		return getPreOutput(index);
 	}
 
 	/**
@@ -170,11 +1306,22 @@ public abstract class SynapseCollection<C extends SynapseConfiguration> extends
 			inputs = new double[size];
 		}
 		for (int s = 0; s < size; s++) {
-			inputs[s] = neuronOutputs[preIndexes[s]];
+			inputs[s] = getPreOutput(s);
 		}
 		return inputs;
 	}
 
+	/**
+	 * Copies the inputs of the synapses with indexes in the range [start, end) into the given array, starting at the
+	 * given offset, without allocating memory (see {@link #getInputs()}).
+	 */
+	public void getInputs(int start, int end, double[] inputs, int offset) {
+		ensureInputsAreFresh();
+		for (int s = start; s < end; s++) {
+			inputs[offset + s - start] = getPreOutput(s);
+		}
+	}
+
 	/**
 	 * SynapseCollection implements this as an empty method as it generally does not make sense to add external input to
 	 * a synapse. The same effect can be achieved by adding to the output value of the pre-synaptic neuron.
@@ -185,66 +1332,250 @@ public abstract class SynapseCollection<C extends SynapseConfiguration> extends
 
 	@Override
 	public void ensureInputsAreFresh() {
-		network.getNeurons().ensureOutputsAreFresh();
+		getPreNeurons().ensureOutputsAreFresh();
 		inputsStale = false;
 	}
 
+	/**
+	 * Set the transmission delay of a synapse, in simulation steps. The output and spikes of the pre-synaptic neuron
+	 * reach the synapse the given number of steps later than they otherwise would. By default synapses have no delay.
+	 * The first time a non-zero delay is set the memory required for per-synapse delays is allocated.
+	 * 
+	 * @param synapseIndex The index of the synapse to set the delay for.
+	 * @param delay The delay in simulation steps, which must be non-negative.
+	 */
+	public void setDelay(int synapseIndex, int delay) {
+		if (delay < 0) {
+			throw new IllegalArgumentException("The delay of a synapse must be non-negative.");
+		}
+		if (!useDelays[0]) {
+			if (delay == 0) {
+				return;
+			}
+			useDelays[0] = true;
+			delays = new int[size];
+			put(useDelays);
+		}
+		delays[synapseIndex] = delay;
+		maxDelay = Math.max(maxDelay, delay);
+		put(delays);
+	}
+
+	/**
+	 * Get the transmission delay of a synapse, in simulation steps. See {@link #setDelay(int, int)}.
+	 */
+	public int getDelay(int synapseIndex) {
+		return useDelays[0] ? delays[synapseIndex] : 0;
+	}
+
+	/**
+	 * Returns the largest transmission delay set for any synapse, in simulation steps.
+	 */
+	public int getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * Set the NeuronCollections containing the pre- and post-synaptic neurons. This is generally only for internal
+	 * use, see {@link com.ojcoleman.bain.NeuralNetwork#addProjection(String, SynapseCollection, String, String)}. Set
+	 * both to null to use the neurons of the network. Causes this collection to be reinitialised (via init()) if it
+	 * belongs to a network.
+	 */
+	public void setPopulations(NeuronCollection<? extends ComponentConfiguration> preNeurons, NeuronCollection<? extends ComponentConfiguration> postNeurons) {
+		this.preNeurons = preNeurons;
+		this.postNeurons = postNeurons;
+		if (network != null) {
+			init();
+		}
+	}
+
+	/**
+	 * Returns the NeuronCollection containing the pre-synaptic neurons.
+	 */
+	public NeuronCollection<? extends ComponentConfiguration> getPreNeurons() {
+		return preNeurons != null ? preNeurons : network.getNeurons();
+	}
+
+	/**
+	 * Returns the NeuronCollection containing the post-synaptic neurons.
+	 */
+	public NeuronCollection<? extends ComponentConfiguration> getPostNeurons() {
+		return postNeurons != null ? postNeurons : network.getNeurons();
+	}
+
+	/**
+	 * Returns the index of the pre-synaptic neuron with the given ID (see {@link NeuronCollection#getNeuronIndex(int)}),
+	 * or the given ID if the pre-synaptic neurons are not known yet.
+	 */
+	protected int getPreNeuronIndex(int neuronID) {
+		NeuronCollection<?> neurons = getKnownPreNeurons();
+		return neurons == null ? neuronID : neurons.getNeuronIndex(neuronID);
+	}
+
+	/**
+	 * Returns the ID of the pre-synaptic neuron at the given index (see {@link NeuronCollection#getNeuronID(int)}), or
+	 * the given index if the pre-synaptic neurons are not known yet.
+	 */
+	protected int getPreNeuronID(int neuronIndex) {
+		NeuronCollection<?> neurons = getKnownPreNeurons();
+		return neurons == null ? neuronIndex : neurons.getNeuronID(neuronIndex);
+	}
+
+	/**
+	 * Returns the index of the post-synaptic neuron with the given ID, see {@link #getPreNeuronIndex(int)}.
+	 */
+	protected int getPostNeuronIndex(int neuronID) {
+		NeuronCollection<?> neurons = getKnownPostNeurons();
+		return neurons == null ? neuronID : neurons.getNeuronIndex(neuronID);
+	}
+
+	/**
+	 * Returns the ID of the post-synaptic neuron at the given index, see {@link #getPreNeuronID(int)}.
+	 */
+	protected int getPostNeuronID(int neuronIndex) {
+		NeuronCollection<?> neurons = getKnownPostNeurons();
+		return neurons == null ? neuronIndex : neurons.getNeuronID(neuronIndex);
+	}
+
+	// The pre- or post-synaptic neurons, or null if this collection has not been added to a network yet.
+	private NeuronCollection<?> getKnownPreNeurons() {
+		return preNeurons != null ? preNeurons : network != null ? network.getNeurons() : null;
+	}
+
+	private NeuronCollection<?> getKnownPostNeurons() {
+		return postNeurons != null ? postNeurons : network != null ? network.getNeurons() : null;
+	}
+
+	private static boolean isReordered(NeuronCollection<?> neurons) {
+		return neurons != null && neurons.neuronIndexes != null;
+	}
+
 	/**
 	 * Set the pre-synaptic neuron for a synapse.
 	 * 
 	 * @param synapseIndex The index of the synapse to set the pre-synaptic neuron for.
-	 * @param neuronIndex The index of the pre-synaptic neuron in the NeuronCollection associated with this
-	 *            SynapseCollection.
+	 * @param neuronID The ID of the pre-synaptic neuron in the NeuronCollection associated with this
+	 *            SynapseCollection (see {@link NeuronCollection#getNeuronIndex(int)}).
 	 */
-	public void setPreNeuron(int synapseIndex, int neuronIndex) {
-		preIndexes[synapseIndex] = neuronIndex;
+	public void setPreNeuron(int synapseIndex, int neuronID) {
+		preIndexes[synapseIndex] = getPreNeuronIndex(neuronID);
 		preOrPostIndexesModified = true;
+		connectivityIndexStale = true;
 	}
 
 	/**
 	 * Get the pre-synaptic Neuron for a synapse.
 	 * 
 	 * @param synapseIndex The index of the synapse to get the pre-synaptic for.
-	 * @return The index of the pre-synaptic in the NeuronCollection associated with this SynapseCollection.
+	 * @return The ID of the pre-synaptic in the NeuronCollection associated with this SynapseCollection (see
+	 *         {@link NeuronCollection#getNeuronIndex(int)}).
 	 */
 	public int getPreNeuron(int synapseIndex) {
-		return preIndexes[synapseIndex];
+		return getPreNeuronID(preIndexes[synapseIndex]);
 	}
 
 	/**
 	 * Set the post-synaptic Neuron for a synapse.
 	 * 
 	 * @param synapseIndex The index of the to set the post-synaptic for.
-	 * @param neuronIndex The index of the post-synaptic in the NeuronCollection associated with this SynapseCollection.
+	 * @param neuronID The ID of the post-synaptic in the NeuronCollection associated with this SynapseCollection (see
+	 *            {@link NeuronCollection#getNeuronIndex(int)}).
 	 */
-	public void setPostNeuron(int synapseIndex, int neuronIndex) {
-		postIndexes[synapseIndex] = neuronIndex;
+	public void setPostNeuron(int synapseIndex, int neuronID) {
+		postIndexes[synapseIndex] = getPostNeuronIndex(neuronID);
 		preOrPostIndexesModified = true;
+		connectivityIndexStale = true;
 	}
 
 	/**
 	 * Get the post-synaptic Neuron for a synapse.
 	 * 
 	 * @param synapseIndex The index of the to get the post-synaptic for.
-	 * @return The index of the post-synaptic in the NeuronCollection associated with this SynapseCollection.
+	 * @return The ID of the post-synaptic in the NeuronCollection associated with this SynapseCollection (see
+	 *         {@link NeuronCollection#getNeuronIndex(int)}).
 	 */
 	public int getPostNeuron(int synapseIndex) {
-		return postIndexes[synapseIndex];
+		return getPostNeuronID(postIndexes[synapseIndex]);
 	}
 
 	/**
 	 * Set the pre- and post-synaptic neurons for a synapse.
 	 * 
 	 * @param synapseIndex The index of the synapse to set the pre-synaptic neuron for.
-	 * @param preNeuronIndex The index of the pre-synaptic neuron in the NeuronCollection associated with this
-	 *            SynapseCollection.
-	 * @param postNeuronIndex The index of the post-synaptic neuron in the NeuronCollection associated with this
+	 * @param preNeuronID The ID of the pre-synaptic neuron in the NeuronCollection associated with this
+	 *            SynapseCollection (see {@link NeuronCollection#getNeuronIndex(int)}).
+	 * @param postNeuronID The ID of the post-synaptic neuron in the NeuronCollection associated with this
 	 *            SynapseCollection.
 	 */
-	public void setPreAndPostNeurons(int synapseIndex, int preNeuronIndex, int postNeuronIndex) {
-		preIndexes[synapseIndex] = preNeuronIndex;
-		postIndexes[synapseIndex] = postNeuronIndex;
+	public void setPreAndPostNeurons(int synapseIndex, int preNeuronID, int postNeuronID) {
+		preIndexes[synapseIndex] = getPreNeuronIndex(preNeuronID);
+		postIndexes[synapseIndex] = getPostNeuronIndex(postNeuronID);
+		preOrPostIndexesModified = true;
+		connectivityIndexStale = true;
+	}
+
+	/**
+	 * Replaces the pre- and post-synaptic neuron indexes of all (populated) synapses according to the given mappings,
+	 * for example after the neurons have been reordered (see {@link NeuronCollection#reorderNeurons(int[])}).
+	 * 
+	 * @param preNeuronMap Array mapping each previous pre-synaptic neuron index to the new index, or null to leave the
+	 *            pre-synaptic neuron indexes unchanged.
+	 * @param postNeuronMap Array mapping each previous post-synaptic neuron index to the new index, or null to leave
+	 *            the post-synaptic neuron indexes unchanged.
+	 */
+	public void remapNeurons(int[] preNeuronMap, int[] postNeuronMap) {
+		int synapseCount = getSizePopulated();
+		for (int s = 0; s < synapseCount; s++) {
+			if (preNeuronMap != null) {
+				preIndexes[s] = preNeuronMap[preIndexes[s]];
+			}
+			if (postNeuronMap != null) {
+				postIndexes[s] = postNeuronMap[postIndexes[s]];
+			}
+		}
+		preOrPostIndexesModified = true;
+		connectivityIndexStale = true;
+	}
+
+	/**
+	 * Returns the number of synapses in this collection. This is the same as {@link #getSize()}, except for sub-classes
+	 * that store the synapses outside of the Java heap and so may contain more than 2^31 synapses.
+	 */
+	public long getSynapseCount() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of synapses in the populated range of this collection. This is the same as
+	 * {@link #getSizePopulated()}, except for sub-classes that store the synapses outside of the Java heap.
+	 */
+	public long getPopulatedSynapseCount() {
+		return getSizePopulated();
+	}
+
+	/**
+	 * Set the pre- and post-synaptic neurons for a range of synapses. This is much faster than setting them for each
+	 * synapse individually. This method may be invoked concurrently from multiple threads for disjoint ranges of
+	 * synapses.
+	 * 
+	 * @param synapseIndex The index of the first synapse to set the neurons for.
+	 * @param preNeuronIDs Array containing the IDs of the pre-synaptic neurons (see
+	 *            {@link NeuronCollection#getNeuronIndex(int)}).
+	 * @param postNeuronIDs Array containing the IDs of the post-synaptic neurons.
+	 * @param offset The index of the first element to use in preNeuronIDs and postNeuronIDs.
+	 * @param count The number of synapses to set.
+	 */
+	public void setPreAndPostNeurons(int synapseIndex, int[] preNeuronIDs, int[] postNeuronIDs, int offset, int count) {
+		System.arraycopy(preNeuronIDs, offset, preIndexes, synapseIndex, count);
+		System.arraycopy(postNeuronIDs, offset, postIndexes, synapseIndex, count);
+		if (isReordered(getKnownPreNeurons()) || isReordered(getKnownPostNeurons())) {
+			for (int s = synapseIndex; s < synapseIndex + count; s++) {
+				preIndexes[s] = getPreNeuronIndex(preIndexes[s]);
+				postIndexes[s] = getPostNeuronIndex(postIndexes[s]);
+			}
+		}
 		preOrPostIndexesModified = true;
+		connectivityIndexStale = true;
 	}
 
 	/**
@@ -256,9 +1587,16 @@ public abstract class SynapseCollection<C extends SynapseConfiguration> extends
 	public double getEfficacy(int synapseIndex) {
 		// If efficacies have been modified then we've already pulled the latest values from the SIMD hardware.
 		if (!efficaciesModified && stateVariablesStale) {
-			get(efficacy);
+			fetchEfficacies();
+		}
+		if (eventDriven) {
+			long steps = stepCount - 1 - lastUpdateStep[synapseIndex];
+			if (steps > 0) {
+				catchUpSynapse(synapseIndex, steps);
+				lastUpdateStep[synapseIndex] = stepCount - 1;
+			}
 		}
-		return efficacy[synapseIndex];
+		return loadEfficacy(synapseIndex);
 	}
 	
 	/**
@@ -268,7 +1606,7 @@ public abstract class SynapseCollection<C extends SynapseConfiguration> extends
 	 * @return the initial strength (weight) value.
 	 */
 	public double getInitialEfficacy(int synapseIndex) {
-		return initialEfficacy[synapseIndex];
+		return singlePrecision[0] ? initialEfficacySingle[synapseIndex] : initialEfficacy[synapseIndex];
 	}
 
 	/**
@@ -283,14 +1621,72 @@ public abstract class SynapseCollection<C extends SynapseConfiguration> extends
 		// otherwise we need pull the latest values before we start setting individual ones as we're going to
 		// be pushing back all the values during the next simulation step.
 		if (!efficaciesModified && stateVariablesStale) {
-			get(efficacy);
+			fetchEfficacies();
 		}
-		efficacy[synapseIndex] = newEfficacy;
-		initialEfficacy[synapseIndex] = newEfficacy;
-		stateVariablesStale = true;
+		storeEfficacy(synapseIndex, newEfficacy);
+		setInitialEfficacy(synapseIndex, newEfficacy);
+		// In event-driven mode the state on the host is always current.
+		stateVariablesStale = !eventDriven;
 		efficaciesModified = true;
 	}
 
+	/**
+	 * Set the current and initial strength (weight) value for a range of synapses. This is much faster than setting
+	 * the efficacy of each synapse individually. This method may be invoked concurrently from multiple threads for
+	 * disjoint ranges of synapses.
+	 * 
+	 * @param synapseIndex The index of the first synapse to set the efficacy of.
+	 * @param newEfficacies Array containing the new efficacies.
+	 * @param offset The index of the first element to use in newEfficacies.
+	 * @param count The number of synapses to set.
+	 */
+	public void setEfficacies(int synapseIndex, double[] newEfficacies, int offset, int count) {
+		// See setEfficacy(int, double). Synchronise so that only one thread pulls the values from the SIMD hardware.
+		synchronized (this) {
+			if (!efficaciesModified && stateVariablesStale) {
+				fetchEfficacies();
+			}
+			stateVariablesStale = !eventDriven;
+			efficaciesModified = true;
+		}
+		if (singlePrecision[0]) {
+			for (int i = 0; i < count; i++) {
+				float value = (float) newEfficacies[offset + i];
+				efficacySingle[synapseIndex + i] = value;
+				initialEfficacySingle[synapseIndex + i] = value;
+			}
+		} else {
+			System.arraycopy(newEfficacies, offset, efficacy, synapseIndex, count);
+			System.arraycopy(newEfficacies, offset, initialEfficacy, synapseIndex, count);
+		}
+	}
+
+	private void setInitialEfficacy(int synapseIndex, double value) {
+		if (singlePrecision[0]) {
+			initialEfficacySingle[synapseIndex] = (float) value;
+		} else {
+			initialEfficacy[synapseIndex] = value;
+		}
+	}
+
+	// Fetches the efficacies for the current precision mode from the execution hardware.
+	private void fetchEfficacies() {
+		if (singlePrecision[0]) {
+			get(efficacySingle);
+		} else {
+			get(efficacy);
+		}
+	}
+
+	// Transfers the efficacies for the current precision mode to the execution hardware.
+	private void putEfficacies() {
+		if (singlePrecision[0]) {
+			put(efficacySingle);
+		} else {
+			put(efficacy);
+		}
+	}
+
 	/**
 	 * Returns a reference to the internal efficacy array, to allow efficient getting and setting of efficacy values.
 	 * <strong>If reading values from the returned array, this method must be called after every call to
@@ -298,13 +1694,25 @@ public abstract class SynapseCollection<C extends SynapseConfiguration> extends
 	 * This will ensure that the current values are retrieved from the SIMD hardware (eg GPU) if necessary. <strong>If
 	 * setting values in the returned array the method {@link #setEfficaciesModified()} must be called.</strong>. This
 	 * will ensure that the modified values are pushed to the SIMD hardware if necessary during the next simulation
-	 * step.
+	 * step. In single precision mode (see {@link #setSinglePrecision(boolean)}) a double precision copy of the
+	 * efficacies is returned instead, which is updated each time this method is called; values set in the copy are
+	 * stored when {@link #setEfficaciesModified()} is called.
 	 */
 	public double[] getEfficacies() {
 		// If efficacies have been modified then we've already pulled the latest values from the SIMD hardware
 		// (and we don't want to overwrite values that have already been set), otherwise we need pull the latest values.
 		if (!efficaciesModified && stateVariablesStale) {
-			get(efficacy);
+			fetchEfficacies();
+		}
+		catchUpAllSynapses();
+		if (singlePrecision[0]) {
+			if (efficacyCopy == null || efficacyCopy.length != size) {
+				efficacyCopy = new double[size];
+			}
+			for (int s = 0; s < size; s++) {
+				efficacyCopy[s] = efficacySingle[s];
+			}
+			return efficacyCopy;
 		}
 		return efficacy;
 	}
@@ -312,11 +1720,36 @@ public abstract class SynapseCollection<C extends SynapseConfiguration> extends
 	/**
 	 * If setting values in the array returned by {@link #getEfficacies()} this method must be called. This will ensure
 	 * that the modified values are pushed to the SIMD hardware if necessary during the next simulation step and will
-	 * update the values in {@link SynapseCollection#initialEfficacy}.
+	 * update the initial efficacies (see {@link #getInitialEfficacy(int)}).
 	 */
 	public void setEfficaciesModified() {
 		efficaciesModified = true;
-		System.arraycopy(efficacy, 0, initialEfficacy, 0, efficacy.length);
+		if (singlePrecision[0]) {
+			if (efficacyCopy != null) {
+				for (int s = 0; s < size; s++) {
+					efficacySingle[s] = (float) efficacyCopy[s];
+				}
+			}
+			System.arraycopy(efficacySingle, 0, initialEfficacySingle, 0, size);
+		} else {
+			System.arraycopy(efficacy, 0, initialEfficacy, 0, efficacy.length);
+		}
+	}
+
+	/**
+	 * {@inheritDoc} In event-driven mode the synapses in the given range are brought up to date first.
+	 */
+	@Override
+	public Object getFreshComponentArray(String name, int start, int end) {
+		Object array;
+		if (efficaciesModified && (name.equals("efficacy") || name.equals("efficacySingle"))) {
+			// The values on the host are newer than those on the execution hardware, see getEfficacies().
+			array = getComponentArray(name);
+		} else {
+			array = super.getFreshComponentArray(name, start, end);
+		}
+		catchUpSynapses(start, end);
+		return array;
 	}
 
 	@Override
@@ -329,9 +1762,10 @@ public abstract class SynapseCollection<C extends SynapseConfiguration> extends
 	 * initial efficacy of the synapse is 0. Subclasses should override this method if some additional criteria should
 	 * be used to determine this (for example a learning rate parameter for a synaptic plasticity function).
 	 * @see #compress()
+	 * @see #prune()
 	 */
 	public boolean isNotUsed(int synapseIndex) {
-		return initialEfficacy[synapseIndex] == 0;
+		return getInitialEfficacy(synapseIndex) == 0;
 	}
 
 	@Override
@@ -342,74 +1776,317 @@ public abstract class SynapseCollection<C extends SynapseConfiguration> extends
 	@Override
 	public void ensureStateVariablesAreFresh() {
 		if (stateVariablesStale) {
-			getEfficacies();
+			if (!efficaciesModified) {
+				fetchEfficacies();
+			}
 			stateVariablesStale = false;
 		}
+		catchUpAllSynapses();
 	}
 
 	/**
 	 * {@inheritDoc} This default implementation returns the {@link #efficacy} field.
 	 */
 	@Override
-	public String[] getStateVariableNames() {
-		String[] names = { "efficacy" };
-		return names;
+	protected String[] getSharedStateVariableNames() {
+		return stateVariableNames;
 	}
 
+	private static final String[] stateVariableNames = { "efficacy" };
+
 	/**
-	 * {@inheritDoc} This default implementation returns the {@link #efficacy} field.
+	 * {@inheritDoc} This default implementation provides the {@link #efficacy} field.
 	 */
 	@Override
-	public double[] getStateVariableValues(int synapseIndex) {
-		ensureStateVariablesAreFresh();
-		double[] values = { efficacy[synapseIndex] };
-		return values;
+	protected void copyStateVariableValues(int synapseIndex, double[] values) {
+		values[0] = loadEfficacy(synapseIndex);
 	}
 
 	/**
-	 * Remove synapses that are not in use (see {@link #isNotUsed(int)}) and reconfigure the
-	 * SynapseCollection to move these towards the end of the collection, then sets the "populated" size 
-	 * (see {@link ComponentCollection#setSizePopulated(int)}) of the collection accordingly so that
-	 * calculations for the unused synapses are not performed. {@link #init()} is called at the end to
-	 * ensure that configuration data is updated in sub-classes.
+	 * Remove synapses that are not in use (see {@link #isNotUsed(int)}), as for {@link #prune()}, after making sure
+	 * that the configuration data is up to date with the configuration objects so that isNotUsed() returns the correct
+	 * result. The unused synapses are removed from the populated range (see
+	 * {@link ComponentCollection#setSizePopulated(int)}) so that calculations for them are not performed.
 	 */
 	public void compress() {
 		init(); // Make sure config arrays are up to date with config objects so that isNotUsed() returns correct result.
-		int current = 0;
-		int end = efficacy.length - 1;
-		
-		// Swap unused synapses to the end of the collection.
-		while (current != end) {
-			if (isNotUsed(current)) {
-				swap(outputs, current, end);
-				swap(componentConfigIndexes, current, end);
-				swap(efficacy, current, end);
-				swap(initialEfficacy, current, end);
-				swap(preIndexes, current, end);
-				swap(postIndexes, current, end);
-				// Don't increment current as we haven't checked the one for end that we've swapped current for.
-				// This way we check the one we swapped current for in the next iteration.
-				end--;
-			}
-			else {
-				current++;
-			}
-		}
-		// If we finished with a swap, then we haven't checked the synapse that end points to.
-		if (isNotUsed(end)) end--;
-		
-		// Populated size is index of last useful synapse plus one.
-		setSizePopulated(end+1);
-		init(); // Make sure changes are pushed to GPU if necessary.
-	}
-	private void swap(double[] a, int x, int y) {
-		double t = a[x];
-		a[x] = a[y];
-		a[y] = t;
-	}
-	private void swap(int[] a, int x, int y) {
-		int t = a[x];
-		a[x] = a[y];
-		a[y] = t;
+		prune();
+	}
+
+	/**
+	 * Add a synapse using the first free slot after the populated range of the collection (see
+	 * {@link ComponentCollection#getSizePopulated()}), which is then extended to include it. The synapse is given the
+	 * first configuration and reset to its initial state.
+	 * 
+	 * @see #addSynapse(int, int, double, int)
+	 */
+	public int addSynapse(int preNeuronID, int postNeuronID, double efficacy) {
+		return addSynapse(preNeuronID, postNeuronID, efficacy, 0);
+	}
+
+	/**
+	 * Add a synapse using the first free slot after the populated range of the collection (see
+	 * {@link ComponentCollection#getSizePopulated()}), which is then extended to include it. If there are no free
+	 * slots the size of the collection is increased (see {@link ComponentCollection#ensureCapacity(int)}). The synapse
+	 * is reset to its initial state. The configuration-derived data is not regenerated, and the synapse is added in
+	 * place to the row of the post-synaptic neuron in the connectivity index (see {@link #postRowOffsets}), in time
+	 * that does not depend on the number of synapses or neurons, unless the index must be regenerated anyway because
+	 * the size was increased, post-neuron ordering (see
+	 * {@link #setPostNeuronOrdered(boolean)}) or event-driven updating is enabled. The per-synapse arrays are
+	 * transferred to the execution hardware before the next simulation step (if the arrays are not resident on the
+	 * host).
+	 * 
+	 * @param preNeuronID The ID of the pre-synaptic neuron (see {@link NeuronCollection#getNeuronIndex(int)}).
+	 * @param postNeuronID The ID of the post-synaptic neuron.
+	 * @param efficacy The initial efficacy of the synapse (some models determine the initial efficacy from the
+	 *            configuration instead).
+	 * @param configurationIndex The index of the configuration for the synapse.
+	 * @return The index of the new synapse.
+	 */
+	public int addSynapse(int preNeuronID, int postNeuronID, double efficacy, int configurationIndex) {
+		int synapseIndex = getSizePopulated();
+		ensureCapacity(synapseIndex + 1);
+		// The connectivity index is updated below rather than regenerated.
+		super.setSizePopulated(synapseIndex + 1);
+		componentConfigIndexes[synapseIndex] = configurationIndex;
+		preIndexes[synapseIndex] = getPreNeuronIndex(preNeuronID);
+		postIndexes[synapseIndex] = getPostNeuronIndex(postNeuronID);
+		setInitialEfficacy(synapseIndex, efficacy);
+		if (useDelays[0]) {
+			delays[synapseIndex] = 0;
+		}
+		// This also makes sure the state is fresh, so it is not overwritten when the arrays are next transferred.
+		reset(synapseIndex, synapseIndex + 1);
+		preOrPostIndexesModified = true;
+		synapsesModified = true;
+		addToConnectivityIndex(synapseIndex);
+		return synapseIndex;
+	}
+
+	/**
+	 * Remove a synapse. To keep the populated range of the collection (see
+	 * {@link ComponentCollection#getSizePopulated()}) dense, the last synapse in the populated range is moved into the
+	 * slot of the removed synapse and the populated range is reduced by one, <strong>which changes the index of the
+	 * moved synapse</strong>. The slot at the end of the populated range is then reused by
+	 * {@link #addSynapse(int, int, double, int)}. The connectivity index is updated in place, as for
+	 * addSynapse(), and the per-synapse arrays are transferred to the execution hardware before the next simulation
+	 * step.
+	 * 
+	 * @param synapseIndex The index of the synapse to remove.
+	 * @return The previous index of the synapse moved into the given index, or -1 if the removed synapse was the last
+	 *         one and so no synapse was moved.
+	 */
+	public int removeSynapse(int synapseIndex) {
+		int populated = getSizePopulated();
+		if (synapseIndex < 0 || synapseIndex >= populated) {
+			throw new IllegalArgumentException("The synapse index must be in the populated range [0, " + populated + ").");
+		}
+		ensureStateVariablesAreFresh();
+		ensureOutputsAreFresh();
+		return removeFreshSynapse(synapseIndex);
+	}
+
+	/**
+	 * Remove all synapses that are not in use (see {@link #isNotUsed(int)}), as for {@link #removeSynapse(int)}. This
+	 * checks every synapse; see {@link #prune(int, int)} to check a range of synapses, for example a different range
+	 * each step. If many synapses are removed the connectivity index is regenerated rather than updated for each.
+	 * 
+	 * @return The number of synapses removed.
+	 */
+	public int prune() {
+		return prune(0, getSizePopulated());
+	}
+
+	/**
+	 * Remove the synapses with indexes in the range [start, end) that are not in use (see {@link #isNotUsed(int)}),
+	 * as for {@link #removeSynapse(int)}. The synapses are checked in descending order of index, so a synapse moved
+	 * into the slot of a removed synapse is only checked if it was in the range. This takes time proportional to the
+	 * size of the range plus the cost of removing the unused synapses.
+	 * 
+	 * @return The number of synapses removed.
+	 */
+	public int prune(int start, int end) {
+		end = Math.min(end, getSizePopulated());
+		ensureStateVariablesAreFresh();
+		ensureOutputsAreFresh();
+		int removed = 0;
+		for (int s = end - 1; s >= start; s--) {
+			if (isNotUsed(s)) {
+				if (removed == PRUNE_INDEX_UPDATE_LIMIT) {
+					// Regenerating the index once is cheaper than updating it for each of many removals.
+					connectivityIndexStale = true;
+				}
+				removeFreshSynapse(s);
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	// The number of synapses removed by prune() for which the connectivity index is updated in place.
+	private static final int PRUNE_INDEX_UPDATE_LIMIT = 16;
+
+	/**
+	 * Returns the number of synapses that may be added with {@link #addSynapse(int, int, double, int)} before the size
+	 * of the collection must be increased.
+	 */
+	public int getFreeSynapseCount() {
+		return size - getSizePopulated();
+	}
+
+	private int removeFreshSynapse(int synapseIndex) {
+		int last = getSizePopulated() - 1;
+		removeFromConnectivityIndex(synapseIndex, last);
+		if (synapseIndex != last) {
+			copyComponent(last, synapseIndex);
+			if (neuronModInputs != null && modulatoryInputSynapses != null) {
+				modulatoryInputSynapses[synapseIndex] = modulatoryInputSynapses[last];
+			}
+		}
+		if (synapseIDs != null) {
+			removeSynapseID(synapseIndex, last);
+		}
+		super.setSizePopulated(last);
+		preOrPostIndexesModified = true;
+		synapsesModified = true;
+		return synapseIndex != last ? last : -1;
+	}
+
+	/**
+	 * Updates the synapse IDs after the synapse at the given index has been removed and the last synapse moved into its
+	 * slot. The synapse with the highest ID takes the ID of the removed synapse, so that the IDs remain dense, and the
+	 * freed slot is given the same ID as its index, as for slots that have never been used.
+	 */
+	private void removeSynapseID(int synapseIndex, int last) {
+		int removedID = synapseIDs[synapseIndex];
+		if (synapseIndex != last) {
+			synapseIDs[synapseIndex] = synapseIDs[last];
+			synapseIndexes[synapseIDs[synapseIndex]] = synapseIndex;
+		}
+		// The IDs of the populated synapses are [0, last].
+		if (removedID != last) {
+			int highestIDIndex = synapseIndexes[last];
+			synapseIDs[highestIDIndex] = removedID;
+			synapseIndexes[removedID] = highestIDIndex;
+		}
+		synapseIDs[last] = last;
+		synapseIndexes[last] = last;
+	}
+
+	/**
+	 * Returns true iff the connectivity index can be updated in place for synapses added or removed with
+	 * {@link #addSynapse(int, int, double, int)} and {@link #removeSynapse(int)}: it must be up to date and large
+	 * enough, and not require the synapses to be sorted by post-synaptic neuron (see
+	 * {@link #setPostNeuronOrdered(boolean)}) or include the pre-synaptic neuron index used for event-driven updating,
+	 * in which cases it is regenerated instead.
+	 */
+	private boolean isConnectivityIndexUpdatable(int synapseCount) {
+		return !connectivityIndexStale && !postNeuronOrdered && !eventDriven && postRowEnds.length == getPostNeurons().getSize() && (neuronModInputs == null || modulatoryInputSynapses.length >= synapseCount);
+	}
+
+	/**
+	 * Adds the given synapse, which must be the last in the populated range, to the connectivity index, or marks the
+	 * index as stale if it can not be updated in place. As the synapse has the largest index it is added to the end of
+	 * the incoming synapses of its post-synaptic neuron, making room for it with {@link #growPostRow(int)} if
+	 * necessary.
+	 */
+	private void addToConnectivityIndex(int synapseIndex) {
+		if (!isConnectivityIndexUpdatable(synapseIndex + 1)) {
+			connectivityIndexStale = true;
+			return;
+		}
+		int neuron = postIndexes[synapseIndex];
+		if (postRowEnds[neuron] == postRowLimits[neuron] && !growPostRow(neuron)) {
+			connectivityIndexStale = true;
+			return;
+		}
+		int i = postRowEnds[neuron]++;
+		postRowSynapses[i] = synapseIndex;
+		postNeuronSorted &= i == synapseIndex;
+		if (neuronModInputs != null) {
+			modulatoryInputSynapses[synapseIndex] = isModulatoryInputSynapse(synapseIndex);
+		}
+	}
+
+	/**
+	 * Makes room for at least one more synapse in the row of the given neuron in the connectivity index, by doubling
+	 * the space reserved for the row. A row at the end of the region of {@link #postRowSynapses} in use is extended in
+	 * place, otherwise it is moved to the end of the region, leaving its previous space unused. Thus the cost of
+	 * adding a synapse is amortised over the synapses of its post-synaptic neuron. Returns false, in which case the
+	 * index should be regenerated, if the unused space is already larger than the space in use by the synapses.
+	 */
+	private boolean growPostRow(int neuron) {
+		int neuronCount = postRowEnds.length;
+		int used = postRowOffsets[neuronCount];
+		int start = postRowOffsets[neuron];
+		int count = postRowEnds[neuron] - start;
+		boolean atEnd = postRowLimits[neuron] == used;
+		int newStart = atEnd ? start : used;
+		int newLimit = newStart + Math.max(4, count * 2);
+		if (newLimit > postRowSynapses.length) {
+			if (used - getSizePopulated() > getSizePopulated() + neuronCount) {
+				return false;
+			}
+			postRowSynapses = (int[]) Utility.resize(postRowSynapses, growCapacity(postRowSynapses.length, newLimit));
+		}
+		if (!atEnd) {
+			System.arraycopy(postRowSynapses, start, postRowSynapses, newStart, count);
+			postRowOffsets[neuron] = newStart;
+			postRowEnds[neuron] = newStart + count;
+			postNeuronSorted = false;
+		}
+		postRowLimits[neuron] = newLimit;
+		postRowOffsets[neuronCount] = newLimit;
+		return true;
+	}
+
+	/**
+	 * Removes the given synapse from the connectivity index, and renames the last synapse in the populated range,
+	 * which will be moved into its slot, keeping the synapses of each neuron in ascending order; or marks the index as
+	 * stale if it can not be updated in place. Only the rows of the post-synaptic neurons of the two synapses are
+	 * changed. Must be invoked before the synapse is moved.
+	 */
+	private void removeFromConnectivityIndex(int synapseIndex, int last) {
+		if (!isConnectivityIndexUpdatable(last + 1)) {
+			connectivityIndexStale = true;
+			return;
+		}
+		int neuron = postIndexes[synapseIndex];
+		int end = postRowEnds[neuron];
+		int i = Arrays.binarySearch(postRowSynapses, postRowOffsets[neuron], end, synapseIndex);
+		System.arraycopy(postRowSynapses, i + 1, postRowSynapses, i, end - i - 1);
+		postRowEnds[neuron] = end - 1;
+		if (synapseIndex != last) {
+			// The last synapse is the last of the synapses of its neuron; move it to its position in ascending order.
+			int moved = postIndexes[last];
+			int start = postRowOffsets[moved];
+			int j = postRowEnds[moved] - 1;
+			while (j > start && postRowSynapses[j - 1] > synapseIndex) {
+				postRowSynapses[j] = postRowSynapses[j - 1];
+				j--;
+			}
+			postRowSynapses[j] = synapseIndex;
+			postNeuronSorted = false;
+		}
+	}
+
+	@Override
+	public String[] getComponentArrayNames() {
+		return appendNames(super.getComponentArrayNames(), "efficacy", "initialEfficacy", "efficacySingle", "initialEfficacySingle", "preIndexes", "postIndexes", "delays", "lastUpdateStep");
+	}
+
+	/**
+	 * Utility method for implementations of {@link #getSinglePrecisionArrayNames()} in sub-classes that support single
+	 * precision storage: returns the names of the arrays declared by SynapseCollection that are then stored in single
+	 * precision ({@link #efficacy}, {@link #initialEfficacy} and {@link #outputs}) followed by the given names of the
+	 * state variable arrays of the sub-class.
+	 */
+	protected static String[] appendSinglePrecisionArrayNames(String... names) {
+		return appendNames(new String[] { "efficacy", "initialEfficacy", "outputs" }, names);
+	}
+
+	@Override
+	protected String[] getCheckpointFieldNames() {
+		return appendNames(super.getCheckpointFieldNames(), "stepCount", "useDelays", "maxDelay", "synapseIDs", "synapseIndexes");
 	}
 }
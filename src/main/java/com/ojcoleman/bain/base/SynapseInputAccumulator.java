@@ -0,0 +1,383 @@
+package com.ojcoleman.bain.base;
+
+import com.amd.aparapi.Kernel;
+import com.amd.aparapi.Range;
+
+/**
+ * <p>
+ * An Aparapi kernel that adds the outputs of the synapses in a {@link SynapseCollection} to the inputs of their
+ * post-synaptic neurons. Rather than having each synapse add its output to the input of its post-synaptic neuron
+ * (a scatter, which loses updates when several synapses with the same post-synaptic neuron are processed
+ * concurrently), each work item processes one post-synaptic neuron and sums the outputs of all of its incoming
+ * synapses (a gather). Work items therefore never write to the same element, so the kernel can be executed in
+ * parallel without synchronisation.
+ * </p>
+ * <p>
+ * The incoming synapses for each neuron are given by a row index: the incoming synapses for neuron <em>n</em> are
+ * <code>rowSynapses[rowOffsets[n]]</code> to <code>rowSynapses[rowEnds[n]-1]</code>, in ascending order of synapse
+ * index. The rows need not be contiguous or in order of neuron, so that synapses can be added to and removed from
+ * the index without moving the rows of other neurons. Because the outputs for each neuron are added in the same order as a sequential scatter over the
+ * synapses would add them, the result is bit-identical to that produced by sequential execution.
+ * </p>
+ * <p>
+ * If the synapses are stored in order of post-synaptic neuron (see {@link SynapseCollection#isPostNeuronSorted()})
+ * then the row index is not needed: the incoming synapses for neuron <em>n</em> are simply the synapses from
+ * <code>rowOffsets[n]</code> to <code>rowEnds[n]-1</code>, and each work item sweeps over a contiguous block of
+ * memory. For synapse models without dynamics (see {@link SynapseCollection#hasSynapseDynamics()}) the kernel can
+ * also calculate the synapse outputs during the gather, see
+ * {@link #gather(double[], int[], double[], double[], double[], int[], int[], int[], Kernel.EXECUTION_MODE)}.
+ * </p>
+ * <p>
+ * The synapse outputs and efficacies may be given in single precision, for synapse collections in single precision
+ * mode (see {@link ComponentCollection#setSinglePrecision(boolean)}); the inputs are always summed in double precision.
+ * </p>
+ * <p>
+ * This class is used internally by {@link SynapseCollection}; see {@link SynapseCollection#accumulateInputs()}.
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public class SynapseInputAccumulator extends Kernel implements RangeKernel {
+	/**
+	 * A reference to the {@link ComponentCollection#outputs} of the SynapseCollection.
+	 */
+	protected double[] synapseOutputs;
+
+	/**
+	 * The regular inputs of the post-synaptic neurons.
+	 */
+	protected double[] neuronInputs;
+
+	/**
+	 * The modulatory inputs of the post-synaptic neurons, or a dummy array if the synapse model does not provide
+	 * modulatory input (see {@link #useModInputs}).
+	 */
+	protected double[] neuronModInputs;
+
+	/**
+	 * For each synapse, whether its output is added to the modulatory rather than regular input of the post-synaptic
+	 * neuron, or a dummy array if the synapse model does not provide modulatory input.
+	 */
+	protected boolean[] modulatoryInputSynapses;
+
+	/**
+	 * Offsets into {@link #rowSynapses} of the first incoming synapse of each neuron.
+	 */
+	protected int[] rowOffsets;
+
+	/**
+	 * Offsets into {@link #rowSynapses} following the last incoming synapse of each neuron.
+	 */
+	protected int[] rowEnds;
+
+	/**
+	 * The indexes of the synapses, grouped by post-synaptic neuron, or a dummy array if the synapses are stored in
+	 * order of post-synaptic neuron.
+	 */
+	protected int[] rowSynapses;
+
+	/**
+	 * A reference to the outputs of the pre-synaptic neurons, or a dummy array if not calculating synapse outputs.
+	 */
+	protected double[] neuronOutputs;
+
+	/**
+	 * The index of the pre-synaptic neuron for each synapse, or a dummy array if not calculating synapse outputs.
+	 */
+	protected int[] preIndexes;
+
+	/**
+	 * The efficacy of each synapse, or a dummy array if not calculating synapse outputs.
+	 */
+	protected double[] efficacy;
+
+	/**
+	 * The outputs and efficacies of the synapses if {@link #singlePrecision} is set, otherwise dummy arrays. See
+	 * {@link #synapseOutputs} and {@link #efficacy}.
+	 */
+	protected float[] synapseOutputsSingle, efficacySingle;
+
+	/**
+	 * Element 0 is true iff the synapse outputs and efficacies are given in single precision.
+	 */
+	protected boolean[] singlePrecision = new boolean[1];
+
+	/**
+	 * Element 0 holds the layout of the synapses and whether the synapse outputs should be calculated, one of
+	 * {@link #LAYOUT_INDEXED}, {@link #LAYOUT_SORTED}, {@link #LAYOUT_INDEXED_CALCULATE_OUTPUTS} or
+	 * {@link #LAYOUT_SORTED_CALCULATE_OUTPUTS}.
+	 */
+	protected int[] layout = new int[1];
+
+	/**
+	 * Layout in which the incoming synapses for each neuron are given by {@link #rowSynapses}.
+	 */
+	protected static final int LAYOUT_INDEXED = 0;
+
+	/**
+	 * Layout in which the synapses are stored in order of post-synaptic neuron.
+	 */
+	protected static final int LAYOUT_SORTED = 1;
+
+	/**
+	 * Layout in which the synapses are stored in order of post-synaptic neuron and the output of each synapse is
+	 * calculated from the output of the pre-synaptic neuron and the efficacy.
+	 */
+	protected static final int LAYOUT_SORTED_CALCULATE_OUTPUTS = 2;
+
+	/**
+	 * Layout in which the incoming synapses for each neuron are given by {@link #rowSynapses} and the output of each
+	 * synapse is calculated from the output of the pre-synaptic neuron and the efficacy.
+	 */
+	protected static final int LAYOUT_INDEXED_CALCULATE_OUTPUTS = 3;
+
+	/**
+	 * Element 0 holds the number of neurons. (Single element arrays are used to pass scalar values to the kernel.)
+	 */
+	protected int[] neuronCount = new int[1];
+
+	/**
+	 * Element 0 is true iff {@link #neuronModInputs} and {@link #modulatoryInputSynapses} are in use.
+	 */
+	protected boolean[] useModInputs = new boolean[1];
+
+	private static final double[] NO_MOD_INPUTS = new double[1];
+	private static final boolean[] NO_MOD_SYNAPSES = new boolean[1];
+	private static final int[] NO_INDEXES = new int[1];
+	private static final double[] NO_VALUES = new double[1];
+	private static final float[] NO_SINGLE_VALUES = new float[1];
+
+	private Range executeRange;
+
+	private Kernel.EXECUTION_MODE requestedMode;
+
+	private ExecutionBackend executionBackend = new AparapiExecutionBackend();
+
+	public SynapseInputAccumulator() {
+		setExplicit(true);
+	}
+
+	/**
+	 * Add the synapse outputs to the inputs of the post-synaptic neurons using this kernel.
+	 *
+	 * @param synapseOutputs The output of each synapse.
+	 * @param neuronInputs The regular inputs of the post-synaptic neurons, which are added to.
+	 * @param neuronModInputs The modulatory inputs of the post-synaptic neurons, which are added to, or null if not
+	 *            used.
+	 * @param modulatoryInputSynapses For each synapse whether its output is added to neuronModInputs rather than
+	 *            neuronInputs, or null if not used.
+	 * @param rowOffsets Offsets into rowSynapses of the first incoming synapse of each neuron.
+	 * @param rowEnds Offsets into rowSynapses following the last incoming synapse of each neuron, with length neuron
+	 *            count.
+	 * @param rowSynapses The indexes of the synapses, grouped by post-synaptic neuron, or null if the synapses are
+	 *            stored in order of post-synaptic neuron (in which case rowOffsets and rowEnds are offsets into the
+	 *            synapse arrays).
+	 * @param mode The execution mode to use.
+	 */
+	public void accumulate(double[] synapseOutputs, double[] neuronInputs, double[] neuronModInputs, boolean[] modulatoryInputSynapses, int[] rowOffsets, int[] rowEnds, int[] rowSynapses, Kernel.EXECUTION_MODE mode) {
+		accumulate(synapseOutputs, NO_SINGLE_VALUES, false, neuronInputs, neuronModInputs, modulatoryInputSynapses, rowOffsets, rowEnds, rowSynapses, mode);
+	}
+
+	/**
+	 * Add the synapse outputs, given in single precision, to the inputs of the post-synaptic neurons using this kernel.
+	 * See {@link #accumulate(double[], double[], double[], boolean[], int[], int[], int[], Kernel.EXECUTION_MODE)}.
+	 */
+	public void accumulate(float[] synapseOutputs, double[] neuronInputs, double[] neuronModInputs, boolean[] modulatoryInputSynapses, int[] rowOffsets, int[] rowEnds, int[] rowSynapses, Kernel.EXECUTION_MODE mode) {
+		accumulate(NO_VALUES, synapseOutputs, true, neuronInputs, neuronModInputs, modulatoryInputSynapses, rowOffsets, rowEnds, rowSynapses, mode);
+	}
+
+	private void accumulate(double[] synapseOutputs, float[] synapseOutputsSingle, boolean single, double[] neuronInputs, double[] neuronModInputs, boolean[] modulatoryInputSynapses, int[] rowOffsets, int[] rowEnds, int[] rowSynapses, Kernel.EXECUTION_MODE mode) {
+		layout[0] = rowSynapses == null ? LAYOUT_SORTED : LAYOUT_INDEXED;
+		useModInputs[0] = neuronModInputs != null && modulatoryInputSynapses != null;
+		singlePrecision[0] = single;
+		setArrays(synapseOutputs, synapseOutputsSingle, neuronInputs, useModInputs[0] ? neuronModInputs : NO_MOD_INPUTS, useModInputs[0] ? modulatoryInputSynapses : NO_MOD_SYNAPSES, rowOffsets, rowEnds, rowSynapses == null ? NO_INDEXES : rowSynapses, NO_VALUES, NO_INDEXES, NO_VALUES, NO_SINGLE_VALUES);
+		executeKernel(mode);
+		if (useModInputs[0] && isTransferRequired()) {
+			get(this.neuronModInputs);
+		}
+	}
+
+	/**
+	 * Calculate the output of each synapse as the output of its pre-synaptic neuron multiplied by its efficacy, and add
+	 * the outputs to the inputs of the post-synaptic neurons, using this kernel.
+	 *
+	 * @param neuronOutputs The outputs of the pre-synaptic neurons.
+	 * @param preIndexes The index of the pre-synaptic neuron for each synapse.
+	 * @param efficacy The efficacy of each synapse.
+	 * @param synapseOutputs The output of each synapse, which is set.
+	 * @param neuronInputs The regular inputs of the post-synaptic neurons, which are added to.
+	 * @param rowOffsets Offsets into rowSynapses of the first incoming synapse of each neuron.
+	 * @param rowEnds Offsets into rowSynapses following the last incoming synapse of each neuron, with length neuron
+	 *            count.
+	 * @param rowSynapses The indexes of the synapses, grouped by post-synaptic neuron, or null if the synapses are
+	 *            stored in order of post-synaptic neuron (in which case rowOffsets and rowEnds are offsets into the
+	 *            synapse arrays).
+	 * @param mode The execution mode to use.
+	 */
+	public void gather(double[] neuronOutputs, int[] preIndexes, double[] efficacy, double[] synapseOutputs, double[] neuronInputs, int[] rowOffsets, int[] rowEnds, int[] rowSynapses, Kernel.EXECUTION_MODE mode) {
+		singlePrecision[0] = false;
+		gather(neuronOutputs, preIndexes, efficacy, NO_SINGLE_VALUES, synapseOutputs, NO_SINGLE_VALUES, neuronInputs, rowOffsets, rowEnds, rowSynapses, mode);
+		if (isTransferRequired()) {
+			get(this.synapseOutputs);
+		}
+	}
+
+	/**
+	 * Calculate the output of each synapse, with the efficacies and outputs given in single precision, and add the
+	 * outputs to the inputs of the post-synaptic neurons using this kernel. The output of each synapse is rounded to
+	 * single precision before it is added. See
+	 * {@link #gather(double[], int[], double[], double[], double[], int[], int[], int[], Kernel.EXECUTION_MODE)}.
+	 */
+	public void gather(double[] neuronOutputs, int[] preIndexes, float[] efficacy, float[] synapseOutputs, double[] neuronInputs, int[] rowOffsets, int[] rowEnds, int[] rowSynapses, Kernel.EXECUTION_MODE mode) {
+		singlePrecision[0] = true;
+		gather(neuronOutputs, preIndexes, NO_VALUES, efficacy, NO_VALUES, synapseOutputs, neuronInputs, rowOffsets, rowEnds, rowSynapses, mode);
+		if (isTransferRequired()) {
+			get(this.synapseOutputsSingle);
+		}
+	}
+
+	private void gather(double[] neuronOutputs, int[] preIndexes, double[] efficacy, float[] efficacySingle, double[] synapseOutputs, float[] synapseOutputsSingle, double[] neuronInputs, int[] rowOffsets, int[] rowEnds, int[] rowSynapses, Kernel.EXECUTION_MODE mode) {
+		layout[0] = rowSynapses == null ? LAYOUT_SORTED_CALCULATE_OUTPUTS : LAYOUT_INDEXED_CALCULATE_OUTPUTS;
+		useModInputs[0] = false;
+		setArrays(synapseOutputs, synapseOutputsSingle, neuronInputs, NO_MOD_INPUTS, NO_MOD_SYNAPSES, rowOffsets, rowEnds, rowSynapses == null ? NO_INDEXES : rowSynapses, neuronOutputs, preIndexes, efficacy, efficacySingle);
+		executeKernel(mode);
+	}
+
+	/**
+	 * Set the arrays used by the kernel, notifying the execution backend if any have changed.
+	 */
+	private void setArrays(double[] synapseOutputs, float[] synapseOutputsSingle, double[] neuronInputs, double[] neuronModInputs, boolean[] modulatoryInputSynapses, int[] rowOffsets, int[] rowEnds, int[] rowSynapses, double[] neuronOutputs, int[] preIndexes, double[] efficacy, float[] efficacySingle) {
+		if (this.synapseOutputs != synapseOutputs || this.synapseOutputsSingle != synapseOutputsSingle || this.neuronInputs != neuronInputs || this.neuronModInputs != neuronModInputs || this.modulatoryInputSynapses != modulatoryInputSynapses || this.rowOffsets != rowOffsets || this.rowEnds != rowEnds || this.rowSynapses != rowSynapses || this.neuronOutputs != neuronOutputs || this.preIndexes != preIndexes || this.efficacy != efficacy || this.efficacySingle != efficacySingle) {
+			this.synapseOutputs = synapseOutputs;
+			this.synapseOutputsSingle = synapseOutputsSingle;
+			this.neuronInputs = neuronInputs;
+			this.neuronModInputs = neuronModInputs;
+			this.modulatoryInputSynapses = modulatoryInputSynapses;
+			this.rowOffsets = rowOffsets;
+			this.rowEnds = rowEnds;
+			this.rowSynapses = rowSynapses;
+			this.neuronOutputs = neuronOutputs;
+			this.preIndexes = preIndexes;
+			this.efficacy = efficacy;
+			this.efficacySingle = efficacySingle;
+			executionBackend.invalidate(this);
+		}
+	}
+
+	private void executeKernel(Kernel.EXECUTION_MODE mode) {
+		// Compare against the requested rather than current mode, as Aparapi may have fallen back to another mode.
+		if (requestedMode != mode) {
+			setExecutionMode(mode);
+			requestedMode = mode;
+		}
+		int count = rowEnds.length;
+		if (executeRange == null || neuronCount[0] != count) {
+			neuronCount[0] = count;
+			executeRange = Range.create(Math.max(1, count));
+		}
+
+		// At the moment Aparapi doesn't allow sharing buffers between kernels, so all buffers must be transferred,
+		// unless we're executing on the host.
+		if (isTransferRequired()) {
+			put(synapseOutputs).put(neuronInputs).put(neuronModInputs).put(modulatoryInputSynapses);
+			put(rowOffsets).put(rowEnds).put(rowSynapses).put(neuronCount).put(useModInputs).put(layout);
+			put(neuronOutputs).put(preIndexes).put(efficacy);
+			put(synapseOutputsSingle).put(efficacySingle).put(singlePrecision);
+		}
+		executionBackend.execute(this, executeRange);
+		if (isTransferRequired()) {
+			get(neuronInputs);
+		}
+	}
+
+	/**
+	 * Set the backend used to execute this kernel. By default an {@link AparapiExecutionBackend} is used.
+	 */
+	public void setExecutionBackend(ExecutionBackend executionBackend) {
+		if (this.executionBackend != executionBackend) {
+			this.executionBackend.invalidate(this);
+			this.executionBackend = executionBackend;
+		}
+	}
+
+	@Override
+	public synchronized void dispose() {
+		executionBackend.invalidate(this);
+		super.dispose();
+	}
+
+	/**
+	 * Returns true iff explicit buffer transfers are required, that is if this kernel is not executed on the host.
+	 */
+	private boolean isTransferRequired() {
+		return !executionBackend.isHostResident(this);
+	}
+
+	@Override
+	public void run() {
+		int neuronID = getGlobalId();
+		if (neuronID >= neuronCount[0])
+			return;
+		sumInputs(neuronID);
+	}
+
+	@Override
+	public void runRange(int start, int end) {
+		end = Math.min(end, neuronCount[0]);
+		for (int neuronID = start; neuronID < end; neuronID++) {
+			sumInputs(neuronID);
+		}
+	}
+
+	@Override
+	public boolean isRunRangeSupported() {
+		return true;
+	}
+
+	/**
+	 * Sums the outputs of the incoming synapses of the specified neuron into its input(s).
+	 */
+	private void sumInputs(int neuronID) {
+		int start = rowOffsets[neuronID];
+		int end = rowEnds[neuronID];
+		double input = neuronInputs[neuronID];
+		if (layout[0] >= LAYOUT_SORTED_CALCULATE_OUTPUTS) {
+			for (int i = start; i < end; i++) {
+				int synapseID = layout[0] == LAYOUT_SORTED_CALCULATE_OUTPUTS ? i : rowSynapses[i];
+				if (singlePrecision[0]) {
+					float output = (float) (neuronOutputs[preIndexes[synapseID]] * efficacySingle[synapseID]);
+					synapseOutputsSingle[synapseID] = output;
+					input += output;
+				} else {
+					double output = neuronOutputs[preIndexes[synapseID]] * efficacy[synapseID];
+					synapseOutputs[synapseID] = output;
+					input += output;
+				}
+			}
+		} else if (useModInputs[0]) {
+			double modInput = neuronModInputs[neuronID];
+			for (int i = start; i < end; i++) {
+				int synapseID = layout[0] == LAYOUT_SORTED ? i : rowSynapses[i];
+				if (modulatoryInputSynapses[synapseID]) {
+					modInput += getSynapseOutput(synapseID);
+				} else {
+					input += getSynapseOutput(synapseID);
+				}
+			}
+			neuronModInputs[neuronID] = modInput;
+		} else if (layout[0] == LAYOUT_SORTED) {
+			for (int synapseID = start; synapseID < end; synapseID++) {
+				input += getSynapseOutput(synapseID);
+			}
+		} else {
+			for (int i = start; i < end; i++) {
+				input += getSynapseOutput(rowSynapses[i]);
+			}
+		}
+		neuronInputs[neuronID] = input;
+	}
+
+	private double getSynapseOutput(int synapseID) {
+		return singlePrecision[0] ? synapseOutputsSingle[synapseID] : synapseOutputs[synapseID];
+	}
+}
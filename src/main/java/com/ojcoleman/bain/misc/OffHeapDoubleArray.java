@@ -0,0 +1,147 @@
+package com.ojcoleman.bain.misc;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * <p>
+ * An array of doubles stored outside of the Java heap, indexed by long and so not limited to 2^31 elements. The
+ * values are stored in direct buffers of (at most) {@link #CHUNK_SIZE} elements each, in native byte order. Because
+ * the memory is not part of the heap it does not add to the work done by the garbage collector, which makes this
+ * suitable for very large, long-lived arrays such as the efficacies of billions of synapses. The memory is released
+ * when {@link #dispose()} is called, or otherwise when this object is garbage collected.
+ * </p>
+ * <p>
+ * Elements may be read and written concurrently by different threads provided no element is written by one thread
+ * while being read or written by another. All elements are initially 0.
+ * </p>
+ *
+ * @see OffHeapIntArray
+ *
+ * @author Oliver J. Coleman
+ */
+public class OffHeapDoubleArray {
+	/**
+	 * The base 2 logarithm of {@link #CHUNK_SIZE}.
+	 */
+	public static final int CHUNK_BITS = 26;
+
+	/**
+	 * The maximum number of elements stored in each direct buffer.
+	 */
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	// Used to release the memory of direct buffers, see free().
+	private static Object unsafe;
+	private static Method invokeCleaner;
+	private static Method cleaner;
+	private static Method clean;
+	static {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			invokeCleaner = null;
+			try {
+				cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+				clean = cleaner.getReturnType().getMethod("clean");
+			} catch (ReflectiveOperationException | RuntimeException e2) {
+				cleaner = null;
+			}
+		}
+	}
+
+	private final long length;
+	private DoubleBuffer[] chunks;
+	private ByteBuffer[] memory;
+
+	/**
+	 * Create a new array with the given length.
+	 */
+	public OffHeapDoubleArray(long length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("The length of an array must be non-negative.");
+		}
+		this.length = length;
+		chunks = new DoubleBuffer[(int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+		memory = new ByteBuffer[chunks.length];
+		for (int c = 0; c < chunks.length; c++) {
+			int chunkLength = (int) Math.min(CHUNK_SIZE, length - ((long) c << CHUNK_BITS));
+			memory[c] = ByteBuffer.allocateDirect(chunkLength * 8).order(ByteOrder.nativeOrder());
+			chunks[c] = memory[c].asDoubleBuffer();
+		}
+	}
+
+	/**
+	 * Returns the number of elements in this array.
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Returns the element at the given index.
+	 */
+	public double get(long index) {
+		return chunks[(int) (index >>> CHUNK_BITS)].get((int) index & CHUNK_MASK);
+	}
+
+	/**
+	 * Set the element at the given index.
+	 */
+	public void set(long index, double value) {
+		chunks[(int) (index >>> CHUNK_BITS)].put((int) index & CHUNK_MASK, value);
+	}
+
+	/**
+	 * Set the elements in the range [start, end) to the given value.
+	 */
+	public void fill(long start, long end, double value) {
+		for (long i = start; i < end; i++) {
+			set(i, value);
+		}
+	}
+
+	/**
+	 * Releases the memory for this array immediately, rather than when the buffers are garbage collected, by invoking
+	 * the cleaner of each direct buffer. If the cleaner is not accessible on this JVM the memory is released when the
+	 * buffers are garbage collected. The array must not be used afterwards.
+	 */
+	public void dispose() {
+		chunks = null;
+		free(memory);
+		memory = null;
+	}
+
+	/**
+	 * Releases the memory of the given direct buffers, which must not be used afterwards. The cleaner is invoked via
+	 * sun.misc.Unsafe.invokeCleaner() on Java 9 and later, or via sun.nio.ch.DirectBuffer.cleaner() on earlier versions.
+	 */
+	static void free(ByteBuffer[] buffers) {
+		if (buffers == null) {
+			return;
+		}
+		for (ByteBuffer buffer : buffers) {
+			try {
+				if (invokeCleaner != null) {
+					invokeCleaner.invoke(unsafe, buffer);
+				} else if (cleaner != null) {
+					Object bufferCleaner = cleaner.invoke(buffer);
+					if (bufferCleaner != null) {
+						clean.invoke(bufferCleaner);
+					}
+				}
+			} catch (ReflectiveOperationException e) {
+				// The memory will be released when the buffer is garbage collected.
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.ojcoleman.bain.misc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * An array of ints stored outside of the Java heap, indexed by long and so not limited to 2^31 elements. See
+ * {@link OffHeapDoubleArray} for details.
+ *
+ * @author Oliver J. Coleman
+ */
+public class OffHeapIntArray {
+	private static final int CHUNK_BITS = OffHeapDoubleArray.CHUNK_BITS;
+	private static final int CHUNK_SIZE = OffHeapDoubleArray.CHUNK_SIZE;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final long length;
+	private IntBuffer[] chunks;
+	private ByteBuffer[] memory;
+
+	/**
+	 * Create a new array with the given length.
+	 */
+	public OffHeapIntArray(long length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("The length of an array must be non-negative.");
+		}
+		this.length = length;
+		chunks = new IntBuffer[(int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+		memory = new ByteBuffer[chunks.length];
+		for (int c = 0; c < chunks.length; c++) {
+			int chunkLength = (int) Math.min(CHUNK_SIZE, length - ((long) c << CHUNK_BITS));
+			memory[c] = ByteBuffer.allocateDirect(chunkLength * 4).order(ByteOrder.nativeOrder());
+			chunks[c] = memory[c].asIntBuffer();
+		}
+	}
+
+	/**
+	 * Returns the number of elements in this array.
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Returns the element at the given index.
+	 */
+	public int get(long index) {
+		return chunks[(int) (index >>> CHUNK_BITS)].get((int) index & CHUNK_MASK);
+	}
+
+	/**
+	 * Set the element at the given index.
+	 */
+	public void set(long index, int value) {
+		chunks[(int) (index >>> CHUNK_BITS)].put((int) index & CHUNK_MASK, value);
+	}
+
+	/**
+	 * Set the elements in the range [start, end) to the given value.
+	 */
+	public void fill(long start, long end, int value) {
+		for (long i = start; i < end; i++) {
+			set(i, value);
+		}
+	}
+
+	/**
+	 * Releases the memory for this array (see {@link OffHeapDoubleArray#dispose()}). The array must not be used
+	 * afterwards.
+	 */
+	public void dispose() {
+		chunks = null;
+		OffHeapDoubleArray.free(memory);
+		memory = null;
+	}
+}
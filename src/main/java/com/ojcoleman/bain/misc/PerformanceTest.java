@@ -33,11 +33,16 @@ public class PerformanceTest {
 		
 		NeuralNetwork sim = new NeuralNetwork(timeResolution, neurons, synapses, mode);
 
+		int[] preIndexes = new int[synapseCount];
+		int[] postIndexes = new int[synapseCount];
+		double[] efficacies = new double[synapseCount];
 		for (int s = 0; s < synapseCount; s++) {
-			synapses.setPreAndPostNeurons(s, (int) (Math.random() * neuronCount), (int) (Math.random() * neuronCount));
-			synapses.setEfficacy(s, Math.random());
+			preIndexes[s] = (int) (Math.random() * neuronCount);
+			postIndexes[s] = (int) (Math.random() * neuronCount);
+			efficacies[s] = Math.random();
 		}
-		synapses.setEfficaciesModified();
+		synapses.setPreAndPostNeurons(0, preIndexes, postIndexes, 0, synapseCount);
+		synapses.setEfficacies(0, efficacies, 0, synapseCount);
 
 		// System.out.println("memory used: " + (Runtime.getRuntime().totalMemory() / (1024*1024)));
 
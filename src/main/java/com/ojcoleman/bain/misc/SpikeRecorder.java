@@ -0,0 +1,288 @@
+package com.ojcoleman.bain.misc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.ojcoleman.bain.base.NeuronCollection;
+
+/**
+ * <p>
+ * Records the spikes of the neurons in a {@link NeuronCollection} to a file in a compact address-event format. The
+ * recorder is attached to a network with {@link com.ojcoleman.bain.NeuralNetwork#addSpikeRecorder(SpikeRecorder)},
+ * after which the spikes of each step are appended to the file. The spikes are read from the list of neurons that
+ * spiked in the last step (see {@link NeuronCollection#getSpikedNeurons()}), so the cost of recording is proportional
+ * to the number of spikes rather than the number of neurons. The file is written through memory-mapped regions of
+ * {@link #REGION_SIZE} bytes, so no data is buffered on the Java heap and the operating system writes the file in
+ * the background. The recorder must be closed to truncate the file to the recorded length.
+ * </p>
+ * <p>
+ * The file consists of a header of four big-endian ints: the magic number {@link #MAGIC}, the format version
+ * {@link #VERSION}, the number of neurons in the collection and the time resolution of the network (or 0 if the
+ * collection is not in a network). This is followed by a record for each step in which at least one neuron spiked,
+ * in order of step, consisting of unsigned LEB128 variable-length integers: the difference between the step and the
+ * step of the previous record (or the step + 1 for the first record), the number of spikes, and then for each spike
+ * in ascending order of neuron index the difference between the neuron index and the index of the previous spike in
+ * the record (or the index + 1 for the first spike), less 1. Neuron indexes are recorded, which differ from the neuron
+ * IDs if the neurons have been reordered (see {@link NeuronCollection#getNeuronID(int)}). The recorded spikes can be
+ * read with a {@link Reader}.
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public class SpikeRecorder implements Closeable {
+	/**
+	 * The magic number at the start of spike recording files ("BSPK").
+	 */
+	public static final int MAGIC = 0x4253504B;
+
+	/**
+	 * The version of the file format written by this class.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The size in bytes of the header at the start of spike recording files.
+	 */
+	public static final int HEADER_SIZE = 16;
+
+	/**
+	 * The size in bytes of the regions of the file that are mapped into memory at a time.
+	 */
+	public static final int REGION_SIZE = 1 << 24;
+
+	private final NeuronCollection<?> neurons;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private MappedByteBuffer region;
+	private long regionPosition;
+	private long previousStep = -1;
+	private long spikeCount;
+
+	/**
+	 * Create a recorder that records the spikes of the given neurons to the given file, replacing the contents of the
+	 * file if it exists.
+	 *
+	 * @throws IOException If the file can not be created or written.
+	 */
+	public SpikeRecorder(File file, NeuronCollection<?> neurons) throws IOException {
+		this.neurons = neurons;
+		this.file = new RandomAccessFile(file, "rw");
+		channel = this.file.getChannel();
+		channel.truncate(0);
+		region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+		region.putInt(MAGIC);
+		region.putInt(VERSION);
+		region.putInt(neurons.getSize());
+		region.putInt(neurons.getNetwork() != null ? neurons.getNetwork().getTimeResolution() : 0);
+	}
+
+	/**
+	 * Returns the neurons whose spikes are recorded.
+	 */
+	public NeuronCollection<?> getNeurons() {
+		return neurons;
+	}
+
+	/**
+	 * Appends the spikes of the neurons in their last step to the file. This is invoked by the network after each step
+	 * if this recorder is attached to it.
+	 *
+	 * @param step The index of the step, which must be greater than the index given in the previous invocation.
+	 * @throws IllegalStateException If this recorder has been closed.
+	 * @throws RuntimeException If the file can not be written, with the IOException as the cause.
+	 */
+	public synchronized void record(long step) {
+		if (region == null) {
+			throw new IllegalStateException("This SpikeRecorder has been closed.");
+		}
+		if (step <= previousStep) {
+			throw new IllegalArgumentException("The step must be greater than the previously recorded step.");
+		}
+		int count = neurons.getSpikedNeuronCount();
+		if (count == 0) {
+			return;
+		}
+		int[] spiked = neurons.getSpikedNeurons();
+		try {
+			writeVarint(step - previousStep);
+			writeVarint(count);
+			int previousIndex = -1;
+			for (int i = 0; i < count; i++) {
+				writeVarint(spiked[i] - previousIndex - 1);
+				previousIndex = spiked[i];
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write the spike recording.", e);
+		}
+		previousStep = step;
+		spikeCount += count;
+	}
+
+	/**
+	 * Returns the total number of spikes recorded.
+	 */
+	public synchronized long getSpikeCount() {
+		return spikeCount;
+	}
+
+	/**
+	 * Returns the length in bytes of the recording, including the header.
+	 */
+	public synchronized long getLength() {
+		return region == null ? regionPosition : regionPosition + region.position();
+	}
+
+	private void writeVarint(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		writeByte((int) value);
+	}
+
+	private void writeByte(int b) throws IOException {
+		if (!region.hasRemaining()) {
+			regionPosition += region.position();
+			region = channel.map(FileChannel.MapMode.READ_WRITE, regionPosition, REGION_SIZE);
+		}
+		region.put((byte) b);
+	}
+
+	/**
+	 * Writes any recorded spikes that have not been written to the file and truncates the file to the length of the
+	 * recording. The recorder should be removed from the network before it is closed.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (region == null) {
+			return;
+		}
+		regionPosition += region.position();
+		region.force();
+		region = null;
+		try {
+			channel.truncate(regionPosition);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Reads the spikes from a file written by a {@link SpikeRecorder}. The file is read through memory-mapped regions.
+	 * Spikes are read one at a time with {@link #next()}, in order of step and then neuron index.
+	 */
+	public static class Reader implements Closeable {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final long length;
+		private final int neuronCount;
+		private final int timeResolution;
+		private MappedByteBuffer region;
+		private long regionPosition;
+		private long step = -1;
+		private int neuronIndex;
+		private int remainingInStep;
+
+		/**
+		 * Open the given spike recording.
+		 *
+		 * @throws IOException If the file can not be read or is not a spike recording in a supported format.
+		 */
+		public Reader(File file) throws IOException {
+			this.file = new RandomAccessFile(file, "r");
+			channel = this.file.getChannel();
+			length = channel.size();
+			if (length < HEADER_SIZE) {
+				this.file.close();
+				throw new IOException("The file is not a spike recording.");
+			}
+			region = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(REGION_SIZE, length));
+			if (region.getInt() != MAGIC || region.getInt() != VERSION) {
+				this.file.close();
+				throw new IOException("The file is not a spike recording in a supported format.");
+			}
+			neuronCount = region.getInt();
+			timeResolution = region.getInt();
+		}
+
+		/**
+		 * Returns the number of neurons in the recorded collection.
+		 */
+		public int getNeuronCount() {
+			return neuronCount;
+		}
+
+		/**
+		 * Returns the time resolution of the recorded network, or 0 if it was not recorded.
+		 */
+		public int getTimeResolution() {
+			return timeResolution;
+		}
+
+		/**
+		 * Advances to the next spike.
+		 *
+		 * @return true if there was another spike, false if the end of the recording has been reached.
+		 * @throws IOException If the file can not be read or is corrupt.
+		 */
+		public boolean next() throws IOException {
+			if (remainingInStep == 0) {
+				if (regionPosition + region.position() >= length) {
+					return false;
+				}
+				step += readVarint();
+				remainingInStep = (int) readVarint();
+				neuronIndex = -1;
+			}
+			neuronIndex += (int) readVarint() + 1;
+			remainingInStep--;
+			return true;
+		}
+
+		/**
+		 * Returns the step of the current spike.
+		 */
+		public long getStep() {
+			return step;
+		}
+
+		/**
+		 * Returns the neuron index of the current spike.
+		 */
+		public int getNeuronIndex() {
+			return neuronIndex;
+		}
+
+		private long readVarint() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("The spike recording is corrupt.");
+		}
+
+		private int readByte() throws IOException {
+			if (!region.hasRemaining()) {
+				regionPosition += region.position();
+				if (regionPosition >= length) {
+					throw new IOException("The spike recording is truncated.");
+				}
+				region = channel.map(FileChannel.MapMode.READ_ONLY, regionPosition, Math.min(REGION_SIZE, length - regionPosition));
+			}
+			return region.get() & 0xFF;
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+}
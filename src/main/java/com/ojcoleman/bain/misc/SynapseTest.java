@@ -85,10 +85,10 @@ public class SynapseTest {
 		double[] timeLog = new double[logSize];
 		double[] efficacyLog = new double[logSize];
 		double[][] prePostLogs = null, traceLogs = null;
-		double[] stateVars;
+		double[] stateVars = new double[network.getSynapses().getStateVariableCount()];
 		if (logSpikesAndStateVariables) {
 			prePostLogs = new double[2][logSize];
-			traceLogs = new double[network.getSynapses().getStateVariableNames().length][logSize];
+			traceLogs = new double[stateVars.length][logSize];
 		}
 
 		int logIndex = 0;
@@ -105,7 +105,7 @@ public class SynapseTest {
 				if (logSpikesAndStateVariables) {
 					prePostLogs[0][logIndex] = network.getNeurons().getOutput(0);
 					prePostLogs[1][logIndex] = network.getNeurons().getOutput(1);
-					stateVars = network.getSynapses().getStateVariableValues(0);
+					network.getSynapses().getStateVariableValues(0, stateVars);
 					for (int v = 0; v < stateVars.length; v++) {
 						traceLogs[v][logIndex] = stateVars[v];
 					}
@@ -131,7 +131,7 @@ public class SynapseTest {
 					if (logSpikesAndStateVariables) {
 						prePostLogs[0][logIndex] = network.getNeurons().getOutput(0);
 						prePostLogs[1][logIndex] = network.getNeurons().getOutput(1);
-						stateVars = network.getSynapses().getStateVariableValues(0);
+						network.getSynapses().getStateVariableValues(0, stateVars);
 						for (int v = 0; v < stateVars.length; v++) {
 							traceLogs[v][logIndex] = stateVars[v];
 						}
@@ -1,5 +1,7 @@
 package com.ojcoleman.bain.misc;
 
+import java.lang.reflect.Array;
+
 import com.amd.aparapi.Kernel;
 
 /**
@@ -15,6 +17,60 @@ public class Utility {
 		return 31 - Integer.numberOfLeadingZeros(x);
 	}
 
+	/**
+	 * Returns a new array of the given length, of the same type as the given primitive array, containing the elements
+	 * of the given array (truncated if it is longer than the new length).
+	 * 
+	 * @param array A primitive array.
+	 * @param length The length of the new array.
+	 */
+	public static Object resize(Object array, int length) {
+		Object resized = Array.newInstance(array.getClass().getComponentType(), length);
+		System.arraycopy(array, 0, resized, 0, Math.min(length, Array.getLength(array)));
+		return resized;
+	}
+
+	/**
+	 * Returns a new array containing the elements of the given primitive array reordered such that element <em>i</em>
+	 * of the new array is element <em>order[i]</em> of the given array. If the given array is longer than the order
+	 * array then the remaining elements are copied unchanged.
+	 * 
+	 * @param array A primitive array.
+	 * @param order The new order, typically a permutation of the indexes [0, order.length).
+	 */
+	public static Object permute(Object array, int[] order) {
+		int length = Array.getLength(array);
+		Object permuted = Array.newInstance(array.getClass().getComponentType(), length);
+		if (array instanceof double[]) {
+			double[] a = (double[]) array, p = (double[]) permuted;
+			for (int i = 0; i < order.length; i++)
+				p[i] = a[order[i]];
+		} else if (array instanceof int[]) {
+			int[] a = (int[]) array, p = (int[]) permuted;
+			for (int i = 0; i < order.length; i++)
+				p[i] = a[order[i]];
+		} else if (array instanceof boolean[]) {
+			boolean[] a = (boolean[]) array, p = (boolean[]) permuted;
+			for (int i = 0; i < order.length; i++)
+				p[i] = a[order[i]];
+		} else if (array instanceof float[]) {
+			float[] a = (float[]) array, p = (float[]) permuted;
+			for (int i = 0; i < order.length; i++)
+				p[i] = a[order[i]];
+		} else if (array instanceof long[]) {
+			long[] a = (long[]) array, p = (long[]) permuted;
+			for (int i = 0; i < order.length; i++)
+				p[i] = a[order[i]];
+		} else {
+			for (int i = 0; i < order.length; i++)
+				Array.set(permuted, i, Array.get(array, order[i]));
+		}
+		if (length > order.length) {
+			System.arraycopy(array, order.length, permuted, order.length, length - order.length);
+		}
+		return permuted;
+	}
+
 	static final Kernel.EXECUTION_MODE[] modeOrder = new Kernel.EXECUTION_MODE[] { Kernel.EXECUTION_MODE.SEQ, Kernel.EXECUTION_MODE.JTP, Kernel.EXECUTION_MODE.CPU, Kernel.EXECUTION_MODE.GPU };
 
 	/**
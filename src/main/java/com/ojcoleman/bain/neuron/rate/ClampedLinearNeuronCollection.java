@@ -27,6 +27,14 @@ public class ClampedLinearNeuronCollection extends NeuronCollectionWithBias {
 		super.run();
 	}
 
+	@Override
+	public void runRange(int start, int end) {
+		for (int neuronID = start; neuronID < end; neuronID++) {
+			outputs[neuronID] = Math.max(Math.min(inputs[neuronID] + bias[neuronID], 1), 0);
+		}
+		super.runRange(start, end);
+	}
+
 	@Override
 	public ComponentConfiguration getConfigSingleton() {
 		return null;
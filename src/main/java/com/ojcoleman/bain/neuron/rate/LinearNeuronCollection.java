@@ -27,6 +27,14 @@ public class LinearNeuronCollection extends NeuronCollectionWithBias {
 		super.run();
 	}
 
+	@Override
+	public void runRange(int start, int end) {
+		for (int neuronID = start; neuronID < end; neuronID++) {
+			outputs[neuronID] = inputs[neuronID] + bias[neuronID];
+		}
+		super.runRange(start, end);
+	}
+
 	@Override
 	public ComponentConfiguration getConfigSingleton() {
 		return null;
@@ -5,6 +5,7 @@ import java.text.NumberFormat;
 import java.util.Arrays;
 
 import com.ojcoleman.bain.base.*;
+import com.ojcoleman.bain.misc.FastMath;
 
 /**
  * Implements the neuron model described by S. Risi, K.O. Stanley (2012) A Uniﬁed Approach to Evolving Plasticity and
@@ -59,23 +60,27 @@ public class RisiModulatoryNeuronCollection<C extends RisiModulatoryNeuronConfig
 			modInputs = new double[size];
 			modActivations = new double[size];
 		}
-		if (modBias == null || modBias.length != configs.size()) {
-			modBias = new double[configs.size()];
-		}
-		for (int ci = 0; ci < configs.size(); ci++) {
-			modBias[ci] = configs.get(ci).modBias;
-		}
 
 		put(modInputs);
 		put(modActivations);
-		put(modBias);
 	}
 
 	@Override
-	public void reset() {
-		Arrays.fill(modInputs, 0);
-		Arrays.fill(modActivations, 0);
-		super.reset();
+	protected String[] getConfigurationArrayNames() {
+		return appendNames(super.getConfigurationArrayNames(), "modBias");
+	}
+
+	@Override
+	protected void initConfiguration(int configurationIndex) {
+		super.initConfiguration(configurationIndex);
+		modBias[configurationIndex] = configs.get(configurationIndex).modBias;
+	}
+
+	@Override
+	public void reset(int start, int end) {
+		super.reset(start, end);
+		Arrays.fill(modInputs, start, end, 0);
+		Arrays.fill(modActivations, start, end, 0);
 	}
 
 	@Override
@@ -95,7 +100,7 @@ public class RisiModulatoryNeuronCollection<C extends RisiModulatoryNeuronConfig
 		int neuronID = getGlobalId();
 		if (neuronID >= size)
 			return;
-		int configID = componentConfigIndexes[neuronID];
+		int configID = configIndex(neuronID);
 		//String out = neuronID + "\t" + configID + "\t";
 		modInputs[neuronID] += modBias[configID];
 		//out += nf.format(modInputs[neuronID]) + "\t";
@@ -109,6 +114,39 @@ public class RisiModulatoryNeuronCollection<C extends RisiModulatoryNeuronConfig
 		//}
 	}
 
+	@Override
+	public void runRange(int start, int end) {
+		// The bias is read once if there is a single configuration.
+		boolean single = singleConfiguration[0];
+		double singleModBias = modBias[0];
+		if (fastTransferFunction) {
+			if (single) {
+				for (int neuronID = start; neuronID < end; neuronID++) {
+					modActivations[neuronID] = (FastMath.tanh((modInputs[neuronID] + singleModBias) * 0.5) + 1) * 0.5;
+					modInputs[neuronID] = 0;
+				}
+			} else {
+				for (int neuronID = start; neuronID < end; neuronID++) {
+					modActivations[neuronID] = (FastMath.tanh((modInputs[neuronID] + modBias[componentConfigIndexes[neuronID]]) * 0.5) + 1) * 0.5;
+					modInputs[neuronID] = 0;
+				}
+			}
+		} else {
+			if (single) {
+				for (int neuronID = start; neuronID < end; neuronID++) {
+					modActivations[neuronID] = (Math.tanh((modInputs[neuronID] + singleModBias) * 0.5) + 1) * 0.5;
+					modInputs[neuronID] = 0;
+				}
+			} else {
+				for (int neuronID = start; neuronID < end; neuronID++) {
+					modActivations[neuronID] = (Math.tanh((modInputs[neuronID] + modBias[componentConfigIndexes[neuronID]]) * 0.5) + 1) * 0.5;
+					modInputs[neuronID] = 0;
+				}
+			}
+		}
+		super.runRange(start, end);
+	}
+
 	@Override
 	public ComponentCollection createCollection(int size) {
 		return new RisiModulatoryNeuronCollection<RisiModulatoryNeuronConfiguration>(size);
@@ -149,4 +187,9 @@ public class RisiModulatoryNeuronCollection<C extends RisiModulatoryNeuronConfig
 	public ComponentConfiguration getConfigSingleton() {
 		return new RisiModulatoryNeuronConfiguration();
 	}
-}
\ No newline at end of file
+
+	@Override
+	public String[] getComponentArrayNames() {
+		return appendNames(super.getComponentArrayNames(), "modInputs", "modActivations");
+	}
+}
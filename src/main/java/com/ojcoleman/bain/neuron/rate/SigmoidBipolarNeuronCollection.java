@@ -1,6 +1,7 @@
 package com.ojcoleman.bain.neuron.rate;
 
 import com.ojcoleman.bain.base.*;
+import com.ojcoleman.bain.misc.FastMath;
 import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
 
 /**
@@ -30,18 +31,14 @@ public class SigmoidBipolarNeuronCollection<C extends SigmoidNeuronConfiguration
 		init();
 	}
 
-	public void init() {
-		super.init();
-		if (configSlope == null || configSlope.length != configs.size()){
-			configSlope = new double[configs.size()];
-		}
-		for (int i = 0; i < configs.size(); i++) {
-			SigmoidNeuronConfiguration config = configs.get(i);
-			configSlope[i] = config.slope;
-		}
-	
-		// Transfer data to Aparapi kernel.
-		put(configSlope);
+	@Override
+	protected String[] getConfigurationArrayNames() {
+		return new String[] { "configSlope" };
+	}
+
+	@Override
+	protected void initConfiguration(int configurationIndex) {
+		configSlope[configurationIndex] = configs.get(configurationIndex).slope;
 	}
 
 	@Override
@@ -49,11 +46,44 @@ public class SigmoidBipolarNeuronCollection<C extends SigmoidNeuronConfiguration
 		int neuronID = getGlobalId();
 		if (neuronID >= size)
 			return;
-		int configID = componentConfigIndexes[neuronID];
+		int configID = configIndex(neuronID);
 		inputs[neuronID] += bias[neuronID];
 		outputs[neuronID] = 2.0 / (1.0 + Math.exp(-(inputs[neuronID] * configSlope[configID]))) - 1.0;
 		super.run();
 	}
+
+	@Override
+	public void runRange(int start, int end) {
+		// The slope is read once if there is a single configuration.
+		boolean single = singleConfiguration[0];
+		double slope = configSlope[0];
+		if (fastTransferFunction) {
+			if (single) {
+				for (int neuronID = start; neuronID < end; neuronID++) {
+					inputs[neuronID] += bias[neuronID];
+					outputs[neuronID] = 2.0 / (1.0 + FastMath.exp(-(inputs[neuronID] * slope))) - 1.0;
+				}
+			} else {
+				for (int neuronID = start; neuronID < end; neuronID++) {
+					inputs[neuronID] += bias[neuronID];
+					outputs[neuronID] = 2.0 / (1.0 + FastMath.exp(-(inputs[neuronID] * configSlope[componentConfigIndexes[neuronID]]))) - 1.0;
+				}
+			}
+		} else {
+			if (single) {
+				for (int neuronID = start; neuronID < end; neuronID++) {
+					inputs[neuronID] += bias[neuronID];
+					outputs[neuronID] = 2.0 / (1.0 + Math.exp(-(inputs[neuronID] * slope))) - 1.0;
+				}
+			} else {
+				for (int neuronID = start; neuronID < end; neuronID++) {
+					inputs[neuronID] += bias[neuronID];
+					outputs[neuronID] = 2.0 / (1.0 + Math.exp(-(inputs[neuronID] * configSlope[componentConfigIndexes[neuronID]]))) - 1.0;
+				}
+			}
+		}
+		super.runRange(start, end);
+	}
 	
 	@Override
 	public double getMinimumPossibleOutputValue() {
@@ -5,6 +5,7 @@ import java.text.NumberFormat;
 import java.util.Arrays;
 
 import com.ojcoleman.bain.base.*;
+import com.ojcoleman.bain.misc.FastMath;
 
 /**
  * Implements the neuron model described by A. Soltoggio, J. Bullinaria, C. Mattiussi, P. Durr, D. Floreano (2008) Evolutionary Advantages of Neuromodulated Plasticity in Dynamic, Reward-based Scenarios
@@ -21,6 +22,11 @@ public class SoltoggioModulatoryNeuronCollection<C extends SoltoggioModulatoryNe
 	 */
 	protected boolean[] modulatory;
 
+	/**
+	 * Incremented whenever {@link #modulatory} may have changed, see {@link #getModulatoryChangeCount()}.
+	 */
+	private long modulatoryChangeCount;
+
 	/**
 	 * The current synaptic plasticity modulation inputs for the neurons.
 	 */
@@ -57,6 +63,8 @@ public class SoltoggioModulatoryNeuronCollection<C extends SoltoggioModulatoryNe
 		if (modInputs == null || modInputs.length != size) {
 			modInputs = new double[size];
 			modActivations = new double[size];
+		}
+		if (modulatory == null || modulatory.length != size) {
 			modulatory = new boolean[size];
 		}
 		if (modulatory != null && configs != null && !configs.isEmpty()){ 
@@ -67,13 +75,22 @@ public class SoltoggioModulatoryNeuronCollection<C extends SoltoggioModulatoryNe
 		put(modInputs);
 		put(modActivations);
 		put(modulatory);
+		modulatoryChangeCount++;
 	}
 
 	@Override
-	public void reset() {
-		Arrays.fill(modInputs, 0);
-		Arrays.fill(modActivations, 0);
-		super.reset();
+	public void setComponentConfiguration(int neuronID, int configurationIndex) {
+		super.setComponentConfiguration(neuronID, configurationIndex);
+		modulatory[getNeuronIndex(neuronID)] = configs.get(configurationIndex).modulatory;
+		put(modulatory);
+		modulatoryChangeCount++;
+	}
+
+	@Override
+	public void reset(int start, int end) {
+		super.reset(start, end);
+		Arrays.fill(modInputs, start, end, 0);
+		Arrays.fill(modActivations, start, end, 0);
 	}
 
 	@Override
@@ -97,6 +114,24 @@ public class SoltoggioModulatoryNeuronCollection<C extends SoltoggioModulatoryNe
 		super.run();
 	}
 
+	@Override
+	public void runRange(int start, int end) {
+		if (fastTransferFunction) {
+			for (int neuronID = start; neuronID < end; neuronID++) {
+				inputs[neuronID] += bias[neuronID];
+				outputs[neuronID] = FastMath.tanh(inputs[neuronID] * 0.5);
+				modActivations[neuronID] = FastMath.tanh(modInputs[neuronID] * 0.5);
+			}
+		} else {
+			for (int neuronID = start; neuronID < end; neuronID++) {
+				inputs[neuronID] += bias[neuronID];
+				outputs[neuronID] = Math.tanh(inputs[neuronID] * 0.5);
+				modActivations[neuronID] = Math.tanh(modInputs[neuronID] * 0.5);
+			}
+		}
+		super.runRange(start, end);
+	}
+
 	@Override
 	public ComponentCollection createCollection(int size) {
 		return new SoltoggioModulatoryNeuronCollection<SoltoggioModulatoryNeuronConfiguration>(size);
@@ -134,8 +169,21 @@ public class SoltoggioModulatoryNeuronCollection<C extends SoltoggioModulatoryNe
 		return modulatory;
 	}
 
+	/**
+	 * Returns a count that changes whenever the array returned by {@link #getModulatory()} may have changed, so that
+	 * synapse collections can tell when the modulatory input synapses must be determined again.
+	 */
+	public long getModulatoryChangeCount() {
+		return modulatoryChangeCount;
+	}
+
 	@Override
 	public ComponentConfiguration getConfigSingleton() {
 		return new SoltoggioModulatoryNeuronConfiguration();
 	}
-}
\ No newline at end of file
+
+	@Override
+	public String[] getComponentArrayNames() {
+		return appendNames(super.getComponentArrayNames(), "modInputs", "modActivations");
+	}
+}
@@ -1,6 +1,8 @@
 package com.ojcoleman.bain.neuron.spiking;
 
 
+import java.util.Arrays;
+
 import com.amd.aparapi.Kernel;
 import com.ojcoleman.bain.base.*;
 
@@ -28,25 +30,19 @@ public class FixedFrequencyNeuronCollection extends NeuronCollection<FixedFreque
 		init();
 	}
 
-	public void init() {
-		super.init();
-		configSpikingPeriod = new int[configs.size()];
-		configSpikePotential = new double[configs.size()];
-		configRestPotential = new double[configs.size()];
+	@Override
+	protected String[] getConfigurationArrayNames() {
+		return new String[] { "configSpikingPeriod", "configSpikePotential", "configRestPotential" };
+	}
 
+	@Override
+	protected void initConfiguration(int configurationIndex) {
 		if (network != null) {
-			for (int i = 0; i < configs.size(); i++) {
-				FixedFrequencyNeuronConfiguration config = configs.get(i);
-				configSpikingPeriod[i] = (int) Math.round(config.spikingPeriod * network.getTimeResolution());
-				configSpikePotential[i] = config.spikePotential;
-				configRestPotential[i] = config.restPotential;
-			}
+			FixedFrequencyNeuronConfiguration config = configs.get(configurationIndex);
+			configSpikingPeriod[configurationIndex] = (int) Math.round(config.spikingPeriod * network.getTimeResolution());
+			configSpikePotential[configurationIndex] = config.spikePotential;
+			configRestPotential[configurationIndex] = config.restPotential;
 		}
-
-		// Transfer data to Aparapi kernel.
-		put(configSpikingPeriod);
-		put(configSpikePotential);
-		put(configRestPotential);
 	}
 
 	@Override
@@ -61,12 +57,29 @@ public class FixedFrequencyNeuronCollection extends NeuronCollection<FixedFreque
 		int neuronID = getGlobalId();
 		if (neuronID >= size)
 			return;
-		int configID = componentConfigIndexes[neuronID];
+		int configID = configIndex(neuronID);
 		int spikePeriod = configSpikingPeriod[configID];
 		outputs[neuronID] = (simStep[0] % spikePeriod == 0) ? configSpikePotential[configID] : configRestPotential[configID];
 		super.run();
 	}
 
+	@Override
+	public void runRange(int start, int end) {
+		long step = simStep[0];
+		if (singleConfiguration[0]) {
+			// All neurons have the same output.
+			double output = (step % configSpikingPeriod[0] == 0) ? configSpikePotential[0] : configRestPotential[0];
+			Arrays.fill(outputs, start, end, output);
+		} else {
+			for (int neuronID = start; neuronID < end; neuronID++) {
+				int configID = componentConfigIndexes[neuronID];
+				int spikePeriod = configSpikingPeriod[configID];
+				outputs[neuronID] = (step % spikePeriod == 0) ? configSpikePotential[configID] : configRestPotential[configID];
+			}
+		}
+		super.runRange(start, end);
+	}
+
 	@Override
 	public ComponentConfiguration getConfigSingleton() {
 		return new FixedFrequencyNeuronConfiguration();
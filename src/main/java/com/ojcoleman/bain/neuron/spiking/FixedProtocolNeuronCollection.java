@@ -1,6 +1,9 @@
 package com.ojcoleman.bain.neuron.spiking;
 
+import java.util.Arrays;
+
 import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.misc.Utility;
 
 /**
  * A that produces pre-determined spike patterns.
@@ -22,44 +25,39 @@ public class FixedProtocolNeuronCollection extends NeuronCollection<FixedProtoco
 		init();
 	}
 
-	public void init() {
-		super.init();
+	@Override
+	protected String[] getConfigurationArrayNames() {
+		return new String[] { "configSpikePatternPeriod", "configProtocolIndex", "configSpikePotential", "configRestPotential" };
+	}
+
+	/**
+	 * {@inheritDoc} The protocol of the configuration is stored in configSpikeProtocol after that of the preceding
+	 * configuration, extending configSpikeProtocol if necessary.
+	 */
+	@Override
+	protected void initConfiguration(int c) {
 		if (network != null) {
-			configSpikePatternPeriod = new int[configs.size()];
-			configProtocolIndex = new int[configs.size()];
-			configSpikePotential = new double[configs.size()];
-			configRestPotential = new double[configs.size()];
+			FixedProtocolNeuronConfiguration config = configs.get(c);
+			// Use ceiling to avoid truncating spikes right at the end.
+			configSpikePatternPeriod[c] = (int) Math.ceil(config.spikePatternPeriod * network.getTimeResolution());
+			configProtocolIndex[c] = c == 0 ? 0 : configProtocolIndex[c - 1] + configSpikePatternPeriod[c - 1];
+			configSpikePotential[c] = config.spikePotential;
+			configRestPotential[c] = config.restPotential;
 
-			int totalDurations = 0;
-			for (int c = 0; c < configs.size(); c++) {
-				FixedProtocolNeuronConfiguration config = configs.get(c);
-				// Use ceiling to avoid truncating spikes right at the end.
-				configSpikePatternPeriod[c] = (int) Math.ceil(config.spikePatternPeriod * network.getTimeResolution());
-				configProtocolIndex[c] = totalDurations;
-				totalDurations += configSpikePatternPeriod[c];
-				configSpikePotential[c] = config.spikePotential;
-				configRestPotential[c] = config.restPotential;
+			int protocolEnd = configProtocolIndex[c] + configSpikePatternPeriod[c];
+			if (configSpikeProtocol == null || configSpikeProtocol.length < protocolEnd) {
+				configSpikeProtocol = configSpikeProtocol == null ? new boolean[protocolEnd] : (boolean[]) Utility.resize(configSpikeProtocol, protocolEnd);
 			}
-
-			configSpikeProtocol = new boolean[totalDurations];
-			for (int c = 0; c < configs.size(); c++) {
-				FixedProtocolNeuronConfiguration config = configs.get(c);
-				int spikeDuration = (int) Math.round(config.spikeDuration * network.getTimeResolution());
-				for (int s = 0; s < config.spikeTimings.length; s++) {
-					int spikeStart = (int) Math.round(config.spikeTimings[s] * network.getTimeResolution());
-					for (int d = spikeStart; d < configSpikePatternPeriod[c] && d <= spikeStart + spikeDuration; d++) {
-						configSpikeProtocol[configProtocolIndex[c] + d] = true;
-					}
+			Arrays.fill(configSpikeProtocol, configProtocolIndex[c], protocolEnd, false);
+			int spikeDuration = (int) Math.round(config.spikeDuration * network.getTimeResolution());
+			for (int s = 0; s < config.spikeTimings.length; s++) {
+				int spikeStart = (int) Math.round(config.spikeTimings[s] * network.getTimeResolution());
+				for (int d = spikeStart; d < configSpikePatternPeriod[c] && d <= spikeStart + spikeDuration; d++) {
+					configSpikeProtocol[configProtocolIndex[c] + d] = true;
 				}
 			}
+			put(configSpikeProtocol);
 		}
-
-		// Transfer config data to Aparapi kernel.
-		put(configSpikePatternPeriod);
-		put(configProtocolIndex);
-		put(configSpikeProtocol);
-		put(configSpikePotential);
-		put(configRestPotential);
 	}
 
 	@Override
@@ -74,12 +72,30 @@ public class FixedProtocolNeuronCollection extends NeuronCollection<FixedProtoco
 		int neuronID = getGlobalId();
 		if (neuronID >= size)
 			return;
-		int configID = componentConfigIndexes[neuronID];
+		int configID = configIndex(neuronID);
 		int stepInProtocol = (int) (simStep[0] % configSpikePatternPeriod[configID]);
 		outputs[neuronID] = configSpikeProtocol[configProtocolIndex[configID] + stepInProtocol] ? configSpikePotential[configID] : configRestPotential[configID];
 		super.run();
 	}
 
+	@Override
+	public void runRange(int start, int end) {
+		long step = simStep[0];
+		if (singleConfiguration[0]) {
+			// All neurons have the same output.
+			int stepInProtocol = (int) (step % configSpikePatternPeriod[0]);
+			double output = configSpikeProtocol[configProtocolIndex[0] + stepInProtocol] ? configSpikePotential[0] : configRestPotential[0];
+			Arrays.fill(outputs, start, end, output);
+		} else {
+			for (int neuronID = start; neuronID < end; neuronID++) {
+				int configID = componentConfigIndexes[neuronID];
+				int stepInProtocol = (int) (step % configSpikePatternPeriod[configID]);
+				outputs[neuronID] = configSpikeProtocol[configProtocolIndex[configID] + stepInProtocol] ? configSpikePotential[configID] : configRestPotential[configID];
+			}
+		}
+		super.runRange(start, end);
+	}
+
 	@Override
 	public FixedProtocolNeuronConfiguration getConfigSingleton() {
 		return new FixedProtocolNeuronConfiguration();
@@ -33,6 +33,24 @@ public class FixedSynapseCollection extends SynapseCollection {
 		super.run();
 	}
 
+	/**
+	 * The bounds check in {@link #run()} only matters for Aparapi work items beyond the size of the collection, so
+	 * the super-method is used unchanged. It is overridden here because {@link #isRunRangeSupported()} only reports
+	 * support if runRange() is declared by the class that most recently declares run() (or a sub-class of it).
+	 */
+	@Override
+	public void runRange(int start, int end) {
+		super.runRange(start, end);
+	}
+
+	/**
+	 * {@inheritDoc} FixedSynapseCollection returns false.
+	 */
+	@Override
+	protected boolean hasSynapseDynamics() {
+		return false;
+	}
+
 	@Override
 	public ComponentConfiguration getConfigSingleton() {
 		return null;
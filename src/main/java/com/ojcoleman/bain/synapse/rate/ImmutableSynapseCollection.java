@@ -0,0 +1,161 @@
+package com.ojcoleman.bain.synapse.rate;
+
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.base.SynapseConfiguration;
+
+/**
+ * <p>
+ * Base class for synapse collections with fixed efficacies (weights) and a fixed number of synapses, which store the
+ * synapses in their own form rather than in the per-component arrays of {@link SynapseCollection}, for example
+ * {@link OffHeapFixedSynapseCollection} and {@link ProceduralFixedSynapseCollection}. Synapses can not be added,
+ * removed or given delays and the collection can not be compressed; these methods throw an
+ * UnsupportedOperationException. The methods to set the pre- and post-synaptic neurons of synapses and
+ * {@link #getEfficacies()} also throw an UnsupportedOperationException unless overridden by a sub-class. The
+ * collections have no configurations and do not support checkpoints.
+ * </p>
+ * <p>
+ * {@link #getSize()} returns 0 as the per-component arrays are not used; the number of synapses is given by
+ * {@link #getSynapseCount()}, which is also used to select the execution mode (see
+ * {@link com.ojcoleman.bain.NeuralNetwork}).
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public abstract class ImmutableSynapseCollection extends SynapseCollection<SynapseConfiguration> {
+	@Override
+	public void init() {
+		super.init();
+		stateVariablesStale = false;
+	}
+
+	/**
+	 * {@inheritDoc} The efficacies are fixed, so this does nothing.
+	 */
+	@Override
+	public void reset(int start, int end) {
+	}
+
+	/**
+	 * {@inheritDoc} ImmutableSynapseCollection returns false.
+	 */
+	@Override
+	protected boolean hasSynapseDynamics() {
+		return false;
+	}
+
+	/**
+	 * Not supported unless overridden by a sub-class.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public double[] getEfficacies() {
+		throw new UnsupportedOperationException("The efficacies of a " + getClass().getSimpleName() + " are not stored in a Java array.");
+	}
+
+	/**
+	 * Not supported unless overridden by a sub-class.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void setPreNeuron(int synapseIndex, int neuronID) {
+		throw new UnsupportedOperationException("The connectivity of a " + getClass().getSimpleName() + " can not be modified.");
+	}
+
+	/**
+	 * Not supported unless overridden by a sub-class.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void setPostNeuron(int synapseIndex, int neuronID) {
+		throw new UnsupportedOperationException("The connectivity of a " + getClass().getSimpleName() + " can not be modified.");
+	}
+
+	/**
+	 * Not supported unless overridden by a sub-class.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void setPreAndPostNeurons(int synapseIndex, int preNeuronID, int postNeuronID) {
+		throw new UnsupportedOperationException("The connectivity of a " + getClass().getSimpleName() + " can not be modified.");
+	}
+
+	/**
+	 * Not supported unless overridden by a sub-class.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void setPreAndPostNeurons(int synapseIndex, int[] preNeuronIDs, int[] postNeuronIDs, int offset, int count) {
+		throw new UnsupportedOperationException("The connectivity of a " + getClass().getSimpleName() + " can not be modified.");
+	}
+
+	/**
+	 * Not supported unless overridden by a sub-class.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void remapNeurons(int[] preNeuronMap, int[] postNeuronMap) {
+		throw new UnsupportedOperationException("The connectivity of a " + getClass().getSimpleName() + " can not be modified.");
+	}
+
+	/**
+	 * Not supported.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void setDelay(int synapseIndex, int delay) {
+		throw new UnsupportedOperationException("The synapses of a " + getClass().getSimpleName() + " can not have delays.");
+	}
+
+	/**
+	 * Not supported.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public int addSynapse(int preNeuronID, int postNeuronID, double efficacy, int configurationIndex) {
+		throw new UnsupportedOperationException("Synapses can not be added to a " + getClass().getSimpleName() + ".");
+	}
+
+	/**
+	 * Not supported.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public int removeSynapse(int synapseIndex) {
+		throw new UnsupportedOperationException("Synapses can not be removed from a " + getClass().getSimpleName() + ".");
+	}
+
+	/**
+	 * Not supported.
+	 *
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void compress() {
+		throw new UnsupportedOperationException("A " + getClass().getSimpleName() + " can not be compressed.");
+	}
+
+	/**
+	 * Returns null: these collections have no configurations.
+	 */
+	@Override
+	public SynapseConfiguration getConfigSingleton() {
+		return null;
+	}
+
+	/**
+	 * Returns null: checkpoints are not supported as the synapses are not stored in the per-component arrays.
+	 */
+	@Override
+	protected String[] getCheckpointFieldNames() {
+		return null;
+	}
+}
@@ -25,36 +25,19 @@ public class Niv2002SynapseCollection<C extends Niv2002SynapseConfiguration> ext
 	}
 
 	@Override
-	public void init() {
-		super.init();
-		if (n == null || n.length != configs.size()) {
-			n = new double[configs.size()];
-			a = new double[configs.size()];
-			b = new double[configs.size()];
-			c = new double[configs.size()];
-			d = new double[configs.size()];
-			minEfficacy = new double[configs.size()];
-			maxEfficacy = new double[configs.size()];
-		}
-		
-		for (int ci = 0; ci < configs.size(); ci++) {
-			n[ci] = configs.get(ci).n;
-			a[ci] = configs.get(ci).a;
-			b[ci] = configs.get(ci).b;
-			c[ci] = configs.get(ci).c;
-			d[ci] = configs.get(ci).d;
-			minEfficacy[ci] = configs.get(ci).minimumEfficacy;
-			maxEfficacy[ci] = configs.get(ci).maximumEfficacy;
-		}
-	
-		// In case explicit mode is being used for the Aparapi kernel.
-		put(n);
-		put(a);
-		put(b);
-		put(c);
-		put(d);
-		put(minEfficacy);
-		put(maxEfficacy);
+	protected String[] getConfigurationArrayNames() {
+		return new String[] { "n", "a", "b", "c", "d", "minEfficacy", "maxEfficacy" };
+	}
+
+	@Override
+	protected void initConfiguration(int ci) {
+		n[ci] = configs.get(ci).n;
+		a[ci] = configs.get(ci).a;
+		b[ci] = configs.get(ci).b;
+		c[ci] = configs.get(ci).c;
+		d[ci] = configs.get(ci).d;
+		minEfficacy[ci] = configs.get(ci).minimumEfficacy;
+		maxEfficacy[ci] = configs.get(ci).maximumEfficacy;
 	}
 
 	@Override
@@ -62,16 +45,31 @@ public class Niv2002SynapseCollection<C extends Niv2002SynapseConfiguration> ext
 		int synapseID = this.getGlobalId();
 		if (synapseID >= size)
 			return;
+		processSynapse(synapseID);
+	}
+
+	@Override
+	public void runRange(int start, int end) {
+		for (int synapseID = start; synapseID < end; synapseID++) {
+			processSynapse(synapseID);
+		}
+	}
 
-		int configID = componentConfigIndexes[synapseID];
-		outputs[synapseID] = neuronOutputs[preIndexes[synapseID]] * efficacy[synapseID];
-		neuronInputs[postIndexes[synapseID]] += outputs[synapseID];
+	/**
+	 * Calculates the output of the specified synapse and then updates its efficacy according to the plasticity rule.
+	 * Invoked by {@link #run()} and {@link #runRange(int, int)}; sub-classes implementing a different plasticity rule
+	 * need only override this method.
+	 */
+	protected void processSynapse(int synapseID) {
+		int configID = configIndex(synapseID);
+		double preOutput = getPreOutput(synapseID);
+		outputs[synapseID] = preOutput * efficacy[synapseID];
 
 		// Update synapse weight via plasticity rule.
 		double delta = n[configID] * (
-				a[configID] * neuronOutputs[preIndexes[synapseID]] * neuronOutputs[postIndexes[synapseID]] + 
-				b[configID] * neuronOutputs[preIndexes[synapseID]] + 
-				c[configID] * neuronOutputs[postIndexes[synapseID]] + 
+				a[configID] * preOutput * postNeuronOutputs[postIndexes[synapseID]] + 
+				b[configID] * preOutput + 
+				c[configID] * postNeuronOutputs[postIndexes[synapseID]] + 
 				d[configID]);
 		efficacy[synapseID] += delta;
 		if (efficacy[synapseID] < minEfficacy[configID]) efficacy[synapseID] = minEfficacy[configID];
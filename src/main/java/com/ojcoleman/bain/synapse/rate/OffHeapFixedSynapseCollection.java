@@ -0,0 +1,404 @@
+package com.ojcoleman.bain.synapse.rate;
+
+import com.amd.aparapi.Kernel;
+import com.amd.aparapi.Range;
+import com.ojcoleman.bain.base.ComponentCollection;
+import com.ojcoleman.bain.base.RangeKernel;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.misc.OffHeapDoubleArray;
+import com.ojcoleman.bain.misc.OffHeapIntArray;
+
+/**
+ * <p>
+ * Implements synapses with a fixed efficacy (weight), like {@link FixedSynapseCollection}, with the per-synapse data
+ * stored outside of the Java heap (see {@link OffHeapDoubleArray}) and indexed by long. The number of synapses is
+ * thus not limited to 2^31, and very large collections do not add to the work done by the garbage collector. Each
+ * synapse requires 16 bytes: the pre- and post-synaptic neuron indexes and the efficacy. The synapse outputs are not
+ * stored; {@link #getOutput(int)} calculates them on demand.
+ * </p>
+ * <p>
+ * The synapses are kept in order of post-synaptic neuron: if the connectivity has been changed then the synapses are
+ * reordered before the next simulation step, preserving the relative order of synapses with the same post-synaptic
+ * neuron. <strong>This changes the index of synapses</strong>, as for
+ * {@link SynapseCollection#setPostNeuronOrdered(boolean)}. Each step the input of each neuron is gathered in a
+ * single sweep over its contiguous block of incoming synapses, in ascending order of synapse index, so the results
+ * are identical to those of a FixedSynapseCollection with post-neuron ordering enabled. The gather is executed by the
+ * {@link com.ojcoleman.bain.base.ExecutionBackend} for this collection, on the host; with a
+ * {@link com.ojcoleman.bain.base.ForkJoinExecutionBackend} the neurons are processed in parallel.
+ * </p>
+ * <p>
+ * Synapses are accessed with the long-indexed methods, such as {@link #setSynapse(long, int, int, double)} and
+ * {@link #getEfficacy(long)}. The int-indexed methods inherited from SynapseCollection delegate to these, except
+ * those not supported by {@link ImmutableSynapseCollection}. {@link #dispose()} releases the off-heap memory
+ * immediately.
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public class OffHeapFixedSynapseCollection extends ImmutableSynapseCollection {
+	private long synapseCount;
+	private OffHeapIntArray offHeapPreIndexes;
+	private OffHeapIntArray offHeapPostIndexes;
+	private OffHeapDoubleArray offHeapEfficacy;
+	private final Gatherer gatherer = new Gatherer();
+
+	/**
+	 * Create a collection with the given number of synapses. All synapses initially connect neuron 0 to neuron 0 with
+	 * an efficacy of 0.
+	 */
+	public OffHeapFixedSynapseCollection(long synapseCount) {
+		this.synapseCount = synapseCount;
+		offHeapPreIndexes = new OffHeapIntArray(synapseCount);
+		offHeapPostIndexes = new OffHeapIntArray(synapseCount);
+		offHeapEfficacy = new OffHeapDoubleArray(synapseCount);
+		init();
+	}
+
+	/**
+	 * Create a collection with the given number of synapses (see {@link #OffHeapFixedSynapseCollection(long)}).
+	 */
+	public OffHeapFixedSynapseCollection(int size) {
+		this((long) size);
+	}
+
+	@Override
+	public void step() {
+		ensureNeuronArraysAreFresh();
+		ensureConnectivityIndex();
+		stepCount++;
+		gatherer.neuronOutputs = neuronOutputs;
+		gatherer.neuronInputs = neuronInputs;
+		// The off-heap arrays cannot be transferred to OpenCL devices.
+		Kernel.EXECUTION_MODE mode = getExecutionMode().isOpenCL() ? Kernel.EXECUTION_MODE.JTP : getExecutionMode();
+		if (gatherer.getExecutionMode() != mode) {
+			gatherer.setExecutionMode(mode);
+		}
+		executionBackend.execute(gatherer, Range.create(Math.max(1, gatherer.rowOffsets.length - 1)));
+	}
+
+	/**
+	 * {@inheritDoc} OffHeapFixedSynapseCollection additionally generates the offsets of the incoming synapses of each
+	 * neuron, sorting the synapses by post-synaptic neuron first if necessary.
+	 */
+	@Override
+	protected void updateConnectivityIndex() {
+		super.updateConnectivityIndex();
+		int neuronCount = getPostNeurons().getSize();
+		long[] rowOffsets = new long[neuronCount + 1];
+		boolean sorted = true;
+		int previousPost = 0;
+		for (long s = 0; s < synapseCount; s++) {
+			int post = offHeapPostIndexes.get(s);
+			rowOffsets[post + 1]++;
+			if (post < previousPost) {
+				sorted = false;
+			}
+			previousPost = post;
+		}
+		for (int n = 0; n < neuronCount; n++) {
+			rowOffsets[n + 1] += rowOffsets[n];
+		}
+		if (!sorted) {
+			reorderByNeuron(false, rowOffsets);
+		}
+		gatherer.rowOffsets = rowOffsets;
+		gatherer.preIndexes = offHeapPreIndexes;
+		gatherer.efficacy = offHeapEfficacy;
+	}
+
+	/**
+	 * Reorders the synapses by the pre- or post-synaptic neuron indexes, preserving the relative order of synapses with
+	 * the same neuron. The rank of each synapse among the synapses with the same neuron is recorded in a temporary
+	 * off-heap array, giving the new index of each synapse, and the synapses are then moved in place by following
+	 * the cycles of this permutation. The temporary memory required is thus 4 bytes per synapse rather than a copy of
+	 * the synapses.
+	 * 
+	 * @param byPreNeuron Whether to reorder by the pre-synaptic rather than the post-synaptic neuron indexes.
+	 * @param rowOffsets The offset of the first synapse of each neuron in the new order.
+	 */
+	private void reorderByNeuron(boolean byPreNeuron, long[] rowOffsets) {
+		OffHeapIntArray neuronIndexes = byPreNeuron ? offHeapPreIndexes : offHeapPostIndexes;
+		OffHeapIntArray ranks = new OffHeapIntArray(synapseCount);
+		int[] counts = new int[rowOffsets.length - 1];
+		for (long s = 0; s < synapseCount; s++) {
+			ranks.set(s, counts[neuronIndexes.get(s)]++);
+		}
+		// A rank of -1 marks synapses that have been moved to their new index.
+		for (long start = 0; start < synapseCount; start++) {
+			int rank = ranks.get(start);
+			if (rank < 0) {
+				continue;
+			}
+			int pre = offHeapPreIndexes.get(start);
+			int post = offHeapPostIndexes.get(start);
+			double efficacy = offHeapEfficacy.get(start);
+			while (true) {
+				long i = rowOffsets[byPreNeuron ? pre : post] + rank;
+				int displacedRank = ranks.get(i);
+				int displacedPre = offHeapPreIndexes.get(i);
+				int displacedPost = offHeapPostIndexes.get(i);
+				double displacedEfficacy = offHeapEfficacy.get(i);
+				offHeapPreIndexes.set(i, pre);
+				offHeapPostIndexes.set(i, post);
+				offHeapEfficacy.set(i, efficacy);
+				ranks.set(i, -1);
+				if (i == start) {
+					break;
+				}
+				rank = displacedRank;
+				pre = displacedPre;
+				post = displacedPost;
+				efficacy = displacedEfficacy;
+			}
+		}
+		ranks.dispose();
+	}
+
+	/**
+	 * {@inheritDoc} OffHeapFixedSynapseCollection always stores synapses in order of post-synaptic neuron, so this
+	 * sorts the synapses if necessary and returns null, as the new order of more than 2^31 synapses can not be
+	 * represented by an int array.
+	 */
+	@Override
+	public int[] sortByPostNeuron() {
+		ensureConnectivityIndex();
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc} As for {@link #sortByPostNeuron()}, this returns null, and the synapses are not given IDs (see
+	 * {@link #getSynapseIndex(int)}).
+	 */
+	@Override
+	public int[] sortByPostAndPreNeuron() {
+		int neuronCount = getPreNeurons().getSize();
+		long[] rowOffsets = new long[neuronCount + 1];
+		for (long s = 0; s < synapseCount; s++) {
+			rowOffsets[offHeapPreIndexes.get(s) + 1]++;
+		}
+		for (int n = 0; n < neuronCount; n++) {
+			rowOffsets[n + 1] += rowOffsets[n];
+		}
+		reorderByNeuron(true, rowOffsets);
+		// Regrouping by post-synaptic neuron preserves the order of pre-synaptic neurons within each group.
+		connectivityIndexStale = true;
+		ensureConnectivityIndex();
+		return null;
+	}
+
+	@Override
+	public void remapNeurons(int[] preNeuronMap, int[] postNeuronMap) {
+		for (long s = 0; s < synapseCount; s++) {
+			if (preNeuronMap != null) {
+				offHeapPreIndexes.set(s, preNeuronMap[offHeapPreIndexes.get(s)]);
+			}
+			if (postNeuronMap != null) {
+				offHeapPostIndexes.set(s, postNeuronMap[offHeapPostIndexes.get(s)]);
+			}
+		}
+		connectivityIndexStale = true;
+	}
+
+	@Override
+	public long getSynapseCount() {
+		return synapseCount;
+	}
+
+	@Override
+	public long getPopulatedSynapseCount() {
+		return synapseCount;
+	}
+
+	/**
+	 * Set the pre- and post-synaptic neurons (specified by ID, see {@link NeuronCollection#getNeuronIndex(int)}) and
+	 * the efficacy of a synapse.
+	 */
+	public void setSynapse(long synapseIndex, int preNeuronID, int postNeuronID, double efficacy) {
+		offHeapPreIndexes.set(synapseIndex, getPreNeuronIndex(preNeuronID));
+		offHeapPostIndexes.set(synapseIndex, getPostNeuronIndex(postNeuronID));
+		offHeapEfficacy.set(synapseIndex, efficacy);
+		connectivityIndexStale = true;
+	}
+
+	/**
+	 * Set the pre-synaptic neuron (specified by ID) for a synapse.
+	 */
+	public void setPreNeuron(long synapseIndex, int neuronID) {
+		offHeapPreIndexes.set(synapseIndex, getPreNeuronIndex(neuronID));
+		connectivityIndexStale = true;
+	}
+
+	/**
+	 * Get the ID of the pre-synaptic neuron for a synapse.
+	 */
+	public int getPreNeuron(long synapseIndex) {
+		return getPreNeuronID(offHeapPreIndexes.get(synapseIndex));
+	}
+
+	/**
+	 * Set the post-synaptic neuron (specified by ID) for a synapse.
+	 */
+	public void setPostNeuron(long synapseIndex, int neuronID) {
+		offHeapPostIndexes.set(synapseIndex, getPostNeuronIndex(neuronID));
+		connectivityIndexStale = true;
+	}
+
+	/**
+	 * Get the ID of the post-synaptic neuron for a synapse.
+	 */
+	public int getPostNeuron(long synapseIndex) {
+		return getPostNeuronID(offHeapPostIndexes.get(synapseIndex));
+	}
+
+	/**
+	 * Get the efficacy of a synapse.
+	 */
+	public double getEfficacy(long synapseIndex) {
+		return offHeapEfficacy.get(synapseIndex);
+	}
+
+	/**
+	 * Set the efficacy of a synapse.
+	 */
+	public void setEfficacy(long synapseIndex, double newEfficacy) {
+		offHeapEfficacy.set(synapseIndex, newEfficacy);
+	}
+
+	/**
+	 * Get the output of a synapse, being the output of the pre-synaptic neuron multiplied by the efficacy.
+	 */
+	public double getOutput(long synapseIndex) {
+		getPreNeurons().ensureOutputsAreFresh();
+		return neuronOutputs[offHeapPreIndexes.get(synapseIndex)] * offHeapEfficacy.get(synapseIndex);
+	}
+
+	@Override
+	public void setPreNeuron(int synapseIndex, int neuronIndex) {
+		setPreNeuron((long) synapseIndex, neuronIndex);
+	}
+
+	@Override
+	public int getPreNeuron(int synapseIndex) {
+		return getPreNeuron((long) synapseIndex);
+	}
+
+	@Override
+	public void setPostNeuron(int synapseIndex, int neuronIndex) {
+		setPostNeuron((long) synapseIndex, neuronIndex);
+	}
+
+	@Override
+	public int getPostNeuron(int synapseIndex) {
+		return getPostNeuron((long) synapseIndex);
+	}
+
+	@Override
+	public void setPreAndPostNeurons(int synapseIndex, int preNeuronID, int postNeuronID) {
+		setPreNeuron((long) synapseIndex, preNeuronID);
+		setPostNeuron((long) synapseIndex, postNeuronID);
+	}
+
+	@Override
+	public void setPreAndPostNeurons(int synapseIndex, int[] preNeuronIDs, int[] postNeuronIDs, int offset, int count) {
+		for (int i = 0; i < count; i++) {
+			offHeapPreIndexes.set(synapseIndex + i, getPreNeuronIndex(preNeuronIDs[offset + i]));
+			offHeapPostIndexes.set(synapseIndex + i, getPostNeuronIndex(postNeuronIDs[offset + i]));
+		}
+		connectivityIndexStale = true;
+	}
+
+	@Override
+	public double getEfficacy(int synapseIndex) {
+		return getEfficacy((long) synapseIndex);
+	}
+
+	@Override
+	public double getInitialEfficacy(int synapseIndex) {
+		return getEfficacy((long) synapseIndex);
+	}
+
+	@Override
+	public void setEfficacy(int synapseIndex, double newEfficacy) {
+		setEfficacy((long) synapseIndex, newEfficacy);
+	}
+
+	@Override
+	public void setEfficacies(int synapseIndex, double[] newEfficacies, int offset, int count) {
+		for (int i = 0; i < count; i++) {
+			offHeapEfficacy.set(synapseIndex + i, newEfficacies[offset + i]);
+		}
+	}
+
+	@Override
+	public double getOutput(int index) {
+		return getOutput((long) index);
+	}
+
+	@Override
+	public double getInput(int index) {
+		getPreNeurons().ensureOutputsAreFresh();
+		return neuronOutputs[offHeapPreIndexes.get(index)];
+	}
+
+	@Override
+	protected void copyStateVariableValues(int synapseIndex, double[] values) {
+		values[0] = getEfficacy((long) synapseIndex);
+	}
+
+	@Override
+	public ComponentCollection createCollection(int size) {
+		return new OffHeapFixedSynapseCollection(size);
+	}
+
+	@Override
+	public synchronized void dispose() {
+		offHeapPreIndexes.dispose();
+		offHeapPostIndexes.dispose();
+		offHeapEfficacy.dispose();
+		gatherer.dispose();
+		super.dispose();
+	}
+
+	/**
+	 * A kernel that adds the outputs of the incoming synapses of each neuron to its input. This is executed on the
+	 * host only, as the synapse data is stored off-heap.
+	 */
+	private static class Gatherer extends Kernel implements RangeKernel {
+		double[] neuronOutputs;
+		double[] neuronInputs;
+		long[] rowOffsets = new long[1];
+		OffHeapIntArray preIndexes;
+		OffHeapDoubleArray efficacy;
+
+		@Override
+		public void run() {
+			int neuronID = getGlobalId();
+			if (neuronID >= rowOffsets.length - 1)
+				return;
+			sumInputs(neuronID);
+		}
+
+		@Override
+		public void runRange(int start, int end) {
+			end = Math.min(end, rowOffsets.length - 1);
+			for (int neuronID = start; neuronID < end; neuronID++) {
+				sumInputs(neuronID);
+			}
+		}
+
+		@Override
+		public boolean isRunRangeSupported() {
+			return true;
+		}
+
+		private void sumInputs(int neuronID) {
+			long end = rowOffsets[neuronID + 1];
+			double input = neuronInputs[neuronID];
+			for (long s = rowOffsets[neuronID]; s < end; s++) {
+				input += neuronOutputs[preIndexes.get(s)] * efficacy.get(s);
+			}
+			neuronInputs[neuronID] = input;
+		}
+	}
+}
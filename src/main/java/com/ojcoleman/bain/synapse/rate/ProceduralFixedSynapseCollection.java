@@ -0,0 +1,299 @@
+package com.ojcoleman.bain.synapse.rate;
+
+import com.amd.aparapi.Kernel;
+import com.amd.aparapi.Range;
+import com.ojcoleman.bain.base.ComponentCollection;
+import com.ojcoleman.bain.base.Connectivity;
+import com.ojcoleman.bain.base.RangeKernel;
+import com.ojcoleman.bain.base.SynapseCollection;
+
+/**
+ * <p>
+ * Implements synapses with a fixed efficacy (weight), like {@link FixedSynapseCollection}, with random connectivity
+ * that is generated procedurally rather than stored: each post-synaptic neuron has the same number of incoming
+ * synapses (the fan-in), and the pre-synaptic neuron of each is chosen at random (with replacement, so a pair of
+ * neurons may be connected by more than one synapse) by a counter-based random number generator, a hash of the seed,
+ * the post-synaptic neuron index and the index of the synapse among the incoming synapses of that neuron. The
+ * pre-synaptic neuron of each synapse is thus regenerated whenever it is required, rather than read from memory, and
+ * the only per-synapse data stored is the efficacy (8 bytes per synapse). As the simulation of large networks is
+ * typically limited by memory bandwidth, this may also make each step faster.
+ * </p>
+ * <p>
+ * The synapses are ordered by post-synaptic neuron: synapse <em>i</em> of post-synaptic neuron <em>n</em> has index
+ * <em>n * fanIn + i</em>. Each step the input of each neuron is gathered in a single sweep over its incoming synapses,
+ * in ascending order of synapse index, so the results are identical to those of the equivalent FixedSynapseCollection
+ * (see {@link #materialise()}) with post-neuron ordering enabled (see
+ * {@link SynapseCollection#setPostNeuronOrdered(boolean)}). The gather is executed by the
+ * {@link com.ojcoleman.bain.base.ExecutionBackend} for this collection.
+ * </p>
+ * <p>
+ * The connectivity can not be modified, so the methods to set the pre- or post-synaptic neurons of synapses are not
+ * supported, in addition to those not supported by {@link ImmutableSynapseCollection}. The pre- and post-synaptic
+ * neurons may be inspected with {@link #getPreNeuron(int)} and {@link #getPostNeuron(int)}, or materialised into a
+ * FixedSynapseCollection with {@link #materialise()}.
+ * </p>
+ *
+ * @author Oliver J. Coleman
+ */
+public class ProceduralFixedSynapseCollection extends ImmutableSynapseCollection {
+	private final int preNeuronCount;
+	private final int postNeuronCount;
+	private final int fanIn;
+	private final long seed;
+	private final Generator generator = new Generator();
+
+	/**
+	 * Create a collection in which each of the given number of post-synaptic neurons receives the given number of
+	 * synapses from pre-synaptic neurons chosen at random from the given number of pre-synaptic neurons. All
+	 * efficacies are initially 0.
+	 *
+	 * @param preNeuronCount The number of pre-synaptic neurons to choose from; the pre-synaptic neuron indexes are in
+	 *            the range [0, preNeuronCount).
+	 * @param postNeuronCount The number of post-synaptic neurons; the post-synaptic neuron indexes are in the range [0,
+	 *            postNeuronCount).
+	 * @param fanIn The number of incoming synapses for each post-synaptic neuron.
+	 * @param seed The seed for the random number generator, which determines the connectivity.
+	 */
+	public ProceduralFixedSynapseCollection(int preNeuronCount, int postNeuronCount, int fanIn, long seed) {
+		if ((long) postNeuronCount * fanIn > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The number of synapses, postNeuronCount * fanIn, must be less than 2^31.");
+		}
+		if (preNeuronCount <= 0 || postNeuronCount < 0 || fanIn < 0) {
+			throw new IllegalArgumentException("The number of pre-synaptic neurons must be positive and the number of post-synaptic neurons and fan-in must not be negative.");
+		}
+		this.preNeuronCount = preNeuronCount;
+		this.postNeuronCount = postNeuronCount;
+		this.fanIn = fanIn;
+		this.seed = seed;
+		generator.weights = new double[postNeuronCount * fanIn];
+		generator.parameters = new long[] { seed, preNeuronCount, fanIn, postNeuronCount };
+		init();
+	}
+
+	@Override
+	public void step() {
+		ensureNeuronArraysAreFresh();
+		if (getPreNeurons().getSize() < preNeuronCount || getPostNeurons().getSize() < postNeuronCount) {
+			throw new IllegalStateException("The pre- or post-synaptic NeuronCollection is smaller than the number of neurons given for this ProceduralFixedSynapseCollection.");
+		}
+		stepCount++;
+		generator.neuronOutputs = neuronOutputs;
+		generator.neuronInputs = neuronInputs;
+		Kernel.EXECUTION_MODE mode = getExecutionMode();
+		if (generator.getExecutionMode() != mode) {
+			generator.setExecutionMode(mode);
+		}
+		executionBackend.execute(generator, Range.create(Math.max(1, postNeuronCount)));
+	}
+
+	/**
+	 * Returns the number of pre-synaptic neurons the pre-synaptic neurons of the synapses are chosen from.
+	 */
+	public int getPreNeuronCount() {
+		return preNeuronCount;
+	}
+
+	/**
+	 * Returns the number of post-synaptic neurons.
+	 */
+	public int getPostNeuronCount() {
+		return postNeuronCount;
+	}
+
+	/**
+	 * Returns the number of incoming synapses of each post-synaptic neuron.
+	 */
+	public int getFanIn() {
+		return fanIn;
+	}
+
+	/**
+	 * Returns the seed that determines the connectivity.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Set the efficacies of all synapses to values drawn uniformly at random from the range [min, max), using a
+	 * counter-based random number generator seeded with the given seed, so that the efficacies are the same
+	 * regardless of the order in which they are generated.
+	 */
+	public void setRandomEfficacies(double min, double max, long efficacySeed) {
+		double[] weights = generator.weights;
+		for (int s = 0; s < weights.length; s++) {
+			weights[s] = min + (max - min) * ((Connectivity.mix(efficacySeed + (s + 1L) * 0x9E3779B97F4A7C15L) >>> 11) * 0x1.0p-53);
+		}
+	}
+
+	/**
+	 * Returns a FixedSynapseCollection containing the same synapses as this collection, with the pre- and post-synaptic
+	 * neuron indexes stored explicitly, in the same order, for example to inspect the connectivity or to apply
+	 * plasticity to it. Post-neuron ordering is enabled (see {@link SynapseCollection#setPostNeuronOrdered(boolean)}),
+	 * so simulating the returned collection gives identical results.
+	 */
+	public FixedSynapseCollection materialise() {
+		int synapseCount = generator.weights.length;
+		FixedSynapseCollection synapses = new FixedSynapseCollection(synapseCount);
+		synapses.setPostNeuronOrdered(true);
+		int[] preIndexes = new int[fanIn];
+		int[] postIndexes = new int[fanIn];
+		for (int n = 0; n < postNeuronCount; n++) {
+			for (int i = 0; i < fanIn; i++) {
+				preIndexes[i] = getPreNeuronID(generator.preNeuron(n, i));
+				postIndexes[i] = getPostNeuronID(n);
+			}
+			synapses.setPreAndPostNeurons(n * fanIn, preIndexes, postIndexes, 0, fanIn);
+		}
+		synapses.setEfficacies(0, generator.weights, 0, synapseCount);
+		return synapses;
+	}
+
+	@Override
+	public long getSynapseCount() {
+		return generator.weights.length;
+	}
+
+	@Override
+	public long getPopulatedSynapseCount() {
+		return generator.weights.length;
+	}
+
+	@Override
+	public int getPreNeuron(int synapseIndex) {
+		return getPreNeuronID(generator.preNeuron(synapseIndex / fanIn, synapseIndex % fanIn));
+	}
+
+	@Override
+	public int getPostNeuron(int synapseIndex) {
+		return getPostNeuronID(synapseIndex / fanIn);
+	}
+
+	@Override
+	public double getEfficacy(int synapseIndex) {
+		return generator.weights[synapseIndex];
+	}
+
+	@Override
+	public double getInitialEfficacy(int synapseIndex) {
+		return generator.weights[synapseIndex];
+	}
+
+	@Override
+	public void setEfficacy(int synapseIndex, double newEfficacy) {
+		generator.weights[synapseIndex] = newEfficacy;
+	}
+
+	@Override
+	public void setEfficacies(int synapseIndex, double[] newEfficacies, int offset, int count) {
+		System.arraycopy(newEfficacies, offset, generator.weights, synapseIndex, count);
+	}
+
+	/**
+	 * {@inheritDoc} The values of the returned array may be modified to change the efficacies.
+	 */
+	@Override
+	public double[] getEfficacies() {
+		return generator.weights;
+	}
+
+	@Override
+	public double getOutput(int index) {
+		return getInput(index) * generator.weights[index];
+	}
+
+	@Override
+	public double getInput(int index) {
+		getPreNeurons().ensureOutputsAreFresh();
+		return neuronOutputs[generator.preNeuron(index / fanIn, index % fanIn)];
+	}
+
+	@Override
+	protected void copyStateVariableValues(int synapseIndex, double[] values) {
+		values[0] = generator.weights[synapseIndex];
+	}
+
+	/**
+	 * {@inheritDoc} ProceduralFixedSynapseCollection always stores synapses in order of post-synaptic neuron, and the
+	 * order of the synapses of each post-synaptic neuron is fixed, so this does nothing and returns null.
+	 */
+	@Override
+	public int[] sortByPostNeuron() {
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc} As for {@link #sortByPostNeuron()}, this does nothing and returns null.
+	 */
+	@Override
+	public int[] sortByPostAndPreNeuron() {
+		return null;
+	}
+
+	/**
+	 * Creates a ProceduralFixedSynapseCollection with the given number of post-synaptic neurons (not synapses), and the
+	 * same number of pre-synaptic neurons, fan-in and seed as this collection.
+	 */
+	@Override
+	public ComponentCollection createCollection(int size) {
+		return new ProceduralFixedSynapseCollection(preNeuronCount, size, fanIn, seed);
+	}
+
+	@Override
+	public synchronized void dispose() {
+		generator.dispose();
+		super.dispose();
+	}
+
+	/**
+	 * A kernel that adds the outputs of the incoming synapses of each neuron to its input, generating the pre-synaptic
+	 * neuron of each synapse.
+	 */
+	private static class Generator extends Kernel implements RangeKernel {
+		double[] neuronOutputs;
+		double[] neuronInputs;
+		double[] weights;
+		// The seed, the number of pre-synaptic neurons, the fan-in and the number of post-synaptic neurons.
+		long[] parameters;
+
+		@Override
+		public void run() {
+			int neuronID = getGlobalId();
+			if (neuronID >= parameters[3])
+				return;
+			sumInputs(neuronID);
+		}
+
+		@Override
+		public void runRange(int start, int end) {
+			end = (int) Math.min(end, parameters[3]);
+			for (int neuronID = start; neuronID < end; neuronID++) {
+				sumInputs(neuronID);
+			}
+		}
+
+		@Override
+		public boolean isRunRangeSupported() {
+			return true;
+		}
+
+		private void sumInputs(int neuronID) {
+			int fanIn = (int) parameters[2];
+			int offset = neuronID * fanIn;
+			double input = neuronInputs[neuronID];
+			for (int i = 0; i < fanIn; i++) {
+				input += neuronOutputs[preNeuron(neuronID, i)] * weights[offset + i];
+			}
+			neuronInputs[neuronID] = input;
+		}
+
+		/**
+		 * Returns the pre-synaptic neuron of the given incoming synapse of the given post-synaptic neuron: the top 31
+		 * bits of a hash of the seed and the synapse index are scaled to the number of pre-synaptic neurons.
+		 */
+		int preNeuron(int postNeuron, int synapse) {
+			long counter = (long) postNeuron * parameters[2] + synapse + 1;
+			return (int) (((Connectivity.mix(parameters[0] + counter * 0x9E3779B97F4A7C15L) >>> 33) * parameters[1]) >>> 31);
+		}
+	}
+}
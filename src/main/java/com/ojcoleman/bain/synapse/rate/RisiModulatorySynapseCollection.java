@@ -24,12 +24,6 @@ public class RisiModulatorySynapseCollection extends Niv2002SynapseCollection<Ri
 	// Parameters from configs.
 	protected boolean[] modulatory;
 
-	/**
-	 * The {@link com.ojcoleman.bain.neuron.rate.RisiModulatoryNeuronCollection#modInputs} from the associated
-	 * RisiModulatoryNeuronCollection.
-	 */
-	protected double[] neuronModInputs;
-
 	/**
 	 * The {@link com.ojcoleman.bain.neuron.rate.RisiModulatoryNeuronCollection#modActivations} from the associated
 	 * RisiModulatoryNeuronCollection.
@@ -43,20 +37,21 @@ public class RisiModulatorySynapseCollection extends Niv2002SynapseCollection<Ri
 	@Override
 	public void init() {
 		super.init();
-		if (modulatory == null || modulatory.length != configs.size()) {
-			modulatory = new boolean[configs.size()];
-		}
-		for (int ci = 0; ci < configs.size(); ci++) {
-			modulatory[ci] = configs.get(ci).modulatory;
-		}
-	
 		if (network != null) {
-			neuronModInputs = ((RisiModulatoryNeuronCollection<RisiModulatoryNeuronConfiguration>) network.getNeurons()).getModInputs();
-			neuronModActivations = ((RisiModulatoryNeuronCollection<RisiModulatoryNeuronConfiguration>) network.getNeurons()).getModActivations();
+			neuronModInputs = ((RisiModulatoryNeuronCollection<RisiModulatoryNeuronConfiguration>) getPostNeurons()).getModInputs();
+			neuronModActivations = ((RisiModulatoryNeuronCollection<RisiModulatoryNeuronConfiguration>) getPostNeurons()).getModActivations();
 		}
+	}
 
-		// In case explicit mode is being used for the Aparapi kernel.
-		put(modulatory);
+	@Override
+	protected String[] getConfigurationArrayNames() {
+		return appendNames(super.getConfigurationArrayNames(), "modulatory");
+	}
+
+	@Override
+	protected void initConfiguration(int ci) {
+		super.initConfiguration(ci);
+		modulatory[ci] = configs.get(ci).modulatory;
 	}
 
 	@Override
@@ -66,10 +61,7 @@ public class RisiModulatorySynapseCollection extends Niv2002SynapseCollection<Ri
 		// compatible with a framework such as this. Thus we must ensure that
 		// fresh versions of the following buffers are available to this kernel
 		// by "putting" them there.
-		network.getNeurons().ensureInputsAreFresh(); // Get fresh versions from the neuron kernel.
-		network.getNeurons().ensureOutputsAreFresh();
-		put(neuronModInputs); // neuron modulatory inputs are calculated in run(), and are reset to 0 by the
-								// neuron model once it's made use of them.
+		ensureNeuronArraysAreFresh(); // Get fresh versions from the neuron kernel(s).
 		put(neuronModActivations); // neuron modulatory activation levels are used in run() to update synapse weights
 									// via the plasticity rule.
 		/*if (network.debug()) {
@@ -80,39 +72,28 @@ public class RisiModulatorySynapseCollection extends Niv2002SynapseCollection<Ri
 			System.out.println("s\tc\to\tmi/ni\td\te");
 		}*/
 		super.step();
-		get(neuronModInputs); // See note above.
 	}
 
 	@Override
-	public void run() {
-		int synapseID = this.getGlobalId();
-		if (synapseID >= size) {
-			return;
-		}
-
-		int configID = componentConfigIndexes[synapseID];
+	protected void processSynapse(int synapseID) {
+		int configID = configIndex(synapseID);
 		
 		//String out = synapseID + "\tc" + configID + "\t";
 		
-		outputs[synapseID] = neuronOutputs[preIndexes[synapseID]] * efficacy[synapseID];
+		double preOutput = getPreOutput(synapseID);
+		outputs[synapseID] = preOutput * efficacy[synapseID];
 		
 		//out += "o" + nf.format(outputs[synapseID]) + "\t";
 		
-		if (modulatory[configID]) {
-			neuronModInputs[postIndexes[synapseID]] += outputs[synapseID];
-			//out += "m" + nf.format(neuronModInputs[postIndexes[synapseID]]) + "\t";
-			// Modulatory synapses are not plastic.
-		} else {
-			neuronInputs[postIndexes[synapseID]] += outputs[synapseID];
-			
-			//out += "i" + nf.format(neuronInputs[postIndexes[synapseID]]) + "\t";
-			
+		// The output of modulatory synapses is added to the modulatory input of the post-synaptic neuron (see
+		// isModulatoryInputSynapse()). Modulatory synapses are not plastic.
+		if (!modulatory[configID]) {
 			if (n[configID] != 0) {
 				// Update synapse weight via plasticity rule.
 				double delta = neuronModActivations[postIndexes[synapseID]] * n[configID] * (
-						a[configID] * neuronOutputs[preIndexes[synapseID]] * neuronOutputs[postIndexes[synapseID]] + 
-						b[configID] * neuronOutputs[preIndexes[synapseID]] + 
-						c[configID] * neuronOutputs[postIndexes[synapseID]] + 
+						a[configID] * preOutput * postNeuronOutputs[postIndexes[synapseID]] + 
+						b[configID] * preOutput + 
+						c[configID] * postNeuronOutputs[postIndexes[synapseID]] + 
 						d[configID]);
 				efficacy[synapseID] += delta;
 				if (efficacy[synapseID] < minEfficacy[configID]) efficacy[synapseID] = minEfficacy[configID];
@@ -133,6 +114,11 @@ public class RisiModulatorySynapseCollection extends Niv2002SynapseCollection<Ri
 		return initialEfficacy[synapseIndex] == 0 && n[componentConfigIndexes[synapseIndex]] == 0;
 	}
 
+	@Override
+	protected boolean isModulatoryInputSynapse(int synapseIndex) {
+		return modulatory[componentConfigIndexes[synapseIndex]];
+	}
+
 	public ComponentConfiguration getConfigSingleton() {
 		return configSingleton;
 	}
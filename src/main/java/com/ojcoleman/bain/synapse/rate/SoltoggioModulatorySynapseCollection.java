@@ -18,12 +18,6 @@ import com.ojcoleman.bain.neuron.rate.SoltoggioModulatoryNeuronConfiguration;
 public class SoltoggioModulatorySynapseCollection extends Niv2002SynapseCollection<Niv2002SynapseConfiguration> {
 	private static final NumberFormat nf = new DecimalFormat("0.00");
 
-	/**
-	 * The {@link com.ojcoleman.bain.neuron.rate.SoltoggioModulatoryNeuronCollection#modInputs} from the associated
-	 * SoltoggioModulatoryNeuronCollection.
-	 */
-	protected double[] neuronModInputs;
-
 	/**
 	 * The {@link com.ojcoleman.bain.neuron.rate.SoltoggioModulatoryNeuronCollection#modActivations} from the associated
 	 * SoltoggioModulatoryNeuronCollection.
@@ -36,6 +30,12 @@ public class SoltoggioModulatorySynapseCollection extends Niv2002SynapseCollecti
 	 */
 	protected boolean[] neuronModulatory;
 
+	/**
+	 * The value of {@link SoltoggioModulatoryNeuronCollection#getModulatoryChangeCount()} when the modulatory input
+	 * synapses were last determined.
+	 */
+	private long neuronModulatoryChangeCount = -1;
+
 	public SoltoggioModulatorySynapseCollection(int size) {
 		super(size);
 	}
@@ -44,9 +44,9 @@ public class SoltoggioModulatorySynapseCollection extends Niv2002SynapseCollecti
 	public void init() {
 		super.init();
 		if (network != null) {
-			neuronModInputs = ((SoltoggioModulatoryNeuronCollection<SoltoggioModulatoryNeuronConfiguration>) network.getNeurons()).getModInputs();
-			neuronModActivations = ((SoltoggioModulatoryNeuronCollection<SoltoggioModulatoryNeuronConfiguration>) network.getNeurons()).getModActivations();
-			neuronModulatory = ((SoltoggioModulatoryNeuronCollection<SoltoggioModulatoryNeuronConfiguration>) network.getNeurons()).getModulatory();
+			neuronModInputs = ((SoltoggioModulatoryNeuronCollection<SoltoggioModulatoryNeuronConfiguration>) getPostNeurons()).getModInputs();
+			neuronModActivations = ((SoltoggioModulatoryNeuronCollection<SoltoggioModulatoryNeuronConfiguration>) getPostNeurons()).getModActivations();
+			neuronModulatory = ((SoltoggioModulatoryNeuronCollection<SoltoggioModulatoryNeuronConfiguration>) getPreNeurons()).getModulatory();
 			put(neuronModulatory); // used in run() to determine whether the presynaptic neuron is a modulatory neuron.
 		}
 	}
@@ -58,43 +58,38 @@ public class SoltoggioModulatorySynapseCollection extends Niv2002SynapseCollecti
 		// compatible with a framework such as this. Thus we must ensure that
 		// fresh versions of the following buffers are available to this kernel
 		// by "putting" them there.
-		network.getNeurons().ensureInputsAreFresh(); // Get fresh versions from the neuron kernel.
-		network.getNeurons().ensureOutputsAreFresh();
-		put(neuronModInputs); // neuron modulatory inputs are calculated in run(), and are reset to 0 by the
-								// neuron model once it's made use of them.
+		ensureNeuronArraysAreFresh(); // Get fresh versions from the neuron kernel(s).
 		put(neuronModActivations); // neuron modulatory activation levels are used in run() to update synapse weights
 									// via the plasticity rule.
+		// Whether a synapse is a modulatory input synapse depends on the configuration of its pre-synaptic neuron.
+		long changeCount = ((SoltoggioModulatoryNeuronCollection<?>) getPreNeurons()).getModulatoryChangeCount();
+		if (changeCount != neuronModulatoryChangeCount) {
+			neuronModulatoryChangeCount = changeCount;
+			connectivityIndexStale = true;
+		}
 		super.step();
-		get(neuronModInputs); // See note above.
 	}
 
 	@Override
-	public void run() {
-		int synapseID = this.getGlobalId();
-		if (synapseID >= size) {
-			return;
-		}
-
-		int configID = componentConfigIndexes[synapseID];
+	protected void processSynapse(int synapseID) {
+		int configID = configIndex(synapseID);
 		int preNeuronID = preIndexes[synapseID];
 		int postNeuronID = postIndexes[synapseID];
 		
-		outputs[synapseID] = neuronOutputs[preNeuronID] * efficacy[synapseID];
-		
-		// If the pre-synaptic neuron is modulatory then add its output to the modulatory activation level of the post-synaptic neuron...
-		if (neuronModulatory[preNeuronID]) {
-			neuronModInputs[postNeuronID] += outputs[synapseID];
-		} else { 
-			// ...otherwise add its output to the regular activation level of the post-synaptic neuron and then apply the weight update rule.
-			// (only connections coming from regular neurons are plastic).
-			neuronInputs[postNeuronID] += outputs[synapseID];
+		double preOutput = getPreOutput(synapseID);
+		outputs[synapseID] = preOutput * efficacy[synapseID];
 		
+		// If the pre-synaptic neuron is modulatory then its output is added to the modulatory activation level of the
+		// post-synaptic neuron (see isModulatoryInputSynapse()), otherwise it is added to the regular activation level
+		// of the post-synaptic neuron and we apply the weight update rule (only connections coming from regular neurons
+		// are plastic).
+		if (!neuronModulatory[preNeuronID]) {
 			if (n[configID] != 0) {
 				// Update synapse weight via plasticity rule.
 				double delta = neuronModActivations[postNeuronID] * n[configID] * (
-						a[configID] * neuronOutputs[preNeuronID] * neuronOutputs[postNeuronID] + 
-						b[configID] * neuronOutputs[preNeuronID] + 
-						c[configID] * neuronOutputs[postNeuronID] + 
+						a[configID] * preOutput * postNeuronOutputs[postNeuronID] + 
+						b[configID] * preOutput + 
+						c[configID] * postNeuronOutputs[postNeuronID] + 
 						d[configID]);
 				efficacy[synapseID] += delta;
 				if (efficacy[synapseID] < minEfficacy[configID]) efficacy[synapseID] = minEfficacy[configID];
@@ -109,6 +104,11 @@ public class SoltoggioModulatorySynapseCollection extends Niv2002SynapseCollecti
 		return initialEfficacy[synapseIndex] == 0 && n[componentConfigIndexes[synapseIndex]] == 0;
 	}
 
+	@Override
+	protected boolean isModulatoryInputSynapse(int synapseIndex) {
+		return neuronModulatory[preIndexes[synapseIndex]];
+	}
+
 	@Override
 	public ComponentCollection createCollection(int size) {
 		return new SoltoggioModulatorySynapseCollection(size);
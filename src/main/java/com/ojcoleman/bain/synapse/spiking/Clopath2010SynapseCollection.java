@@ -8,16 +8,25 @@ import com.ojcoleman.bain.base.SynapseCollection;
 /**
  * Implementation of the model described by Clopath et al.: "Connectivity reflects coding: a model of voltage-based STDP with homeostasis", (2010).
  * 
+ * Event-driven updating (see {@link SynapseCollection#setEventDriven(boolean)}) is not supported: the low-pass
+ * filtered membrane potentials follow the post-synaptic membrane potential in every time step and potentiation depends
+ * on the membrane potential rather than on spikes, so this model is always updated in every time step.
+ * 
+ * Single precision storage of the efficacies, outputs, filtered membrane potentials and pre-synaptic trace is supported, see
+ * {@link ComponentCollection#setSinglePrecision(boolean)}.
+ * 
  * @see Clopath2010SynapseConfiguration
  * 
  * @author Oliver J. Coleman
  */
 public class Clopath2010SynapseCollection extends SynapseCollection<Clopath2010SynapseConfiguration> {
 	private static final Clopath2010SynapseConfiguration configSingleton = new Clopath2010SynapseConfiguration();
+	private static final String[] stateVariableNames = { "efficacy", "u-", "u+", "x", "\u03B8-", "\u03B8+" };
 
 	// State variables.
 	double[] uNeg, uPos; // Low-pass-filtered versions of the post-synaptic membrane potential (neuron output).
 	double[] x; // Pre-synaptic trace.
+	float[] uNegSingle, uPosSingle, xSingle; // State variables in single precision mode, see setSinglePrecision().
 
 	// Model parameters, see Clopath2010SynapseConfiguration.
 	public double[] thetaNeg, thetaPos, aLTD, aLTPMult, tauXMult, tauNegMult, tauPosMult, stepPeriod, efficacyMin, efficacyMax;
@@ -31,38 +40,16 @@ public class Clopath2010SynapseCollection extends SynapseCollection<Clopath2010S
 	public void init() {
 		super.init();
 		// Init state variables.
-		if (uNeg == null || uNeg.length != size) {
-			uNeg = new double[size];
-			uPos = new double[size];
-			x = new double[size];
-		}
-		// Init parameter arrays.
-		if (thetaNeg == null || thetaNeg.length != configs.size()) {
-			thetaNeg = new double[configs.size()];
-			thetaPos = new double[configs.size()];
-			aLTD = new double[configs.size()];
-			aLTPMult = new double[configs.size()];
-			tauXMult = new double[configs.size()];
-			tauNegMult = new double[configs.size()];
-			tauPosMult = new double[configs.size()];
-			efficacyMin = new double[configs.size()];
-			efficacyMax = new double[configs.size()];
+		uNeg = doubleStateArray(uNeg);
+		uPos = doubleStateArray(uPos);
+		x = doubleStateArray(x);
+		uNegSingle = singleStateArray(uNegSingle);
+		uPosSingle = singleStateArray(uPosSingle);
+		xSingle = singleStateArray(xSingle);
+		if (stepPeriod == null) {
 			stepPeriod = new double[1];
 		}
-
 		if (network != null) {
-			for (int c = 0; c < configs.size(); c++) {
-				Clopath2010SynapseConfiguration config = configs.get(c);
-				tauXMult[c] = (1.0 / config.tauX) / (network.getTimeResolution() / 1000.0);
-				tauNegMult[c] = (1.0 / config.tauNeg) / (network.getTimeResolution() / 1000.0);
-				tauPosMult[c] = (1.0 / config.tauPos) / (network.getTimeResolution() / 1000.0);
-				thetaNeg[c] = config.thetaNeg;
-				thetaPos[c] = config.thetaPos;
-				aLTD[c] = config.aLTD;
-				aLTPMult[c] = config.aLTP / (network.getTimeResolution() / 1000.0);
-				efficacyMin[c] = config.minimumEfficacy;
-				efficacyMax[c] = config.maximumEfficacy;
-			}
 			stepPeriod[0] = network.getStepPeriod();
 		}
 
@@ -71,30 +58,55 @@ public class Clopath2010SynapseCollection extends SynapseCollection<Clopath2010S
 		put(uNeg);
 		put(uPos);
 		put(x);
-		put(thetaNeg);
-		put(thetaPos);
-		put(aLTD);
-		put(aLTPMult);
-		put(tauXMult);
-		put(tauNegMult);
-		put(tauPosMult);
-		put(efficacyMin);
-		put(efficacyMax);
+		put(uNegSingle);
+		put(uPosSingle);
+		put(xSingle);
+		put(singlePrecision);
 		put(stepPeriod);
 		stateVariablesStale = false;
 	}
 
-	public void reset() {
-		super.reset();
-		for (int s = 0; s < size; s++) {
-			NeuronConfiguration neuronConfig = network.getNeurons().getComponentConfiguration(postIndexes[s]);
-			uNeg[s] = neuronConfig.restPotential;
-			uPos[s] = neuronConfig.restPotential;
-			x[s] = 0;
+	@Override
+	protected String[] getConfigurationArrayNames() {
+		return new String[] { "thetaNeg", "thetaPos", "aLTD", "aLTPMult", "tauXMult", "tauNegMult", "tauPosMult", "efficacyMin", "efficacyMax" };
+	}
+
+	@Override
+	protected void initConfiguration(int c) {
+		if (network != null) {
+			Clopath2010SynapseConfiguration config = configs.get(c);
+			tauXMult[c] = (1.0 / config.tauX) / (network.getTimeResolution() / 1000.0);
+			tauNegMult[c] = (1.0 / config.tauNeg) / (network.getTimeResolution() / 1000.0);
+			tauPosMult[c] = (1.0 / config.tauPos) / (network.getTimeResolution() / 1000.0);
+			thetaNeg[c] = config.thetaNeg;
+			thetaPos[c] = config.thetaPos;
+			aLTD[c] = config.aLTD;
+			aLTPMult[c] = config.aLTP / (network.getTimeResolution() / 1000.0);
+			efficacyMin[c] = config.minimumEfficacy;
+			efficacyMax[c] = config.maximumEfficacy;
+		}
+	}
+
+	public void reset(int start, int end) {
+		super.reset(start, end);
+		for (int s = start; s < end; s++) {
+			NeuronConfiguration neuronConfig = getPostNeurons().getComponentConfiguration(getPostNeuron(s));
+			if (singlePrecision[0]) {
+				uNegSingle[s] = (float) neuronConfig.restPotential;
+				uPosSingle[s] = (float) neuronConfig.restPotential;
+				xSingle[s] = 0;
+			} else {
+				uNeg[s] = neuronConfig.restPotential;
+				uPos[s] = neuronConfig.restPotential;
+				x[s] = 0;
+			}
 		}
 		put(uNeg);
 		put(uPos);
 		put(x);
+		put(uNegSingle);
+		put(uPosSingle);
+		put(xSingle);
 		stateVariablesStale = false;
 	}
 
@@ -103,53 +115,90 @@ public class Clopath2010SynapseCollection extends SynapseCollection<Clopath2010S
 		int synapseID = getGlobalId();
 		if (synapseID >= size)
 			return;
-		int configID = componentConfigIndexes[synapseID];
-		int preID = preIndexes[synapseID];
+		updateSynapse(synapseID);
+		super.run();
+	}
+
+	@Override
+	public void runRange(int start, int end) {
+		for (int synapseID = start; synapseID < end; synapseID++) {
+			updateSynapse(synapseID);
+		}
+		super.runRange(start, end);
+	}
+
+	@Override
+	protected void updateSynapse(int synapseID) {
+		int configID = configIndex(synapseID);
 		int postID = postIndexes[synapseID];
-		boolean preSpiked = neuronSpikings[preID];
-		boolean postSpiked = neuronSpikings[postID];
+		boolean preSpiked = isPreSpiking(synapseID, 0);
+		boolean postSpiked = postNeuronSpikings[postID];
+
+		// Read the state variables into local variables so that the calculations are the same in single and double
+		// precision mode.
+		boolean single = singlePrecision[0];
+		double uNegv = single ? uNegSingle[synapseID] : uNeg[synapseID];
+		double uPosv = single ? uPosSingle[synapseID] : uPos[synapseID];
+		double xv = single ? xSingle[synapseID] : x[synapseID];
 
 		// Update trace variables/low pass filters.
-		x[synapseID] += ((preSpiked ? 1 : 0) - x[synapseID]) * tauXMult[configID];
-		uNeg[synapseID] += (neuronOutputs[postID] - uNeg[synapseID]) * tauNegMult[configID];
-		uPos[synapseID] += (neuronOutputs[postID] - uPos[synapseID]) * tauPosMult[configID];
-
-		// If LTD occurs.
-		double uSigmaNeg = uNeg[synapseID] - thetaNeg[configID];
-		if (preSpiked && uSigmaNeg > 0) {
-			efficacy[synapseID] -= aLTD[configID] * uSigmaNeg;
-			if (efficacy[synapseID] < efficacyMin[configID])
-				efficacy[synapseID] = efficacyMin[configID];
-		}
-		// If LTP occurs.
-		double uSigma = neuronOutputs[postID] - thetaPos[configID];
-		double uSigmaPos = uPos[synapseID] - thetaNeg[configID];
-		if (uSigma > 0 && uSigmaPos > 0) {
-			efficacy[synapseID] += aLTPMult[configID] * x[synapseID] * uSigma * uSigmaPos;
-			if (efficacy[synapseID] > efficacyMax[configID])
-				efficacy[synapseID] = efficacyMax[configID];
+		xv += ((preSpiked ? 1 : 0) - xv) * tauXMult[configID];
+		uNegv += (postNeuronOutputs[postID] - uNegv) * tauNegMult[configID];
+		uPosv += (postNeuronOutputs[postID] - uPosv) * tauPosMult[configID];
+
+		double uSigmaNeg = uNegv - thetaNeg[configID];
+		double uSigma = postNeuronOutputs[postID] - thetaPos[configID];
+		double uSigmaPos = uPosv - thetaNeg[configID];
+		boolean ltd = preSpiked && uSigmaNeg > 0;
+		boolean ltp = uSigma > 0 && uSigmaPos > 0;
+		if (ltd || ltp) {
+			double w = loadEfficacy(synapseID);
+			// If LTD occurs.
+			if (ltd) {
+				w -= aLTD[configID] * uSigmaNeg;
+				if (w < efficacyMin[configID])
+					w = efficacyMin[configID];
+			}
+			// If LTP occurs.
+			if (ltp) {
+				w += aLTPMult[configID] * xv * uSigma * uSigmaPos;
+				if (w > efficacyMax[configID])
+					w = efficacyMax[configID];
+			}
+			storeEfficacy(synapseID, w);
 		}
 
-		super.run();
+		if (single) {
+			uNegSingle[synapseID] = (float) uNegv;
+			uPosSingle[synapseID] = (float) uPosv;
+			xSingle[synapseID] = (float) xv;
+		} else {
+			uNeg[synapseID] = uNegv;
+			uPos[synapseID] = uPosv;
+			x[synapseID] = xv;
+		}
 	}
 	
 	@Override
 	public boolean isNotUsed(int synapseIndex) {
-		return initialEfficacy[synapseIndex] == 0 && aLTD[componentConfigIndexes[synapseIndex]] == 0 && aLTPMult[componentConfigIndexes[synapseIndex]] == 0;
+		return getInitialEfficacy(synapseIndex) == 0 && aLTD[componentConfigIndexes[synapseIndex]] == 0 && aLTPMult[componentConfigIndexes[synapseIndex]] == 0;
 	}
 
 	@Override
-	public String[] getStateVariableNames() {
-		String[] names = { "efficacy", "u-", "u+", "x", "\u03B8-", "\u03B8+" };
-		return names;
+	protected String[] getSharedStateVariableNames() {
+		return stateVariableNames;
 	}
 
 	@Override
-	public double[] getStateVariableValues(int synapseIndex) {
-		ensureStateVariablesAreFresh();
+	protected void copyStateVariableValues(int synapseIndex, double[] values) {
 		Clopath2010SynapseConfiguration config = configs.get(componentConfigIndexes[synapseIndex]);
-		double[] values = { efficacy[synapseIndex], uNeg[synapseIndex], uPos[synapseIndex], x[synapseIndex], config.thetaNeg, config.thetaPos };
-		return values;
+		boolean single = singlePrecision[0];
+		values[0] = loadEfficacy(synapseIndex);
+		values[1] = single ? uNegSingle[synapseIndex] : uNeg[synapseIndex];
+		values[2] = single ? uPosSingle[synapseIndex] : uPos[synapseIndex];
+		values[3] = single ? xSingle[synapseIndex] : x[synapseIndex];
+		values[4] = config.thetaNeg;
+		values[5] = config.thetaPos;
 	}
 
 	@Override
@@ -160,7 +209,11 @@ public class Clopath2010SynapseCollection extends SynapseCollection<Clopath2010S
 	@Override
 	public void ensureStateVariablesAreFresh() {
 		if (stateVariablesStale) {
-			get(uNeg).get(uPos).get(x);
+			if (singlePrecision[0]) {
+				get(uNegSingle).get(uPosSingle).get(xSingle);
+			} else {
+				get(uNeg).get(uPos).get(x);
+			}
 		}
 		super.ensureStateVariablesAreFresh();
 	}
@@ -169,4 +222,14 @@ public class Clopath2010SynapseCollection extends SynapseCollection<Clopath2010S
 	public ComponentCollection createCollection(int size) {
 		return new Clopath2010SynapseCollection(size);
 	}
+
+	@Override
+	public String[] getComponentArrayNames() {
+		return appendNames(super.getComponentArrayNames(), "uNeg", "uPos", "x", "uNegSingle", "uPosSingle", "xSingle");
+	}
+
+	@Override
+	protected String[] getSinglePrecisionArrayNames() {
+		return appendSinglePrecisionArrayNames("uNeg", "uPos", "x");
+	}
 }
@@ -10,23 +10,31 @@ import com.ojcoleman.bain.base.SynapseCollection;
  * 
  * This implementation removes the bistability and noise components.
  * 
+ * Event-driven updating is supported (see {@link SynapseCollection#setEventDriven(boolean)}): while the calcium
+ * concentration is above either threshold a synapse is updated every step; otherwise the calcium concentration
+ * simply decays exponentially and is brought up to date in closed form. The delayed calcium spike caused by a
+ * pre-synaptic spike is delivered as a delayed event (see {@link SynapseCollection#setDelay(int, int)}).
+ * 
+ * Single precision storage of the efficacies, outputs, calcium concentration and efficacy state is supported, see
+ * {@link ComponentCollection#setSinglePrecision(boolean)}.
+ * 
  * @see Graupner2012SynapseConfiguration
  * 
  * @author Oliver J. Coleman
  */
 public class Graupner2012SimplifiedSynapseCollection extends SynapseCollection<Graupner2012SimplifiedSynapseConfiguration> {
 	private static final Graupner2012SimplifiedSynapseConfiguration configSingleton = new Graupner2012SimplifiedSynapseConfiguration();
+	private static final String[] stateVariableNames = { "Calcium", "p", "\u03B8p", "\u03B8d" };
 
 	// State variables.
 	double[] c; // Calcium concentration.
 	double[] p; // Efficacy state.
-	int[] preDelayCount; // Count down until calcium spike after pre-synaptic neuronal spike.
-	boolean[] preSpikedLastTimeStep, postSpikedLastTimeStep; // true iff the pre/post-synaptic neuron was spiking during the last time step. These are used to
-																// prevent counting a spike that lasts multiple time steps more than once.
+	float[] cSingle, pSingle; // Calcium concentration and efficacy state in single precision mode, see setSinglePrecision().
 
 	// Model parameters, see SynapseConfigurationGraupner2012.
 	public double[] cSpikePre, cSpikePost, tCDecayMult, depThresh, potThresh, depRateMult, potRateMult, w0, wRange, stepPeriod;
 	public int[] cSpikePreDelayStepCount;
+	int maxCSpikePreDelayStepCount;
 
 	public Graupner2012SimplifiedSynapseCollection(int size) {
 		this.size = size;
@@ -37,82 +45,70 @@ public class Graupner2012SimplifiedSynapseCollection extends SynapseCollection<G
 	public void init() {
 		super.init();
 		// Init state variables.
-		if (c == null || c.length != size) {
-			c = new double[size];
-			p = new double[size];
-			preDelayCount = new int[size];
-			preSpikedLastTimeStep = new boolean[size];
-			postSpikedLastTimeStep = new boolean[size];
-		}
-		// Init parameter arrays.
-		if (cSpikePre == null || cSpikePre.length != configs.size()) {
-			cSpikePre = new double[configs.size()];
-			cSpikePost = new double[configs.size()];
-			tCDecayMult = new double[configs.size()];
-			depThresh = new double[configs.size()];
-			potThresh = new double[configs.size()];
-			depRateMult = new double[configs.size()];
-			potRateMult = new double[configs.size()];
-			w0 = new double[configs.size()];
-			wRange = new double[configs.size()];
-			cSpikePreDelayStepCount = new int[configs.size()];
+		c = doubleStateArray(c);
+		p = doubleStateArray(p);
+		cSingle = singleStateArray(cSingle);
+		pSingle = singleStateArray(pSingle);
+		if (stepPeriod == null) {
 			stepPeriod = new double[1];
 		}
-
 		if (network != null) {
-			for (int c = 0; c < configs.size(); c++) {
-				Graupner2012SimplifiedSynapseConfiguration config = configs.get(c);
-				cSpikePre[c] = config.cSpikePre;
-				cSpikePost[c] = config.cSpikePost;
-				tCDecayMult[c] = (1.0 / config.tCDecay) / (network.getTimeResolution() / 1000.0);
-				depThresh[c] = config.depThresh;
-				potThresh[c] = config.potThresh;
-				depRateMult[c] = config.depRate / (network.getTimeResolution() * config.timeScale);
-				potRateMult[c] = config.potRate / (network.getTimeResolution() * config.timeScale);
-				w0[c] = config.w0;
-				wRange[c] = config.w1 - config.w0;
-				cSpikePreDelayStepCount[c] = (int) Math.round(config.cSpikePreDelay * (network.getTimeResolution() / 1000.0));
-				stepPeriod[0] = network.getStepPeriod();
-			}
+			stepPeriod[0] = network.getStepPeriod();
 		}
 
 		// Transfer data to Aparapi kernel.
 		// setExplicit(true);
 		put(c);
 		put(p);
-		put(preDelayCount);
-		put(preSpikedLastTimeStep);
-		put(postSpikedLastTimeStep);
-		put(cSpikePre);
-		put(cSpikePost);
-		put(tCDecayMult);
-		put(depThresh);
-		put(potThresh);
-		put(depRateMult);
-		put(potRateMult);
-		put(w0);
-		put(wRange);
-		put(cSpikePreDelayStepCount);
+		put(cSingle);
+		put(pSingle);
+		put(singlePrecision);
 		put(stepPeriod);
 		stateVariablesStale = false;
 	}
 
-	public void reset() {
-		for (int s = 0; s < size; s++) {
+	@Override
+	protected String[] getConfigurationArrayNames() {
+		return new String[] { "cSpikePre", "cSpikePost", "tCDecayMult", "depThresh", "potThresh", "depRateMult", "potRateMult", "w0", "wRange", "cSpikePreDelayStepCount" };
+	}
+
+	@Override
+	protected void initConfiguration(int c) {
+		if (network != null) {
+			Graupner2012SimplifiedSynapseConfiguration config = configs.get(c);
+			cSpikePre[c] = config.cSpikePre;
+			cSpikePost[c] = config.cSpikePost;
+			tCDecayMult[c] = (1.0 / config.tCDecay) / (network.getTimeResolution() / 1000.0);
+			depThresh[c] = config.depThresh;
+			potThresh[c] = config.potThresh;
+			depRateMult[c] = config.depRate / (network.getTimeResolution() * config.timeScale);
+			potRateMult[c] = config.potRate / (network.getTimeResolution() * config.timeScale);
+			w0[c] = config.w0;
+			wRange[c] = config.w1 - config.w0;
+			cSpikePreDelayStepCount[c] = (int) Math.round(config.cSpikePreDelay * (network.getTimeResolution() / 1000.0));
+			maxCSpikePreDelayStepCount = Math.max(maxCSpikePreDelayStepCount, cSpikePreDelayStepCount[c]);
+		}
+	}
+
+	public void reset(int start, int end) {
+		super.reset(start, end);
+		for (int s = start; s < end; s++) {
 			Graupner2012SimplifiedSynapseConfiguration config = configs.get(componentConfigIndexes[s]);
-			p[s] = config.initialP;
-			efficacy[s] = config.w0 + p[s] * config.wRange;
-			c[s] = 0;
-			preDelayCount[s] = 0;
-			preSpikedLastTimeStep[s] = false;
-			postSpikedLastTimeStep[s] = false;
+			if (singlePrecision[0]) {
+				pSingle[s] = (float) config.initialP;
+				cSingle[s] = 0;
+			} else {
+				p[s] = config.initialP;
+				c[s] = 0;
+			}
+			storeEfficacy(s, config.w0 + config.initialP * config.wRange);
 		}
 		put(c);
 		put(p);
-		put(preDelayCount);
-		put(preSpikedLastTimeStep);
-		put(postSpikedLastTimeStep);
+		put(cSingle);
+		put(pSingle);
 		put(efficacy);
+		put(efficacySingle);
 		stateVariablesStale = false;
 	}
 
@@ -121,77 +117,131 @@ public class Graupner2012SimplifiedSynapseCollection extends SynapseCollection<G
 		int synapseID = getGlobalId();
 		if (synapseID >= size)
 			return;
-		int configID = componentConfigIndexes[synapseID];
-		int preID = preIndexes[synapseID];
+		updateSynapse(synapseID);
+		super.run();
+	}
+
+	@Override
+	public void runRange(int start, int end) {
+		for (int synapseID = start; synapseID < end; synapseID++) {
+			updateSynapse(synapseID);
+		}
+		super.runRange(start, end);
+	}
+
+	@Override
+	protected void updateSynapse(int synapseID) {
+		int configID = configIndex(synapseID);
 		int postID = postIndexes[synapseID];
-		boolean preSpiked = neuronSpikings[preID];
-		boolean postSpiked = neuronSpikings[postID];
 
-		// Calcium decay.
-		c[synapseID] -= c[synapseID] * tCDecayMult[configID];
+		// Read the state variables into local variables so that the calculations are the same in single and double
+		// precision mode.
+		boolean single = singlePrecision[0];
+		double cv = single ? cSingle[synapseID] : c[synapseID];
+		double pv = single ? pSingle[synapseID] : p[synapseID];
 
-		// If a pre spike occurred (ignore if we're still counting down from a
-		// previous spike, not ideal but more efficient).
-		if (!preSpikedLastTimeStep[synapseID] && preSpiked && preDelayCount[synapseID] == 0) {
-			preDelayCount[synapseID] = cSpikePreDelayStepCount[configID] + 1;
-		}
+		// Calcium decay.
+		cv -= cv * tCDecayMult[configID];
 
-		if (preDelayCount[synapseID] > 0) {
-			preDelayCount[synapseID]--;
-			// If it's time to release the delayed calcium spike after a
-			// pre-synaptic neuronal spike.
-			if (preDelayCount[synapseID] == 0) {
-				c[synapseID] += cSpikePre[configID];
-			}
+		// If a pre spike started cSpikePreDelayStepCount steps ago then release the delayed calcium spike. The
+		// spikes are read from the history of the pre-synaptic neurons, so no per-synapse countdown is required.
+		int preDelay = cSpikePreDelayStepCount[configID];
+		if (isPreSpiking(synapseID, preDelay) && !isPreSpiking(synapseID, preDelay + 1)) {
+			cv += cSpikePre[configID];
 		}
 
-		// If a post spike occurred.
-		if (!postSpikedLastTimeStep[synapseID] && postSpiked) {
-			c[synapseID] += cSpikePost[configID];
+		// If a post spike started in the last step. Spike onsets are determined once per neuron (a spike that lasts
+		// multiple time steps is only counted once).
+		if (isPostSpikeOnset(postID)) {
+			cv += cSpikePost[configID];
 		}
 
 		// Update strength if necessary.
-		if (c[synapseID] >= depThresh[configID] || c[synapseID] >= potThresh[configID]) {
+		if (cv >= depThresh[configID] || cv >= potThresh[configID]) {
 			// Determine what the next calcium concentration will likely be, to allow proportional potentiation or depression if it crosses one of the
 			// thresholds between this step and the next.
-			double nextC = c[synapseID] - c[synapseID] * tCDecayMult[configID];
+			double nextC = cv - cv * tCDecayMult[configID];
 
-			if (c[synapseID] >= potThresh[configID]) {
+			if (cv >= potThresh[configID]) {
 				// If the next calcium decay will drop the calcium below the potentiation threshold, then apply the potentiation proportionately.
-				double scaling = (nextC >= potThresh[configID]) ? 1 : ((c[synapseID] - potThresh[configID]) / (c[synapseID] - nextC));
-				p[synapseID] += potRateMult[configID] * (1 - p[synapseID]) * scaling;
+				double scaling = (nextC >= potThresh[configID]) ? 1 : ((cv - potThresh[configID]) / (cv - nextC));
+				pv += potRateMult[configID] * (1 - pv) * scaling;
 			}
-			if (c[synapseID] >= depThresh[configID]) {
+			if (cv >= depThresh[configID]) {
 				// If the next calcium decay will drop the calcium below the depression threshold, then apply the depression proportionately.
-				double scaling = (nextC >= depThresh[configID]) ? 1 : ((c[synapseID] - depThresh[configID]) / (c[synapseID] - nextC));
-				p[synapseID] -= depRateMult[configID] * p[synapseID] * scaling;
+				double scaling = (nextC >= depThresh[configID]) ? 1 : ((cv - depThresh[configID]) / (cv - nextC));
+				pv -= depRateMult[configID] * pv * scaling;
 			}
-			efficacy[synapseID] = w0[configID] + p[synapseID] * wRange[configID];
+			storeEfficacy(synapseID, w0[configID] + pv * wRange[configID]);
 		}
 
-		preSpikedLastTimeStep[synapseID] = preSpiked;
-		postSpikedLastTimeStep[synapseID] = postSpiked;
+		if (single) {
+			cSingle[synapseID] = (float) cv;
+			pSingle[synapseID] = (float) pv;
+		} else {
+			c[synapseID] = cv;
+			p[synapseID] = pv;
+		}
+	}
 
-		super.run();
+	@Override
+	protected boolean usesPostSpikeOnsets() {
+		return true;
+	}
+
+	@Override
+	protected boolean supportsEventDriven() {
+		return true;
+	}
+
+	@Override
+	protected void catchUpSynapse(int synapseID, long steps) {
+		// The synapse was not active (see isSynapseActive()), so the calcium concentration remains below both thresholds
+		// and only decays, and the neurons didn't spike.
+		double decay = Math.pow(1 - tCDecayMult[configIndex(synapseID)], steps);
+		if (singlePrecision[0]) {
+			cSingle[synapseID] *= (float) decay;
+		} else {
+			c[synapseID] *= decay;
+		}
+	}
+
+	@Override
+	protected boolean isSynapseActive(int synapseID) {
+		int configID = configIndex(synapseID);
+		double cv = singlePrecision[0] ? cSingle[synapseID] : c[synapseID];
+		return cv >= depThresh[configID] || cv >= potThresh[configID];
+	}
+
+	@Override
+	protected int getPreEventDelay(int synapseID) {
+		// The calcium spike from a pre-synaptic spike occurs cSpikePreDelayStepCount steps after it.
+		return super.getPreEventDelay(synapseID) + cSpikePreDelayStepCount[configIndex(synapseID)];
 	}
 	
+	@Override
+	protected int getRequiredHistoryLength() {
+		// The pre-synaptic spikings are read with an additional delay of up to cSpikePreDelayStepCount + 1 steps.
+		return super.getRequiredHistoryLength() + maxCSpikePreDelayStepCount + 1;
+	}
+
 	@Override
 	public boolean isNotUsed(int synapseIndex) {
-		return initialEfficacy[synapseIndex] == 0 && potRateMult[componentConfigIndexes[synapseIndex]] == 0 && depRateMult[componentConfigIndexes[synapseIndex]] == 0;
+		return getInitialEfficacy(synapseIndex) == 0 && potRateMult[componentConfigIndexes[synapseIndex]] == 0 && depRateMult[componentConfigIndexes[synapseIndex]] == 0;
 	}
 
 	@Override
-	public String[] getStateVariableNames() {
-		String[] names = { "Calcium", "p", "\u03B8p", "\u03B8d" };
-		return names;
+	protected String[] getSharedStateVariableNames() {
+		return stateVariableNames;
 	}
 
 	@Override
-	public double[] getStateVariableValues(int synapseIndex) {
-		ensureStateVariablesAreFresh();
+	protected void copyStateVariableValues(int synapseIndex, double[] values) {
 		Graupner2012SimplifiedSynapseConfiguration config = configs.get(componentConfigIndexes[synapseIndex]);
-		double[] values = { c[synapseIndex], p[synapseIndex], config.potThresh, config.depThresh };
-		return values;
+		values[0] = singlePrecision[0] ? cSingle[synapseIndex] : c[synapseIndex];
+		values[1] = singlePrecision[0] ? pSingle[synapseIndex] : p[synapseIndex];
+		values[2] = config.potThresh;
+		values[3] = config.depThresh;
 	}
 
 	@Override
@@ -202,7 +252,11 @@ public class Graupner2012SimplifiedSynapseCollection extends SynapseCollection<G
 	@Override
 	public void ensureStateVariablesAreFresh() {
 		if (stateVariablesStale) {
-			get(c).get(p);
+			if (singlePrecision[0]) {
+				get(cSingle).get(pSingle);
+			} else {
+				get(c).get(p);
+			}
 		}
 		super.ensureStateVariablesAreFresh();
 	}
@@ -211,4 +265,14 @@ public class Graupner2012SimplifiedSynapseCollection extends SynapseCollection<G
 	public ComponentCollection createCollection(int size) {
 		return new Graupner2012SimplifiedSynapseCollection(size);
 	}
+
+	@Override
+	public String[] getComponentArrayNames() {
+		return appendNames(super.getComponentArrayNames(), "c", "p", "cSingle", "pSingle");
+	}
+
+	@Override
+	protected String[] getSinglePrecisionArrayNames() {
+		return appendSinglePrecisionArrayNames("c", "p");
+	}
 }
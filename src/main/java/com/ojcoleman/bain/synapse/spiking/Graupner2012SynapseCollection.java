@@ -10,23 +10,31 @@ import com.ojcoleman.bain.base.SynapseCollection;
  * 
  * NOTE: the noise component of this model is not implemented.
  * 
+ * Event-driven updating (see {@link SynapseCollection#setEventDriven(boolean)}) is not supported: the bistable
+ * dynamics of the efficacy state change the efficacy in every time step whether or not any spikes occur, and have no
+ * closed-form solution, so this model is always updated in every time step. For event-driven updating consider
+ * {@link Graupner2012SimplifiedSynapseCollection}.
+ * 
+ * Single precision storage of the efficacies, outputs, calcium concentration and efficacy state is supported, see
+ * {@link ComponentCollection#setSinglePrecision(boolean)}.
+ * 
  * @see Graupner2012SynapseConfiguration
  * 
  * @author Oliver J. Coleman
  */
 public class Graupner2012SynapseCollection extends SynapseCollection<Graupner2012SynapseConfiguration> {
 	private static final Graupner2012SynapseConfiguration configSingleton = new Graupner2012SynapseConfiguration();
+	private static final String[] stateVariableNames = { "Calcium", "p", "\u03B8p", "\u03B8d" };
 
 	// State variables.
 	double[] c; // Calcium concentration.
 	double[] p; // Efficacy state.
-	int[] preDelayCount; // Count down until calcium spike after pre-synaptic neuronal spike.
-	boolean[] preSpikedLastTimeStep, postSpikedLastTimeStep; // true iff the pre/post-synaptic neuron was spiking during the last time step. These are used to
-																// prevent counting a spike that lasts multiple time steps more than once.
+	float[] cSingle, pSingle; // Calcium concentration and efficacy state in single precision mode, see setSinglePrecision().
 
 	// Model parameters, see SynapseConfigurationGraupner2012.
 	public double[] cSpikePre, cSpikePost, tCDecayMult, depThresh, potThresh, depRateMult, potRateMult, bistableBoundary, noiseMult, w0, wRange, timeScaleInv, timeScaleSqrt, stepPeriod;
 	public int[] cSpikePreDelayStepCount;
+	int maxCSpikePreDelayStepCount;
 
 	public Graupner2012SynapseCollection(int size) {
 		this.size = size;
@@ -37,98 +45,74 @@ public class Graupner2012SynapseCollection extends SynapseCollection<Graupner201
 	public void init() {
 		super.init();
 		// Init state variables.
-		if (c == null || c.length != size) {
-			c = new double[size];
-			p = new double[size];
-			preDelayCount = new int[size];
-			preSpikedLastTimeStep = new boolean[size];
-			postSpikedLastTimeStep = new boolean[size];
-		}
-		// Init parameter arrays.
-		if (cSpikePre == null || cSpikePre.length != configs.size()) {
-			cSpikePre = new double[configs.size()];
-			cSpikePost = new double[configs.size()];
-			tCDecayMult = new double[configs.size()];
-			depThresh = new double[configs.size()];
-			potThresh = new double[configs.size()];
-			depRateMult = new double[configs.size()];
-			potRateMult = new double[configs.size()];
-			bistableBoundary = new double[configs.size()];
-			noiseMult = new double[configs.size()];
-			w0 = new double[configs.size()];
-			wRange = new double[configs.size()];
-			timeScaleInv = new double[configs.size()];
-			timeScaleSqrt = new double[configs.size()];
-			cSpikePreDelayStepCount = new int[configs.size()];
+		c = doubleStateArray(c);
+		p = doubleStateArray(p);
+		cSingle = singleStateArray(cSingle);
+		pSingle = singleStateArray(pSingle);
+		if (stepPeriod == null) {
 			stepPeriod = new double[1];
 		}
-
 		if (network != null) {
-			for (int c = 0; c < configs.size(); c++) {
-				Graupner2012SynapseConfiguration config = configs.get(c);
-				cSpikePre[c] = config.cSpikePre;
-				cSpikePost[c] = config.cSpikePost;
-				tCDecayMult[c] = (1.0 / config.tCDecay) / (network.getTimeResolution() / 1000.0);
-				depThresh[c] = config.depThresh;
-				potThresh[c] = config.potThresh;
-				depRateMult[c] = config.depRate / network.getTimeResolution();
-				potRateMult[c] = config.potRate / network.getTimeResolution();
-				bistableBoundary[c] = config.bistableBoundary;
-				noiseMult[c] = (config.noiseRate * timeScaleSqrt[c]) / (Math.sqrt(network.getTimeResolution()) * 10); // This
-																														// is
-																														// probably
-																														// not
-																														// right.
-				w0[c] = config.w0;
-				wRange[c] = config.w1 - config.w0;
-				timeScaleInv[c] = (1.0 / config.timeScale);
-				timeScaleSqrt[c] = Math.sqrt(config.timeScale);
-				cSpikePreDelayStepCount[c] = (int) Math.round(config.cSpikePreDelay * (network.getTimeResolution() / 1000.0));
-				stepPeriod[0] = network.getStepPeriod();
-			}
+			stepPeriod[0] = network.getStepPeriod();
 		}
 
 		// Transfer data to Aparapi kernel.
 		// setExplicit(true);
 		put(c);
 		put(p);
-		put(preDelayCount);
-		put(preSpikedLastTimeStep);
-		put(postSpikedLastTimeStep);
-		put(cSpikePre);
-		put(cSpikePost);
-		put(tCDecayMult);
-		put(depThresh);
-		put(potThresh);
-		put(depRateMult);
-		put(potRateMult);
-		put(bistableBoundary);
-		put(noiseMult);
-		put(w0);
-		put(wRange);
-		put(timeScaleInv);
-		put(timeScaleSqrt);
-		put(cSpikePreDelayStepCount);
+		put(cSingle);
+		put(pSingle);
+		put(singlePrecision);
 		put(stepPeriod);
 		stateVariablesStale = false;
 	}
 
-	public void reset() {
-		for (int s = 0; s < size; s++) {
+	@Override
+	protected String[] getConfigurationArrayNames() {
+		return new String[] { "cSpikePre", "cSpikePost", "tCDecayMult", "depThresh", "potThresh", "depRateMult", "potRateMult", "bistableBoundary", "noiseMult", "w0", "wRange", "timeScaleInv", "timeScaleSqrt", "cSpikePreDelayStepCount" };
+	}
+
+	@Override
+	protected void initConfiguration(int c) {
+		if (network != null) {
+			Graupner2012SynapseConfiguration config = configs.get(c);
+			cSpikePre[c] = config.cSpikePre;
+			cSpikePost[c] = config.cSpikePost;
+			tCDecayMult[c] = (1.0 / config.tCDecay) / (network.getTimeResolution() / 1000.0);
+			depThresh[c] = config.depThresh;
+			potThresh[c] = config.potThresh;
+			depRateMult[c] = config.depRate / network.getTimeResolution();
+			potRateMult[c] = config.potRate / network.getTimeResolution();
+			bistableBoundary[c] = config.bistableBoundary;
+			noiseMult[c] = (config.noiseRate * timeScaleSqrt[c]) / (Math.sqrt(network.getTimeResolution()) * 10); // This is probably not right.
+			w0[c] = config.w0;
+			wRange[c] = config.w1 - config.w0;
+			timeScaleInv[c] = (1.0 / config.timeScale);
+			timeScaleSqrt[c] = Math.sqrt(config.timeScale);
+			cSpikePreDelayStepCount[c] = (int) Math.round(config.cSpikePreDelay * (network.getTimeResolution() / 1000.0));
+			maxCSpikePreDelayStepCount = Math.max(maxCSpikePreDelayStepCount, cSpikePreDelayStepCount[c]);
+		}
+	}
+
+	public void reset(int start, int end) {
+		super.reset(start, end);
+		for (int s = start; s < end; s++) {
 			Graupner2012SynapseConfiguration config = configs.get(componentConfigIndexes[s]);
-			p[s] = config.initialP;
-			efficacy[s] = config.w0 + p[s] * config.wRange;
-			c[s] = 0;
-			preDelayCount[s] = 0;
-			preSpikedLastTimeStep[s] = false;
-			postSpikedLastTimeStep[s] = false;
+			if (singlePrecision[0]) {
+				pSingle[s] = (float) config.initialP;
+				cSingle[s] = 0;
+			} else {
+				p[s] = config.initialP;
+				c[s] = 0;
+			}
+			storeEfficacy(s, config.w0 + config.initialP * config.wRange);
 		}
 		put(c);
 		put(p);
-		put(preDelayCount);
-		put(preSpikedLastTimeStep);
-		put(postSpikedLastTimeStep);
+		put(cSingle);
+		put(pSingle);
 		put(efficacy);
+		put(efficacySingle);
 		stateVariablesStale = false;
 	}
 
@@ -137,86 +121,110 @@ public class Graupner2012SynapseCollection extends SynapseCollection<Graupner201
 		int synapseID = getGlobalId();
 		if (synapseID >= size)
 			return;
-		int configID = componentConfigIndexes[synapseID];
-		int preID = preIndexes[synapseID];
+		updateSynapse(synapseID);
+		super.run();
+	}
+
+	@Override
+	public void runRange(int start, int end) {
+		for (int synapseID = start; synapseID < end; synapseID++) {
+			updateSynapse(synapseID);
+		}
+		super.runRange(start, end);
+	}
+
+	@Override
+	protected void updateSynapse(int synapseID) {
+		int configID = configIndex(synapseID);
 		int postID = postIndexes[synapseID];
-		boolean preSpiked = neuronSpikings[preID];
-		boolean postSpiked = neuronSpikings[postID];
 
-		// Calcium decay.
-		c[synapseID] -= c[synapseID] * tCDecayMult[configID];
+		// Read the state variables into local variables so that the calculations are the same in single and double
+		// precision mode.
+		boolean single = singlePrecision[0];
+		double cv = single ? cSingle[synapseID] : c[synapseID];
+		double pv = single ? pSingle[synapseID] : p[synapseID];
 
-		// If a pre spike occurred (ignore if we're still counting down from a
-		// previous spike, not ideal but more efficient).
-		if (!preSpikedLastTimeStep[synapseID] && preSpiked && preDelayCount[synapseID] == 0) {
-			preDelayCount[synapseID] = cSpikePreDelayStepCount[configID] + 1;
-		}
+		// Calcium decay.
+		cv -= cv * tCDecayMult[configID];
 
-		if (preDelayCount[synapseID] > 0) {
-			preDelayCount[synapseID]--;
-			// If it's time to release the delayed calcium spike after a
-			// pre-synaptic neuronal spike.
-			if (preDelayCount[synapseID] == 0) {
-				c[synapseID] += cSpikePre[configID];
-			}
+		// If a pre spike started cSpikePreDelayStepCount steps ago then release the delayed calcium spike. The
+		// spikes are read from the history of the pre-synaptic neurons, so no per-synapse countdown is required.
+		int preDelay = cSpikePreDelayStepCount[configID];
+		if (isPreSpiking(synapseID, preDelay) && !isPreSpiking(synapseID, preDelay + 1)) {
+			cv += cSpikePre[configID];
 		}
 
-		// If a post spike occurred.
-		if (!postSpikedLastTimeStep[synapseID] && postSpiked) {
-			c[synapseID] += cSpikePost[configID];
+		// If a post spike started in the last step. Spike onsets are determined once per neuron (a spike that lasts
+		// multiple time steps is only counted once).
+		if (isPostSpikeOnset(postID)) {
+			cv += cSpikePost[configID];
 		}
 
 		// Update strength ( * stepPeriod[0] to multiply by inverse of time resolution).
-		double delta_s = (-p[synapseID] * (1 - p[synapseID]) * (bistableBoundary[configID] - p[synapseID])) * stepPeriod[0] * 10;
-		if (c[synapseID] >= depThresh[configID] || c[synapseID] >= potThresh[configID]) {
+		double delta_s = (-pv * (1 - pv) * (bistableBoundary[configID] - pv)) * stepPeriod[0] * 10;
+		if (cv >= depThresh[configID] || cv >= potThresh[configID]) {
 			// Determine what the next calcium concentration will likely be, to allow proportional potentiation or depression if it crosses one of the
 			// thresholds between this step and the next.
-			double nextC = c[synapseID] - c[synapseID] * tCDecayMult[configID];
+			double nextC = cv - cv * tCDecayMult[configID];
 
-			if (c[synapseID] >= potThresh[configID]) {
+			if (cv >= potThresh[configID]) {
 				// If the next calcium decay will drop the calcium below the potentiation threshold, then apply the potentiation proportionately.
-				double scaling = (nextC >= potThresh[configID]) ? 1 : ((c[synapseID] - potThresh[configID]) / (c[synapseID] - nextC));
-				delta_s += potRateMult[configID] * (1 - p[synapseID]) * scaling;
+				double scaling = (nextC >= potThresh[configID]) ? 1 : ((cv - potThresh[configID]) / (cv - nextC));
+				delta_s += potRateMult[configID] * (1 - pv) * scaling;
 			}
-			if (c[synapseID] >= depThresh[configID]) {
+			if (cv >= depThresh[configID]) {
 				// If the next calcium decay will drop the calcium below the depression threshold, then apply the depression proportionately.
-				double scaling = (nextC >= depThresh[configID]) ? 1 : ((c[synapseID] - depThresh[configID]) / (c[synapseID] - nextC));
-				delta_s -= depRateMult[configID] * p[synapseID] * scaling;
+				double scaling = (nextC >= depThresh[configID]) ? 1 : ((cv - depThresh[configID]) / (cv - nextC));
+				delta_s -= depRateMult[configID] * pv * scaling;
 			}
 			// TODO implement RNG (normal/Gaussian distribution).
 			// delta_s += noiseMult[configID] * config.rng.nextGaussian();
 		}
 
-		p[synapseID] += delta_s * timeScaleInv[configID];
-		if (p[synapseID] > 1)
-			p[synapseID] = 1;
-		if (p[synapseID] < 0)
-			p[synapseID] = 0;
-		efficacy[synapseID] = w0[configID] + p[synapseID] * wRange[configID];
-
-		preSpikedLastTimeStep[synapseID] = preSpiked;
-		postSpikedLastTimeStep[synapseID] = postSpiked;
+		pv += delta_s * timeScaleInv[configID];
+		if (pv > 1)
+			pv = 1;
+		if (pv < 0)
+			pv = 0;
+		storeEfficacy(synapseID, w0[configID] + pv * wRange[configID]);
 
-		super.run();
+		if (single) {
+			cSingle[synapseID] = (float) cv;
+			pSingle[synapseID] = (float) pv;
+		} else {
+			c[synapseID] = cv;
+			p[synapseID] = pv;
+		}
 	}
 	
+	@Override
+	protected boolean usesPostSpikeOnsets() {
+		return true;
+	}
+
+	@Override
+	protected int getRequiredHistoryLength() {
+		// The pre-synaptic spikings are read with an additional delay of up to cSpikePreDelayStepCount + 1 steps.
+		return super.getRequiredHistoryLength() + maxCSpikePreDelayStepCount + 1;
+	}
+
 	@Override
 	public boolean isNotUsed(int synapseIndex) {
 		return false;
 	}
 
 	@Override
-	public String[] getStateVariableNames() {
-		String[] names = { "Calcium", "p", "\u03B8p", "\u03B8d" };
-		return names;
+	protected String[] getSharedStateVariableNames() {
+		return stateVariableNames;
 	}
 
 	@Override
-	public double[] getStateVariableValues(int synapseIndex) {
-		ensureStateVariablesAreFresh();
+	protected void copyStateVariableValues(int synapseIndex, double[] values) {
 		Graupner2012SynapseConfiguration config = configs.get(componentConfigIndexes[synapseIndex]);
-		double[] values = { c[synapseIndex], p[synapseIndex], config.potThresh, config.depThresh };
-		return values;
+		values[0] = singlePrecision[0] ? cSingle[synapseIndex] : c[synapseIndex];
+		values[1] = singlePrecision[0] ? pSingle[synapseIndex] : p[synapseIndex];
+		values[2] = config.potThresh;
+		values[3] = config.depThresh;
 	}
 
 	@Override
@@ -227,7 +235,11 @@ public class Graupner2012SynapseCollection extends SynapseCollection<Graupner201
 	@Override
 	public void ensureStateVariablesAreFresh() {
 		if (stateVariablesStale) {
-			get(c).get(p);
+			if (singlePrecision[0]) {
+				get(cSingle).get(pSingle);
+			} else {
+				get(c).get(p);
+			}
 		}
 		super.ensureStateVariablesAreFresh();
 	}
@@ -236,4 +248,14 @@ public class Graupner2012SynapseCollection extends SynapseCollection<Graupner201
 	public ComponentCollection createCollection(int size) {
 		return new Graupner2012SynapseCollection(size);
 	}
+
+	@Override
+	public String[] getComponentArrayNames() {
+		return appendNames(super.getComponentArrayNames(), "c", "p", "cSingle", "pSingle");
+	}
+
+	@Override
+	protected String[] getSinglePrecisionArrayNames() {
+		return appendSinglePrecisionArrayNames("c", "p");
+	}
 }
@@ -9,6 +9,13 @@ import com.ojcoleman.bain.base.SynapseCollection;
 /**
  * Implementation of the model described by Pfister, J.-P., Gerstner, W.: Triplets of Spikes in a Model of Spike Timing-Dependent Plasticity. J. Neurosci. 26,
  * 9673–9682 (2006).
+ * <p>
+ * Event-driven updating is supported (see {@link SynapseCollection#setEventDriven(boolean)}): the spike traces decay
+ * exponentially between spikes, so they are brought up to date in closed form.
+ * </p>
+ * <p>
+ * Single precision storage of the efficacies, outputs and spike traces is supported, see {@link ComponentCollection#setSinglePrecision(boolean)}.
+ * </p>
  * 
  * @see Pfister2006SynapseConfiguration
  * 
@@ -16,8 +23,10 @@ import com.ojcoleman.bain.base.SynapseCollection;
  */
 public class Pfister2006SynapseCollection extends SynapseCollection<Pfister2006SynapseConfiguration> {
 	private static final Pfister2006SynapseConfiguration configSingleton = new Pfister2006SynapseConfiguration();
+	private static final String[] stateVariableNames = { "efficacy", "r1", "r2", "o1", "o2" };
 
 	double[] r1, r2, o1, o2; // Spike traces.
+	float[] r1Single, r2Single, o1Single, o2Single; // Spike traces in single precision mode, see setSinglePrecision().
 
 	// Required values for each config, copied to arrays of primitives for use
 	// in kernel.
@@ -31,64 +40,69 @@ public class Pfister2006SynapseCollection extends SynapseCollection<Pfister2006S
 	@Override
 	public void init() {
 		super.init();
-		if (r1 == null || r1.length != size) {
-			r1 = new double[size];
-			r2 = new double[size];
-			o1 = new double[size];
-			o2 = new double[size];
-		}
-		if (tPDecayMult == null || tPDecayMult.length != configs.size()) {
-			tPDecayMult = new double[configs.size()];
-			tXDecayMult = new double[configs.size()];
-			tNDecayMult = new double[configs.size()];
-			tYDecayMult = new double[configs.size()];
-
-			a2N = new double[configs.size()];
-			a2P = new double[configs.size()];
-			a3N = new double[configs.size()];
-			a3P = new double[configs.size()];
-		}
-
-		if (network != null) {
-			for (int c = 0; c < configs.size(); c++) {
-				Pfister2006SynapseConfiguration config = configs.get(c);
-				tPDecayMult[c] = (1000 / config.tPDecay) / network.getTimeResolution();
-				tXDecayMult[c] = (1000 / config.tXDecay) / network.getTimeResolution();
-				tNDecayMult[c] = (1000 / config.tNDecay) / network.getTimeResolution();
-				tYDecayMult[c] = (1000 / config.tYDecay) / network.getTimeResolution();
-				a2N[c] = config.a2N;
-				a2P[c] = config.a2P;
-				a3N[c] = config.a3N;
-				a3P[c] = config.a3P;
-			}
-		}
+		r1 = doubleStateArray(r1);
+		r2 = doubleStateArray(r2);
+		o1 = doubleStateArray(o1);
+		o2 = doubleStateArray(o2);
+		r1Single = singleStateArray(r1Single);
+		r2Single = singleStateArray(r2Single);
+		o1Single = singleStateArray(o1Single);
+		o2Single = singleStateArray(o2Single);
 
 		// Transfer data to Aparapi kernel.
 		put(r1);
 		put(r2);
 		put(o1);
 		put(o2);
-		put(tPDecayMult);
-		put(tXDecayMult);
-		put(tNDecayMult);
-		put(tYDecayMult);
-		put(a2N);
-		put(a2P);
-		put(a3N);
-		put(a3P);
+		put(r1Single);
+		put(r2Single);
+		put(o1Single);
+		put(o2Single);
+		put(singlePrecision);
 		stateVariablesStale = false;
 	}
 
-	public void reset() {
-		super.reset();
-		Arrays.fill(r1, 0);
-		Arrays.fill(r2, 0);
-		Arrays.fill(o1, 0);
-		Arrays.fill(o2, 0);
-		put(r1);
-		put(r2);
-		put(o1);
-		put(o2);
+	@Override
+	protected String[] getConfigurationArrayNames() {
+		return new String[] { "tPDecayMult", "tXDecayMult", "tNDecayMult", "tYDecayMult", "a2N", "a2P", "a3N", "a3P" };
+	}
+
+	@Override
+	protected void initConfiguration(int c) {
+		if (network != null) {
+			Pfister2006SynapseConfiguration config = configs.get(c);
+			tPDecayMult[c] = (1000 / config.tPDecay) / network.getTimeResolution();
+			tXDecayMult[c] = (1000 / config.tXDecay) / network.getTimeResolution();
+			tNDecayMult[c] = (1000 / config.tNDecay) / network.getTimeResolution();
+			tYDecayMult[c] = (1000 / config.tYDecay) / network.getTimeResolution();
+			a2N[c] = config.a2N;
+			a2P[c] = config.a2P;
+			a3N[c] = config.a3N;
+			a3P[c] = config.a3P;
+		}
+	}
+
+	public void reset(int start, int end) {
+		super.reset(start, end);
+		if (singlePrecision[0]) {
+			Arrays.fill(r1Single, start, end, 0);
+			Arrays.fill(r2Single, start, end, 0);
+			Arrays.fill(o1Single, start, end, 0);
+			Arrays.fill(o2Single, start, end, 0);
+			put(r1Single);
+			put(r2Single);
+			put(o1Single);
+			put(o2Single);
+		} else {
+			Arrays.fill(r1, start, end, 0);
+			Arrays.fill(r2, start, end, 0);
+			Arrays.fill(o1, start, end, 0);
+			Arrays.fill(o2, start, end, 0);
+			put(r1);
+			put(r2);
+			put(o1);
+			put(o2);
+		}
 		stateVariablesStale = false;
 	}
 
@@ -97,64 +111,126 @@ public class Pfister2006SynapseCollection extends SynapseCollection<Pfister2006S
 		int synapseID = getGlobalId();
 		if (synapseID >= size)
 			return;
-		int configID = componentConfigIndexes[synapseID];
-		int preID = preIndexes[synapseID];
+		updateSynapse(synapseID);
+		super.run();
+	}
+
+	@Override
+	public void runRange(int start, int end) {
+		for (int synapseID = start; synapseID < end; synapseID++) {
+			updateSynapse(synapseID);
+		}
+		super.runRange(start, end);
+	}
+
+	@Override
+	protected void updateSynapse(int synapseID) {
+		int configID = configIndex(synapseID);
 		int postID = postIndexes[synapseID];
-		boolean preSpiked = neuronSpikings[preID];
-		boolean postSpiked = neuronSpikings[postID];
+		boolean preSpiked = isPreSpiking(synapseID, 0);
+		boolean postSpiked = postNeuronSpikings[postID];
+
+		// Read the traces into local variables so that the calculations are the same in single and double precision
+		// mode.
+		boolean single = singlePrecision[0];
+		double r1v = single ? r1Single[synapseID] : r1[synapseID];
+		double r2v = single ? r2Single[synapseID] : r2[synapseID];
+		double o1v = single ? o1Single[synapseID] : o1[synapseID];
+		double o2v = single ? o2Single[synapseID] : o2[synapseID];
 
 		// Trace decays.
-		r1[synapseID] -= r1[synapseID] * tPDecayMult[configID];
-		r2[synapseID] -= r2[synapseID] * tXDecayMult[configID];
-		o1[synapseID] -= o1[synapseID] * tNDecayMult[configID];
-		o2[synapseID] -= o2[synapseID] * tYDecayMult[configID];
+		r1v -= r1v * tPDecayMult[configID];
+		r2v -= r2v * tXDecayMult[configID];
+		o1v -= o1v * tNDecayMult[configID];
+		o2v -= o2v * tYDecayMult[configID];
 
 		// Need pre-spike values for these traces for strength update rules.
-		double r2p = r2[synapseID];
-		double o2p = o2[synapseID];
+		double r2p = r2v;
+		double o2p = o2v;
 
 		if (preSpiked) {
-			r1[synapseID] = 1;
-			r2[synapseID] = 1;
+			r1v = 1;
+			r2v = 1;
 		}
 		if (postSpiked) {
-			o1[synapseID] = 1;
-			o2[synapseID] = 1;
+			o1v = 1;
+			o2v = 1;
 		}
 
-		if (preSpiked) {
-			efficacy[synapseID] -= o1[synapseID] * (a2N[configID] + a3N[configID] * r2p);
+		if (preSpiked || postSpiked) {
+			double w = loadEfficacy(synapseID);
+			if (preSpiked) {
+				w -= o1v * (a2N[configID] + a3N[configID] * r2p);
+			}
+			if (postSpiked) {
+				w += r1v * (a2P[configID] + a3P[configID] * o2p);
+			}
+			storeEfficacy(synapseID, w);
 		}
-		if (postSpiked) {
-			efficacy[synapseID] += r1[synapseID] * (a2P[configID] + a3P[configID] * o2p);
+
+		if (single) {
+			r1Single[synapseID] = (float) r1v;
+			r2Single[synapseID] = (float) r2v;
+			o1Single[synapseID] = (float) o1v;
+			o2Single[synapseID] = (float) o2v;
+		} else {
+			r1[synapseID] = r1v;
+			r2[synapseID] = r2v;
+			o1[synapseID] = o1v;
+			o2[synapseID] = o2v;
 		}
+	}
 
-		super.run();
+	@Override
+	protected boolean supportsEventDriven() {
+		return true;
+	}
+
+	@Override
+	protected void catchUpSynapse(int synapseID, long steps) {
+		int configID = configIndex(synapseID);
+		if (singlePrecision[0]) {
+			r1Single[synapseID] *= (float) Math.pow(1 - tPDecayMult[configID], steps);
+			r2Single[synapseID] *= (float) Math.pow(1 - tXDecayMult[configID], steps);
+			o1Single[synapseID] *= (float) Math.pow(1 - tNDecayMult[configID], steps);
+			o2Single[synapseID] *= (float) Math.pow(1 - tYDecayMult[configID], steps);
+		} else {
+			r1[synapseID] *= Math.pow(1 - tPDecayMult[configID], steps);
+			r2[synapseID] *= Math.pow(1 - tXDecayMult[configID], steps);
+			o1[synapseID] *= Math.pow(1 - tNDecayMult[configID], steps);
+			o2[synapseID] *= Math.pow(1 - tYDecayMult[configID], steps);
+		}
 	}
 
 	@Override
 	public boolean isNotUsed(int synapseIndex) {
-		int configID = componentConfigIndexes[synapseIndex];
-		return initialEfficacy[synapseIndex] == 0 && a2N[configID] == 0 && a3N[configID] == 0 && a2P[configID] == 0 && a3P[configID] == 0;
+		int configID = configIndex(synapseIndex);
+		return getInitialEfficacy(synapseIndex) == 0 && a2N[configID] == 0 && a3N[configID] == 0 && a2P[configID] == 0 && a3P[configID] == 0;
 	}
 
 	@Override
-	public String[] getStateVariableNames() {
-		String[] names = { "efficacy", "r1", "r2", "o1", "o2", };
-		return names;
+	protected String[] getSharedStateVariableNames() {
+		return stateVariableNames;
 	}
 
 	@Override
-	public double[] getStateVariableValues(int synapseIndex) {
-		ensureStateVariablesAreFresh();
-		double[] values = { efficacy[synapseIndex], r1[synapseIndex], r2[synapseIndex], o1[synapseIndex], o2[synapseIndex] };
-		return values;
+	protected void copyStateVariableValues(int synapseIndex, double[] values) {
+		boolean single = singlePrecision[0];
+		values[0] = loadEfficacy(synapseIndex);
+		values[1] = single ? r1Single[synapseIndex] : r1[synapseIndex];
+		values[2] = single ? r2Single[synapseIndex] : r2[synapseIndex];
+		values[3] = single ? o1Single[synapseIndex] : o1[synapseIndex];
+		values[4] = single ? o2Single[synapseIndex] : o2[synapseIndex];
 	}
 
 	@Override
 	public void ensureStateVariablesAreFresh() {
 		if (stateVariablesStale) {
-			get(r1).get(r2).get(o1).get(o2);
+			if (singlePrecision[0]) {
+				get(r1Single).get(r2Single).get(o1Single).get(o2Single);
+			} else {
+				get(r1).get(r2).get(o1).get(o2);
+			}
 		}
 		super.ensureStateVariablesAreFresh();
 	}
@@ -168,4 +244,14 @@ public class Pfister2006SynapseCollection extends SynapseCollection<Pfister2006S
 	public ComponentCollection createCollection(int size) {
 		return new Pfister2006SynapseCollection(size);
 	}
+
+	@Override
+	public String[] getComponentArrayNames() {
+		return appendNames(super.getComponentArrayNames(), "r1", "r2", "o1", "o2", "r1Single", "r2Single", "o1Single", "o2Single");
+	}
+
+	@Override
+	protected String[] getSinglePrecisionArrayNames() {
+		return appendSinglePrecisionArrayNames("r1", "r2", "o1", "o2");
+	}
 }
@@ -0,0 +1,156 @@
+package com.ojcoleman.bain;
+
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that growing a network one neuron and synapse at a time, including during a simulation, gives
+ * the same results as a network constructed at its final size, and that the size of the collections grows
+ * geometrically.
+ */
+public class CapacityTest {
+	static final int NEURON_COUNT = 64;
+	static final int SYNAPSE_COUNT = 512;
+	static final int STEPS = 10;
+
+	@Test
+	public void testGrowDuringSimulation() {
+		for (Kernel.EXECUTION_MODE mode : new Kernel.EXECUTION_MODE[] { Kernel.EXECUTION_MODE.SEQ, Kernel.EXECUTION_MODE.JTP }) {
+			// The expected network contains all neurons and synapses from the start, but the synapses to be added
+			// later have an efficacy of 0 until then, so the neurons to be added later have an output of 0.
+			FixedSynapseCollection expectedSynapses = new FixedSynapseCollection(SYNAPSE_COUNT);
+			NeuralNetwork expected = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), expectedSynapses, mode);
+			int[][] connections = createConnections();
+			for (int s = 0; s < SYNAPSE_COUNT; s++) {
+				expectedSynapses.setPreAndPostNeurons(s, connections[s][0], connections[s][1]);
+				expectedSynapses.setEfficacy(s, s < SYNAPSE_COUNT / 2 ? efficacy(s) : 0);
+			}
+
+			LinearNeuronCollection neurons = new LinearNeuronCollection(1);
+			FixedSynapseCollection synapses = new FixedSynapseCollection(1);
+			NeuralNetwork grown = new NeuralNetwork(1000, neurons, synapses, mode);
+			synapses.setSizePopulated(0);
+			int sizeChanges = 0;
+			for (int s = 0; s < SYNAPSE_COUNT; s++) {
+				if (s == SYNAPSE_COUNT / 2) {
+					run(expected, grown, STEPS);
+					for (int s2 = SYNAPSE_COUNT / 2; s2 < SYNAPSE_COUNT; s2++) {
+						expectedSynapses.setEfficacy(s2, efficacy(s2));
+					}
+				}
+				int size = synapses.getSize() + neurons.getSize();
+				while (neurons.getSizePopulated() <= Math.max(connections[s][0], connections[s][1])) {
+					neurons.addNeuron(0);
+				}
+				assertEquals(s, synapses.addSynapse(connections[s][0], connections[s][1], efficacy(s)));
+				if (synapses.getSize() + neurons.getSize() != size) {
+					sizeChanges++;
+				}
+			}
+			assertEquals(NEURON_COUNT, neurons.getSizePopulated());
+			assertEquals(SYNAPSE_COUNT, synapses.getSizePopulated());
+			assertTrue(synapses.getSize() < SYNAPSE_COUNT * 2);
+			assertTrue(sizeChanges < 30);
+			run(expected, grown, STEPS);
+			expected.dispose();
+			grown.dispose();
+		}
+	}
+
+	@Test
+	public void testAddConfigurations() {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, new FixedSynapseCollection(1), Kernel.EXECUTION_MODE.SEQ);
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.002 * (n + 1)));
+			neurons.setComponentConfiguration(n, n);
+		}
+		sim.run(NEURON_COUNT * 2 + 1);
+		// The period of neuron n is 2 * (n + 1) steps, so only neurons with a period dividing the step number spike.
+		long step = sim.getStep() - 1;
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			assertEquals(step % (2 * (n + 1)) == 0, neurons.getSpikings()[n]);
+		}
+		sim.dispose();
+	}
+
+	@Test
+	public void testConfigurationsComputedOnce() {
+		final int[] computed = new int[NEURON_COUNT];
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(1) {
+			@Override
+			protected void initConfiguration(int configurationIndex) {
+				super.initConfiguration(configurationIndex);
+				computed[configurationIndex]++;
+			}
+		};
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, new FixedSynapseCollection(1), Kernel.EXECUTION_MODE.SEQ);
+		neurons.setSizePopulated(0);
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.002 * (n + 1)));
+			neurons.addNeuron(n);
+		}
+		// Adding a configuration only computes the values for that configuration, and growing the collection does not
+		// recompute them.
+		for (int c = 0; c < NEURON_COUNT; c++) {
+			assertEquals(1, computed[c]);
+		}
+		sim.run(NEURON_COUNT * 2 + 1);
+		long step = sim.getStep() - 1;
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			assertEquals(step % (2 * (n + 1)) == 0, neurons.getSpikings()[n]);
+		}
+		sim.dispose();
+	}
+
+	/**
+	 * Connections between the neurons, such that the first half of the synapses only connect the first half of the
+	 * neurons.
+	 */
+	private static int[][] createConnections() {
+		Random random = new Random(1);
+		int[][] connections = new int[SYNAPSE_COUNT][2];
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			int neuronCount = s < SYNAPSE_COUNT / 2 ? NEURON_COUNT / 2 : NEURON_COUNT;
+			connections[s][0] = random.nextInt(neuronCount);
+			connections[s][1] = random.nextInt(neuronCount);
+		}
+		return connections;
+	}
+
+	private static double efficacy(int synapseIndex) {
+		return ((synapseIndex * 37) % 101) / 500.0 - 0.1;
+	}
+
+	/**
+	 * Run both networks, setting the output of the first neurons randomly in each step, and check that the outputs of
+	 * the neurons in the grown network match those of the same neurons in the expected network.
+	 */
+	private static void run(NeuralNetwork expected, NeuralNetwork grown, int steps) {
+		Random random = new Random(2);
+		NeuronCollection<?> expectedNeurons = expected.getNeurons();
+		NeuronCollection<?> grownNeurons = grown.getNeurons();
+		for (int step = 0; step < steps; step++) {
+			for (int n = 0; n < 4; n++) {
+				double output = random.nextDouble();
+				expectedNeurons.setOutput(n, output);
+				grownNeurons.setOutput(n, output);
+			}
+			expected.step();
+			grown.step();
+			for (int n = 0; n < grownNeurons.getSizePopulated(); n++) {
+				assertEquals(expectedNeurons.getOutput(n), grownNeurons.getOutput(n), 0);
+			}
+		}
+	}
+}
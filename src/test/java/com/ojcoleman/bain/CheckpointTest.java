@@ -0,0 +1,112 @@
+package com.ojcoleman.bain;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.ComponentConfiguration;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.spiking.Graupner2012SimplifiedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that a network restored from a checkpoint into a newly constructed network continues exactly as
+ * the saved network does, in dense and event-driven mode, with single precision storage and with synaptic delays.
+ */
+public class CheckpointTest {
+	static final int NEURON_COUNT = 24;
+	static final int SYNAPSE_COUNT = 200;
+	static final int STEPS = 300;
+
+	@Test
+	public void testRestore() throws Exception {
+		for (int variant = 0; variant < 4; variant++) {
+			File file = File.createTempFile("network", ".bckp");
+			file.deleteOnExit();
+
+			NeuralNetwork saved = createNetwork(variant);
+			// Parameters and additional synapses which the newly constructed network does not have.
+			saved.getNeurons().getConfiguration(1).setParameterValues(new double[] { 0.009 }, false);
+			saved.getSynapses().addSynapse(1, 2, 0.5, 0);
+			saved.run(STEPS);
+			saved.saveCheckpoint(file);
+			saved.run(STEPS);
+
+			NeuralNetwork restored = createNetwork(variant);
+			restored.run(10);
+			restored.restoreCheckpoint(file);
+			assertEquals(STEPS, restored.getStep());
+			restored.run(STEPS);
+
+			assertEquals(saved.getStep(), restored.getStep());
+			NeuronCollection<?> savedNeurons = saved.getNeurons();
+			NeuronCollection<?> restoredNeurons = restored.getNeurons();
+			assertArrayEquals(savedNeurons.getConfiguration(1).getParameterValues(), restoredNeurons.getConfiguration(1).getParameterValues(), 0);
+			assertArrayEquals(savedNeurons.getOutputs(), restoredNeurons.getOutputs(), 0);
+			SynapseCollection<?> savedSynapses = saved.getSynapses();
+			SynapseCollection<?> restoredSynapses = restored.getSynapses();
+			assertEquals(savedSynapses.getSize(), restoredSynapses.getSize());
+			assertEquals(savedSynapses.getSizePopulated(), restoredSynapses.getSizePopulated());
+			assertEquals(savedSynapses.isEventDriven(), restoredSynapses.isEventDriven());
+			assertEquals(savedSynapses.isSinglePrecision(), restoredSynapses.isSinglePrecision());
+			for (int s = 0; s < savedSynapses.getSizePopulated(); s++) {
+				assertEquals(savedSynapses.getPreNeuron(s), restoredSynapses.getPreNeuron(s));
+				assertEquals(savedSynapses.getPostNeuron(s), restoredSynapses.getPostNeuron(s));
+				assertEquals(savedSynapses.getEfficacy(s), restoredSynapses.getEfficacy(s), 0);
+				assertArrayEquals(savedSynapses.getStateVariableValues(s), restoredSynapses.getStateVariableValues(s), 0);
+			}
+			saved.dispose();
+			restored.dispose();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testMismatchedNetwork() throws Exception {
+		File file = File.createTempFile("network", ".bckp");
+		file.deleteOnExit();
+		NeuralNetwork saved = createNetwork(0);
+		saved.run(10);
+		saved.saveCheckpoint(file);
+		NeuralNetwork other = createNetwork(0);
+		other.addPopulation("other", new FixedFrequencyNeuronCollection(4));
+		other.restoreCheckpoint(file);
+	}
+
+	/**
+	 * Creates a network of neurons spiking at several frequencies connected by randomly connected synapses. Variant 1
+	 * uses event-driven updating, variant 2 single precision storage and variant 3 synaptic delays.
+	 */
+	private static NeuralNetwork createNetwork(int variant) {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.007));
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.011));
+		for (int n = 0; n < NEURON_COUNT; n += 2) {
+			neurons.setComponentConfiguration(n, 1);
+		}
+		Graupner2012SimplifiedSynapseCollection synapses = new Graupner2012SimplifiedSynapseCollection(SYNAPSE_COUNT);
+		ComponentConfiguration config = synapses.getConfigSingleton().getPreset(0);
+		synapses.addConfiguration(config);
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, synapses, Kernel.EXECUTION_MODE.SEQ);
+		Random random = new Random(1);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+			if (variant == 3) {
+				synapses.setDelay(s, random.nextInt(5));
+			}
+		}
+		if (variant == 1) {
+			sim.setEventDriven(true);
+		} else if (variant == 2) {
+			sim.setSinglePrecision(true);
+		}
+		sim.reset();
+		return sim;
+	}
+}
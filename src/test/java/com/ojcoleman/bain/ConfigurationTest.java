@@ -0,0 +1,110 @@
+package com.ojcoleman.bain;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.neuron.rate.RisiModulatoryNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.RisiModulatoryNeuronConfiguration;
+import com.ojcoleman.bain.neuron.rate.SoltoggioModulatoryNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.SoltoggioModulatoryNeuronConfiguration;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+import com.ojcoleman.bain.synapse.rate.Niv2002SynapseConfiguration;
+import com.ojcoleman.bain.synapse.rate.RisiModulatorySynapseCollection;
+import com.ojcoleman.bain.synapse.rate.RisiModulatorySynapseConfiguration;
+import com.ojcoleman.bain.synapse.rate.SoltoggioModulatorySynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that the kernels use the configuration of each component both when a collection has a single
+ * configuration and after further configurations are added or components switch configuration during a simulation.
+ */
+public class ConfigurationTest {
+	static final int NEURON_COUNT = 8;
+
+	@Test
+	public void testAddConfigurationDuringSimulation() {
+		for (Kernel.EXECUTION_MODE mode : new Kernel.EXECUTION_MODE[] { Kernel.EXECUTION_MODE.SEQ, Kernel.EXECUTION_MODE.JTP }) {
+			FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+			neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.002));
+			NeuralNetwork sim = new NeuralNetwork(1000, neurons, new FixedSynapseCollection(1), mode);
+			checkSpikings(sim, neurons, 2, 2);
+
+			neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.003));
+			for (int n = NEURON_COUNT / 2; n < NEURON_COUNT; n++) {
+				neurons.setComponentConfiguration(n, 1);
+			}
+			checkSpikings(sim, neurons, 2, 3);
+			sim.dispose();
+		}
+	}
+
+	@Test
+	public void testSwitchToModulatorySynapse() {
+		RisiModulatoryNeuronCollection<RisiModulatoryNeuronConfiguration> neurons = new RisiModulatoryNeuronCollection<RisiModulatoryNeuronConfiguration>(2);
+		neurons.addConfiguration(new RisiModulatoryNeuronConfiguration(2, 0));
+		RisiModulatorySynapseCollection synapses = new RisiModulatorySynapseCollection(1);
+		synapses.addConfiguration(new RisiModulatorySynapseConfiguration(new double[] { 0, 0, 0, 0, 0, 0 }));
+		synapses.addConfiguration(new RisiModulatorySynapseConfiguration(new double[] { 1, 0, 0, 0, 0, 0 }));
+		synapses.setPreAndPostNeurons(0, 0, 1);
+		synapses.setEfficacy(0, 1);
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, synapses, Kernel.EXECUTION_MODE.SEQ);
+
+		neurons.setOutput(0, 1);
+		sim.step();
+		assertTrue(neurons.getOutput(1) > 0);
+		assertEquals(0.5, neurons.getModActivations()[1], 0);
+
+		// The synapse now feeds the modulatory input of the post-synaptic neuron instead of the regular input.
+		synapses.setComponentConfiguration(0, 1);
+		neurons.setOutput(0, 1);
+		sim.step();
+		assertEquals(0, neurons.getOutput(1), 0);
+		assertTrue(neurons.getModActivations()[1] > 0.5);
+		sim.dispose();
+	}
+
+	@Test
+	public void testSwitchToModulatoryNeuron() {
+		SoltoggioModulatoryNeuronCollection<SoltoggioModulatoryNeuronConfiguration> neurons = new SoltoggioModulatoryNeuronCollection<SoltoggioModulatoryNeuronConfiguration>(2);
+		neurons.addConfiguration(new SoltoggioModulatoryNeuronConfiguration());
+		SoltoggioModulatoryNeuronConfiguration modulatory = new SoltoggioModulatoryNeuronConfiguration();
+		modulatory.modulatory = true;
+		neurons.addConfiguration(modulatory);
+		SoltoggioModulatorySynapseCollection synapses = new SoltoggioModulatorySynapseCollection(1);
+		synapses.addConfiguration(new Niv2002SynapseConfiguration(new double[] { 0, 0, 0, 0, 0 }));
+		synapses.setPreAndPostNeurons(0, 0, 1);
+		synapses.setEfficacy(0, 1);
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, synapses, Kernel.EXECUTION_MODE.SEQ);
+
+		neurons.setOutput(0, 1);
+		sim.step();
+		assertTrue(neurons.getOutput(1) > 0);
+		assertEquals(0, neurons.getModActivations()[1], 0);
+
+		// The synapse from the now modulatory neuron feeds the modulatory input of the post-synaptic neuron.
+		neurons.setComponentConfiguration(0, 1);
+		neurons.setOutput(0, 1);
+		sim.step();
+		assertEquals(0, neurons.getOutput(1), 0);
+		assertTrue(neurons.getModActivations()[1] > 0);
+		sim.dispose();
+	}
+
+	/**
+	 * Run the network for several steps, checking that the first half of the neurons spike with the first period and
+	 * the second half with the second period (in steps).
+	 */
+	private static void checkSpikings(NeuralNetwork sim, FixedFrequencyNeuronCollection neurons, int firstPeriod, int secondPeriod) {
+		for (int step = 0; step < 12; step++) {
+			long simStep = sim.getStep();
+			sim.step();
+			for (int n = 0; n < NEURON_COUNT; n++) {
+				int period = n < NEURON_COUNT / 2 ? firstPeriod : secondPeriod;
+				assertEquals(simStep % period == 0, neurons.spiked(n));
+			}
+		}
+	}
+}
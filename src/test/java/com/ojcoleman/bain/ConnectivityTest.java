@@ -0,0 +1,125 @@
+package com.ojcoleman.bain;
+
+import java.util.concurrent.ForkJoinPool;
+
+import com.ojcoleman.bain.base.Connectivity;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that the bulk connectivity rules generate synapses with the expected degrees, probabilities
+ * and efficacies, and that the generated connectivity is the same whether or not it is generated in parallel.
+ */
+public class ConnectivityTest {
+	static final int PRE_COUNT = 300;
+	static final int POST_COUNT = 200;
+
+	@Test
+	public void testFixedInDegree() {
+		FixedSynapseCollection synapses = new FixedSynapseCollection(POST_COUNT * 10);
+		Connectivity connectivity = new Connectivity(synapses);
+		connectivity.setEfficacyRange(0.5, 2);
+		connectivity.setAutapses(false);
+		assertEquals(POST_COUNT * 10, connectivity.fixedInDegree(PRE_COUNT, POST_COUNT, 10));
+		assertEquals(POST_COUNT * 10, connectivity.getNextSynapse());
+		int[] inDegrees = new int[POST_COUNT];
+		for (int s = 0; s < synapses.getSize(); s++) {
+			inDegrees[synapses.getPostNeuron(s)]++;
+			assertTrue(synapses.getPreNeuron(s) < PRE_COUNT);
+			assertTrue(synapses.getPreNeuron(s) != synapses.getPostNeuron(s));
+			assertTrue(synapses.getEfficacy(s) >= 0.5 && synapses.getEfficacy(s) < 2);
+		}
+		for (int n = 0; n < POST_COUNT; n++) {
+			assertEquals(10, inDegrees[n]);
+		}
+	}
+
+	@Test
+	public void testFixedOutDegree() {
+		FixedSynapseCollection synapses = new FixedSynapseCollection(PRE_COUNT * 5);
+		Connectivity connectivity = new Connectivity(synapses);
+		connectivity.fixedOutDegree(PRE_COUNT, POST_COUNT, 5);
+		int[] outDegrees = new int[PRE_COUNT];
+		for (int s = 0; s < synapses.getSize(); s++) {
+			outDegrees[synapses.getPreNeuron(s)]++;
+			assertTrue(synapses.getPostNeuron(s) < POST_COUNT);
+			assertEquals(1, synapses.getEfficacy(s), 0);
+		}
+		for (int n = 0; n < PRE_COUNT; n++) {
+			assertEquals(5, outDegrees[n]);
+		}
+	}
+
+	@Test
+	public void testFixedProbability() {
+		double probability = 0.1;
+		FixedSynapseCollection synapses = new FixedSynapseCollection(PRE_COUNT * POST_COUNT);
+		int count = new Connectivity(synapses).fixedProbability(PRE_COUNT, POST_COUNT, probability);
+		double expected = PRE_COUNT * POST_COUNT * probability;
+		assertEquals(expected, count, 5 * Math.sqrt(expected * (1 - probability)));
+		for (int s = 1; s < count; s++) {
+			// Synapses are grouped by pre-synaptic neuron, in ascending order of post-synaptic neuron.
+			int preChange = synapses.getPreNeuron(s) - synapses.getPreNeuron(s - 1);
+			assertTrue(preChange > 0 || (preChange == 0 && synapses.getPostNeuron(s) > synapses.getPostNeuron(s - 1)));
+		}
+		assertEquals(PRE_COUNT * POST_COUNT, new Connectivity(synapses).fixedProbability(PRE_COUNT, POST_COUNT, 1));
+	}
+
+	@Test
+	public void testDistanceDependent() {
+		double[] positions = new double[PRE_COUNT];
+		for (int n = 0; n < PRE_COUNT; n++) {
+			positions[n] = n;
+		}
+		FixedSynapseCollection synapses = new FixedSynapseCollection(PRE_COUNT * PRE_COUNT);
+		int count = new Connectivity(synapses).distanceDependent(positions, positions, 1, 1, 2);
+		boolean[] selfConnected = new boolean[PRE_COUNT];
+		for (int s = 0; s < count; s++) {
+			// The probability of connecting neurons more than 20 sigma apart is negligible.
+			assertTrue(Math.abs(synapses.getPreNeuron(s) - synapses.getPostNeuron(s)) < 40);
+			if (synapses.getPreNeuron(s) == synapses.getPostNeuron(s)) {
+				selfConnected[synapses.getPreNeuron(s)] = true;
+			}
+		}
+		for (int n = 0; n < PRE_COUNT; n++) {
+			assertTrue(selfConnected[n]);
+		}
+	}
+
+	@Test
+	public void testParallelSameAsSequential() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		SynapseCollection<?> sequential = generate(null);
+		SynapseCollection<?> parallel = generate(pool);
+		pool.shutdown();
+		assertEquals(sequential.getSize(), parallel.getSize());
+		for (int s = 0; s < sequential.getSize(); s++) {
+			assertEquals(sequential.getPreNeuron(s), parallel.getPreNeuron(s));
+			assertEquals(sequential.getPostNeuron(s), parallel.getPostNeuron(s));
+			assertEquals(sequential.getEfficacy(s), parallel.getEfficacy(s), 0);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInsufficientCapacity() {
+		new Connectivity(new FixedSynapseCollection(100)).fixedOutDegree(PRE_COUNT, POST_COUNT, 1);
+	}
+
+	/**
+	 * Generates connectivity with several rules, one after another.
+	 */
+	private static SynapseCollection<?> generate(ForkJoinPool pool) {
+		FixedSynapseCollection synapses = new FixedSynapseCollection(PRE_COUNT * POST_COUNT);
+		Connectivity connectivity = new Connectivity(synapses);
+		connectivity.setPool(pool);
+		connectivity.setSeed(7);
+		connectivity.setEfficacyRange(-1, 1);
+		connectivity.fixedProbability(PRE_COUNT, POST_COUNT, 0.05);
+		connectivity.fixedInDegree(PRE_COUNT, POST_COUNT, 20);
+		connectivity.fixedOutDegree(PRE_COUNT, POST_COUNT, 20);
+		return synapses;
+	}
+}
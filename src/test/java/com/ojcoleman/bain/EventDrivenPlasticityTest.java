@@ -0,0 +1,107 @@
+package com.ojcoleman.bain;
+
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.ComponentConfiguration;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.spiking.Graupner2012SimplifiedSynapseCollection;
+import com.ojcoleman.bain.synapse.spiking.Graupner2012SimplifiedSynapseConfiguration;
+import com.ojcoleman.bain.synapse.spiking.Pfister2006SynapseCollection;
+import com.ojcoleman.bain.synapse.spiking.Pfister2006SynapseConfiguration;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that event-driven updating of spiking synapse models gives the same results as updating every
+ * synapse in every time step.
+ */
+public class EventDrivenPlasticityTest {
+	static final int NEURON_COUNT = 40;
+	static final int SYNAPSE_COUNT = 400;
+	static final double[] SPIKING_PERIODS = { 0.007, 0.011, 0.013, 0.017, 0.023 };
+	static final double TOLERANCE = 1e-9;
+
+	@Test
+	public void testPfister() {
+		for (Kernel.EXECUTION_MODE mode : new Kernel.EXECUTION_MODE[] { Kernel.EXECUTION_MODE.SEQ, Kernel.EXECUTION_MODE.JTP }) {
+			compare(new Pfister2006SynapseConfiguration().getPreset(0), mode, false);
+			compare(new Pfister2006SynapseConfiguration().getPreset(0), mode, true);
+		}
+	}
+
+	@Test
+	public void testGraupnerSimplified() {
+		for (int preset = 0; preset < 2; preset++) {
+			for (Kernel.EXECUTION_MODE mode : new Kernel.EXECUTION_MODE[] { Kernel.EXECUTION_MODE.SEQ, Kernel.EXECUTION_MODE.JTP }) {
+				compare(new Graupner2012SimplifiedSynapseConfiguration().getPreset(preset), mode, false);
+				compare(new Graupner2012SimplifiedSynapseConfiguration().getPreset(preset), mode, true);
+			}
+		}
+	}
+
+	/**
+	 * Run a network with dense updating and with event-driven updating (optionally switching between dense and
+	 * event-driven updating part way through) and check that the synapse state and neuron outputs match.
+	 */
+	private static void compare(ComponentConfiguration config, Kernel.EXECUTION_MODE mode, boolean switchModes) {
+		NeuralNetwork dense = createNetwork(config, mode);
+		NeuralNetwork events = createNetwork(config, mode);
+		events.setEventDriven(true);
+		assertTrue(events.isEventDriven());
+
+		dense.run(300);
+		events.run(100);
+		if (switchModes) {
+			events.setEventDriven(false);
+			assertFalse(events.isEventDriven());
+			events.run(100);
+			events.setEventDriven(true);
+		} else {
+			events.run(100);
+		}
+		events.run(100);
+
+		SynapseCollection<?> denseSynapses = dense.getSynapses();
+		SynapseCollection<?> eventSynapses = events.getSynapses();
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			double[] expected = denseSynapses.getStateVariableValues(s);
+			double[] actual = eventSynapses.getStateVariableValues(s);
+			assertArrayEquals(expected, actual, TOLERANCE);
+			assertEquals(denseSynapses.getEfficacy(s), eventSynapses.getEfficacy(s), TOLERANCE);
+			assertEquals(denseSynapses.getOutput(s), eventSynapses.getOutput(s), TOLERANCE);
+		}
+		assertArrayEquals(dense.getNeurons().getOutputs(), events.getNeurons().getOutputs(), TOLERANCE);
+		dense.dispose();
+		events.dispose();
+	}
+
+	private static NeuralNetwork createNetwork(ComponentConfiguration config, Kernel.EXECUTION_MODE mode) {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+		for (int c = 0; c < SPIKING_PERIODS.length; c++) {
+			neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(SPIKING_PERIODS[c]));
+		}
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			neurons.setComponentConfiguration(n, n % SPIKING_PERIODS.length);
+		}
+		SynapseCollection synapses;
+		if (config instanceof Pfister2006SynapseConfiguration) {
+			synapses = new Pfister2006SynapseCollection(SYNAPSE_COUNT);
+		} else {
+			synapses = new Graupner2012SimplifiedSynapseCollection(SYNAPSE_COUNT);
+		}
+		synapses.addConfiguration(config);
+		Random random = new Random(1);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+			synapses.setEfficacy(s, 0.5);
+		}
+		NeuralNetwork network = new NeuralNetwork(1000, neurons, synapses, mode);
+		network.reset();
+		return network;
+	}
+}
@@ -0,0 +1,159 @@
+package com.ojcoleman.bain;
+
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that reordering a network for memory locality reduces the distance between the indexes of
+ * connected neurons, and does not change the simulation results for each neuron ID.
+ */
+public class LocalityOrderingTest {
+	static final int NEURON_COUNT = 200;
+	static final int NEIGHBOURS = 3;
+	static final double TOLERANCE = 1e-9;
+
+	@Test
+	public void testBandwidthReduced() {
+		NeuralNetwork sim = createRingNetwork(Kernel.EXECUTION_MODE.SEQ);
+		NeuronCollection<?> neurons = sim.getNeurons();
+		SynapseCollection<?> synapses = sim.getSynapses();
+		int synapseCount = synapses.getSizePopulated();
+		int[] preNeurons = new int[synapseCount];
+		int[] postNeurons = new int[synapseCount];
+		for (int s = 0; s < synapseCount; s++) {
+			preNeurons[s] = synapses.getPreNeuron(s);
+			postNeurons[s] = synapses.getPostNeuron(s);
+		}
+		assertTrue(getBandwidth(synapses) > NEURON_COUNT / 2);
+		sim.reorderForLocality();
+		// The ring is cut at one point and laid out as a band two neighbourhoods wide.
+		assertTrue(getBandwidth(synapses) <= 4 * NEIGHBOURS);
+		for (int s = 1; s < synapseCount; s++) {
+			int postChange = neurons.getNeuronIndex(synapses.getPostNeuron(s)) - neurons.getNeuronIndex(synapses.getPostNeuron(s - 1));
+			assertTrue(postChange > 0 || (postChange == 0 && neurons.getNeuronIndex(synapses.getPreNeuron(s)) >= neurons.getNeuronIndex(synapses.getPreNeuron(s - 1))));
+		}
+		// The synapses are specified by index, but retain their IDs, and still connect the same neuron IDs.
+		for (int id = 0; id < synapseCount; id++) {
+			int s = synapses.getSynapseIndex(id);
+			assertEquals(id, synapses.getSynapseID(s));
+			assertEquals(preNeurons[id], synapses.getPreNeuron(s));
+			assertEquals(postNeurons[id], synapses.getPostNeuron(s));
+		}
+
+		boolean[] found = new boolean[NEURON_COUNT];
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			assertEquals(n, neurons.getNeuronIndex(neurons.getNeuronID(n)));
+			found[neurons.getNeuronID(n)] = true;
+		}
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			assertTrue(found[n]);
+		}
+		// Neurons added after reordering have the same ID as their index.
+		int added = neurons.addNeuron(0);
+		assertEquals(added, neurons.getNeuronID(added));
+		assertEquals(added, neurons.getNeuronIndex(added));
+
+		// When a synapse is removed the synapse with the highest ID takes its ID.
+		synapses.removeSynapse(synapses.getSynapseIndex(0));
+		assertEquals(preNeurons[synapseCount - 1], synapses.getPreNeuron(synapses.getSynapseIndex(0)));
+		assertEquals(postNeurons[synapseCount - 1], synapses.getPostNeuron(synapses.getSynapseIndex(0)));
+		for (int id = 1; id < synapseCount - 1; id++) {
+			int s = synapses.getSynapseIndex(id);
+			assertEquals(id, synapses.getSynapseID(s));
+			assertEquals(preNeurons[id], synapses.getPreNeuron(s));
+			assertEquals(postNeurons[id], synapses.getPostNeuron(s));
+		}
+		sim.dispose();
+	}
+
+	@Test
+	public void testResultsUnchanged() {
+		for (Kernel.EXECUTION_MODE mode : new Kernel.EXECUTION_MODE[] { Kernel.EXECUTION_MODE.SEQ, Kernel.EXECUTION_MODE.JTP }) {
+			NeuralNetwork expected = createRingNetwork(mode);
+			NeuralNetwork reordered = createRingNetwork(mode);
+			Random expectedRandom = new Random(3);
+			Random reorderedRandom = new Random(3);
+			run(expected, expectedRandom, 10);
+			run(reordered, reorderedRandom, 10);
+			// The history of outputs used for the delayed synapses is reordered too.
+			reordered.reorderForLocality();
+			run(expected, expectedRandom, 10);
+			run(reordered, reorderedRandom, 10);
+			NeuronCollection<?> expectedNeurons = expected.getNeurons();
+			NeuronCollection<?> reorderedNeurons = reordered.getNeurons();
+			int activeCount = 0;
+			for (int id = 0; id < NEURON_COUNT; id++) {
+				assertEquals(expectedNeurons.getOutput(id), reorderedNeurons.getOutput(id), TOLERANCE);
+				if (expectedNeurons.getOutput(id) != 0) {
+					activeCount++;
+				}
+			}
+			assertTrue(activeCount > 20);
+			expected.dispose();
+			reordered.dispose();
+		}
+	}
+
+	/**
+	 * Creates a network of neurons arranged in a ring, each connected to its nearest neighbours, with the neurons
+	 * numbered randomly around the ring. Some of the synapses have a delay.
+	 */
+	private static NeuralNetwork createRingNetwork(Kernel.EXECUTION_MODE mode) {
+		Random random = new Random(1);
+		int[] ring = new int[NEURON_COUNT];
+		for (int i = 0; i < NEURON_COUNT; i++) {
+			int j = random.nextInt(i + 1);
+			ring[i] = ring[j];
+			ring[j] = i;
+		}
+		FixedSynapseCollection synapses = new FixedSynapseCollection(NEURON_COUNT * NEIGHBOURS * 2);
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), synapses, mode);
+		int s = 0;
+		for (int i = 0; i < NEURON_COUNT; i++) {
+			for (int d = 1; d <= NEIGHBOURS; d++) {
+				for (int direction = -1; direction <= 1; direction += 2) {
+					int neighbour = ring[(i + direction * d + NEURON_COUNT) % NEURON_COUNT];
+					synapses.setPreAndPostNeurons(s, neighbour, ring[i]);
+					synapses.setEfficacy(s, random.nextDouble() * 0.2 - 0.1);
+					synapses.setDelay(s, s % 3);
+					s++;
+				}
+			}
+		}
+		return sim;
+	}
+
+	/**
+	 * Returns the largest difference between the indexes (not IDs) of the pre- and post-synaptic neurons of a synapse.
+	 */
+	private static int getBandwidth(SynapseCollection<?> synapses) {
+		NeuronCollection<?> neurons = synapses.getPreNeurons();
+		int bandwidth = 0;
+		for (int s = 0; s < synapses.getSizePopulated(); s++) {
+			bandwidth = Math.max(bandwidth, Math.abs(neurons.getNeuronIndex(synapses.getPreNeuron(s)) - neurons.getNeuronIndex(synapses.getPostNeuron(s))));
+		}
+		return bandwidth;
+	}
+
+	/**
+	 * Run the network, setting the outputs of the neurons with IDs 0 to 3 randomly in each step.
+	 */
+	private static void run(NeuralNetwork sim, Random random, int steps) {
+		NeuronCollection<?> neurons = sim.getNeurons();
+		for (int step = 0; step < steps; step++) {
+			for (int id = 0; id < 4; id++) {
+				neurons.setOutput(id, random.nextDouble());
+			}
+			sim.step();
+		}
+	}
+}
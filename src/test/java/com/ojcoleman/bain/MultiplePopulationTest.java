@@ -0,0 +1,176 @@
+package com.ojcoleman.bain;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+import com.ojcoleman.bain.synapse.spiking.Pfister2006SynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that a network split into several populations and projections gives bit-identical results to
+ * the equivalent network with a single neuron and synapse collection, that projections between populations use the
+ * pre- and post-synaptic neurons of the right populations, and that stepping independent collections concurrently
+ * gives the same results as stepping them in sequence.
+ */
+public class MultiplePopulationTest {
+	static final int POPULATION_SIZE = 32;
+	static final int PROJECTION_SIZE = 512;
+	static final int STEPS = 20;
+	static final String[] POPULATIONS = { "a", "b" };
+
+	@Test
+	public void testSameAsSinglePopulation() {
+		double[] single = runSingle();
+		assertTrue(Arrays.equals(single, runMultiple(null)));
+		ForkJoinPool pool = new ForkJoinPool(4);
+		assertTrue(Arrays.equals(single, runMultiple(pool)));
+		pool.shutdown();
+	}
+
+	@Test
+	public void testPlasticProjection() {
+		assertTrue(Arrays.equals(runPlasticSingle(false), runPlasticMultiple(false)));
+		// The pre- and post-synaptic spikes come from different populations in event-driven mode.
+		assertTrue(Arrays.equals(runPlasticSingle(true), runPlasticMultiple(true)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownPopulation() {
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(POPULATION_SIZE), new FixedSynapseCollection(PROJECTION_SIZE), Kernel.EXECUTION_MODE.SEQ);
+		sim.addProjection("other", new FixedSynapseCollection(PROJECTION_SIZE), NeuralNetwork.DEFAULT_POPULATION, "missing");
+	}
+
+	/**
+	 * Runs a network with one collection containing the neurons of all populations and one collection containing the
+	 * synapses of all projections, in order of projection.
+	 */
+	private static double[] runSingle() {
+		FixedSynapseCollection synapses = new FixedSynapseCollection(PROJECTION_SIZE * 4);
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(POPULATION_SIZE * 2), synapses, Kernel.EXECUTION_MODE.SEQ);
+		int s = 0;
+		for (int pre = 0; pre < 2; pre++) {
+			for (int post = 0; post < 2; post++) {
+				Random random = new Random(pre * 2 + post);
+				for (int i = 0; i < PROJECTION_SIZE; i++, s++) {
+					synapses.setPreAndPostNeurons(s, pre * POPULATION_SIZE + random.nextInt(POPULATION_SIZE), post * POPULATION_SIZE + random.nextInt(POPULATION_SIZE));
+					synapses.setEfficacy(s, random.nextDouble() * 0.2 - 0.1);
+				}
+			}
+		}
+		NeuronCollection<?> neurons = sim.getNeurons();
+		Random random = new Random(3);
+		for (int step = 0; step < STEPS; step++) {
+			for (int n = 0; n < 8; n++) {
+				neurons.setOutput(n, random.nextDouble());
+			}
+			sim.step();
+		}
+		double[] outputs = neurons.getOutputs().clone();
+		sim.dispose();
+		return outputs;
+	}
+
+	private static double[] runMultiple(ForkJoinPool pool) {
+		NeuralNetwork sim = new NeuralNetwork(1000);
+		for (String population : POPULATIONS) {
+			sim.addPopulation(population, new LinearNeuronCollection(POPULATION_SIZE));
+		}
+		sim.setPreferredExecutionMode(Kernel.EXECUTION_MODE.SEQ);
+		sim.setStepPool(pool);
+		for (int pre = 0; pre < 2; pre++) {
+			for (int post = 0; post < 2; post++) {
+				FixedSynapseCollection synapses = new FixedSynapseCollection(PROJECTION_SIZE);
+				Random random = new Random(pre * 2 + post);
+				for (int s = 0; s < PROJECTION_SIZE; s++) {
+					synapses.setPreAndPostNeurons(s, random.nextInt(POPULATION_SIZE), random.nextInt(POPULATION_SIZE));
+					synapses.setEfficacy(s, random.nextDouble() * 0.2 - 0.1);
+				}
+				sim.addProjection(POPULATIONS[pre] + POPULATIONS[post], synapses, POPULATIONS[pre], POPULATIONS[post]);
+			}
+		}
+		NeuronCollection<?> first = sim.getPopulation("a");
+		Random random = new Random(3);
+		for (int step = 0; step < STEPS; step++) {
+			for (int n = 0; n < 8; n++) {
+				first.setOutput(n, random.nextDouble());
+			}
+			sim.step();
+		}
+		double[] outputs = new double[POPULATION_SIZE * 2];
+		for (int p = 0; p < 2; p++) {
+			System.arraycopy(sim.getPopulation(POPULATIONS[p]).getOutputs(), 0, outputs, p * POPULATION_SIZE, POPULATION_SIZE);
+		}
+		sim.dispose();
+		return outputs;
+	}
+
+	/**
+	 * Runs a network with plastic synapses from the first half of the neurons to the second half, with the neurons
+	 * spiking at different frequencies in each half.
+	 */
+	private static double[] runPlasticSingle(boolean eventDriven) {
+		FixedFrequencyNeuronCollection neurons = createSpikingNeurons(POPULATION_SIZE * 2);
+		for (int n = POPULATION_SIZE; n < POPULATION_SIZE * 2; n++) {
+			neurons.setComponentConfiguration(n, 1);
+		}
+		Pfister2006SynapseCollection synapses = createPlasticSynapses(0, POPULATION_SIZE);
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, synapses, Kernel.EXECUTION_MODE.SEQ);
+		sim.setEventDriven(eventDriven);
+		return runPlastic(sim, synapses);
+	}
+
+	private static double[] runPlasticMultiple(boolean eventDriven) {
+		NeuralNetwork sim = new NeuralNetwork(1000);
+		sim.addPopulation("pre", createSpikingNeurons(POPULATION_SIZE));
+		FixedFrequencyNeuronCollection post = createSpikingNeurons(POPULATION_SIZE);
+		for (int n = 0; n < POPULATION_SIZE; n++) {
+			post.setComponentConfiguration(n, 1);
+		}
+		sim.addPopulation("post", post);
+		Pfister2006SynapseCollection synapses = createPlasticSynapses(0, 0);
+		sim.addProjection("plastic", synapses, "pre", "post");
+		sim.setPreferredExecutionMode(Kernel.EXECUTION_MODE.SEQ);
+		sim.setEventDriven(eventDriven);
+		return runPlastic(sim, synapses);
+	}
+
+	private static FixedFrequencyNeuronCollection createSpikingNeurons(int size) {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(size);
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.007));
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.011));
+		return neurons;
+	}
+
+	private static Pfister2006SynapseCollection createPlasticSynapses(int preOffset, int postOffset) {
+		Pfister2006SynapseCollection synapses = new Pfister2006SynapseCollection(PROJECTION_SIZE);
+		synapses.addConfiguration(synapses.getConfigSingleton().getPreset(0));
+		Random random = new Random(1);
+		for (int s = 0; s < PROJECTION_SIZE; s++) {
+			synapses.setPreAndPostNeurons(s, preOffset + random.nextInt(POPULATION_SIZE), postOffset + random.nextInt(POPULATION_SIZE));
+			synapses.setEfficacy(s, random.nextDouble());
+		}
+		return synapses;
+	}
+
+	private static double[] runPlastic(NeuralNetwork sim, SynapseCollection<?> synapses) {
+		sim.reset();
+		sim.run(1000);
+		double[] efficacies = new double[PROJECTION_SIZE];
+		for (int s = 0; s < PROJECTION_SIZE; s++) {
+			efficacies[s] = synapses.getEfficacy(s);
+		}
+		sim.dispose();
+		return efficacies;
+	}
+}
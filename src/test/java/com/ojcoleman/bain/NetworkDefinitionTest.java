@@ -0,0 +1,201 @@
+package com.ojcoleman.bain;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.NetworkDefinition;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.SigmoidNeuronConfiguration;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+import com.ojcoleman.bain.synapse.rate.ProceduralFixedSynapseCollection;
+import com.ojcoleman.bain.synapse.spiking.Graupner2012SimplifiedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that a network created from a saved network definition has the same populations, projections,
+ * configurations, connectivity and neuron biases as the saved network, and gives identical results.
+ */
+public class NetworkDefinitionTest {
+	static final int NEURON_COUNT = 24;
+	static final int SYNAPSE_COUNT = 200;
+	static final int STEPS = 300;
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		File file = File.createTempFile("network", ".bnet");
+		file.deleteOnExit();
+		NeuralNetwork saved = createNetwork();
+		NetworkDefinition.save(saved, file);
+		NeuralNetwork loaded = NetworkDefinition.load(file);
+
+		assertEquals(saved.getTimeResolution(), loaded.getTimeResolution());
+		assertEquals(0, loaded.getStep());
+		assertEquals(saved.getPopulations().keySet(), loaded.getPopulations().keySet());
+		assertEquals(saved.getProjections().keySet(), loaded.getProjections().keySet());
+		for (String name : saved.getPopulations().keySet()) {
+			NeuronCollection<?> savedNeurons = saved.getPopulation(name);
+			NeuronCollection<?> loadedNeurons = loaded.getPopulation(name);
+			assertSame(savedNeurons.getClass(), loadedNeurons.getClass());
+			assertEquals(savedNeurons.getSize(), loadedNeurons.getSize());
+			assertEquals(savedNeurons.getConfigurationCount(), loadedNeurons.getConfigurationCount());
+			for (int c = 0; c < savedNeurons.getConfigurationCount(); c++) {
+				assertArrayEquals(savedNeurons.getConfiguration(c).getParameterValues(), loadedNeurons.getConfiguration(c).getParameterValues(), 0);
+			}
+			for (int n = 0; n < savedNeurons.getSize(); n++) {
+				assertEquals(savedNeurons.getComponentConfigurationIndex(n), loadedNeurons.getComponentConfigurationIndex(n));
+			}
+		}
+		for (String name : saved.getProjections().keySet()) {
+			SynapseCollection<?> savedSynapses = saved.getProjection(name);
+			SynapseCollection<?> loadedSynapses = loaded.getProjection(name);
+			assertSame(savedSynapses.getClass(), loadedSynapses.getClass());
+			assertEquals(savedSynapses.getSizePopulated(), loadedSynapses.getSizePopulated());
+			assertSame(loaded.getPopulation(NeuralNetwork.DEFAULT_POPULATION), loadedSynapses.getPreNeurons());
+			assertSame(loaded.getPopulation(name.equals("input") ? "linear" : NeuralNetwork.DEFAULT_POPULATION), loadedSynapses.getPostNeurons());
+			for (int s = 0; s < savedSynapses.getSizePopulated(); s++) {
+				assertEquals(savedSynapses.getPreNeuron(s), loadedSynapses.getPreNeuron(s));
+				assertEquals(savedSynapses.getPostNeuron(s), loadedSynapses.getPostNeuron(s));
+				assertEquals(savedSynapses.getInitialEfficacy(s), loadedSynapses.getInitialEfficacy(s), 0);
+				assertEquals(savedSynapses.getDelay(s), loadedSynapses.getDelay(s));
+			}
+		}
+
+		saved.run(STEPS);
+		loaded.run(STEPS);
+		for (String name : saved.getPopulations().keySet()) {
+			assertArrayEquals(saved.getPopulation(name).getOutputs(), loaded.getPopulation(name).getOutputs(), 0);
+		}
+		for (String name : saved.getProjections().keySet()) {
+			assertArrayEquals(saved.getProjection(name).getEfficacies(), loaded.getProjection(name).getEfficacies(), 0);
+		}
+		saved.dispose();
+		loaded.dispose();
+	}
+
+	@Test
+	public void testReordered() throws Exception {
+		File file = File.createTempFile("network", ".bnet");
+		file.deleteOnExit();
+		NeuralNetwork saved = createNetwork();
+		saved.reorderForLocality();
+		NetworkDefinition.save(saved, file);
+		NeuralNetwork loaded = NetworkDefinition.load(file);
+
+		// The neuron and synapse IDs are retained.
+		NeuronCollection<?> savedNeurons = saved.getNeurons();
+		NeuronCollection<?> loadedNeurons = loaded.getNeurons();
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			assertEquals(savedNeurons.getNeuronID(n), loadedNeurons.getNeuronID(n));
+			assertEquals(savedNeurons.getNeuronIndex(n), loadedNeurons.getNeuronIndex(n));
+		}
+		for (String name : saved.getProjections().keySet()) {
+			SynapseCollection<?> savedSynapses = saved.getProjection(name);
+			SynapseCollection<?> loadedSynapses = loaded.getProjection(name);
+			for (int id = 0; id < savedSynapses.getSizePopulated(); id++) {
+				int s = savedSynapses.getSynapseIndex(id);
+				assertEquals(s, loadedSynapses.getSynapseIndex(id));
+				assertEquals(savedSynapses.getPreNeuron(s), loadedSynapses.getPreNeuron(s));
+				assertEquals(savedSynapses.getPostNeuron(s), loadedSynapses.getPostNeuron(s));
+			}
+		}
+
+		saved.run(STEPS);
+		loaded.run(STEPS);
+		for (int id = 0; id < NEURON_COUNT; id++) {
+			assertEquals(savedNeurons.getOutput(id), loadedNeurons.getOutput(id), 0);
+		}
+		saved.dispose();
+		loaded.dispose();
+	}
+
+	@Test
+	public void testBiases() throws Exception {
+		File file = File.createTempFile("network", ".bnet");
+		file.deleteOnExit();
+		SigmoidNeuronCollection neurons = new SigmoidNeuronCollection(NEURON_COUNT);
+		neurons.addConfiguration(new SigmoidNeuronConfiguration(1));
+		FixedSynapseCollection synapses = new FixedSynapseCollection(SYNAPSE_COUNT);
+		NeuralNetwork saved = new NeuralNetwork(1000, neurons, synapses, Kernel.EXECUTION_MODE.SEQ);
+		Random random = new Random(2);
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			neurons.setBias(n, random.nextDouble() * 4 - 2);
+		}
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+			synapses.setEfficacy(s, random.nextDouble() - 0.5);
+		}
+		saved.reset();
+		NetworkDefinition.save(saved, file);
+		NeuralNetwork loaded = NetworkDefinition.load(file);
+
+		SigmoidNeuronCollection loadedNeurons = (SigmoidNeuronCollection) loaded.getNeurons();
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			assertEquals(neurons.getBias(n), loadedNeurons.getBias(n), 0);
+		}
+		saved.run(10);
+		loaded.run(10);
+		assertArrayEquals(neurons.getOutputs(), loadedNeurons.getOutputs(), 0);
+		saved.dispose();
+		loaded.dispose();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnsupportedCollection() throws Exception {
+		File file = File.createTempFile("network", ".bnet");
+		file.deleteOnExit();
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), new ProceduralFixedSynapseCollection(NEURON_COUNT, NEURON_COUNT, 4, 1), Kernel.EXECUTION_MODE.SEQ);
+		NetworkDefinition.save(sim, file);
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotADefinition() throws Exception {
+		File file = File.createTempFile("network", ".bckp");
+		file.deleteOnExit();
+		NeuralNetwork sim = createNetwork();
+		sim.saveCheckpoint(file);
+		NetworkDefinition.load(file);
+	}
+
+	/**
+	 * Creates a network of spiking neurons connected by plastic synapses with delays, and a population of linear
+	 * neurons receiving input from the spiking neurons via fixed synapses.
+	 */
+	private static NeuralNetwork createNetwork() {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.007));
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.011));
+		for (int n = 0; n < NEURON_COUNT; n += 2) {
+			neurons.setComponentConfiguration(n, 1);
+		}
+		Graupner2012SimplifiedSynapseCollection synapses = new Graupner2012SimplifiedSynapseCollection(SYNAPSE_COUNT);
+		synapses.addConfiguration(synapses.getConfigSingleton().getPreset(0));
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, synapses, Kernel.EXECUTION_MODE.SEQ);
+		Random random = new Random(1);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+			synapses.setEfficacy(s, random.nextDouble());
+			synapses.setDelay(s, random.nextInt(5));
+		}
+		synapses.addSynapse(1, 2, 0.5, 0);
+
+		sim.addPopulation("linear", new LinearNeuronCollection(NEURON_COUNT));
+		FixedSynapseCollection fixed = new FixedSynapseCollection(SYNAPSE_COUNT);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			fixed.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+			fixed.setEfficacy(s, random.nextDouble() * 0.2 - 0.1);
+		}
+		sim.addProjection("input", fixed, NeuralNetwork.DEFAULT_POPULATION, "linear");
+		sim.reset();
+		return sim;
+	}
+}
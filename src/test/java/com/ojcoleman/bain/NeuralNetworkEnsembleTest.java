@@ -0,0 +1,93 @@
+package com.ojcoleman.bain;
+
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.NeuralNetworkEnsemble;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that the instances in a {@link NeuralNetworkEnsemble} behave identically to separate
+ * {@link NeuralNetwork}s, and that instances can be reset individually.
+ */
+public class NeuralNetworkEnsembleTest {
+	static final int INSTANCES = 16;
+	static final int NEURONS = 9;
+	static final int SYNAPSES = 20;
+	static final int STEPS = 10;
+
+	@Test
+	public void testInstancesMatchSeparateNetworks() {
+		for (Kernel.EXECUTION_MODE mode : new Kernel.EXECUTION_MODE[] { Kernel.EXECUTION_MODE.SEQ, Kernel.EXECUTION_MODE.JTP }) {
+			NeuralNetworkEnsemble ensemble = createEnsemble(mode);
+			NeuralNetwork[] separate = new NeuralNetwork[INSTANCES];
+			for (int i = 0; i < INSTANCES; i++) {
+				separate[i] = createNetwork(i, mode);
+			}
+			for (int step = 0; step < STEPS; step++) {
+				for (int i = 0; i < INSTANCES; i++) {
+					ensemble.setOutputs(i, 0, new double[] { step * 0.1, i * 0.01 });
+					separate[i].getNeurons().setOutput(0, step * 0.1);
+					separate[i].getNeurons().setOutput(1, i * 0.01);
+					separate[i].step();
+				}
+				ensemble.step();
+			}
+			for (int i = 0; i < INSTANCES; i++) {
+				assertArrayEquals(separate[i].getNeurons().getOutputs(), ensemble.getOutputs(i, null), 0);
+				separate[i].dispose();
+			}
+			ensemble.dispose();
+		}
+	}
+
+	@Test
+	public void testResetInstance() {
+		NeuralNetworkEnsemble ensemble = createEnsemble(Kernel.EXECUTION_MODE.SEQ);
+		for (int step = 0; step < STEPS; step++) {
+			for (int i = 0; i < INSTANCES; i++) {
+				ensemble.setOutput(i, 0, 1);
+			}
+			ensemble.step();
+		}
+		double[] before = ensemble.getOutputs(4, null);
+		ensemble.reset(3);
+		for (int n = 0; n < NEURONS; n++) {
+			assertEquals(0, ensemble.getOutput(3, n), 0);
+		}
+		assertArrayEquals(before, ensemble.getOutputs(4, null), 0);
+		assertEquals(2, ensemble.getPostNeuron(3, 0));
+		ensemble.dispose();
+	}
+
+	private static NeuralNetworkEnsemble createEnsemble(Kernel.EXECUTION_MODE mode) {
+		LinearNeuronCollection neurons = new LinearNeuronCollection(INSTANCES * NEURONS);
+		FixedSynapseCollection synapses = new FixedSynapseCollection(INSTANCES * SYNAPSES);
+		NeuralNetworkEnsemble ensemble = new NeuralNetworkEnsemble(1000, INSTANCES, neurons, synapses, mode);
+		for (int i = 0; i < INSTANCES; i++) {
+			Random random = new Random(i);
+			for (int s = 0; s < SYNAPSES; s++) {
+				ensemble.setPreAndPostNeurons(i, s, s == 0 ? 0 : random.nextInt(NEURONS), s == 0 ? 2 : 2 + random.nextInt(NEURONS - 2));
+				ensemble.setEfficacy(i, s, random.nextDouble() - 0.5);
+			}
+		}
+		return ensemble;
+	}
+
+	private static NeuralNetwork createNetwork(int instance, Kernel.EXECUTION_MODE mode) {
+		LinearNeuronCollection neurons = new LinearNeuronCollection(NEURONS);
+		FixedSynapseCollection synapses = new FixedSynapseCollection(SYNAPSES);
+		NeuralNetwork network = new NeuralNetwork(1000, neurons, synapses, mode);
+		Random random = new Random(instance);
+		for (int s = 0; s < SYNAPSES; s++) {
+			synapses.setPreAndPostNeurons(s, s == 0 ? 0 : random.nextInt(NEURONS), s == 0 ? 2 : 2 + random.nextInt(NEURONS - 2));
+			synapses.setEfficacy(s, random.nextDouble() - 0.5);
+		}
+		return network;
+	}
+}
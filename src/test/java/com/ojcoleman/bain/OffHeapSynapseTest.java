@@ -0,0 +1,105 @@
+package com.ojcoleman.bain;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.ExecutionBackend;
+import com.ojcoleman.bain.base.ForkJoinExecutionBackend;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+import com.ojcoleman.bain.synapse.rate.OffHeapFixedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that synapses stored off-heap give bit-identical results to the equivalent on-heap synapses
+ * in each execution mode, and that the synapses are kept in order of post-synaptic neuron.
+ */
+public class OffHeapSynapseTest {
+	static final int NEURON_COUNT = 64;
+	static final int SYNAPSE_COUNT = 4096;
+	static final int STEPS = 20;
+
+	@Test
+	public void testSameResults() {
+		double[] onHeap = run(new FixedSynapseCollection(SYNAPSE_COUNT), Kernel.EXECUTION_MODE.SEQ, null, false);
+		assertTrue(Arrays.equals(onHeap, run(new OffHeapFixedSynapseCollection(SYNAPSE_COUNT), Kernel.EXECUTION_MODE.SEQ, null, false)));
+		assertTrue(Arrays.equals(onHeap, run(new OffHeapFixedSynapseCollection(SYNAPSE_COUNT), Kernel.EXECUTION_MODE.JTP, null, false)));
+		// Use a small chunk size so that the neurons are split over the workers.
+		ForkJoinExecutionBackend backend = new ForkJoinExecutionBackend(4, 8);
+		assertTrue(Arrays.equals(onHeap, run(new OffHeapFixedSynapseCollection(SYNAPSE_COUNT), Kernel.EXECUTION_MODE.JTP, backend, false)));
+		backend.dispose();
+	}
+
+	@Test
+	public void testPostNeuronOrder() {
+		OffHeapFixedSynapseCollection synapses = new OffHeapFixedSynapseCollection((long) SYNAPSE_COUNT);
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), synapses, Kernel.EXECUTION_MODE.SEQ);
+		connect(synapses);
+		assertEquals(SYNAPSE_COUNT, synapses.getSynapseCount());
+		int[] counts = new int[NEURON_COUNT];
+		for (long s = 0; s < SYNAPSE_COUNT; s++) {
+			counts[synapses.getPostNeuron(s)]++;
+		}
+		assertNull(synapses.sortByPostNeuron());
+		for (long s = 0; s < SYNAPSE_COUNT; s++) {
+			counts[synapses.getPostNeuron(s)]--;
+			if (s > 0) {
+				assertTrue(synapses.getPostNeuron(s - 1) <= synapses.getPostNeuron(s));
+			}
+		}
+		assertTrue(Arrays.equals(new int[NEURON_COUNT], counts));
+		sim.dispose();
+	}
+
+	@Test
+	public void testExecutionModeSelection() {
+		OffHeapFixedSynapseCollection synapses = new OffHeapFixedSynapseCollection((long) SYNAPSE_COUNT);
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), synapses);
+		sim.setMinimumSizeForJTP(SYNAPSE_COUNT);
+		assertEquals(Kernel.EXECUTION_MODE.SEQ, sim.getNeurons().getExecutionMode());
+		assertEquals(Kernel.EXECUTION_MODE.JTP, synapses.getExecutionMode());
+		sim.dispose();
+	}
+
+	@Test
+	public void testReorderForLocality() {
+		double[] onHeap = run(new FixedSynapseCollection(SYNAPSE_COUNT), Kernel.EXECUTION_MODE.SEQ, null, true);
+		assertTrue(Arrays.equals(onHeap, run(new OffHeapFixedSynapseCollection(SYNAPSE_COUNT), Kernel.EXECUTION_MODE.SEQ, null, true)));
+	}
+
+	private static double[] run(SynapseCollection<?> synapses, Kernel.EXECUTION_MODE mode, ExecutionBackend backend, boolean reorder) {
+		// The off-heap synapses are always ordered by post-synaptic neuron.
+		synapses.setPostNeuronOrdered(true);
+		connect(synapses);
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), synapses, mode);
+		sim.setExecutionBackend(backend);
+		if (reorder) {
+			sim.reorderForLocality();
+		}
+		NeuronCollection<?> neurons = sim.getNeurons();
+		Random random = new Random(3);
+		for (int step = 0; step < STEPS; step++) {
+			for (int n = 0; n < 8; n++) {
+				neurons.setOutput(n, random.nextDouble());
+			}
+			sim.step();
+		}
+		double[] outputs = neurons.getOutputs().clone();
+		sim.dispose();
+		return outputs;
+	}
+
+	private static void connect(SynapseCollection<?> synapses) {
+		Random random = new Random(1);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+			synapses.setEfficacy(s, random.nextDouble() * 0.2 - 0.1);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.ojcoleman.bain;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.ExecutionBackend;
+import com.ojcoleman.bain.base.ForkJoinExecutionBackend;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.SoltoggioModulatoryNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.SoltoggioModulatoryNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+import com.ojcoleman.bain.synapse.rate.Niv2002SynapseConfiguration;
+import com.ojcoleman.bain.synapse.rate.SoltoggioModulatorySynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that accumulating synapse outputs into neuron inputs in parallel execution modes gives
+ * bit-identical results to sequential execution, for networks in which many synapses share the same post-synaptic
+ * neuron, that keeping the synapses sorted by post-synaptic neuron does not change the results, and that the ForkJoin
+ * execution backend gives the same results as Aparapi.
+ */
+public class ParallelAccumulationTest {
+	static final int NEURON_COUNT = 64;
+	static final int SYNAPSE_COUNT = 4096;
+	static final int STEPS = 20;
+
+	@Test
+	public void testFixedSynapses() {
+		double[] seq = runFixed(Kernel.EXECUTION_MODE.SEQ, false);
+		double[] jtp = runFixed(Kernel.EXECUTION_MODE.JTP, false);
+		assertTrue(Arrays.equals(seq, jtp));
+	}
+
+	@Test
+	public void testFixedSynapsesPostNeuronOrdered() {
+		double[] unordered = runFixed(Kernel.EXECUTION_MODE.SEQ, false);
+		assertTrue(Arrays.equals(unordered, runFixed(Kernel.EXECUTION_MODE.SEQ, true)));
+		assertTrue(Arrays.equals(unordered, runFixed(Kernel.EXECUTION_MODE.JTP, true)));
+	}
+
+	@Test
+	public void testModulatorySynapses() {
+		double[] seq = runModulatory(Kernel.EXECUTION_MODE.SEQ, false);
+		double[] jtp = runModulatory(Kernel.EXECUTION_MODE.JTP, false);
+		assertTrue(Arrays.equals(seq, jtp));
+	}
+
+	@Test
+	public void testModulatorySynapsesPostNeuronOrdered() {
+		double[] unordered = runModulatory(Kernel.EXECUTION_MODE.SEQ, false);
+		assertTrue(Arrays.equals(unordered, runModulatory(Kernel.EXECUTION_MODE.SEQ, true)));
+		assertTrue(Arrays.equals(unordered, runModulatory(Kernel.EXECUTION_MODE.JTP, true)));
+	}
+
+	@Test
+	public void testForkJoinBackend() {
+		// Use a small chunk size so that the kernels are split over the workers.
+		ForkJoinExecutionBackend backend = new ForkJoinExecutionBackend(4, 64);
+		assertTrue(Arrays.equals(runFixed(Kernel.EXECUTION_MODE.SEQ, false), runFixed(Kernel.EXECUTION_MODE.JTP, false, backend)));
+		assertTrue(Arrays.equals(runModulatory(Kernel.EXECUTION_MODE.SEQ, false), runModulatory(Kernel.EXECUTION_MODE.JTP, false, backend)));
+		assertTrue(Arrays.equals(runModulatory(Kernel.EXECUTION_MODE.SEQ, true), runModulatory(Kernel.EXECUTION_MODE.JTP, true, backend)));
+		backend.dispose();
+	}
+
+	@Test
+	public void testSortByPostNeuron() {
+		FixedSynapseCollection synapses = new FixedSynapseCollection(SYNAPSE_COUNT);
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), synapses, Kernel.EXECUTION_MODE.SEQ);
+		connect(synapses, 1);
+		int[] pre = new int[SYNAPSE_COUNT], post = new int[SYNAPSE_COUNT];
+		double[] efficacy = new double[SYNAPSE_COUNT];
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			pre[s] = synapses.getPreNeuron(s);
+			post[s] = synapses.getPostNeuron(s);
+			efficacy[s] = synapses.getEfficacy(s);
+		}
+		assertFalse(synapses.isPostNeuronSorted());
+		int[] order = synapses.sortByPostNeuron();
+		assertTrue(synapses.isPostNeuronSorted());
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			assertEquals(pre[order[s]], synapses.getPreNeuron(s));
+			assertEquals(post[order[s]], synapses.getPostNeuron(s));
+			assertEquals(efficacy[order[s]], synapses.getEfficacy(s), 0);
+			if (s > 0) {
+				assertTrue(synapses.getPostNeuron(s - 1) <= synapses.getPostNeuron(s));
+			}
+		}
+		sim.dispose();
+	}
+
+	private static double[] runFixed(Kernel.EXECUTION_MODE mode, boolean postNeuronOrdered) {
+		return runFixed(mode, postNeuronOrdered, null);
+	}
+
+	private static double[] runFixed(Kernel.EXECUTION_MODE mode, boolean postNeuronOrdered, ExecutionBackend backend) {
+		LinearNeuronCollection neurons = new LinearNeuronCollection(NEURON_COUNT);
+		FixedSynapseCollection synapses = new FixedSynapseCollection(SYNAPSE_COUNT);
+		synapses.setPostNeuronOrdered(postNeuronOrdered);
+		connect(synapses, 1);
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, synapses, mode);
+		sim.setExecutionBackend(backend);
+		return run(sim);
+	}
+
+	private static double[] runModulatory(Kernel.EXECUTION_MODE mode, boolean postNeuronOrdered) {
+		return runModulatory(mode, postNeuronOrdered, null);
+	}
+
+	private static double[] runModulatory(Kernel.EXECUTION_MODE mode, boolean postNeuronOrdered, ExecutionBackend backend) {
+		SoltoggioModulatoryNeuronCollection<SoltoggioModulatoryNeuronConfiguration> neurons = new SoltoggioModulatoryNeuronCollection<SoltoggioModulatoryNeuronConfiguration>(NEURON_COUNT);
+		SoltoggioModulatoryNeuronConfiguration regular = new SoltoggioModulatoryNeuronConfiguration();
+		SoltoggioModulatoryNeuronConfiguration modulatory = new SoltoggioModulatoryNeuronConfiguration();
+		modulatory.modulatory = true;
+		neurons.addConfiguration(regular);
+		neurons.addConfiguration(modulatory);
+		for (int n = 0; n < NEURON_COUNT; n += 4) {
+			neurons.setComponentConfiguration(n, 1);
+		}
+		neurons.init();
+
+		SoltoggioModulatorySynapseCollection synapses = new SoltoggioModulatorySynapseCollection(SYNAPSE_COUNT);
+		synapses.addConfiguration(new Niv2002SynapseConfiguration(new double[] { 0.1, 1, 0, 0, 0 }));
+		synapses.setPostNeuronOrdered(postNeuronOrdered);
+		connect(synapses, 2);
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, synapses, mode);
+		sim.setExecutionBackend(backend);
+		return run(sim);
+	}
+
+	private static void connect(SynapseCollection<?> synapses, long seed) {
+		Random random = new Random(seed);
+		double[] efficacy = synapses.getEfficacies();
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			// Bias connections towards a few post-synaptic neurons so that many synapses share a target.
+			int post = random.nextBoolean() ? random.nextInt(4) : random.nextInt(NEURON_COUNT);
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), post);
+			efficacy[s] = random.nextDouble() * 0.2 - 0.1;
+		}
+		synapses.setEfficaciesModified();
+	}
+
+	private static double[] run(NeuralNetwork sim) {
+		NeuronCollection<?> neurons = sim.getNeurons();
+		Random random = new Random(3);
+		for (int step = 0; step < STEPS; step++) {
+			for (int n = 0; n < 8; n++) {
+				neurons.setOutput(n, random.nextDouble());
+			}
+			sim.step();
+		}
+		double[] outputs = neurons.getOutputs().clone();
+		sim.dispose();
+		return outputs;
+	}
+}
@@ -0,0 +1,92 @@
+package com.ojcoleman.bain;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+import com.ojcoleman.bain.synapse.rate.ProceduralFixedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that procedurally generated connectivity is deterministic, has the specified fan-in, and gives
+ * bit-identical results to the equivalent explicitly stored connectivity in each execution mode.
+ */
+public class ProceduralConnectivityTest {
+	static final int NEURON_COUNT = 64;
+	static final int FAN_IN = 48;
+	static final int STEPS = 20;
+
+	@Test
+	public void testConnectivity() {
+		ProceduralFixedSynapseCollection synapses = new ProceduralFixedSynapseCollection(NEURON_COUNT, NEURON_COUNT, FAN_IN, 1);
+		ProceduralFixedSynapseCollection same = new ProceduralFixedSynapseCollection(NEURON_COUNT, NEURON_COUNT, FAN_IN, 1);
+		ProceduralFixedSynapseCollection other = new ProceduralFixedSynapseCollection(NEURON_COUNT, NEURON_COUNT, FAN_IN, 2);
+		assertEquals(NEURON_COUNT * FAN_IN, synapses.getSynapseCount());
+		int[] fanIn = new int[NEURON_COUNT];
+		boolean different = false;
+		for (int s = 0; s < NEURON_COUNT * FAN_IN; s++) {
+			int pre = synapses.getPreNeuron(s);
+			assertTrue(pre >= 0 && pre < NEURON_COUNT);
+			assertEquals(same.getPreNeuron(s), pre);
+			different |= other.getPreNeuron(s) != pre;
+			fanIn[synapses.getPostNeuron(s)]++;
+		}
+		assertTrue(different);
+		int[] expected = new int[NEURON_COUNT];
+		Arrays.fill(expected, FAN_IN);
+		assertArrayEquals(expected, fanIn);
+
+		FixedSynapseCollection materialised = synapses.materialise();
+		for (int s = 0; s < NEURON_COUNT * FAN_IN; s++) {
+			assertEquals(synapses.getPreNeuron(s), materialised.getPreNeuron(s));
+			assertEquals(synapses.getPostNeuron(s), materialised.getPostNeuron(s));
+		}
+		try {
+			synapses.setPreNeuron(0, 1);
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	@Test
+	public void testExecutionModeSelection() {
+		ProceduralFixedSynapseCollection synapses = new ProceduralFixedSynapseCollection(NEURON_COUNT, NEURON_COUNT, FAN_IN, 1);
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), synapses);
+		sim.setMinimumSizeForJTP(NEURON_COUNT * FAN_IN);
+		assertEquals(Kernel.EXECUTION_MODE.SEQ, sim.getNeurons().getExecutionMode());
+		assertEquals(Kernel.EXECUTION_MODE.JTP, synapses.getExecutionMode());
+		sim.dispose();
+	}
+
+	@Test
+	public void testSameResults() {
+		for (Kernel.EXECUTION_MODE mode : new Kernel.EXECUTION_MODE[] { Kernel.EXECUTION_MODE.SEQ, Kernel.EXECUTION_MODE.JTP }) {
+			ProceduralFixedSynapseCollection procedural = new ProceduralFixedSynapseCollection(NEURON_COUNT, NEURON_COUNT, FAN_IN, 3);
+			procedural.setRandomEfficacies(-0.1, 0.1, 4);
+			double[] expected = run(procedural.materialise(), mode);
+			assertTrue(Arrays.equals(expected, run(procedural, mode)));
+		}
+	}
+
+	private static double[] run(SynapseCollection<?> synapses, Kernel.EXECUTION_MODE mode) {
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), synapses, mode);
+		NeuronCollection<?> neurons = sim.getNeurons();
+		Random random = new Random(5);
+		for (int step = 0; step < STEPS; step++) {
+			for (int n = 0; n < 8; n++) {
+				neurons.setOutput(n, random.nextDouble());
+			}
+			sim.step();
+		}
+		double[] outputs = neurons.getOutputs().clone();
+		sim.dispose();
+		return outputs;
+	}
+}
@@ -0,0 +1,128 @@
+package com.ojcoleman.bain;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.ForkJoinExecutionBackend;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.SigmoidNeuronConfiguration;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.Niv2002SynapseCollection;
+import com.ojcoleman.bain.synapse.rate.Niv2002SynapseConfiguration;
+import com.ojcoleman.bain.synapse.spiking.Graupner2012SynapseCollection;
+import com.ojcoleman.bain.synapse.spiking.Graupner2012SynapseConfiguration;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that processing ranges of components with runRange() gives identical results to Aparapi
+ * invoking run() for each component, that runRange() is only used when it is consistent with run(), and that the
+ * fast transfer function approximations are close to the exact transfer functions.
+ */
+public class RangeKernelTest {
+	static final int NEURON_COUNT = 40;
+	static final int SYNAPSE_COUNT = 400;
+	static final int STEPS = 200;
+
+	@Test
+	public void testRunRangeSupported() {
+		assertTrue(new LinearNeuronCollection(1).isRunRangeSupported());
+		assertTrue(new Graupner2012SynapseCollection(1).isRunRangeSupported());
+		// A sub-class that overrides run() but not runRange() must fall back to run().
+		LinearNeuronCollection custom = new LinearNeuronCollection(1) {
+			@Override
+			public void run() {
+				super.run();
+			}
+		};
+		assertFalse(custom.isRunRangeSupported());
+	}
+
+	@Test
+	public void testRateModels() {
+		// In SEQ mode the Aparapi backend invokes runRange(), in JTP mode Aparapi invokes run().
+		double[] range = runRate(Kernel.EXECUTION_MODE.SEQ, false);
+		assertTrue(Arrays.equals(range, runRate(Kernel.EXECUTION_MODE.JTP, false)));
+		assertTrue(Arrays.equals(range, runRate(Kernel.EXECUTION_MODE.JTP, true)));
+	}
+
+	@Test
+	public void testSpikingModels() {
+		double[] range = runSpiking(Kernel.EXECUTION_MODE.SEQ, false);
+		assertTrue(Arrays.equals(range, runSpiking(Kernel.EXECUTION_MODE.JTP, false)));
+		assertTrue(Arrays.equals(range, runSpiking(Kernel.EXECUTION_MODE.JTP, true)));
+	}
+
+	@Test
+	public void testFastTransferFunction() {
+		double[] exact = runRate(Kernel.EXECUTION_MODE.SEQ, false);
+		double[] fast = runRate(Kernel.EXECUTION_MODE.SEQ, false, true);
+		assertArrayEquals(exact, fast, 1e-9);
+		assertArrayEquals(fast, runRate(Kernel.EXECUTION_MODE.JTP, true, true), 0);
+	}
+
+	private static double[] runRate(Kernel.EXECUTION_MODE mode, boolean forkJoin) {
+		return runRate(mode, forkJoin, false);
+	}
+
+	private static double[] runRate(Kernel.EXECUTION_MODE mode, boolean forkJoin, boolean fastTransferFunction) {
+		SigmoidNeuronCollection neurons = new SigmoidNeuronCollection(NEURON_COUNT);
+		neurons.setFastTransferFunction(fastTransferFunction);
+		neurons.addConfiguration(new SigmoidNeuronConfiguration(2));
+		Niv2002SynapseCollection<Niv2002SynapseConfiguration> synapses = new Niv2002SynapseCollection<Niv2002SynapseConfiguration>(SYNAPSE_COUNT);
+		synapses.addConfiguration(new Niv2002SynapseConfiguration(new double[] { 0.1, 1, 0.1, -0.1, 0 }));
+		connect(synapses);
+		return run(new NeuralNetwork(1000, neurons, synapses, mode), forkJoin, true);
+	}
+
+	private static double[] runSpiking(Kernel.EXECUTION_MODE mode, boolean forkJoin) {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.007));
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.011));
+		for (int n = 0; n < NEURON_COUNT; n += 2) {
+			neurons.setComponentConfiguration(n, 1);
+		}
+		Graupner2012SynapseCollection synapses = new Graupner2012SynapseCollection(SYNAPSE_COUNT);
+		synapses.addConfiguration(new Graupner2012SynapseConfiguration().getPreset(0));
+		connect(synapses);
+		return run(new NeuralNetwork(1000, neurons, synapses, mode), forkJoin, false);
+	}
+
+	private static void connect(SynapseCollection<?> synapses) {
+		Random random = new Random(1);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+			synapses.setEfficacy(s, random.nextDouble());
+		}
+	}
+
+	private static double[] run(NeuralNetwork sim, boolean forkJoin, boolean provideInput) {
+		ForkJoinExecutionBackend backend = forkJoin ? new ForkJoinExecutionBackend(4, 16) : null;
+		sim.setExecutionBackend(backend);
+		sim.reset();
+		NeuronCollection<?> neurons = sim.getNeurons();
+		Random random = new Random(2);
+		for (int step = 0; step < STEPS; step++) {
+			if (provideInput) {
+				neurons.setOutput(random.nextInt(NEURON_COUNT), random.nextDouble());
+			}
+			sim.step();
+		}
+		SynapseCollection<?> synapses = sim.getSynapses();
+		double[] result = new double[NEURON_COUNT + SYNAPSE_COUNT];
+		System.arraycopy(neurons.getOutputs(), 0, result, 0, NEURON_COUNT);
+		System.arraycopy(synapses.getEfficacies(), 0, result, NEURON_COUNT, SYNAPSE_COUNT);
+		sim.dispose();
+		if (backend != null) {
+			backend.dispose();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,129 @@
+package com.ojcoleman.bain;
+
+import java.util.Arrays;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.SynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that single precision storage of state variables gives results close to those of double
+ * precision storage for each bundled model, that it halves the memory required for the per-synapse state, that the
+ * efficacies can be accessed in single precision mode, that the state is preserved when switching between modes, and
+ * that the results are the same whether run() or runRange() is used.
+ */
+public class SinglePrecisionTest {
+	static final int NEURON_COUNT = 40;
+	static final int SYNAPSE_COUNT = 400;
+	static final int STEPS = 2000;
+
+	@Test
+	public void testAccuracy() {
+		for (String model : PrecisionComparison.MODELS) {
+			NeuralNetwork sim = PrecisionComparison.createNetwork(model, NEURON_COUNT, SYNAPSE_COUNT, 1);
+			boolean supported = sim.getSynapses().supportsSinglePrecision();
+			sim.dispose();
+			double[] error = PrecisionComparison.compare(model, NEURON_COUNT, SYNAPSE_COUNT, STEPS, 1);
+			if (supported) {
+				assertTrue(model, error[0] < 1e-4);
+				assertTrue(model, error[1] < 1e-4);
+			} else {
+				// Nothing is stored in single precision.
+				assertEquals(model, 0, error[0], 0);
+				assertEquals(model, 0, error[1], 0);
+			}
+		}
+	}
+
+	@Test
+	public void testMemory() {
+		NeuralNetwork sim = PrecisionComparison.createNetwork("Pfister2006", NEURON_COUNT, SYNAPSE_COUNT, 1);
+		SynapseCollection<?> synapses = sim.getSynapses();
+		int doubleBytes = PrecisionComparison.getBytesPerComponent(synapses);
+		sim.setSinglePrecision(true);
+		assertTrue(sim.isSinglePrecision());
+		// The efficacy, initial efficacy, output and four spike traces are stored in 4 rather than 8 bytes each, which
+		// halves the memory required for everything other than the pre- and post-synaptic and configuration indexes.
+		int indexBytes = 3 * 4;
+		assertEquals(68, doubleBytes);
+		assertEquals((doubleBytes - indexBytes) / 2, PrecisionComparison.getBytesPerComponent(synapses) - indexBytes);
+		sim.dispose();
+
+		sim = PrecisionComparison.createNetwork("Fixed", NEURON_COUNT, SYNAPSE_COUNT, 1);
+		sim.setSinglePrecision(true);
+		assertFalse(sim.isSinglePrecision());
+		sim.dispose();
+	}
+
+	@Test
+	public void testEfficacyAccess() {
+		NeuralNetwork sim = PrecisionComparison.createNetwork("Pfister2006", NEURON_COUNT, SYNAPSE_COUNT, 1);
+		SynapseCollection<?> synapses = sim.getSynapses();
+		sim.setSinglePrecision(true);
+		synapses.setEfficacy(0, 0.25);
+		assertEquals(0.25, synapses.getEfficacy(0), 0);
+		assertEquals(0.25, synapses.getInitialEfficacy(0), 0);
+		double[] efficacies = synapses.getEfficacies();
+		assertEquals(0.25, efficacies[0], 0);
+		// Values set in the double precision copy are stored when setEfficaciesModified() is invoked.
+		efficacies[1] = 0.5;
+		synapses.setEfficaciesModified();
+		assertEquals(0.5, synapses.getEfficacy(1), 0);
+		assertEquals(0.5, synapses.getInitialEfficacy(1), 0);
+		sim.run(10);
+		assertEquals(SYNAPSE_COUNT, synapses.getOutputs().length);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			assertEquals(synapses.getOutput(s), synapses.getOutputs()[s], 0);
+		}
+		sim.dispose();
+	}
+
+	@Test
+	public void testSwitchMode() {
+		NeuralNetwork sim = PrecisionComparison.createNetwork("Graupner2012Simplified", NEURON_COUNT, SYNAPSE_COUNT, 1);
+		SynapseCollection<?> synapses = sim.getSynapses();
+		sim.run(500);
+		double[][] state = new double[SYNAPSE_COUNT][];
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			state[s] = synapses.getStateVariableValues(s);
+		}
+		sim.setSinglePrecision(true);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			double[] values = synapses.getStateVariableValues(s);
+			// The calcium concentration and efficacy state (followed by the thresholds, which are not state variables).
+			for (int v = 0; v < 2; v++) {
+				assertEquals((float) state[s][v], values[v], 0);
+			}
+		}
+		sim.setSinglePrecision(false);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			double[] values = synapses.getStateVariableValues(s);
+			// The calcium concentration and efficacy state (followed by the thresholds, which are not state variables).
+			for (int v = 0; v < 2; v++) {
+				assertEquals((float) state[s][v], values[v], 0);
+			}
+		}
+		sim.dispose();
+	}
+
+	@Test
+	public void testExecutionModes() {
+		// In SEQ mode the Aparapi backend invokes runRange(), in JTP mode Aparapi invokes run().
+		double[] seq = run(Kernel.EXECUTION_MODE.SEQ);
+		assertTrue(Arrays.equals(seq, run(Kernel.EXECUTION_MODE.JTP)));
+	}
+
+	private static double[] run(Kernel.EXECUTION_MODE mode) {
+		NeuralNetwork sim = PrecisionComparison.createNetwork("Pfister2006", NEURON_COUNT, SYNAPSE_COUNT, 1);
+		sim.setPreferredExecutionMode(mode);
+		sim.setSinglePrecision(true);
+		sim.reset();
+		sim.run(500);
+		double[] efficacies = sim.getSynapses().getEfficacies().clone();
+		sim.dispose();
+		return efficacies;
+	}
+}
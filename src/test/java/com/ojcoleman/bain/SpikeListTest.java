@@ -0,0 +1,122 @@
+package com.ojcoleman.bain;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that the compact list of spiking neurons and the bit-packed spikings and spike onsets match
+ * the spikings of the neurons, and that the list is the same whether it is generated sequentially or in parallel.
+ */
+public class SpikeListTest {
+	// Large enough that the list is generated in parallel over several blocks if a pool is set.
+	static final int NEURON_COUNT = 70000;
+
+	@Test
+	public void testSequential() {
+		check(null);
+	}
+
+	@Test
+	public void testParallel() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		check(pool);
+		pool.shutdown();
+	}
+
+	@Test
+	public void testSpikeBits() {
+		int neuronCount = 200;
+		LinearNeuronCollection neurons = new LinearNeuronCollection(neuronCount);
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, new FixedSynapseCollection(1), Kernel.EXECUTION_MODE.SEQ);
+		Random random = new Random(1);
+		boolean[] previous = new boolean[neuronCount];
+		for (int step = 0; step < 20; step++) {
+			// Drive about half of the neurons in each step, so that many spikes last several steps.
+			boolean[] driven = new boolean[neuronCount];
+			for (int n = 0; n < neuronCount; n++) {
+				driven[n] = random.nextBoolean();
+				if (driven[n]) {
+					neurons.addInput(n, 1);
+				}
+			}
+			sim.step();
+			long[] bits = neurons.getSpikeBits();
+			long[] onsets = neurons.getSpikeOnsetBits();
+			for (int n = 0; n < neuronCount; n++) {
+				assertEquals(driven[n], neurons.spiked(n));
+				assertEquals(driven[n], (bits[n / 64] & (1L << (n % 64))) != 0);
+				assertEquals(driven[n] && !previous[n], (onsets[n / 64] & (1L << (n % 64))) != 0);
+				assertEquals(driven[n] && !previous[n], neurons.isSpikeOnset(n));
+			}
+			previous = driven;
+		}
+		sim.dispose();
+	}
+
+	@Test
+	public void testPackedOnRequest() {
+		final int[] packed = new int[1];
+		LinearNeuronCollection neurons = new LinearNeuronCollection(200) {
+			@Override
+			protected void packSpikes() {
+				super.packSpikes();
+				packed[0]++;
+			}
+		};
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, new FixedSynapseCollection(1), Kernel.EXECUTION_MODE.SEQ);
+		// The spikings are not packed unless requested, and only once per step.
+		sim.run(10);
+		assertEquals(0, packed[0]);
+		neurons.addInput(3, 1);
+		sim.step();
+		assertEquals(3, neurons.getSpikedNeurons()[0]);
+		assertTrue((neurons.getSpikeBits()[0] & (1L << 3)) != 0);
+		assertEquals(1, packed[0]);
+		// Once the onsets have been requested the spikings are packed in every step.
+		neurons.getSpikeOnsetBits();
+		sim.run(10);
+		assertEquals(11, packed[0]);
+		sim.dispose();
+	}
+
+	private static void check(ForkJoinPool pool) {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.002));
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.003));
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.005));
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			neurons.setComponentConfiguration(n, (n / 7) % 3);
+		}
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, new FixedSynapseCollection(1), Kernel.EXECUTION_MODE.SEQ);
+		sim.setStepPool(pool);
+		// The list is empty after a reset.
+		assertEquals(0, neurons.getSpikedNeuronCount());
+		int totalSpikes = 0;
+		for (int step = 0; step < 10; step++) {
+			sim.step();
+			int[] spiked = neurons.getSpikedNeurons();
+			int count = neurons.getSpikedNeuronCount();
+			int i = 0;
+			for (int n = 0; n < NEURON_COUNT; n++) {
+				if (neurons.spiked(n)) {
+					assertTrue(i < count);
+					assertEquals(n, spiked[i++]);
+				}
+			}
+			assertEquals(i, count);
+			totalSpikes += count;
+		}
+		assertTrue(totalSpikes > NEURON_COUNT);
+		sim.dispose();
+	}
+}
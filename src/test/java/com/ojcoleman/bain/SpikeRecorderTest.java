@@ -0,0 +1,75 @@
+package com.ojcoleman.bain;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.misc.SpikeRecorder;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that the spikes recorded by a SpikeRecorder are read back exactly.
+ */
+public class SpikeRecorderTest {
+	static final int NEURON_COUNT = 200;
+	static final int STEPS = 500;
+
+	@Test
+	public void testRecordAndRead() throws Exception {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+		double[] periods = { 0.003, 0.007, 0.011, 0.2 };
+		for (double period : periods) {
+			neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(period));
+		}
+		Random random = new Random(1);
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			neurons.setComponentConfiguration(n, random.nextInt(periods.length));
+		}
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, new FixedSynapseCollection(0), Kernel.EXECUTION_MODE.SEQ);
+		// Step once without recording so that the recorded steps do not start at 0.
+		sim.step();
+
+		File file = File.createTempFile("spikes", ".bspk");
+		file.deleteOnExit();
+		SpikeRecorder recorder = new SpikeRecorder(file, neurons);
+		sim.addSpikeRecorder(recorder);
+		List<long[]> expected = new ArrayList<long[]>();
+		for (int step = 0; step < STEPS; step++) {
+			long simStep = sim.getStep();
+			sim.step();
+			boolean[] spikings = neurons.getSpikings();
+			for (int n = 0; n < NEURON_COUNT; n++) {
+				if (spikings[n]) {
+					expected.add(new long[] { simStep, n });
+				}
+			}
+		}
+		sim.removeSpikeRecorder(recorder);
+		sim.step();
+		recorder.close();
+		assertEquals(expected.size(), recorder.getSpikeCount());
+		assertEquals(recorder.getLength(), file.length());
+		// Delta encoding requires much less than one byte per neuron per step.
+		assertTrue(file.length() < expected.size() * 2);
+
+		SpikeRecorder.Reader reader = new SpikeRecorder.Reader(file);
+		assertEquals(NEURON_COUNT, reader.getNeuronCount());
+		assertEquals(1000, reader.getTimeResolution());
+		for (long[] spike : expected) {
+			assertTrue(reader.next());
+			assertEquals(spike[0], reader.getStep());
+			assertEquals(spike[1], reader.getNeuronIndex());
+		}
+		assertFalse(reader.next());
+		reader.close();
+		sim.dispose();
+	}
+}
@@ -0,0 +1,114 @@
+package com.ojcoleman.bain;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.spiking.Graupner2012SimplifiedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that the bulk state accessors give the same values as the per-component accessors, in dense
+ * and event-driven mode and with single precision storage.
+ */
+public class StateAccessTest {
+	static final int NEURON_COUNT = 16;
+	static final int SYNAPSE_COUNT = 64;
+
+	@Test
+	public void testBulkAccess() {
+		for (int variant = 0; variant < 3; variant++) {
+			NeuralNetwork sim = createNetwork();
+			if (variant == 1) {
+				sim.setEventDriven(true);
+			} else if (variant == 2) {
+				sim.setSinglePrecision(true);
+			}
+			sim.run(300);
+			SynapseCollection<?> synapses = sim.getSynapses();
+			int variableCount = synapses.getStateVariableCount();
+			assertEquals(4, variableCount);
+			// Each caller gets its own copy of the names.
+			String[] names = synapses.getStateVariableNames();
+			assertNotSame(names, synapses.getStateVariableNames());
+			names[0] = null;
+			assertArrayEquals(new String[] { "Calcium", "p", "\u03B8p", "\u03B8d" }, synapses.getStateVariableNames());
+			for (int v = 0; v < variableCount; v++) {
+				assertEquals(synapses.getStateVariableNames()[v], synapses.getStateVariableName(v));
+			}
+
+			double[][] bulk = new double[variableCount][SYNAPSE_COUNT + 1];
+			for (int v = 0; v < variableCount; v++) {
+				synapses.getStateVariableValues(v, 0, SYNAPSE_COUNT, bulk[v], 1);
+			}
+			double[] calcium = new double[SYNAPSE_COUNT];
+			synapses.getComponentValues("c", 0, SYNAPSE_COUNT, calcium, 0);
+			double[] values = new double[variableCount];
+			for (int s = 0; s < SYNAPSE_COUNT; s++) {
+				double[] expected = synapses.getStateVariableValues(s);
+				synapses.getStateVariableValues(s, values);
+				assertArrayEquals(expected, values, 0);
+				for (int v = 0; v < variableCount; v++) {
+					assertEquals(expected[v], bulk[v][s + 1], 0);
+				}
+				assertEquals(expected[0], calcium[s], 0);
+			}
+
+			double[] inputs = new double[SYNAPSE_COUNT];
+			synapses.getInputs(0, SYNAPSE_COUNT, inputs, 0);
+			assertTrue(Arrays.equals(synapses.getInputs(), inputs));
+			sim.dispose();
+		}
+	}
+
+	@Test
+	public void testLegacyStateVariableValues() {
+		// A collection that only overrides the original per-component accessor, which allocates an array.
+		LinearNeuronCollection neurons = new LinearNeuronCollection(NEURON_COUNT) {
+			@Override
+			public String[] getStateVariableNames() {
+				return new String[] { "index", "double index" };
+			}
+
+			@Override
+			public double[] getStateVariableValues(int neuronIndex) {
+				return new double[] { neuronIndex, neuronIndex * 2 };
+			}
+		};
+		assertEquals(2, neurons.getStateVariableCount());
+		assertEquals("double index", neurons.getStateVariableName(1));
+		double[] values = new double[2];
+		neurons.getStateVariableValues(3, values);
+		assertArrayEquals(new double[] { 3, 6 }, values, 0);
+		double[] bulk = new double[NEURON_COUNT];
+		neurons.getStateVariableValues(1, 0, NEURON_COUNT, bulk, 0);
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			assertEquals(n * 2, bulk[n], 0);
+		}
+	}
+
+	private static NeuralNetwork createNetwork() {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.007));
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.011));
+		for (int n = 0; n < NEURON_COUNT; n += 2) {
+			neurons.setComponentConfiguration(n, 1);
+		}
+		Graupner2012SimplifiedSynapseCollection synapses = new Graupner2012SimplifiedSynapseCollection(SYNAPSE_COUNT);
+		synapses.addConfiguration(synapses.getConfigSingleton().getPreset(0));
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, synapses, Kernel.EXECUTION_MODE.SEQ);
+		Random random = new Random(1);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+		}
+		sim.reset();
+		return sim;
+	}
+}
@@ -0,0 +1,154 @@
+package com.ojcoleman.bain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.StateProbe;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+import com.ojcoleman.bain.synapse.spiking.Graupner2012SimplifiedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that the values sampled by a StateProbe match those given by the per-component accessors, in
+ * dense and event-driven mode and with single precision storage, and that the oldest samples are overwritten when the
+ * buffers are full.
+ */
+public class StateProbeTest {
+	static final int NEURON_COUNT = 16;
+	static final int SYNAPSE_COUNT = 64;
+	static final int START = 8;
+	static final int END = 40;
+	static final int INTERVAL = 10;
+	static final int STEPS = 500;
+
+	@Test
+	public void testSamples() {
+		for (int variant = 0; variant < 3; variant++) {
+			NeuralNetwork sim = createNetwork();
+			if (variant == 1) {
+				sim.setEventDriven(true);
+			} else if (variant == 2) {
+				sim.setSinglePrecision(true);
+			}
+			Graupner2012SimplifiedSynapseCollection synapses = (Graupner2012SimplifiedSynapseCollection) sim.getSynapses();
+			StateProbe probe = new StateProbe(synapses, START, END, INTERVAL, STEPS / INTERVAL, "efficacy", "c");
+			sim.addProbe(probe);
+			List<Long> expectedSteps = new ArrayList<Long>();
+			List<double[]> expected = new ArrayList<double[]>();
+			for (int step = 0; step < STEPS; step++) {
+				long simStep = sim.getStep();
+				sim.step();
+				if (simStep % INTERVAL == 0) {
+					double[] values = new double[(END - START) * 2];
+					for (int s = START; s < END; s++) {
+						values[s - START] = synapses.getEfficacy(s);
+						values[END - START + s - START] = synapses.getStateVariableValues(s)[0];
+					}
+					expectedSteps.add(simStep);
+					expected.add(values);
+				}
+			}
+			assertEquals(expected.size(), probe.getSampleCount());
+			assertEquals(0, probe.getDroppedSampleCount());
+
+			// Drain in two parts.
+			double[][] values = { new double[STEPS * (END - START)], new double[STEPS * (END - START)] };
+			long[] steps = new long[expected.size() / 2];
+			int first = probe.drain(values, steps);
+			assertEquals(steps.length, first);
+			checkSamples(expectedSteps, expected, 0, values, steps, first);
+			steps = new long[STEPS];
+			int second = probe.drain(values, steps);
+			assertEquals(expected.size() - first, second);
+			checkSamples(expectedSteps, expected, first, values, steps, second);
+			assertEquals(0, probe.getSampleCount());
+			sim.dispose();
+		}
+	}
+
+	@Test
+	public void testOverflow() {
+		NeuralNetwork sim = createNetwork();
+		StateProbe probe = new StateProbe(sim.getSynapses(), 0, SYNAPSE_COUNT, 1, 8, "efficacy");
+		sim.addProbe(probe);
+		sim.run(20);
+		sim.removeProbe(probe);
+		sim.run(5);
+		assertEquals(8, probe.getSampleCount());
+		assertEquals(12, probe.getDroppedSampleCount());
+		double[][] values = { new double[8 * SYNAPSE_COUNT] };
+		long[] steps = new long[10];
+		assertEquals(8, probe.drain(values, steps));
+		for (int i = 0; i < 8; i++) {
+			assertEquals(12 + i, steps[i]);
+		}
+		sim.dispose();
+	}
+
+	private static void checkSamples(List<Long> expectedSteps, List<double[]> expected, int offset, double[][] values, long[] steps, int count) {
+		int width = END - START;
+		for (int i = 0; i < count; i++) {
+			assertEquals((long) expectedSteps.get(offset + i), steps[i]);
+			double[] sample = expected.get(offset + i);
+			for (int j = 0; j < width; j++) {
+				assertEquals(sample[j], values[0][i * width + j], 0);
+				assertEquals(sample[width + j], values[1][i * width + j], 0);
+			}
+		}
+	}
+
+	@Test
+	public void testFetchedOncePerStep() {
+		final int[] fetched = new int[1];
+		LinearNeuronCollection neurons = new LinearNeuronCollection(NEURON_COUNT) {
+			@Override
+			public void step() {
+				super.step();
+				// As if the kernel had been executed on the execution hardware.
+				stateVariablesStale = true;
+			}
+
+			@Override
+			protected void fetchArray(Object array) {
+				super.fetchArray(array);
+				fetched[0]++;
+			}
+		};
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, new FixedSynapseCollection(1), Kernel.EXECUTION_MODE.SEQ);
+		sim.step();
+		neurons.getFreshComponentArray("inputs", 0, NEURON_COUNT);
+		neurons.getFreshComponentArray("inputs", 0, NEURON_COUNT);
+		neurons.getFreshComponentArray("spikings", 0, NEURON_COUNT);
+		assertEquals(2, fetched[0]);
+		sim.step();
+		neurons.getFreshComponentArray("inputs", 0, NEURON_COUNT);
+		assertEquals(3, fetched[0]);
+		sim.dispose();
+	}
+
+	private static NeuralNetwork createNetwork() {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.007));
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.011));
+		for (int n = 0; n < NEURON_COUNT; n += 2) {
+			neurons.setComponentConfiguration(n, 1);
+		}
+		Graupner2012SimplifiedSynapseCollection synapses = new Graupner2012SimplifiedSynapseCollection(SYNAPSE_COUNT);
+		synapses.addConfiguration(synapses.getConfigSingleton().getPreset(0));
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, synapses, Kernel.EXECUTION_MODE.SEQ);
+		Random random = new Random(1);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+		}
+		sim.reset();
+		return sim;
+	}
+}
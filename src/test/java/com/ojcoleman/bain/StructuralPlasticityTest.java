@@ -0,0 +1,203 @@
+package com.ojcoleman.bain;
+
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+import com.ojcoleman.bain.synapse.spiking.Graupner2012SimplifiedSynapseCollection;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that synapses added and removed during a simulation behave like synapses in a network
+ * constructed with the resulting connectivity, and that event-driven updating gives the same results as dense
+ * updating when synapses are added and removed.
+ */
+public class StructuralPlasticityTest {
+	static final int NEURON_COUNT = 16;
+	static final int SYNAPSE_COUNT = 64;
+	static final double TOLERANCE = 1e-9;
+
+	@Test
+	public void testAddAndRemove() {
+		FixedSynapseCollection synapses = new FixedSynapseCollection(4);
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), synapses, Kernel.EXECUTION_MODE.SEQ);
+		synapses.setSizePopulated(0);
+		assertEquals(4, synapses.getFreeSynapseCount());
+		assertEquals(0, synapses.addSynapse(0, 1, 0.5));
+		assertEquals(1, synapses.addSynapse(0, 2, 0.25));
+		assertEquals(2, synapses.addSynapse(1, 3, 2));
+		// The last synapse is moved into the slot of the removed synapse.
+		assertEquals(2, synapses.removeSynapse(0));
+		assertEquals(1, synapses.getPreNeuron(0));
+		assertEquals(3, synapses.getPostNeuron(0));
+		assertEquals(2, synapses.getEfficacy(0), 0);
+		assertEquals(-1, synapses.removeSynapse(1));
+		assertEquals(1, synapses.getSizePopulated());
+		assertEquals(1, synapses.addSynapse(0, 1, 1));
+		assertEquals(2, synapses.addSynapse(0, 1, 1));
+		assertEquals(3, synapses.addSynapse(0, 1, 1));
+		assertEquals(0, synapses.getFreeSynapseCount());
+		// The size of the collection is increased if there are no free slots.
+		assertEquals(4, synapses.addSynapse(0, 1, 1));
+		assertTrue(synapses.getSize() > 4);
+		assertEquals(1, synapses.getEfficacy(3), 0);
+		sim.dispose();
+	}
+
+	@Test
+	public void testPrune() {
+		for (Kernel.EXECUTION_MODE mode : new Kernel.EXECUTION_MODE[] { Kernel.EXECUTION_MODE.SEQ, Kernel.EXECUTION_MODE.JTP }) {
+			// Run a network, prune the synapses with an efficacy of zero and add some new synapses, then run it some
+			// more; and run a network constructed with the resulting connectivity in the second half of the run.
+			FixedSynapseCollection synapses = new FixedSynapseCollection(SYNAPSE_COUNT);
+			NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), synapses, mode);
+			Random random = new Random(1);
+			for (int s = 0; s < SYNAPSE_COUNT; s++) {
+				synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+				synapses.setEfficacy(s, s % 3 == 0 ? 0 : random.nextDouble() * 0.2 - 0.1);
+			}
+			run(sim, new Random(2), 10);
+			int removed = synapses.prune();
+			assertEquals((SYNAPSE_COUNT + 2) / 3, removed);
+			assertEquals(removed, synapses.getFreeSynapseCount());
+			for (int i = 0; i < 5; i++) {
+				synapses.addSynapse(random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT), random.nextDouble() * 0.2 - 0.1);
+			}
+
+			for (int s = 0; s < SYNAPSE_COUNT - removed; s++) {
+				assertFalse(synapses.getEfficacy(s) == 0);
+			}
+
+			NeuralNetwork expected = createEquivalent(sim, synapses, mode);
+			assertArrayEquals(run(expected, new Random(3), 10), run(sim, new Random(3), 10), 0);
+			sim.dispose();
+			expected.dispose();
+		}
+	}
+
+	@Test
+	public void testConnectivityIndexUpdate() {
+		// Add and remove synapses one at a time between steps, so that the connectivity index used to gather the
+		// inputs is updated in place, and compare with a network constructed with the resulting connectivity.
+		final int[] regenerated = new int[1];
+		FixedSynapseCollection synapses = new FixedSynapseCollection(SYNAPSE_COUNT) {
+			@Override
+			protected void updateConnectivityIndex() {
+				super.updateConnectivityIndex();
+				regenerated[0]++;
+			}
+		};
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), synapses, Kernel.EXECUTION_MODE.JTP);
+		Random random = new Random(1);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+			synapses.setEfficacy(s, random.nextDouble() * 0.2 - 0.1);
+		}
+		synapses.setSizePopulated(SYNAPSE_COUNT / 2);
+		Random inputRandom = new Random(2);
+		run(sim, inputRandom, 1);
+		regenerated[0] = 0;
+		for (int i = 0; i < 200; i++) {
+			synapses.removeSynapse(random.nextInt(synapses.getSizePopulated()));
+			synapses.addSynapse(random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT), random.nextDouble() * 0.2 - 0.1);
+			synapses.addSynapse(random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT), random.nextDouble() * 0.2 - 0.1);
+			synapses.removeSynapse(random.nextInt(synapses.getSizePopulated()));
+			run(sim, inputRandom, 1);
+		}
+		// The index is only regenerated occasionally, to reclaim the space left by rows moved to make room.
+		assertTrue(regenerated[0] < 20);
+		NeuralNetwork expected = createEquivalent(sim, synapses, Kernel.EXECUTION_MODE.JTP);
+		assertArrayEquals(run(expected, new Random(3), 10), run(sim, new Random(3), 10), 0);
+		sim.dispose();
+		expected.dispose();
+	}
+
+	@Test
+	public void testEventDriven() {
+		NeuralNetwork dense = createPlasticNetwork();
+		NeuralNetwork events = createPlasticNetwork();
+		events.setEventDriven(true);
+		Random denseRandom = new Random(4);
+		Random eventsRandom = new Random(4);
+		for (int i = 0; i < 10; i++) {
+			dense.run(50);
+			events.run(50);
+			modifyStructure(dense.getSynapses(), denseRandom);
+			modifyStructure(events.getSynapses(), eventsRandom);
+		}
+		dense.run(50);
+		events.run(50);
+		SynapseCollection<?> denseSynapses = dense.getSynapses();
+		SynapseCollection<?> eventSynapses = events.getSynapses();
+		assertEquals(denseSynapses.getSizePopulated(), eventSynapses.getSizePopulated());
+		for (int s = 0; s < denseSynapses.getSizePopulated(); s++) {
+			assertArrayEquals(denseSynapses.getStateVariableValues(s), eventSynapses.getStateVariableValues(s), TOLERANCE);
+			assertEquals(denseSynapses.getEfficacy(s), eventSynapses.getEfficacy(s), TOLERANCE);
+		}
+		dense.dispose();
+		events.dispose();
+	}
+
+	private static double[] run(NeuralNetwork sim, Random random, int steps) {
+		NeuronCollection<?> neurons = sim.getNeurons();
+		for (int step = 0; step < steps; step++) {
+			for (int n = 0; n < 4; n++) {
+				neurons.setOutput(n, random.nextDouble());
+			}
+			sim.step();
+		}
+		return neurons.getOutputs().clone();
+	}
+
+	/**
+	 * Creates a network with synapses with the same connectivity and efficacies as the given synapses, and neurons
+	 * with the same outputs as those of the given network.
+	 */
+	private static NeuralNetwork createEquivalent(NeuralNetwork sim, SynapseCollection<?> synapses, Kernel.EXECUTION_MODE mode) {
+		FixedSynapseCollection expectedSynapses = new FixedSynapseCollection(synapses.getSizePopulated());
+		NeuralNetwork expected = new NeuralNetwork(1000, new LinearNeuronCollection(NEURON_COUNT), expectedSynapses, mode);
+		for (int s = 0; s < synapses.getSizePopulated(); s++) {
+			expectedSynapses.setPreAndPostNeurons(s, synapses.getPreNeuron(s), synapses.getPostNeuron(s));
+			expectedSynapses.setEfficacy(s, synapses.getEfficacy(s));
+		}
+		System.arraycopy(sim.getNeurons().getOutputs(), 0, expected.getNeurons().getOutputs(), 0, NEURON_COUNT);
+		expected.getNeurons().setOutputsModified();
+		return expected;
+	}
+
+	private static NeuralNetwork createPlasticNetwork() {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.007));
+		neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(0.011));
+		for (int n = 0; n < NEURON_COUNT; n += 2) {
+			neurons.setComponentConfiguration(n, 1);
+		}
+		Graupner2012SimplifiedSynapseCollection synapses = new Graupner2012SimplifiedSynapseCollection(SYNAPSE_COUNT);
+		synapses.addConfiguration(synapses.getConfigSingleton().getPreset(0));
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, synapses, Kernel.EXECUTION_MODE.SEQ);
+		Random random = new Random(1);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+		}
+		synapses.setSizePopulated(SYNAPSE_COUNT / 2);
+		sim.reset();
+		return sim;
+	}
+
+	private static void modifyStructure(SynapseCollection<?> synapses, Random random) {
+		for (int i = 0; i < 3; i++) {
+			synapses.removeSynapse(random.nextInt(synapses.getSizePopulated()));
+		}
+		for (int i = 0; i < 4 && synapses.getFreeSynapseCount() > 0; i++) {
+			synapses.addSynapse(random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT), 0);
+		}
+	}
+}
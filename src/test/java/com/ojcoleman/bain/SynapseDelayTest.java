@@ -0,0 +1,130 @@
+package com.ojcoleman.bain;
+
+import java.util.Random;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.ComponentConfiguration;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronCollection;
+import com.ojcoleman.bain.neuron.spiking.FixedFrequencyNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+import com.ojcoleman.bain.synapse.spiking.Graupner2012SimplifiedSynapseCollection;
+import com.ojcoleman.bain.synapse.spiking.Graupner2012SimplifiedSynapseConfiguration;
+import com.ojcoleman.bain.synapse.spiking.Pfister2006SynapseCollection;
+import com.ojcoleman.bain.synapse.spiking.Pfister2006SynapseConfiguration;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit tests to check that synaptic transmission delays shift the transmitted outputs by the given number of steps,
+ * and that event-driven updating of spiking synapse models with delays gives the same results as updating every
+ * synapse in every time step.
+ */
+public class SynapseDelayTest {
+	static final int STEPS = 50;
+	static final int NEURON_COUNT = 40;
+	static final int SYNAPSE_COUNT = 400;
+	static final int MAX_DELAY = 6;
+	static final double[] SPIKING_PERIODS = { 0.007, 0.011, 0.013, 0.017, 0.023 };
+	static final double TOLERANCE = 1e-9;
+
+	@Test
+	public void testDelayedTransmission() {
+		for (Kernel.EXECUTION_MODE mode : new Kernel.EXECUTION_MODE[] { Kernel.EXECUTION_MODE.SEQ, Kernel.EXECUTION_MODE.JTP }) {
+			double[] undelayed = runChain(0, mode);
+			for (int delay = 1; delay <= 3; delay++) {
+				double[] delayed = runChain(delay, mode);
+				for (int step = 0; step < STEPS; step++) {
+					assertEquals(step < delay ? 0 : undelayed[step - delay], delayed[step], 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEventDrivenPfister() {
+		compare(new Pfister2006SynapseConfiguration().getPreset(0));
+	}
+
+	@Test
+	public void testEventDrivenGraupnerSimplified() {
+		compare(new Graupner2012SimplifiedSynapseConfiguration().getPreset(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeDelay() {
+		new FixedSynapseCollection(1).setDelay(0, -1);
+	}
+
+	/**
+	 * Runs a network in which the output of the first neuron, set to a random value in each step, is transmitted to
+	 * the second neuron via a synapse with the given delay, and returns the output of the second neuron in each step.
+	 */
+	private static double[] runChain(int delay, Kernel.EXECUTION_MODE mode) {
+		FixedSynapseCollection synapses = new FixedSynapseCollection(1);
+		NeuralNetwork sim = new NeuralNetwork(1000, new LinearNeuronCollection(2), synapses, mode);
+		synapses.setPreAndPostNeurons(0, 0, 1);
+		synapses.setEfficacy(0, 1);
+		synapses.setDelay(0, delay);
+		assertEquals(delay, synapses.getDelay(0));
+		Random random = new Random(1);
+		double[] outputs = new double[STEPS];
+		for (int step = 0; step < STEPS; step++) {
+			sim.getNeurons().setOutput(0, random.nextDouble());
+			sim.step();
+			outputs[step] = sim.getNeurons().getOutput(1);
+		}
+		sim.dispose();
+		return outputs;
+	}
+
+	/**
+	 * Run a network with delayed synapses with dense updating and with event-driven updating, switching between dense
+	 * and event-driven updating part way through, and check that the synapse state and neuron outputs match.
+	 */
+	private static void compare(ComponentConfiguration config) {
+		NeuralNetwork dense = createNetwork(config);
+		NeuralNetwork events = createNetwork(config);
+		events.setEventDriven(true);
+
+		dense.run(300);
+		events.run(100);
+		events.setEventDriven(false);
+		events.run(100);
+		events.setEventDriven(true);
+		events.run(100);
+
+		SynapseCollection<?> denseSynapses = dense.getSynapses();
+		SynapseCollection<?> eventSynapses = events.getSynapses();
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			assertArrayEquals(denseSynapses.getStateVariableValues(s), eventSynapses.getStateVariableValues(s), TOLERANCE);
+			assertEquals(denseSynapses.getEfficacy(s), eventSynapses.getEfficacy(s), TOLERANCE);
+		}
+		assertArrayEquals(dense.getNeurons().getOutputs(), events.getNeurons().getOutputs(), TOLERANCE);
+		dense.dispose();
+		events.dispose();
+	}
+
+	private static NeuralNetwork createNetwork(ComponentConfiguration config) {
+		FixedFrequencyNeuronCollection neurons = new FixedFrequencyNeuronCollection(NEURON_COUNT);
+		for (double period : SPIKING_PERIODS) {
+			neurons.addConfiguration(new FixedFrequencyNeuronConfiguration(period));
+		}
+		for (int n = 0; n < NEURON_COUNT; n++) {
+			neurons.setComponentConfiguration(n, n % SPIKING_PERIODS.length);
+		}
+		SynapseCollection<?> synapses = config instanceof Pfister2006SynapseConfiguration ? new Pfister2006SynapseCollection(SYNAPSE_COUNT) : new Graupner2012SimplifiedSynapseCollection(SYNAPSE_COUNT);
+		synapses.addConfiguration(config);
+		NeuralNetwork sim = new NeuralNetwork(1000, neurons, synapses, Kernel.EXECUTION_MODE.SEQ);
+		Random random = new Random(1);
+		for (int s = 0; s < SYNAPSE_COUNT; s++) {
+			synapses.setPreAndPostNeurons(s, random.nextInt(NEURON_COUNT), random.nextInt(NEURON_COUNT));
+			synapses.setDelay(s, random.nextInt(MAX_DELAY + 1));
+		}
+		sim.reset();
+		return sim;
+	}
+}